@@ -27,6 +27,7 @@ import org.jwat.common.Diagnostics;
 import org.jwat.common.IPAddressParser;
 import org.jwat.common.Uri;
 import org.jwat.common.UriProfile;
+import org.jwat.common.UriValidation;
 
 /**
  * Separate class containing all the different types of field parser.
@@ -41,6 +42,9 @@ public class ArcFieldParsers {
      * Must be set prior to calling the various methods. */
     protected Diagnostics<Diagnosis> diagnostics;
 
+    /** Reusable URI validation result, avoids exceptions on invalid URIs. */
+    protected UriValidation uriValidation = new UriValidation();
+
     /**
      * Add an error diagnosis on the given entity stating that it is invalid
      * and something else was expected. The optional information should provide
@@ -189,13 +193,12 @@ public class ArcFieldParsers {
     protected Uri parseUri(String uriStr, UriProfile uriProfile, String field, boolean nullable) {
         Uri uri = null;
         if ((uriStr != null) && (uriStr.length() != 0)) {
-            try {
-                uri = new Uri(uriStr, uriProfile);
-            } catch (Exception e) {
+            uri = Uri.parse(uriStr, uriProfile, uriValidation);
+            if (uri == null) {
                 // Invalid URI.
                 addInvalidExpectedError("'" + field + "' value",
                         uriStr,
-                        e.getMessage());
+                        uriValidation.getMessage());
             }
             if (uri != null) {
                 String scheme = uri.getScheme();
@@ -0,0 +1,91 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.jwat.archive.common.ArchiveFileRepacker;
+
+/**
+ * Splits and merges ARC files at record boundaries without recompressing.
+ * The records of compressed files are moved as complete GZip members.
+ *
+ * An output starting in the middle of an input gets a verbatim copy of the
+ * input's version block first, so every output starts with a version
+ * block. The filedesc URL of the copy still names the input file.
+ *
+ * @author nicl
+ */
+public class ArcFileRepacker extends ArchiveFileRepacker {
+
+    /** Buffer size used by the reader. */
+    public static final int READER_BUFFER_SIZE = 65536;
+
+    /** Reader of the current input. */
+    protected ArcReader reader;
+
+    /**
+     * Construct an ARC repacker writing outputs to a directory.
+     * @param outputDir directory outputs are written to
+     * @param prefix prefix of the output file names
+     */
+    public ArcFileRepacker(File outputDir, String prefix) {
+        super(outputDir, prefix);
+    }
+
+    @Override
+    protected boolean openInput(File input) throws IOException {
+        reader = ArcReaderFactory.getReader(new FileInputStream(input), READER_BUFFER_SIZE);
+        return reader.isCompressed();
+    }
+
+    @Override
+    protected boolean nextRecord() throws IOException {
+        ArcRecordBase record = reader.getNextRecord();
+        if (record == null) {
+            return false;
+        }
+        recordOffset = reader.getStartOffset();
+        record.close();
+        recordLength = reader.getOffset() - recordOffset;
+        recordId = record.header.urlStr;
+        bHeadRecord = record.recordType == ArcRecordBase.RT_VERSION_BLOCK;
+        return true;
+    }
+
+    @Override
+    protected long getInputConsumed() {
+        return reader.getConsumed();
+    }
+
+    @Override
+    protected void closeInput() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    @Override
+    protected String getExtension(boolean bCompressed) {
+        return bCompressed ? ".arc.gz" : ".arc";
+    }
+
+}
@@ -20,6 +20,7 @@ package org.jwat.arc;
 import org.jwat.common.Diagnosis;
 import org.jwat.common.Diagnostics;
 import org.jwat.common.Digest;
+import org.jwat.common.FixityDigestInputStream;
 import org.jwat.common.HeaderLineReader;
 import org.jwat.common.UriProfile;
 
@@ -109,6 +110,9 @@ public abstract class ArcReader implements Closeable {
     /** Exception thrown while using the iterator. */
     protected Exception iteratorExceptionThrown;
 
+    /** Whole-file fixity digest stream or null. */
+    protected FixityDigestInputStream fixityIn;
+
     /**
      * Method used to initialize a readers internal state.
      */
@@ -378,6 +382,28 @@ public abstract class ArcReader implements Closeable {
      */
     public abstract long getConsumed();
 
+    /**
+     * Returns the whole-file digest computed with the given algorithm, or
+     * null if no digests are computed or the end of the file has not been
+     * reached yet. The digest covers the raw bytes of the file, compressed
+     * or not. (@see ArcReaderFactory#getReader(InputStream, int, String...))
+     * @param algorithm digest algorithm given to the factory
+     * @return whole-file digest or null
+     */
+    public byte[] getFixityDigest(String algorithm) {
+        return fixityIn != null ? fixityIn.getDigest(algorithm) : null;
+    }
+
+    /**
+     * Returns the whole-file fixity digest stream or null. Trailing bytes
+     * not consumed by the reader can be included using its
+     * <code>drain()</code> method.
+     * @return whole-file fixity digest stream or null
+     */
+    public FixityDigestInputStream getFixityStream() {
+        return fixityIn;
+    }
+
     /**
      * Parses and gets the next ARC record.
      * @return the next ARC record
@@ -17,10 +17,10 @@
  */
 package org.jwat.arc;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.jwat.common.BufferedInputStreamNoLock;
 import org.jwat.common.ByteCountingPushBackInputStream;
 import org.jwat.gzip.GzipEntry;
 import org.jwat.gzip.GzipReader;
@@ -183,7 +183,7 @@ public class ArcReaderCompressed extends ArcReader {
             ByteCountingPushBackInputStream pbin;
             if (bufferSize > 0) {
                 pbin = new ByteCountingPushBackInputStream(
-                        new BufferedInputStream(
+                        new BufferedInputStreamNoLock(
                                 currentEntry.getInputStream(),
                                 bufferSize),
                         PUSHBACK_BUFFER_SIZE);
@@ -219,7 +219,12 @@ public class ArcReaderCompressed extends ArcReader {
                     "The 'offset' is less than -1: " + offset);
         }
         currentRecord = null;
-        currentReader = new GzipReader(rin);
+        // Reuse the inflater and buffers from the previous lookup.
+        if (currentReader == null) {
+            currentReader = new GzipReader(rin);
+        } else {
+            currentReader.reset(rin);
+        }
         currentEntry = currentReader.getNextEntry();
         if (currentEntry != null) {
             ByteCountingPushBackInputStream pbin =
@@ -258,12 +263,17 @@ public class ArcReaderCompressed extends ArcReader {
                     + buffer_size);
         }
         currentRecord = null;
-        currentReader = new GzipReader(rin);
+        // Reuse the inflater and buffers from the previous lookup.
+        if (currentReader == null) {
+            currentReader = new GzipReader(rin);
+        } else {
+            currentReader.reset(rin);
+        }
         currentEntry = currentReader.getNextEntry();
         if (currentEntry != null) {
             ByteCountingPushBackInputStream pbin =
                     new ByteCountingPushBackInputStream(
-                            new BufferedInputStream(
+                            new BufferedInputStreamNoLock(
                                     currentEntry.getInputStream(),
                                     buffer_size),
                             PUSHBACK_BUFFER_SIZE);
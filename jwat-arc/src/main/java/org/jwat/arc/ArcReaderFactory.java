@@ -17,13 +17,15 @@
  */
 package org.jwat.arc;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 import org.jwat.archive.common.ReaderFactoryAbstract;
+import org.jwat.common.BufferedInputStreamNoLock;
 import org.jwat.common.ByteCountingPushBackInputStream;
+import org.jwat.common.FixityDigestInputStream;
 import org.jwat.common.Scheme;
 import org.jwat.gzip.GzipReader;
 
@@ -80,7 +82,7 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
 
     /**
      * Creates a new <code>ArcReader</code> from an <code>InputStream</code>
-     * wrapped by a <code>BufferedInputStream</code>.
+     * wrapped by a <code>BufferedInputStreamNoLock</code>.
      * The <code>WarcReader</code> implementation returned is chosen based on
      * GZip auto detection.
      * @param in ARC File represented as <code>InputStream</code>
@@ -102,7 +104,7 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
         }
         ByteCountingPushBackInputStream pbin =
                 new ByteCountingPushBackInputStream(
-                        new BufferedInputStream(in, buffer_size),
+                        new BufferedInputStreamNoLock(in, buffer_size),
                                                 PUSHBACK_BUFFER_SIZE);
         if (GzipReader.isGzipped(pbin)) {
             return new ArcReaderCompressed(new GzipReader(pbin),
@@ -111,6 +113,66 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
         return new ArcReaderUncompressed(pbin);
     }
 
+    /**
+     * Creates a new <code>ArcReader</code> from an <code>InputStream</code>
+     * wrapped by a <code>BufferedInputStreamNoLock</code>, which also computes
+     * whole-file digests, e.g. for a fixity register, over the raw bytes
+     * as they are read. Compressed files are digested as compressed bytes.
+     * The digests are available from the reader once the end of the file
+     * has been reached, so fixity and validation take one read.
+     * The <code>ArcReader</code> implementation returned is chosen based on
+     * GZip auto detection.
+     * @param in ARC File represented as <code>InputStream</code>
+     * @param buffer_size buffer size to use
+     * @param fixityAlgorithms whole-file digest algorithms, e.g. "SHA-256"
+     * @return appropriate <code>ArcReader</code> based on data read from
+     * <code>InputStream</code>
+     * @throws IOException if an i/o exception occurs during initialization
+     * @throws NoSuchAlgorithmException if an algorithm is not supported
+     */
+    public static ArcReader getReader(InputStream in, int buffer_size,
+            String... fixityAlgorithms) throws IOException, NoSuchAlgorithmException {
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The inputstream 'in' is null");
+        }
+        // Digest below the buffer and pushback streams, so unread bytes are
+        // only digested once.
+        FixityDigestInputStream fixityIn = new FixityDigestInputStream(in, fixityAlgorithms);
+        ArcReader reader = getReader(fixityIn, buffer_size);
+        reader.fixityIn = fixityIn;
+        return reader;
+    }
+
+    /**
+     * Creates a new <code>ArcReader</code> configured for high fan-out,
+     * i.e. thousands of files read at the same time, e.g. one virtual thread
+     * per file. The read path uses no locks and all the per-reader buffers,
+     * including the GZip input buffer, are
+     * <code>HIGH_FAN_OUT_BUFFER_SIZE</code> bytes.
+     * The <code>ArcReader</code> implementation returned is chosen based on
+     * GZip auto detection.
+     * @param in ARC File represented as <code>InputStream</code>
+     * @return appropriate <code>ArcReader</code> based on data read from
+     * <code>InputStream</code>
+     * @throws IOException if an i/o exception occurs during initialization
+     */
+    public static ArcReader getReaderHighFanOut(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The inputstream 'in' is null");
+        }
+        ByteCountingPushBackInputStream pbin =
+                new ByteCountingPushBackInputStream(
+                        new BufferedInputStreamNoLock(in, HIGH_FAN_OUT_BUFFER_SIZE),
+                        PUSHBACK_BUFFER_SIZE);
+        if (GzipReader.isGzipped(pbin)) {
+            return new ArcReaderCompressed(new GzipReader(pbin, 0, HIGH_FAN_OUT_BUFFER_SIZE),
+                                           HIGH_FAN_OUT_BUFFER_SIZE);
+        }
+        return new ArcReaderUncompressed(pbin);
+    }
+
     /**
      * Creates a new <code>ArcReader</code> from an <code>InputStream</code>.
      * The <code>WarcReader</code> implementation returned is chosen based on
@@ -164,7 +226,7 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
 
     /**
      * Creates a new <code>ArcReader</code> from an <code>InputStream</code>
-     * wrapped by a <code>BufferedInputStream</code> primarily for random
+     * wrapped by a <code>BufferedInputStreamNoLock</code> primarily for random
      * access to uncompressed records.
      * @param in ARC File represented as <code>InputStream</code>
      * @param buffer_size buffer size to use
@@ -185,7 +247,7 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
         }
         ByteCountingPushBackInputStream pbin =
                 new ByteCountingPushBackInputStream(
-                        new BufferedInputStream(in, buffer_size),
+                        new BufferedInputStreamNoLock(in, buffer_size),
                         PUSHBACK_BUFFER_SIZE);
         return new ArcReaderUncompressed(pbin);
     }
@@ -219,7 +281,7 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
 
     /**
      * Creates a new <code>ArcReader</code> from an <code>InputStream</code>
-     * wrapped by a <code>BufferedInputStream</code> primarily for random
+     * wrapped by a <code>BufferedInputStreamNoLock</code> primarily for random
      * access to GZip compressed records.
      * @param in ARC File represented as <code>InputStream</code>
      * @param buffer_size buffer size to use
@@ -239,7 +301,7 @@ public class ArcReaderFactory extends ReaderFactoryAbstract {
                     + buffer_size);
         }
         return new ArcReaderCompressed(new GzipReader(
-                                new BufferedInputStream(in, buffer_size)));
+                                new BufferedInputStreamNoLock(in, buffer_size)));
     }
 
 }
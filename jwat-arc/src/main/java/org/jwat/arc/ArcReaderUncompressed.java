@@ -17,10 +17,10 @@
  */
 package org.jwat.arc;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.jwat.common.BufferedInputStreamNoLock;
 import org.jwat.common.ByteCountingPushBackInputStream;
 
 /**
@@ -183,7 +183,7 @@ public class ArcReaderUncompressed extends ArcReader {
         }
         ByteCountingPushBackInputStream pbin =
                 new ByteCountingPushBackInputStream(
-                        new BufferedInputStream(rin, buffer_size),
+                        new BufferedInputStreamNoLock(rin, buffer_size),
                         PUSHBACK_BUFFER_SIZE);
         currentRecord = ArcRecordBase.parseRecord(pbin, this);
         if (currentRecord != null) {
@@ -0,0 +1,356 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.jwat.archive.common.ArchiveRecoveryReader;
+import org.jwat.common.Diagnosis;
+import org.jwat.common.DiagnosisType;
+import org.jwat.common.FileChannelInputStream;
+import org.jwat.gzip.GzipConstants;
+import org.jwat.gzip.GzipEntry;
+import org.jwat.gzip.GzipMemberSplitter;
+
+/**
+ * Reads the intact records of a damaged ARC file, skipping and reporting
+ * the damaged byte ranges. (@see ArchiveRecoveryReader)
+ *
+ * In a compressed file a record must start with a GZip member which
+ * inflates to an ARC header. A member which fails to inflate while its
+ * record is closed is damaged, and the scan for the next member starts
+ * right after its start. A member with a wrong CRC32 or ISize is still
+ * read to its end, but reported. Members are found using
+ * <code>GzipMemberSplitter</code>.
+ *
+ * In an uncompressed file a record must start with a URL line at a line
+ * start: a scheme, at least five space separated fields with a numeric
+ * date as the third and a numeric length as the last. The length must land
+ * on the newline which ends the record, or on the end of the file.
+ *
+ * @author nicl
+ */
+public class ArcRecoveryReader extends ArchiveRecoveryReader<ArcRecordBase> {
+
+    /** Default buffer size used on record streams. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Buffer size used when scanning for record candidates. */
+    public static final int SCAN_BUFFER_SIZE = 65536;
+
+    /** Maximum length of a URL line. */
+    public static final int MAX_URL_LINE_LENGTH = 8192;
+
+    /** Maximum length of the URL scheme of a candidate. */
+    public static final int MAX_SCHEME_LENGTH = 16;
+
+    /** Minimum number of fields in a URL line. */
+    public static final int MIN_URL_LINE_FIELDS = 5;
+
+    /** Diagnosis entity used for GZip members with trailer errors. */
+    public static final String GZIP_MEMBER_ENTITY = "GZip member";
+
+    /** Is the ARC file compressed. */
+    protected boolean bCompressed;
+
+    /** Buffer size used on record streams. */
+    protected int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /** Reader used to parse records. */
+    protected ArcReader reader;
+
+    /** Scanner used for compressed files. */
+    protected GzipMemberSplitter memberSplitter;
+
+    /** End of the current uncompressed record. */
+    protected long recordEnd;
+
+    /** Scan buffer used for uncompressed files. */
+    protected byte[] scanBuf;
+
+    /** URL line buffer used for uncompressed files. */
+    protected byte[] lineBuf;
+
+    /** Buffer used to check for the GZip magic number. */
+    protected byte[] magicBuf = new byte[3];
+
+    /**
+     * Construct a recovery reader on an ARC file. The file is compressed if
+     * it starts with the GZip magic number or its name ends with ".gz".
+     * @param file ARC file
+     * @throws IOException if an i/o exception occurs while opening the file
+     */
+    public ArcRecoveryReader(File file) throws IOException {
+        this(new RandomAccessFile(file, "r"), isCompressed(file));
+    }
+
+    /**
+     * Construct a recovery reader on an ARC file.
+     * @param raf ARC file, closed when this reader is closed
+     * @param bCompressed is the ARC file compressed
+     * @throws IOException if an i/o exception occurs while accessing the file
+     */
+    public ArcRecoveryReader(RandomAccessFile raf, boolean bCompressed) throws IOException {
+        super(raf);
+        this.bCompressed = bCompressed;
+        if (bCompressed) {
+            reader = new ArcReaderCompressed();
+            memberSplitter = new GzipMemberSplitter();
+        } else {
+            reader = new ArcReaderUncompressed();
+            scanBuf = new byte[SCAN_BUFFER_SIZE];
+            lineBuf = new byte[MAX_URL_LINE_LENGTH];
+        }
+    }
+
+    /**
+     * Check whether an ARC file is compressed. The file name is used if the
+     * first bytes of the file are damaged.
+     * @param file ARC file
+     * @return boolean indicating whether the ARC file is compressed
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' parameter is null!");
+        }
+        if (file.getName().endsWith(".gz")) {
+            return true;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.length() >= 2
+                    && (raf.readUnsignedByte() | (raf.readUnsignedByte() << 8)) == GzipConstants.GZIP_MAGIC;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the ARC file is compressed.
+     * @return a boolean indicating whether the ARC file is compressed
+     */
+    public boolean isCompressed() {
+        return bCompressed;
+    }
+
+    /**
+     * Set the buffer size used on record streams.
+     * @param bufferSize buffer size used on record streams
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'bufferSize' is less than or equal to zero: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    protected ArcRecordBase readRecord(long offset) throws IOException {
+        if (bCompressed) {
+            raf.seek(offset);
+            if (raf.read(magicBuf, 0, magicBuf.length) != magicBuf.length
+                    || (magicBuf[0] & 255) != 0x1f || (magicBuf[1] & 255) != 0x8b
+                    || (magicBuf[2] & 255) != GzipConstants.CM_DEFLATE) {
+                return null;
+            }
+        } else {
+            recordEnd = getRecordEnd(offset);
+            if (recordEnd == -1) {
+                return null;
+            }
+        }
+        ArcRecordBase record;
+        try {
+            record = reader.getNextRecordFrom(
+                    new FileChannelInputStream(raf.getChannel(), offset), offset, bufferSize);
+        } catch (IOException e) {
+            // The failed record can not be closed again.
+            resetReader();
+            throw e;
+        }
+        if (record == null) {
+            resetReader();
+        }
+        return record;
+    }
+
+    @Override
+    protected long closeRecord(ArcRecordBase record, long offset) {
+        GzipEntry entry = bCompressed ? ((ArcReaderCompressed)reader).currentEntry : null;
+        try {
+            record.close();
+        } catch (IOException e) {
+            resetReader();
+            return -1;
+        }
+        if (!bCompressed) {
+            return recordEnd;
+        }
+        if (entry == null || entry.consumed <= 0) {
+            resetReader();
+            return -1;
+        }
+        if (entry.diagnostics.hasErrors()) {
+            diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA,
+                    GZIP_MEMBER_ENTITY, Long.toString(offset)));
+        }
+        return offset + entry.consumed;
+    }
+
+    @Override
+    protected long findCandidate(long offset) throws IOException {
+        if (bCompressed) {
+            return memberSplitter.findMember(raf, offset, length, null);
+        }
+        // Include the preceding byte so the line start can be checked.
+        long pos = offset - 1;
+        while (pos < length) {
+            raf.seek(pos);
+            int len = (int)Math.min(scanBuf.length, length - pos);
+            raf.readFully(scanBuf, 0, len);
+            int idx = 0;
+            // The newline and the byte following it must be in the buffer.
+            while (idx + 1 < len) {
+                if (scanBuf[idx] == '\n'
+                        && isSchemeStart(scanBuf, idx + 1, len)
+                        && getRecordEnd(pos + idx + 1) != -1) {
+                    return pos + idx + 1;
+                }
+                ++idx;
+            }
+            if (pos + len >= length) {
+                break;
+            }
+            pos += idx;
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether a buffer holds the start of a URL scheme at an index.
+     * A scheme which continues past the end of the buffer is accepted.
+     * @param buf buffer
+     * @param idx index in buffer
+     * @param len length of data in buffer
+     * @return boolean indicating whether a URL scheme may start at the index
+     */
+    protected static boolean isSchemeStart(byte[] buf, int idx, int len) {
+        int end = Math.min(len, idx + MAX_SCHEME_LENGTH + 1);
+        int c;
+        for (int i=idx; i<end; ++i) {
+            c = buf[i] & 255;
+            if (c == ':') {
+                return i > idx;
+            }
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (i > idx && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.')))) {
+                return false;
+            }
+        }
+        return end == len;
+    }
+
+    /**
+     * Parse the URL line of an uncompressed record candidate and return the
+     * offset following the record.
+     * @param offset candidate record offset
+     * @return offset following the record or -1 if the candidate URL line
+     * is invalid or its length does not land on the end of the record
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    protected long getRecordEnd(long offset) throws IOException {
+        raf.seek(offset);
+        int len = (int)Math.min(lineBuf.length, length - offset);
+        raf.readFully(lineBuf, 0, len);
+        int lineLen = 0;
+        while (lineLen < len && lineBuf[lineLen] != '\n') {
+            ++lineLen;
+        }
+        if (lineLen == len || !isSchemeStart(lineBuf, 0, lineLen)) {
+            return -1;
+        }
+        int fields = 1;
+        int fieldStart = 0;
+        long recordLength = -1;
+        for (int i=0; i<=lineLen; ++i) {
+            if (i == lineLen || lineBuf[i] == ' ') {
+                if (i == fieldStart) {
+                    return -1;
+                }
+                if (fields == 3 && !isDigits(lineBuf, fieldStart, i)) {
+                    return -1;
+                }
+                if (i == lineLen) {
+                    if (fields < MIN_URL_LINE_FIELDS || !isDigits(lineBuf, fieldStart, i)
+                            || i - fieldStart > 18) {
+                        return -1;
+                    }
+                    recordLength = Long.parseLong(new String(lineBuf, fieldStart, i - fieldStart));
+                } else {
+                    ++fields;
+                    fieldStart = i + 1;
+                }
+            }
+        }
+        long end = offset + lineLen + 1 + recordLength;
+        if (end == length) {
+            return end;
+        }
+        if (end > length) {
+            return -1;
+        }
+        raf.seek(end);
+        if (raf.read() != '\n') {
+            return -1;
+        }
+        return end + 1;
+    }
+
+    /**
+     * Check whether a buffer range is made up of digits only.
+     * @param buf buffer
+     * @param start start index
+     * @param end end index
+     * @return boolean indicating whether the range is made up of digits only
+     */
+    protected static boolean isDigits(byte[] buf, int start, int end) {
+        for (int i=start; i<end; ++i) {
+            if (buf[i] < '0' || buf[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replace the reader after a failure left its current record unusable.
+     */
+    protected void resetReader() {
+        if (bCompressed) {
+            reader = new ArcReaderCompressed();
+        } else {
+            reader = new ArcReaderUncompressed();
+        }
+    }
+
+}
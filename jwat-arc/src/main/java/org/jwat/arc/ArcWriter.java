@@ -20,12 +20,18 @@ package org.jwat.arc;
 import org.jwat.common.Diagnosis;
 import org.jwat.common.DiagnosisType;
 import org.jwat.common.Diagnostics;
+import org.jwat.common.DigestListener;
+import org.jwat.common.HttpHeader;
+import org.jwat.common.PayloadDigester;
+import org.jwat.common.Scheme;
 
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 
 /**
@@ -66,6 +72,15 @@ public abstract class ArcWriter implements Closeable {
      *  (Default is true) */
     protected boolean bExceptionOnContentLengthMismatch;
 
+    /** Block digest algorithm computed while writing or null. */
+    protected String blockDigestAlgorithm;
+
+    /** Payload digest algorithm computed while writing or null. */
+    protected String payloadDigestAlgorithm;
+
+    /** Listener receiving the computed digests or null. */
+    protected DigestListener<ArcHeader> digestListener;
+
     /*
      * State.
      */
@@ -87,6 +102,12 @@ public abstract class ArcWriter implements Closeable {
     /** Total bytes written for current record payload. */
     protected long payloadWrittenTotal;
 
+    /** Digester of the current record or null. */
+    protected PayloadDigester digester;
+
+    /** Is the current record being digested. */
+    protected boolean bDigesting;
+
     /**
      * Method used to initialize a readers internal state.
      * Must be called by all constructors.
@@ -122,6 +143,132 @@ public abstract class ArcWriter implements Closeable {
         bExceptionOnContentLengthMismatch = enabled;
     }
 
+    /**
+     * Get the block digest algorithm computed while writing.
+     * @return block digest algorithm or null
+     */
+    public String getBlockDigestAlgorithm() {
+        return blockDigestAlgorithm;
+    }
+
+    /**
+     * Tries to set the block digest algorithm computed while writing and
+     * returns a boolean indicating whether the algorithm was accepted or not.
+     * ARC headers have no digest fields, the digests are handed to the
+     * digest listener.
+     * @param digestAlgorithm block digest algorithm
+     * (null means no block digest is computed)
+     * @return boolean indicating the validity of the algorithm supplied
+     */
+    public boolean setBlockDigestAlgorithm(String digestAlgorithm) {
+        if (digestAlgorithm != null && digestAlgorithm.length() == 0) {
+            digestAlgorithm = null;
+        }
+        if (!isDigestAlgorithm(digestAlgorithm)) {
+            return false;
+        }
+        blockDigestAlgorithm = digestAlgorithm;
+        digester = null;
+        return true;
+    }
+
+    /**
+     * Get the payload digest algorithm computed while writing.
+     * @return payload digest algorithm or null
+     */
+    public String getPayloadDigestAlgorithm() {
+        return payloadDigestAlgorithm;
+    }
+
+    /**
+     * Tries to set the payload digest algorithm computed while writing and
+     * returns a boolean indicating whether the algorithm was accepted or not.
+     * The payload follows the HTTP response header of records with a HTTP
+     * URL, which is detected while writing.
+     * @param digestAlgorithm payload digest algorithm
+     * (null means no payload digest is computed)
+     * @return boolean indicating the validity of the algorithm supplied
+     */
+    public boolean setPayloadDigestAlgorithm(String digestAlgorithm) {
+        if (digestAlgorithm != null && digestAlgorithm.length() == 0) {
+            digestAlgorithm = null;
+        }
+        if (!isDigestAlgorithm(digestAlgorithm)) {
+            return false;
+        }
+        payloadDigestAlgorithm = digestAlgorithm;
+        digester = null;
+        return true;
+    }
+
+    /**
+     * Check whether a digest algorithm is supported.
+     * @param digestAlgorithm digest algorithm or null
+     * @return boolean indicating whether the algorithm is null or supported
+     */
+    protected static boolean isDigestAlgorithm(String digestAlgorithm) {
+        if (digestAlgorithm == null) {
+            return true;
+        }
+        try {
+            MessageDigest.getInstance(digestAlgorithm);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Set the listener receiving the digests computed for each record when
+     * it is closed.
+     * @param listener digest listener or null
+     */
+    public void setDigestListener(DigestListener<ArcHeader> listener) {
+        digestListener = listener;
+    }
+
+    /**
+     * Returns the digester of the last record written. Its digests are
+     * available once the record has been closed.
+     * @return digester of the last record or null if digesting is disabled
+     */
+    public PayloadDigester getDigester() {
+        return digester;
+    }
+
+    /**
+     * Start digesting the block of a new record, if enabled.
+     * @param header ARC header of the record or null if written raw
+     */
+    protected void startDigest(ArcHeader header) {
+        if (blockDigestAlgorithm == null && payloadDigestAlgorithm == null) {
+            digester = null;
+            bDigesting = false;
+            return;
+        }
+        if (digester == null) {
+            try {
+                digester = new PayloadDigester(blockDigestAlgorithm, payloadDigestAlgorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        int httpHeaderType = 0;
+        if (header != null) {
+            String scheme;
+            if (header.urlUri != null) {
+                scheme = header.urlUri.getScheme();
+            } else {
+                scheme = Scheme.getScheme(header.urlStr);
+            }
+            if (scheme != null && HttpHeader.isSupported(scheme.toLowerCase())) {
+                httpHeaderType = HttpHeader.HT_RESPONSE;
+            }
+        }
+        digester.reset(httpHeaderType);
+        bDigesting = true;
+    }
+
     /**
      * Close ARC writer and free its resources.
      * @throws IOException if an i/o exception occurs while closing the writer
@@ -172,6 +319,13 @@ public abstract class ArcWriter implements Closeable {
                 }
             }
         }
+        if (bDigesting) {
+            bDigesting = false;
+            digester.finish();
+            if (digestListener != null) {
+                digestListener.digestsComputed(header, digester);
+            }
+        }
         header = null;
         headerContentLength = null;
     }
@@ -204,6 +358,7 @@ public abstract class ArcWriter implements Closeable {
         header = null;
         headerContentLength = contentLength;
         payloadWrittenTotal = 0;
+        startDigest(null);
     }
 
     /**
@@ -366,6 +521,7 @@ public abstract class ArcWriter implements Closeable {
         out.write(headerBytes);
         state = S_HEADER_WRITTEN;
         payloadWrittenTotal = 0;
+        startDigest(header);
         return headerBytes;
     }
 
@@ -387,6 +543,9 @@ public abstract class ArcWriter implements Closeable {
        int read = 0;
        while (read != -1) {
            out.write(stream_copy_buffer, 0, read);
+           if (bDigesting) {
+               digester.update(stream_copy_buffer, 0, read);
+           }
            written += read;
            read = in.read(stream_copy_buffer);
        }
@@ -406,6 +565,9 @@ public abstract class ArcWriter implements Closeable {
            throw new IllegalStateException("Write a header before writing payload!");
        }
        out.write(b);
+       if (bDigesting) {
+           digester.update(b, 0, b.length);
+       }
        state = S_PAYLOAD_WRITTEN;
        payloadWrittenTotal += b.length;
        return b.length;
@@ -424,6 +586,9 @@ public abstract class ArcWriter implements Closeable {
            throw new IllegalStateException("Write a header before writing payload!");
        }
        out.write(b, offset, len);
+       if (bDigesting) {
+           digester.update(b, offset, len);
+       }
        state = S_PAYLOAD_WRITTEN;
        payloadWrittenTotal += len;
        return len;
@@ -135,6 +135,7 @@ public class ArcWriterCompressed extends ArcWriter {
         header = null;
         headerContentLength = contentLength;
         payloadWrittenTotal = 0;
+        startDigest(null);
     }
 
     /*
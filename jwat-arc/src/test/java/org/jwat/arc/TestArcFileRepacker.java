@@ -0,0 +1,133 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.archive.common.ArchiveFileRepacker;
+
+@RunWith(JUnit4.class)
+public class TestArcFileRepacker {
+
+    /**
+     * Returns the urls of the records, with version blocks prefixed by "filedesc".
+     */
+    public static List<String> readUrls(File file) throws IOException {
+        List<String> urls = new ArrayList<String>();
+        InputStream in = new FileInputStream(file);
+        ArcReader reader = ArcReaderFactory.getReader(in);
+        ArcRecordBase record;
+        while ((record = reader.getNextRecord()) != null) {
+            record.close();
+            if (record.recordType == ArcRecordBase.RT_VERSION_BLOCK) {
+                urls.add("filedesc");
+            } else {
+                urls.add(record.getUrlStr());
+            }
+        }
+        reader.close();
+        in.close();
+        return urls;
+    }
+
+    @Test
+    public void test_arcfilerepacker() throws IOException {
+        String[] in_files = {
+                "small_BNF.arc",
+                "IAH-20080430204825-00000-blackbook.arc.gz"
+        };
+        for (int f=0; f<in_files.length; ++f) {
+            File input = TestBaseUtils.copyResource(in_files[f]);
+            List<String> urls = readUrls(input);
+            File dir = TestBaseUtils.createTempDir();
+            ArcFileRepacker repacker = new ArcFileRepacker(dir, "split");
+            long maxSize = input.length() / 4;
+            repacker.setMaxSize(maxSize);
+            Assert.assertEquals(maxSize, repacker.getMaxSize());
+            List<File> outputs = repacker.split(input);
+            Assert.assertTrue(outputs.size() > 2);
+            List<String> splitUrls = new ArrayList<String>();
+            for (int i=0; i<outputs.size(); ++i) {
+                File output = outputs.get(i);
+                output.deleteOnExit();
+                Assert.assertEquals(in_files[f].endsWith(".gz") ? "split-0000" + i + ".arc.gz" : "split-0000" + i + ".arc", output.getName());
+                List<String> outputUrls = readUrls(output);
+                Assert.assertEquals("filedesc", outputUrls.get(0));
+                if (outputUrls.size() > 2) {
+                    Assert.assertTrue(output.length() <= maxSize);
+                }
+                for (int j=1; j<outputUrls.size(); ++j) {
+                    Assert.assertFalse("filedesc".equals(outputUrls.get(j)));
+                }
+                File map = new File(dir, output.getName() + ArchiveFileRepacker.OFFSET_MAP_EXTENSION);
+                map.deleteOnExit();
+                BufferedReader mapReader = new BufferedReader(new FileReader(map));
+                String line;
+                long expectedOffset = 0;
+                int lines = 0;
+                while ((line = mapReader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    Assert.assertEquals(5, fields.length);
+                    Assert.assertEquals(expectedOffset, Long.parseLong(fields[0]));
+                    expectedOffset += Long.parseLong(fields[1]);
+                    Assert.assertEquals(input.getName(), fields[2]);
+                    Assert.assertEquals(i > 0 && lines == 0, "-1".equals(fields[3]));
+                    ++lines;
+                }
+                mapReader.close();
+                Assert.assertEquals(output.length(), expectedOffset);
+                Assert.assertEquals(outputUrls.size(), lines);
+                splitUrls.addAll(i == 0 ? outputUrls : outputUrls.subList(1, outputUrls.size()));
+            }
+            Assert.assertEquals(urls, splitUrls);
+
+            // Merging the pieces again restores all records, with the
+            // inserted version blocks kept where the pieces start.
+            ArcFileRepacker merger = new ArcFileRepacker(dir, "merged");
+            merger.setOffsetMapEnabled(false);
+            Assert.assertFalse(merger.isOffsetMapEnabled());
+            List<File> merged = merger.merge(outputs);
+            Assert.assertEquals(1, merged.size());
+            merged.get(0).deleteOnExit();
+            Assert.assertFalse(new File(dir, merged.get(0).getName() + ArchiveFileRepacker.OFFSET_MAP_EXTENSION).exists());
+            long total = 0;
+            for (int i=0; i<outputs.size(); ++i) {
+                total += outputs.get(i).length();
+            }
+            Assert.assertEquals(total, merged.get(0).length());
+            List<String> mergedUrls = readUrls(merged.get(0));
+            List<String> expectedUrls = new ArrayList<String>();
+            for (int i=0; i<outputs.size(); ++i) {
+                expectedUrls.addAll(readUrls(outputs.get(i)));
+            }
+            Assert.assertEquals(expectedUrls, mergedUrls);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.RecordHandler;
+
+@RunWith(JUnit4.class)
+public class TestArcParallelReader {
+
+    public static String summarize(ArcRecordBase record) throws IOException {
+        long length = 0;
+        if (record.getPayload() != null) {
+            InputStream in = record.getPayload().getInputStreamComplete();
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                length += read;
+            }
+        }
+        record.close();
+        return String.format("%012d %s %d %d %d", record.getStartOffset(), record.getUrlStr(),
+                length, record.diagnostics.getErrors().size(), record.diagnostics.getWarnings().size());
+    }
+
+    @Test
+    public void test_arcparallelreader() throws IOException {
+        String[] in_files = {
+                "small_BNF.arc",
+                "IAH-20080430204825-00000-blackbook.arc.gz"
+        };
+        for (int f=0; f<in_files.length; ++f) {
+            File file = File.createTempFile("jwat-parallel-", in_files[f]);
+            file.deleteOnExit();
+            InputStream in = this.getClass().getClassLoader().getResourceAsStream(in_files[f]);
+            FileOutputStream out = new FileOutputStream(file);
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+            out.close();
+            in.close();
+
+            List<String> expected = new ArrayList<String>();
+            in = new FileInputStream(file);
+            ArcReader reader = ArcReaderFactory.getReader(in);
+            ArcRecordBase record;
+            while ((record = reader.getNextRecord()) != null) {
+                expected.add(summarize(record));
+            }
+            reader.close();
+            in.close();
+
+            ArcParallelReader parallelReader = new ArcParallelReader(3);
+            int ranges = parallelReader.split(file, 12).length - 1;
+            Assert.assertEquals(f == 0 ? 1 : 12, ranges);
+            final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+            long records = parallelReader.process(file, new RecordHandler<ArcRecordBase>() {
+                @Override
+                public void handleRecord(ArcRecordBase record) throws IOException {
+                    lines.add(summarize(record));
+                }
+            });
+            Collections.sort(lines);
+            Assert.assertEquals(expected, lines);
+            Assert.assertEquals(expected.size(), records);
+            Assert.assertEquals(reader.records, parallelReader.getRecords());
+            Assert.assertEquals(reader.errors, parallelReader.getErrors());
+            Assert.assertEquals(reader.warnings, parallelReader.getWarnings());
+            Assert.assertEquals(reader.isCompliant(), parallelReader.isCompliant());
+        }
+    }
+
+}
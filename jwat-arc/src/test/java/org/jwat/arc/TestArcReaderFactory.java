@@ -219,6 +219,82 @@ public class TestArcReaderFactory {
             Assert.assertEquals(expected_records, records);
             Assert.assertEquals(0, errors);
             Assert.assertEquals(0, warnings);
+
+            /*
+             * Auto detect high fan-out.
+             */
+
+            records = 0;
+            errors = 0;
+            warnings = 0;
+
+            in = this.getClass().getClassLoader().getResourceAsStream(arcFile);
+
+            reader = ArcReaderFactory.getReaderHighFanOut(in);
+
+            record = reader.getNextRecord();
+
+            Assert.assertEquals(ArcRecordBase.RT_VERSION_BLOCK, record.recordType);
+            Assert.assertTrue(record.isCompliant());
+            Assert.assertNotNull(record.versionHeader);
+            Assert.assertNotNull(record.versionHeader.isValid());
+            Assert.assertEquals(ArcVersion.VERSION_1_1, record.versionHeader.version);
+
+            if (record != null) {
+                if (bDebugOutput) {
+                    TestBaseUtils.printRecord(record);
+                }
+
+                boolean b = true;
+                while ( b ) {
+                    record = reader.getNextRecord();
+                    if (record != null) {
+                        if (bDebugOutput) {
+                            TestBaseUtils.printRecord(record);
+                        }
+
+                        ++records;
+
+                        payload = record.getPayload();
+                        if (record.hasPayload()) {
+                            Assert.assertNotNull(payload);
+                            payload_in = record.getPayloadContent();
+                            Assert.assertNotNull(payload_in);
+                            Assert.assertEquals(payload_in, record.getPayloadContent());
+                        } else {
+                            Assert.assertNull(payload);
+                            payload_in = record.getPayloadContent();
+                            Assert.assertNull(payload_in);
+                            Assert.assertEquals(payload_in, record.getPayloadContent());
+                        }
+                        Assert.assertEquals(payload, record.getPayload());
+
+                        Assert.assertEquals(ArcRecordBase.RT_ARC_RECORD, record.recordType);
+                        Assert.assertTrue(record.isCompliant());
+                        Assert.assertNull(record.versionHeader);
+
+                        if (record.diagnostics.hasErrors()) {
+                            errors += record.diagnostics.getErrors().size();
+                        }
+                        if (record.diagnostics.hasWarnings()) {
+                            warnings += record.diagnostics.getWarnings().size();
+                        }
+                    } else {
+                        b = false;
+                    }
+                }
+
+                if (bDebugOutput) {
+                    TestBaseUtils.printStatus(records, errors, warnings);
+                }
+            }
+
+            reader.close();
+            in.close();
+
+            Assert.assertEquals(expected_records, records);
+            Assert.assertEquals(0, errors);
+            Assert.assertEquals(0, warnings);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
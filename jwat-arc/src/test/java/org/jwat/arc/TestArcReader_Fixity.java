@@ -0,0 +1,65 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestArcReader_Fixity {
+
+    @Test
+    public void test_arcreader_fixity() throws Exception {
+        String[] in_files = {
+                "small_BNF.arc",
+                "IAH-20080430204825-00000-blackbook.arc.gz"
+        };
+        for (int f=0; f<in_files.length; ++f) {
+            InputStream in = this.getClass().getClassLoader().getResourceAsStream(in_files[f]);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] tmp = new byte[8192];
+            int read;
+            while ((read = in.read(tmp)) != -1) {
+                out.write(tmp, 0, read);
+            }
+            in.close();
+            byte[] bytes = out.toByteArray();
+
+            ArcReader reader = ArcReaderFactory.getReader(new ByteArrayInputStream(bytes), 1024, "SHA-256");
+            Assert.assertEquals(f == 1, reader.isCompressed());
+            ArcRecordBase record;
+            int records = 0;
+            while ((record = reader.getNextRecord()) != null) {
+                record.close();
+                ++records;
+            }
+            Assert.assertTrue(records > 1);
+            Assert.assertEquals(bytes.length, reader.getFixityStream().getLength());
+            Assert.assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes), reader.getFixityDigest("SHA-256"));
+            reader.close();
+        }
+    }
+
+}
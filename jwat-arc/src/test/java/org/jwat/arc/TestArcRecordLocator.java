@@ -0,0 +1,79 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestArcRecordLocator {
+
+    @Test
+    public void test_arcrecordlocator() throws IOException {
+        String[] in_files = {
+                "small_BNF.arc",
+                "IAH-20080430204825-00000-blackbook.arc.gz"
+        };
+        ArcRecordLocator locator = new ArcRecordLocator();
+        for (int f=0; f<in_files.length; ++f) {
+            File file = File.createTempFile("jwat-locator-", in_files[f]);
+            file.deleteOnExit();
+            InputStream in = this.getClass().getClassLoader().getResourceAsStream(in_files[f]);
+            FileOutputStream out = new FileOutputStream(file);
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+            out.close();
+            in.close();
+
+            List<Long> offsets = new ArrayList<Long>();
+            List<String> urls = new ArrayList<String>();
+            in = this.getClass().getClassLoader().getResourceAsStream(in_files[f]);
+            ArcReader reader = ArcReaderFactory.getReader(in);
+            ArcRecordBase record;
+            while ((record = reader.getNextRecord()) != null) {
+                record.close();
+                offsets.add(record.getStartOffset());
+                urls.add(record.getUrlStr());
+            }
+            reader.close();
+            in.close();
+            Assert.assertTrue(offsets.size() > 1);
+
+            for (int i=offsets.size() - 1; i>=0; --i) {
+                record = locator.getRecord(file, offsets.get(i));
+                Assert.assertNotNull(record);
+                Assert.assertEquals(urls.get(i), record.getUrlStr());
+                Assert.assertEquals(offsets.get(i).longValue(), record.getStartOffset());
+            }
+        }
+        locator.close();
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.RecordSubscriber;
+import org.jwat.common.RecordSubscription;
+
+@RunWith(JUnit4.class)
+public class TestArcRecordPublisher {
+
+    @Test
+    public void test_arcrecordpublisher() throws Exception {
+        String[] in_files = {
+                "small_BNF.arc",
+                "IAH-20080430204825-00000-blackbook.arc.gz"
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (int f=0; f<in_files.length; ++f) {
+            List<String> expectedUrls = new ArrayList<String>();
+            List<Long> expectedLengths = new ArrayList<Long>();
+            InputStream in = this.getClass().getClassLoader().getResourceAsStream(in_files[f]);
+            ArcReader reader = ArcReaderFactory.getReader(in);
+            ArcRecordBase record;
+            while ((record = reader.getNextRecord()) != null) {
+                expectedUrls.add(record.getUrlStr());
+                expectedLengths.add(record.getPayload() != null ? record.getPayload().getTotalLength() : 0L);
+            }
+            reader.close();
+            in.close();
+
+            final List<String> urls = new ArrayList<String>();
+            final List<Long> lengths = new ArrayList<Long>();
+            final CountDownLatch terminated = new CountDownLatch(1);
+            final Throwable[] error = new Throwable[1];
+            in = this.getClass().getClassLoader().getResourceAsStream(in_files[f]);
+            ArcRecordPublisher publisher = new ArcRecordPublisher(ArcReaderFactory.getReader(in), executor);
+            publisher.subscribe(new RecordSubscriber<ArcRecordBase>() {
+                RecordSubscription subscription;
+                long length;
+                @Override
+                public void onSubscribe(RecordSubscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+                @Override
+                public void onRecord(ArcRecordBase record) {
+                    urls.add(record.getUrlStr());
+                    length = 0;
+                    subscription.request(1);
+                }
+                @Override
+                public void onPayload(ArcRecordBase record, ByteBuffer buffer) {
+                    length += buffer.remaining();
+                    subscription.request(1);
+                }
+                @Override
+                public void onRecordClosed(ArcRecordBase record) {
+                    lengths.add(length);
+                }
+                @Override
+                public void onError(Throwable t) {
+                    error[0] = t;
+                    terminated.countDown();
+                }
+                @Override
+                public void onComplete() {
+                    terminated.countDown();
+                }
+            });
+            Assert.assertTrue(terminated.await(30, TimeUnit.SECONDS));
+            Assert.assertNull(error[0]);
+            Assert.assertEquals(expectedUrls, urls);
+            Assert.assertEquals(expectedLengths, lengths);
+        }
+        executor.shutdown();
+    }
+
+}
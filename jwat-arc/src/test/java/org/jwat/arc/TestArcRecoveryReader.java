@@ -0,0 +1,111 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestArcRecoveryReader {
+
+    @Test
+    public void test_arcrecoveryreader() throws IOException {
+        String[] in_files = {
+                "small_BNF.arc",
+                "IAH-20080430204825-00000-blackbook.arc.gz"
+        };
+        for (int f=0; f<in_files.length; ++f) {
+            File file = TestBaseUtils.copyResource(in_files[f]);
+            List<Long> offsets = new ArrayList<Long>();
+            List<String> urls = new ArrayList<String>();
+            InputStream in = new FileInputStream(file);
+            ArcReader reader = ArcReaderFactory.getReader(in);
+            ArcRecordBase record;
+            while ((record = reader.getNextRecord()) != null) {
+                record.close();
+                offsets.add(record.getStartOffset());
+                urls.add(record.getUrlStr());
+            }
+            reader.close();
+            in.close();
+            int last = offsets.size() - 1;
+            Assert.assertTrue(last > 4);
+
+            // Intact file.
+            ArcRecoveryReader recoveryReader = new ArcRecoveryReader(file);
+            Assert.assertEquals(f == 1, recoveryReader.isCompressed());
+            int idx = 0;
+            while ((record = recoveryReader.getNextRecord()) != null) {
+                Assert.assertEquals(offsets.get(idx).longValue(), recoveryReader.getRecordOffset());
+                Assert.assertEquals(urls.get(idx), record.getUrlStr());
+                ++idx;
+            }
+            Assert.assertEquals(offsets.size(), recoveryReader.getRecords());
+            Assert.assertEquals(0, recoveryReader.getSkippedBytes());
+            recoveryReader.close();
+
+            // Damage the header of one record and truncate the header of the last one.
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.seek(offsets.get(3));
+            raf.write(new byte[] {'#', '#', '#'});
+            raf.setLength(offsets.get(last) + 5);
+            long length = raf.length();
+            raf.close();
+
+            recoveryReader = new ArcRecoveryReader(file);
+            List<String> recovered = new ArrayList<String>();
+            while ((record = recoveryReader.getNextRecord()) != null) {
+                recovered.add(record.getUrlStr());
+            }
+            recoveryReader.close();
+            List<String> expected = new ArrayList<String>(urls.subList(0, last));
+            expected.remove(3);
+            Assert.assertEquals(expected, recovered);
+            List<long[]> skipped = recoveryReader.getSkippedRanges();
+            Assert.assertEquals(2, skipped.size());
+            Assert.assertArrayEquals(new long[] {offsets.get(3), offsets.get(4) - offsets.get(3)}, skipped.get(0));
+            Assert.assertArrayEquals(new long[] {offsets.get(last), length - offsets.get(last)}, skipped.get(1));
+            Assert.assertEquals(2, recoveryReader.diagnostics.getErrors().size());
+        }
+    }
+
+    @Test
+    public void test_arcrecoveryreader_candidates() {
+        byte[] buf = "http://x/ 1.2.3.4 20080430204825 text/html 10".getBytes();
+        Assert.assertTrue(ArcRecoveryReader.isSchemeStart(buf, 0, buf.length));
+        Assert.assertFalse(ArcRecoveryReader.isSchemeStart(buf, 4, buf.length));
+        Assert.assertTrue(ArcRecoveryReader.isSchemeStart(buf, 0, 3));
+        buf = "1 1 InternetArchive".getBytes();
+        Assert.assertFalse(ArcRecoveryReader.isSchemeStart(buf, 0, buf.length));
+        buf = "URL IP-address Archive-date Content-type Archive-length".getBytes();
+        Assert.assertFalse(ArcRecoveryReader.isSchemeStart(buf, 0, buf.length));
+        Assert.assertTrue(ArcRecoveryReader.isDigits("a123b".getBytes(), 1, 4));
+        Assert.assertFalse(ArcRecoveryReader.isDigits("a123b".getBytes(), 0, 4));
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.arc;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.Base16;
+import org.jwat.common.DigestListener;
+import org.jwat.common.PayloadDigester;
+
+@RunWith(JUnit4.class)
+public class TestArcWriter_Digests {
+
+    public static String md5(byte[]... parts) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        for (int i=0; i<parts.length; ++i) {
+            md.update(parts[i]);
+        }
+        return Base16.encodeArray(md.digest());
+    }
+
+    @Test
+    public void test_arcwriter_digests() throws Exception {
+        byte[] httpHeaderBytes = ("HTTP/1.0 200 Sending document\r\n"
+                + "Content-type: text/html\r\n"
+                + "\r\n").getBytes("ISO8859-1");
+        byte[] payloadBytes = "Hello\nworld!".getBytes("ISO8859-1");
+        for (int pass=0; pass<2; ++pass) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ArcWriter writer = ArcWriterFactory.getWriter(out, pass == 1);
+            writer.setExceptionOnContentLengthMismatch(false);
+            Assert.assertTrue(writer.setBlockDigestAlgorithm("md5"));
+            Assert.assertTrue(writer.setPayloadDigestAlgorithm("md5"));
+            Assert.assertFalse(writer.setBlockDigestAlgorithm("nosuchalgorithm"));
+            Assert.assertEquals("md5", writer.getBlockDigestAlgorithm());
+            final List<String> computed = new ArrayList<String>();
+            writer.setDigestListener(new DigestListener<ArcHeader>() {
+                @Override
+                public void digestsComputed(ArcHeader header, PayloadDigester digester) {
+                    byte[] payloadDigest = digester.getPayloadDigest();
+                    computed.add(header.urlStr + " " + Base16.encodeArray(digester.getBlockDigest())
+                            + " " + (payloadDigest != null ? Base16.encodeArray(payloadDigest) : "-"));
+                }
+            });
+
+            ArcVersionHeader versionHeader = ArcVersionHeader.create(ArcVersion.VERSION_1, "Netarkivet.dk");
+            versionHeader.rebuild();
+            byte[] versionHeaderBytes = versionHeader.getHeader();
+            ArcRecordBase record = ArcVersionBlock.createRecord(writer);
+            record.header.recordFieldVersion = 1;
+            record.header.urlStr = "filedesc://BNF-inktomi_arc39.20011005200622.arc.gz";
+            record.header.ipAddressStr = "192.168.1.2";
+            record.header.archiveDateStr = "20011005200622";
+            record.header.contentTypeStr = "text/plain";
+            record.header.archiveLengthStr = Long.toString(versionHeaderBytes.length);
+            writer.writeHeader(record);
+            writer.writePayload(versionHeaderBytes);
+            writer.closeRecord();
+
+            record = ArcRecord.createRecord(writer);
+            record.header.recordFieldVersion = 1;
+            record.header.urlStr = "http://cctr.umkc.edu:80/user/jbenz/tst.htm";
+            record.header.ipAddressStr = "134.193.4.1";
+            record.header.archiveDateStr = "19970417175710";
+            record.header.contentTypeStr = "text/html";
+            record.header.archiveLengthStr = Long.toString(httpHeaderBytes.length + payloadBytes.length);
+            writer.writeHeader(record);
+            writer.writePayload(httpHeaderBytes);
+            writer.writePayload(payloadBytes);
+            writer.closeRecord();
+            writer.close();
+
+            Assert.assertEquals(2, computed.size());
+            Assert.assertEquals("filedesc://BNF-inktomi_arc39.20011005200622.arc.gz "
+                    + md5(versionHeaderBytes) + " -", computed.get(0));
+            Assert.assertEquals("http://cctr.umkc.edu:80/user/jbenz/tst.htm "
+                    + md5(httpHeaderBytes, payloadBytes) + " " + md5(payloadBytes), computed.get(1));
+        }
+    }
+
+}
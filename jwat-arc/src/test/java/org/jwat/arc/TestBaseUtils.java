@@ -19,7 +19,9 @@ package org.jwat.arc;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.util.Iterator;
 import java.util.List;
@@ -211,4 +213,27 @@ public class TestBaseUtils {
         }
     }
 
+    public static File copyResource(String name) throws IOException {
+        File file = File.createTempFile("jwat-repack-", name);
+        file.deleteOnExit();
+        InputStream in = TestBaseUtils.class.getClassLoader().getResourceAsStream(name);
+        FileOutputStream out = new FileOutputStream(file);
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        out.close();
+        in.close();
+        return file;
+    }
+
+    public static File createTempDir() throws IOException {
+        File dir = File.createTempFile("jwat-repack-", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        return dir;
+    }
+
 }
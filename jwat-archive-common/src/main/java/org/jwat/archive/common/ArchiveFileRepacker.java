@@ -0,0 +1,447 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive.common;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base class for splitting and merging archive files at record boundaries.
+ * Records are located by a format specific reader and then moved as raw
+ * byte ranges, i.e. complete GZip members for compressed files, using
+ * <code>FileChannel.transferTo</code>. Nothing is recompressed.
+ *
+ * Each output is filled with records until the next record would exceed
+ * the maximum output size, at which point a new output is started. When an
+ * output starts in the middle of an input, the head record of that input
+ * (warcinfo or version block) is inserted first, so every output is
+ * self-describing. The inserted head record counts towards the output
+ * size. An output holds at least one record, so a single record which,
+ * together with the head record inserted before it, is larger than the
+ * maximum size gets an output of its own. All other outputs are no larger
+ * than the maximum size.
+ *
+ * For each output an offset map is written next to it, with one line per
+ * record: the offset and length in the output, the source file, the offset
+ * in the source file (-1 for inserted head records) and an identifier,
+ * separated by tabs.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author nicl
+ */
+public abstract class ArchiveFileRepacker {
+
+    /** Default maximum output size, 1 GB. */
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024L * 1024L;
+
+    /** Extension of the offset map written next to each output. */
+    public static final String OFFSET_MAP_EXTENSION = ".offsets";
+
+    /** Maximum output size. */
+    protected long maxSize = DEFAULT_MAX_SIZE;
+
+    /** Directory outputs are written to. */
+    protected File outputDir;
+
+    /** Prefix of the output file names. */
+    protected String prefix;
+
+    /** Write an offset map next to each output. */
+    protected boolean bOffsetMap = true;
+
+    /*
+     * Set by implementations for each record of the current input.
+     */
+
+    /** Offset of the raw bytes of the current record in the input. */
+    protected long recordOffset;
+
+    /** Length of the raw bytes of the current record. */
+    protected long recordLength;
+
+    /** Identifier of the current record for the offset map or null. */
+    protected String recordId;
+
+    /** Is the current record a head record, e.g. warcinfo or version block. */
+    protected boolean bHeadRecord;
+
+    /*
+     * Output state.
+     */
+
+    /** Output files written. */
+    protected List<File> outputs;
+
+    /** Current output file or null. */
+    protected File outputFile;
+
+    /** Current output stream or null. */
+    protected FileOutputStream outputStream;
+
+    /** Channel of the current output stream or null. */
+    protected FileChannel outputChannel;
+
+    /** Offset map writer of the current output or null. */
+    protected Writer mapWriter;
+
+    /** Number of bytes written to the current output. */
+    protected long outputLength;
+
+    /** Number of records written to the current output. */
+    protected int outputRecords;
+
+    /** Are the outputs compressed, null until the first input is opened. */
+    protected Boolean bCompressed;
+
+    /**
+     * Construct a repacker writing outputs to a directory.
+     * @param outputDir directory outputs are written to
+     * @param prefix prefix of the output file names
+     */
+    protected ArchiveFileRepacker(File outputDir, String prefix) {
+        if (outputDir == null) {
+            throw new IllegalArgumentException(
+                    "The 'outputDir' parameter is null!");
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException(
+                    "The 'prefix' parameter is null!");
+        }
+        this.outputDir = outputDir;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Set the maximum output size.
+     * @param maxSize maximum output size in bytes
+     */
+    public void setMaxSize(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'maxSize' parameter is less than or equal to zero!");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the maximum output size.
+     * @return maximum output size in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Enable or disable writing an offset map next to each output.
+     * @param bOffsetMap boolean indicating whether to write offset maps
+     */
+    public void setOffsetMapEnabled(boolean bOffsetMap) {
+        this.bOffsetMap = bOffsetMap;
+    }
+
+    /**
+     * Returns a boolean indicating whether offset maps are written.
+     * @return boolean indicating whether offset maps are written
+     */
+    public boolean isOffsetMapEnabled() {
+        return bOffsetMap;
+    }
+
+    /**
+     * Split an input into outputs no larger than the maximum size, unless a
+     * single record and its inserted head record are larger.
+     * @param input archive file to split
+     * @return output files in order
+     * @throws IOException if an i/o exception occurs or the input is invalid
+     */
+    public List<File> split(File input) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException(
+                    "The 'input' parameter is null!");
+        }
+        return repack(Collections.singletonList(input));
+    }
+
+    /**
+     * Merge inputs, in order, into outputs no larger than the maximum size.
+     * Inputs larger than the maximum size are split.
+     * @param inputs archive files to merge
+     * @return output files in order
+     * @throws IOException if an i/o exception occurs or an input is invalid
+     */
+    public List<File> merge(List<File> inputs) throws IOException {
+        if (inputs == null) {
+            throw new IllegalArgumentException(
+                    "The 'inputs' parameter is null!");
+        }
+        return repack(inputs);
+    }
+
+    /**
+     * Copy the records of the inputs into size bounded outputs.
+     * @param inputs archive files
+     * @return output files in order
+     * @throws IOException if an i/o exception occurs or an input is invalid
+     */
+    protected List<File> repack(List<File> inputs) throws IOException {
+        outputs = new ArrayList<File>();
+        bCompressed = null;
+        try {
+            for (int i=0; i<inputs.size(); ++i) {
+                repackInput(inputs.get(i));
+            }
+        } finally {
+            closeOutput();
+        }
+        return outputs;
+    }
+
+    /**
+     * Copy the records of an input into the outputs.
+     * @param input archive file
+     * @throws IOException if an i/o exception occurs or the input is invalid
+     */
+    protected void repackInput(File input) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(input, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            boolean bInputCompressed = openInput(input);
+            if (bCompressed == null) {
+                bCompressed = bInputCompressed;
+            } else if (bCompressed != bInputCompressed) {
+                throw new IOException("Compressed and uncompressed inputs can not be mixed: " + input.getPath());
+            }
+            byte[] headRecord = null;
+            boolean bFirst = true;
+            while (nextRecord()) {
+                if (bFirst && bHeadRecord) {
+                    headRecord = readRange(channel, recordOffset, recordLength);
+                }
+                if (outputChannel == null || (outputRecords > 0 && outputLength + recordLength > maxSize)) {
+                    openOutput();
+                    if (!bHeadRecord && headRecord != null) {
+                        byte[] bytes = createHeadRecord(headRecord, outputFile.getName());
+                        writeOutput(bytes);
+                        writeMapLine(outputLength, bytes.length, input, -1, getHeadRecordId());
+                        outputLength += bytes.length;
+                    }
+                }
+                transfer(channel, recordOffset, recordLength);
+                writeMapLine(outputLength, recordLength, input, recordOffset, recordId);
+                outputLength += recordLength;
+                ++outputRecords;
+                bFirst = false;
+            }
+            long consumed = getInputConsumed();
+            if (consumed < channel.size()) {
+                throw new IOException("Unable to read records beyond offset " + consumed + " in " + input.getPath());
+            }
+        } finally {
+            closeInput();
+            raf.close();
+        }
+    }
+
+    /**
+     * Open an input for reading records.
+     * @param input archive file
+     * @return boolean indicating whether the input is compressed
+     * @throws IOException if an i/o exception occurs while opening the input
+     */
+    protected abstract boolean openInput(File input) throws IOException;
+
+    /**
+     * Read the next record of the current input and set the record fields.
+     * @return boolean indicating whether a record was read
+     * @throws IOException if an i/o exception occurs while reading the record
+     */
+    protected abstract boolean nextRecord() throws IOException;
+
+    /**
+     * Returns the number of input bytes consumed by the records read.
+     * @return number of input bytes consumed by the records read
+     */
+    protected abstract long getInputConsumed();
+
+    /**
+     * Close the current input.
+     */
+    protected abstract void closeInput();
+
+    /**
+     * Returns the file name extension of outputs.
+     * @param bCompressed are the outputs compressed
+     * @return file name extension of outputs
+     */
+    protected abstract String getExtension(boolean bCompressed);
+
+    /**
+     * Create the head record inserted when an output starts in the middle of
+     * an input. The raw head record of the input is copied by default.
+     * @param headRecord raw head record of the input
+     * @param outputName file name of the output
+     * @return raw bytes of the head record to insert
+     * @throws IOException if an i/o exception occurs while creating the record
+     */
+    protected byte[] createHeadRecord(byte[] headRecord, String outputName) throws IOException {
+        return headRecord;
+    }
+
+    /**
+     * Returns the identifier of the last created head record for the offset map.
+     * @return identifier of the last created head record or null
+     */
+    protected String getHeadRecordId() {
+        return null;
+    }
+
+    /**
+     * Start a new output file.
+     * @throws IOException if an i/o exception occurs while opening the output
+     */
+    protected void openOutput() throws IOException {
+        closeOutput();
+        String number = Integer.toString(outputs.size());
+        StringBuilder sb = new StringBuilder(prefix);
+        sb.append('-');
+        for (int i=number.length(); i<5; ++i) {
+            sb.append('0');
+        }
+        sb.append(number);
+        sb.append(getExtension(bCompressed));
+        outputFile = new File(outputDir, sb.toString());
+        outputs.add(outputFile);
+        outputStream = new FileOutputStream(outputFile);
+        outputChannel = outputStream.getChannel();
+        outputLength = 0;
+        outputRecords = 0;
+        if (bOffsetMap) {
+            mapWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(new File(outputDir, outputFile.getName() + OFFSET_MAP_EXTENSION)), "UTF-8"));
+        }
+    }
+
+    /**
+     * Close the current output file, if any.
+     * @throws IOException if an i/o exception occurs while closing the output
+     */
+    protected void closeOutput() throws IOException {
+        if (mapWriter != null) {
+            mapWriter.close();
+            mapWriter = null;
+        }
+        if (outputStream != null) {
+            outputStream.close();
+            outputStream = null;
+            outputChannel = null;
+        }
+    }
+
+    /**
+     * Transfer a range of the input to the current output.
+     * @param channel input channel
+     * @param position offset of the range
+     * @param count length of the range
+     * @throws IOException if an i/o exception occurs while transferring
+     */
+    protected void transfer(FileChannel channel, long position, long count) throws IOException {
+        long transferred;
+        while (count > 0) {
+            transferred = channel.transferTo(position, count, outputChannel);
+            if (transferred <= 0) {
+                throw new EOFException("Unexpected end of file at offset " + position);
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    /**
+     * Write bytes to the current output.
+     * @param bytes bytes to write
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    protected void writeOutput(byte[] bytes) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        while (bb.hasRemaining()) {
+            outputChannel.write(bb);
+        }
+    }
+
+    /**
+     * Read a range of the input.
+     * @param channel input channel
+     * @param position offset of the range
+     * @param length length of the range
+     * @return bytes of the range
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected static byte[] readRange(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Range too large for a byte array: " + length);
+        }
+        byte[] bytes = new byte[(int)length];
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        int read;
+        while (bb.hasRemaining()) {
+            read = channel.read(bb, position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at offset " + position);
+            }
+            position += read;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write a line to the offset map of the current output.
+     * @param offset offset in the output
+     * @param length length of the record
+     * @param input source file
+     * @param inputOffset offset in the source file or -1
+     * @param id record identifier or null
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    protected void writeMapLine(long offset, long length, File input, long inputOffset, String id) throws IOException {
+        if (mapWriter != null) {
+            mapWriter.write(Long.toString(offset));
+            mapWriter.write('\t');
+            mapWriter.write(Long.toString(length));
+            mapWriter.write('\t');
+            mapWriter.write(input.getName());
+            mapWriter.write('\t');
+            mapWriter.write(Long.toString(inputOffset));
+            mapWriter.write('\t');
+            mapWriter.write(id != null ? id : "-");
+            mapWriter.write('\n');
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jwat.common.Diagnosis;
+import org.jwat.common.DiagnosisType;
+import org.jwat.common.Diagnostics;
+
+/**
+ * Base class for reading the intact records of a damaged archive file.
+ * Records are read sequentially, but when no record can be read where the
+ * previous record ended, or a record turns out to be damaged while it is
+ * closed, the file is scanned for the next offset where a format specific
+ * record candidate verifies, e.g. a GZip member which inflates or a header
+ * which parses. Reading then continues from that offset.
+ *
+ * Every byte range passed over is recorded as a skipped range and reported
+ * as a diagnosis, so the damage can be located afterwards. The range of a
+ * record found to be damaged while closing includes the record itself.
+ *
+ * Implementations scan in large buffers and reject most candidates on a
+ * few bytes, so the undamaged parts of a file are read at close to the
+ * speed of the underlying storage.
+ *
+ * Instances are not thread-safe.
+ *
+ * @param <T> record type
+ *
+ * @author nicl
+ */
+public abstract class ArchiveRecoveryReader<T> implements Closeable {
+
+    /** Diagnosis entity used for skipped ranges. */
+    public static final String SKIPPED_DATA_ENTITY = "Skipped data";
+
+    /** Diagnosis entity used for records damaged past their header. */
+    public static final String DAMAGED_RECORD_ENTITY = "Damaged record";
+
+    /** Archive file. */
+    protected RandomAccessFile raf;
+
+    /** Length of the archive file. */
+    protected long length;
+
+    /** Offset where the next record is expected. */
+    protected long offset;
+
+    /** Current record or null. */
+    protected T currentRecord;
+
+    /** Offset of the current record. */
+    protected long currentOffset = -1;
+
+    /** Number of records read. */
+    protected int records;
+
+    /** Skipped ranges as offset and length pairs. */
+    protected List<long[]> skippedRanges = new ArrayList<long[]>();
+
+    /** Total number of bytes skipped. */
+    protected long skippedBytes;
+
+    /** Skipped ranges and damaged records reported. */
+    public final Diagnostics<Diagnosis> diagnostics = new Diagnostics<Diagnosis>();
+
+    /**
+     * Construct a recovery reader on an archive file.
+     * @param raf archive file
+     * @throws IOException if an i/o exception occurs while accessing the file
+     */
+    protected ArchiveRecoveryReader(RandomAccessFile raf) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException(
+                    "The 'raf' parameter is null!");
+        }
+        this.raf = raf;
+        this.length = raf.length();
+    }
+
+    /**
+     * Closes the current record and the archive file.
+     * @throws IOException if an i/o exception occurs while closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (currentRecord != null) {
+            closeRecord(currentRecord, currentOffset);
+            currentRecord = null;
+        }
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+
+    /**
+     * Returns the next intact record, closing the previous one. Damaged data
+     * in between is skipped and reported.
+     * @return next record or null if the end of the file has been reached
+     * @throws IOException if an i/o exception occurs while scanning the file
+     */
+    public T getNextRecord() throws IOException {
+        if (raf == null) {
+            throw new IllegalStateException("The reader is closed!");
+        }
+        long start = offset;
+        if (currentRecord != null) {
+            long end = closeRecord(currentRecord, currentOffset);
+            currentRecord = null;
+            if (end > currentOffset) {
+                offset = end;
+                start = end;
+            } else {
+                diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA,
+                        DAMAGED_RECORD_ENTITY, Long.toString(currentOffset)));
+                start = currentOffset;
+                offset = findCandidate(currentOffset + 1);
+            }
+        }
+        T record = null;
+        while (record == null && offset != -1 && offset < length) {
+            try {
+                record = readRecord(offset);
+            } catch (IOException e) {
+                record = null;
+            }
+            if (record == null) {
+                offset = findCandidate(offset + 1);
+            }
+        }
+        if (offset == -1 || offset > length) {
+            offset = length;
+        }
+        if (offset > start) {
+            skippedRanges.add(new long[] {start, offset - start});
+            skippedBytes += offset - start;
+            diagnostics.addError(new Diagnosis(DiagnosisType.UNDESIRED_DATA,
+                    SKIPPED_DATA_ENTITY, Long.toString(start), Long.toString(offset - start)));
+        }
+        if (record != null) {
+            currentRecord = record;
+            currentOffset = offset;
+            ++records;
+        }
+        return record;
+    }
+
+    /**
+     * Returns the offset of the current record or -1.
+     * @return offset of the current record or -1
+     */
+    public long getRecordOffset() {
+        return currentRecord != null ? currentOffset : -1;
+    }
+
+    /**
+     * Returns the number of records read.
+     * @return number of records read
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the skipped ranges found so far as offset and length pairs.
+     * @return skipped ranges found so far
+     */
+    public List<long[]> getSkippedRanges() {
+        return Collections.unmodifiableList(skippedRanges);
+    }
+
+    /**
+     * Returns the total number of bytes skipped so far.
+     * @return total number of bytes skipped so far
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * Read the record starting exactly at an offset. An exception is
+     * treated as if no record was found.
+     * @param offset record offset
+     * @return record or null if no valid record starts at the offset
+     * @throws IOException if an i/o exception occurs while reading the record
+     */
+    protected abstract T readRecord(long offset) throws IOException;
+
+    /**
+     * Close a record and return the offset following it.
+     * @param record record to close
+     * @param offset record offset
+     * @return offset following the record or -1 if the record is damaged
+     * and its end is unknown
+     */
+    protected abstract long closeRecord(T record, long offset);
+
+    /**
+     * Scan for the first verified record candidate at or after an offset.
+     * @param offset offset to start scanning from
+     * @return offset of the candidate or -1 if none was found
+     * @throws IOException if an i/o exception occurs while scanning the file
+     */
+    protected abstract long findCandidate(long offset) throws IOException;
+
+}
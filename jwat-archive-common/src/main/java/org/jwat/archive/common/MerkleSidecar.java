@@ -0,0 +1,459 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jwat.common.Base16;
+import org.jwat.common.MerkleTree;
+
+/**
+ * Sidecar file with a Merkle tree over the records of an archive file. The
+ * leaves are digests of the raw bytes of each record, i.e. each GZip member
+ * in compressed files, so a change can be located to a record. Any subset
+ * of the records, or a random sample, can be verified against the stored
+ * root with proof paths, without reading the rest of the archive file.
+ *
+ * The sidecar is a text file. The first line holds a magic, the version,
+ * the digest algorithm, the number of records and the root in hex. Each
+ * following line holds the offset, length and hex digest of a record,
+ * separated by tabs.
+ *
+ * Records are added in file order while an archive file is read or
+ * written, with digests computed from the raw bytes as they pass. Verification uses positional reads and a digest per call, so
+ * several threads can verify records of the same channel in parallel.
+ *
+ * @author nicl
+ */
+public class MerkleSidecar {
+
+    /** Extension of sidecar files. */
+    public static final String EXTENSION = ".merkle";
+
+    /** Magic which starts a sidecar file. */
+    public static final String MAGIC = "#jwat-merkle";
+
+    /** Sidecar file format version. */
+    public static final int VERSION = 1;
+
+    /** Default digest algorithm. */
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+    /** Buffer size used to digest records. */
+    public static final int BUFFER_SIZE = 65536;
+
+    /** Digest algorithm used for records and tree hashes. */
+    protected final String algorithm;
+
+    /** Record offsets. */
+    protected List<Long> offsets = new ArrayList<Long>();
+
+    /** Record lengths. */
+    protected List<Long> lengths = new ArrayList<Long>();
+
+    /** Record digests. */
+    protected List<byte[]> digests = new ArrayList<byte[]>();
+
+    /** Root read from a sidecar file or null. */
+    protected byte[] storedRoot;
+
+    /** Tree over the current records or null if not built yet. */
+    protected MerkleTree tree;
+
+    /** Digest used when adding records. */
+    protected MessageDigest md;
+
+    /** Buffer used when adding records. */
+    protected ByteBuffer buffer;
+
+    /**
+     * Construct an empty sidecar.
+     * @param algorithm digest algorithm, e.g. "SHA-256"
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public MerkleSidecar(String algorithm) throws NoSuchAlgorithmException {
+        if (algorithm == null) {
+            throw new IllegalArgumentException(
+                    "The 'algorithm' parameter is null!");
+        }
+        this.algorithm = algorithm;
+        md = MessageDigest.getInstance(algorithm);
+    }
+
+    /**
+     * Returns the digest algorithm.
+     * @return digest algorithm
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Add a record with a known digest of its raw bytes.
+     * @param offset offset of the record in the archive file
+     * @param length length of the raw bytes of the record
+     * @param digest digest of the raw bytes of the record
+     */
+    public synchronized void addRecord(long offset, long length, byte[] digest) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException(
+                    "The 'offset' or 'length' is negative: " + offset + ", " + length);
+        }
+        if (digest == null) {
+            throw new IllegalArgumentException(
+                    "The 'digest' parameter is null!");
+        }
+        offsets.add(offset);
+        lengths.add(length);
+        digests.add(digest.clone());
+        tree = null;
+    }
+
+    /**
+     * Add a record by digesting its raw bytes in the archive file. This reads
+     * the record a second time, so readers and writers should digest the raw
+     * bytes as they pass and use <code>addRecord(long, long, byte[])</code>
+     * instead. Useful for records added to an existing sidecar after the fact.
+     * @param channel channel of the archive file
+     * @param offset offset of the record in the archive file
+     * @param length length of the raw bytes of the record
+     * @return digest of the raw bytes of the record
+     * @throws IOException if an i/o exception occurs while reading the record
+     */
+    public synchronized byte[] addRecord(FileChannel channel, long offset, long length) throws IOException {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        byte[] digest = digestRange(md, channel, offset, length, buffer);
+        addRecord(offset, length, digest);
+        return digest;
+    }
+
+    /**
+     * Digest a range of a file using positional reads.
+     * @param md message digest
+     * @param channel channel of the file
+     * @param offset offset of the range
+     * @param length length of the range
+     * @param buffer buffer used to read the range
+     * @return digest of the range
+     * @throws IOException if an i/o exception occurs while reading the range
+     */
+    public static byte[] digestRange(MessageDigest md, FileChannel channel, long offset,
+            long length, ByteBuffer buffer) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException(
+                    "The 'channel' parameter is null!");
+        }
+        md.reset();
+        long position = offset;
+        long end = offset + length;
+        int read;
+        while (position < end) {
+            buffer.clear();
+            if (end - position < buffer.capacity()) {
+                buffer.limit((int)(end - position));
+            }
+            read = channel.read(buffer, position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at offset " + position);
+            }
+            md.update(buffer.array(), 0, read);
+            position += read;
+        }
+        return md.digest();
+    }
+
+    /**
+     * Returns the number of records.
+     * @return number of records
+     */
+    public synchronized int getRecordCount() {
+        return digests.size();
+    }
+
+    /**
+     * Returns the offset of a record.
+     * @param index record index
+     * @return offset of the record
+     */
+    public synchronized long getOffset(int index) {
+        return offsets.get(index);
+    }
+
+    /**
+     * Returns the length of the raw bytes of a record.
+     * @param index record index
+     * @return length of the raw bytes of the record
+     */
+    public synchronized long getLength(int index) {
+        return lengths.get(index);
+    }
+
+    /**
+     * Returns the digest of the raw bytes of a record.
+     * @param index record index
+     * @return digest of the raw bytes of the record
+     */
+    public synchronized byte[] getDigest(int index) {
+        return digests.get(index).clone();
+    }
+
+    /**
+     * Returns the tree over the current records.
+     * @return tree over the current records
+     */
+    public synchronized MerkleTree getTree() {
+        if (tree == null) {
+            try {
+                tree = new MerkleTree(algorithm, digests);
+            } catch (NoSuchAlgorithmException e) {
+                // Checked by the constructor.
+                throw new IllegalStateException(e);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Returns the root to verify against: the root read from the sidecar
+     * file, if any, or else the root of the current records.
+     * @return root to verify against
+     */
+    public synchronized byte[] getRoot() {
+        return storedRoot != null ? storedRoot.clone() : getTree().getRoot();
+    }
+
+    /**
+     * Returns a boolean indicating whether the records read from a sidecar
+     * file match its stored root. Always true for a sidecar not read from
+     * a file.
+     * @return a boolean indicating whether the records match the root
+     */
+    public synchronized boolean isConsistent() {
+        return storedRoot == null || MessageDigest.isEqual(storedRoot, getTree().getRoot());
+    }
+
+    /**
+     * Returns the proof path of a record.
+     * @param index record index
+     * @return proof path of the record
+     */
+    public byte[][] getProof(int index) {
+        return getTree().getProof(index);
+    }
+
+    /**
+     * Verify one record of an archive file against the root.
+     * @param channel channel of the archive file
+     * @param index record index
+     * @return boolean indicating whether the raw bytes of the record are intact
+     * @throws IOException if an i/o exception occurs while reading the record
+     */
+    public boolean verifyRecord(FileChannel channel, int index) throws IOException {
+        long offset;
+        long length;
+        byte[][] proof;
+        byte[] root;
+        int count;
+        synchronized (this) {
+            offset = offsets.get(index);
+            length = lengths.get(index);
+            proof = getProof(index);
+            root = getRoot();
+            count = digests.size();
+        }
+        try {
+            MessageDigest vmd = MessageDigest.getInstance(algorithm);
+            byte[] digest;
+            try {
+                digest = digestRange(vmd, channel, offset, length, ByteBuffer.allocate(BUFFER_SIZE));
+            } catch (EOFException e) {
+                return false;
+            }
+            return MerkleTree.verify(algorithm, digest, index, count, proof, root);
+        } catch (NoSuchAlgorithmException e) {
+            // Checked by the constructor.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Verify a subset of the records of an archive file against the root.
+     * @param channel channel of the archive file
+     * @param indexes record indexes
+     * @return indexes of the records which failed verification
+     * @throws IOException if an i/o exception occurs while reading a record
+     */
+    public List<Integer> verify(FileChannel channel, int[] indexes) throws IOException {
+        if (indexes == null) {
+            throw new IllegalArgumentException(
+                    "The 'indexes' parameter is null!");
+        }
+        List<Integer> failed = new ArrayList<Integer>();
+        for (int i=0; i<indexes.length; ++i) {
+            if (!verifyRecord(channel, indexes[i])) {
+                failed.add(indexes[i]);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Verify a random sample of the records of an archive file against the
+     * root. Each record is verified at most once.
+     * @param channel channel of the archive file
+     * @param samples number of records to verify
+     * @param random source of randomness
+     * @return indexes of the records which failed verification
+     * @throws IOException if an i/o exception occurs while reading a record
+     */
+    public List<Integer> verifySample(FileChannel channel, int samples, Random random) throws IOException {
+        if (random == null) {
+            throw new IllegalArgumentException(
+                    "The 'random' parameter is null!");
+        }
+        int count = getRecordCount();
+        samples = Math.max(0, Math.min(samples, count));
+        // Partial Fisher-Yates shuffle of the record indexes.
+        int[] indexes = new int[count];
+        for (int i=0; i<count; ++i) {
+            indexes[i] = i;
+        }
+        int j;
+        int tmp;
+        for (int i=0; i<samples; ++i) {
+            j = i + random.nextInt(count - i);
+            tmp = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = tmp;
+        }
+        int[] sample = new int[samples];
+        System.arraycopy(indexes, 0, sample, 0, samples);
+        return verify(channel, sample);
+    }
+
+    /**
+     * Write the sidecar file.
+     * @param file sidecar file
+     * @throws IOException if an i/o exception occurs while writing the file
+     */
+    public synchronized void write(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' parameter is null!");
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"));
+        try {
+            writer.write(MAGIC + "\t" + VERSION + "\t" + algorithm + "\t" + digests.size()
+                    + "\t" + Base16.encodeArray(getTree().getRoot()) + "\n");
+            for (int i=0; i<digests.size(); ++i) {
+                writer.write(offsets.get(i) + "\t" + lengths.get(i) + "\t"
+                        + Base16.encodeArray(digests.get(i)) + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Read a sidecar file. Records are verified against the root stored in
+     * the file, even if the records listed in the file have been altered.
+     * @param file sidecar file
+     * @return sidecar read from the file
+     * @throws IOException if an i/o exception occurs while reading the file
+     * or the file is not a valid sidecar file
+     */
+    public static MerkleSidecar read(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' parameter is null!");
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "US-ASCII"));
+        try {
+            String line = reader.readLine();
+            String[] fields = line != null ? line.split("\t") : null;
+            if (fields == null || fields.length != 5 || !MAGIC.equals(fields[0])
+                    || !Integer.toString(VERSION).equals(fields[1])) {
+                throw new IOException("Invalid Merkle sidecar header: " + line);
+            }
+            MerkleSidecar sidecar;
+            int count;
+            try {
+                sidecar = new MerkleSidecar(fields[2]);
+                count = Integer.parseInt(fields[3]);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("Unsupported Merkle sidecar algorithm: " + fields[2]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Merkle sidecar header: " + line);
+            }
+            sidecar.storedRoot = decodeHex(fields[4], line);
+            while ((line = reader.readLine()) != null) {
+                fields = line.split("\t");
+                if (fields.length != 3) {
+                    throw new IOException("Invalid Merkle sidecar line: " + line);
+                }
+                try {
+                    sidecar.addRecord(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                            decodeHex(fields[2], line));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid Merkle sidecar line: " + line);
+                }
+            }
+            if (sidecar.getRecordCount() != count) {
+                throw new IOException("Merkle sidecar record count mismatch: "
+                        + sidecar.getRecordCount() + " != " + count);
+            }
+            return sidecar;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Decode a hex field.
+     * @param hex hex field
+     * @param line line of the field, used in the exception message
+     * @return decoded bytes
+     * @throws IOException if the field is not valid hex
+     */
+    protected static byte[] decodeHex(String hex, String line) throws IOException {
+        byte[] bytes = Base16.decodeToArray(hex);
+        if (bytes == null || hex.length() == 0 || hex.length() != bytes.length * 2) {
+            throw new IOException("Invalid Merkle sidecar hex value: " + line);
+        }
+        return bytes;
+    }
+
+}
@@ -42,6 +42,13 @@ public class ReaderFactoryAbstract {
      * */
     protected static final String WARC_MAGIC_HEADER = "WARC/";
 
+    /**
+     * Buffer size used by the high fan-out readers, which are meant for
+     * reading thousands of files at the same time, e.g. one virtual thread
+     * per file.
+     */
+    public static final int HIGH_FAN_OUT_BUFFER_SIZE = 4096;
+
     /**
      * Private constructor to enforce factory methods.
      */
@@ -0,0 +1,125 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestMerkleSidecar {
+
+    @Test
+    public void test_merklesidecar() throws Exception {
+        // An archive stand-in with 10 records of varying length.
+        File file = File.createTempFile("jwat-merkle-", ".warc");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        List<long[]> ranges = new ArrayList<long[]>();
+        long offset = 0;
+        for (int i=0; i<10; ++i) {
+            byte[] record = new byte[1000 + 10000 * i];
+            Arrays.fill(record, (byte)i);
+            out.write(record);
+            ranges.add(new long[] {offset, record.length});
+            offset += record.length;
+        }
+        out.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MerkleSidecar sidecar = new MerkleSidecar(MerkleSidecar.DEFAULT_ALGORITHM);
+        for (int i=0; i<ranges.size(); ++i) {
+            sidecar.addRecord(raf.getChannel(), ranges.get(i)[0], ranges.get(i)[1]);
+        }
+        Assert.assertEquals(10, sidecar.getRecordCount());
+        Assert.assertEquals(ranges.get(3)[0], sidecar.getOffset(3));
+        Assert.assertEquals(ranges.get(3)[1], sidecar.getLength(3));
+        Assert.assertTrue(sidecar.isConsistent());
+        Assert.assertEquals(0, sidecar.verify(raf.getChannel(), new int[] {0, 4, 9}).size());
+        raf.close();
+
+        File sidecarFile = new File(file.getPath() + MerkleSidecar.EXTENSION);
+        sidecarFile.deleteOnExit();
+        sidecar.write(sidecarFile);
+        MerkleSidecar loaded = MerkleSidecar.read(sidecarFile);
+        Assert.assertEquals("SHA-256", loaded.getAlgorithm());
+        Assert.assertEquals(10, loaded.getRecordCount());
+        Assert.assertArrayEquals(sidecar.getRoot(), loaded.getRoot());
+        Assert.assertArrayEquals(sidecar.getDigest(7), loaded.getDigest(7));
+        Assert.assertTrue(loaded.isConsistent());
+
+        // Damage one record.
+        raf = new RandomAccessFile(file, "rw");
+        raf.seek(ranges.get(6)[0] + 5000);
+        raf.write(42);
+        int[] all = new int[10];
+        for (int i=0; i<all.length; ++i) {
+            all[i] = i;
+        }
+        Assert.assertEquals(Arrays.asList(6), loaded.verify(raf.getChannel(), all));
+        Assert.assertTrue(loaded.verifyRecord(raf.getChannel(), 5));
+        Assert.assertEquals(Arrays.asList(6), loaded.verifySample(raf.getChannel(), 100, new Random(42)));
+        List<Integer> failed = loaded.verifySample(raf.getChannel(), 3, new Random(42));
+        Assert.assertTrue(failed.isEmpty() || failed.equals(Arrays.asList(6)));
+        // Truncated record.
+        raf.setLength(ranges.get(9)[0] + 10);
+        Assert.assertFalse(loaded.verifyRecord(raf.getChannel(), 9));
+        raf.close();
+
+        // Altered sidecar lines no longer match the stored root.
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(sidecarFile));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        reader.close();
+        lines.set(2, lines.get(2).substring(0, lines.get(2).length() - 1)
+                + (lines.get(2).endsWith("0") ? "1" : "0"));
+        FileWriter writer = new FileWriter(sidecarFile);
+        for (int i=0; i<lines.size(); ++i) {
+            writer.write(lines.get(i) + "\n");
+        }
+        writer.close();
+        loaded = MerkleSidecar.read(sidecarFile);
+        Assert.assertFalse(loaded.isConsistent());
+
+        writer = new FileWriter(sidecarFile);
+        writer.write("#jwat-merkle\t2\tSHA-256\t0\t00\n");
+        writer.close();
+        try {
+            MerkleSidecar.read(sidecarFile);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Processes a single archive file and writes the textual result, e.g. CDX
+ * lines or a validation summary, to the supplied <code>Writer</code>.
+ * Implementations are used by one thread at a time and may keep reusable
+ * state between files.
+ *
+ * @author nicl
+ */
+public interface ArchiveFileProcessor {
+
+    /**
+     * Process an archive file.
+     * @param file archive file
+     * @param out output <code>Writer</code>
+     * @return number of items, e.g. lines or records, produced
+     * @throws IOException if an i/o exception occurs while processing
+     */
+    long process(File file, Writer out) throws IOException;
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * <code>ArchiveFileProcessor</code> which is also able to process a byte
+ * range of a compressed archive file. The range starts and ends on GZip
+ * member boundaries, so it can be read without the preceding members.
+ * Results of consecutive ranges written in order must equal the result of
+ * processing the whole file.
+ *
+ * @author nicl
+ */
+public interface ArchiveRangeProcessor extends ArchiveFileProcessor {
+
+    /**
+     * Process a byte range of a compressed archive file.
+     * @param file archive file
+     * @param offset offset of the first member in the range
+     * @param end offset following the last member in the range
+     * @param out output <code>Writer</code>
+     * @return number of items, e.g. lines or records, produced
+     * @throws IOException if an i/o exception occurs while processing
+     */
+    long process(File file, long offset, long end, Writer out) throws IOException;
+
+}
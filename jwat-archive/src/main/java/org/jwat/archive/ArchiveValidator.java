@@ -0,0 +1,172 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+
+import org.jwat.arc.ArcReader;
+import org.jwat.arc.ArcReaderFactory;
+import org.jwat.arc.ArcRecordBase;
+import org.jwat.warc.WarcReader;
+import org.jwat.warc.WarcReaderFactory;
+import org.jwat.warc.WarcRecord;
+
+/**
+ * Validates WARC and ARC files and writes a one line summary per file:
+ * "filename records errors warnings compliant".
+ *
+ * @author nicl
+ */
+public class ArchiveValidator implements ArchiveFileProcessor {
+
+    /** Validate block and payload digests. */
+    public boolean bValidateDigests = true;
+
+    /** Number of records in the last file validated. */
+    public long records;
+
+    /** Number of errors in the last file validated. */
+    public long errors;
+
+    /** Number of warnings in the last file validated. */
+    public long warnings;
+
+    /** Compliance status of the last file validated. */
+    public boolean bIsCompliant;
+
+    /** Reusable line buffer. */
+    protected StringBuilder sb = new StringBuilder(256);
+
+    @Override
+    public long process(File file, Writer out) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null");
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            return validate(in, file.getName(), out);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Validate a WARC or ARC stream and write the summary line.
+     * @param in archive input stream
+     * @param filename file name written in the summary
+     * @param out output <code>Writer</code>
+     * @return number of records validated
+     * @throws IOException if an i/o exception occurs while validating or the
+     * archive format is not recognized
+     */
+    public long validate(InputStream in, String filename, Writer out) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("'in' is null");
+        }
+        records = 0;
+        errors = 0;
+        warnings = 0;
+        int archiveFormat = CdxIndexer.getArchiveFormat(filename);
+        if (archiveFormat == CdxIndexer.ARCHIVE_UNKNOWN) {
+            PushbackInputStream pbin = new PushbackInputStream(in, CdxIndexer.PEEK_SIZE);
+            archiveFormat = CdxIndexer.peekArchiveFormat(pbin);
+            in = pbin;
+        }
+        switch (archiveFormat) {
+        case CdxIndexer.ARCHIVE_WARC:
+            WarcReader warcReader = WarcReaderFactory.getReader(in, CdxIndexer.DEFAULT_BUFFER_SIZE);
+            try {
+                validateWarc(warcReader);
+            } finally {
+                warcReader.close();
+            }
+            break;
+        case CdxIndexer.ARCHIVE_ARC:
+            ArcReader arcReader = ArcReaderFactory.getReader(in, CdxIndexer.DEFAULT_BUFFER_SIZE);
+            try {
+                validateArc(arcReader);
+            } finally {
+                arcReader.close();
+            }
+            break;
+        default:
+            throw new IOException("Unrecognized archive format: " + filename);
+        }
+        if (out != null) {
+            sb.setLength(0);
+            sb.append(filename);
+            sb.append(' ');
+            sb.append(records);
+            sb.append(' ');
+            sb.append(errors);
+            sb.append(' ');
+            sb.append(warnings);
+            sb.append(' ');
+            sb.append(bIsCompliant);
+            sb.append('\n');
+            out.write(sb.toString());
+        }
+        return records;
+    }
+
+    /**
+     * Validate all the records of a WARC reader.
+     * @param reader <code>WarcReader</code> positioned at the first record
+     * @throws IOException if an i/o exception occurs while validating
+     */
+    protected void validateWarc(WarcReader reader) throws IOException {
+        reader.setBlockDigestEnabled(bValidateDigests);
+        reader.setPayloadDigestEnabled(bValidateDigests);
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            record.close();
+            ++records;
+            errors += record.diagnostics.getErrors().size();
+            warnings += record.diagnostics.getWarnings().size();
+        }
+        errors += reader.diagnostics.getErrors().size();
+        warnings += reader.diagnostics.getWarnings().size();
+        bIsCompliant = reader.isCompliant();
+    }
+
+    /**
+     * Validate all the records of an ARC reader.
+     * @param reader <code>ArcReader</code> positioned at the first record
+     * @throws IOException if an i/o exception occurs while validating
+     */
+    protected void validateArc(ArcReader reader) throws IOException {
+        reader.setBlockDigestEnabled(bValidateDigests);
+        reader.setPayloadDigestEnabled(bValidateDigests);
+        ArcRecordBase record;
+        while ((record = reader.getNextRecord()) != null) {
+            record.close();
+            ++records;
+            errors += record.diagnostics.getErrors().size();
+            warnings += record.diagnostics.getWarnings().size();
+        }
+        errors += reader.diagnostics.getErrors().size();
+        warnings += reader.diagnostics.getWarnings().size();
+        bIsCompliant = reader.isCompliant();
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.File;
+
+/**
+ * Receives progress notifications from a <code>BatchRunner</code>.
+ * Notifications are delivered on the thread calling
+ * <code>BatchRunner.run()</code> in file order.
+ *
+ * @author nicl
+ */
+public interface BatchProgressListener {
+
+    /**
+     * Called when the result of a file has been written.
+     * @param file archive file
+     * @param items number of items produced, or -1 if processing failed
+     * @param exception exception thrown while processing or null
+     * @param result batch result so far
+     */
+    void fileDone(File file, long items, Exception exception, BatchResult result);
+
+}
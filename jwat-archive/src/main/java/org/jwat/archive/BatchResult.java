@@ -0,0 +1,53 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of a <code>BatchRunner</code> run. Updated as results are written,
+ * so progress listeners can read the totals so far.
+ *
+ * @author nicl
+ */
+public class BatchResult {
+
+    /** Total number of files in the batch. */
+    public int filesTotal;
+
+    /** Total number of archive bytes in the batch. */
+    public long bytesTotal;
+
+    /** Number of files done so far, including failed files. */
+    public int filesDone;
+
+    /** Number of archive bytes done so far. */
+    public long bytesDone;
+
+    /** Number of items produced so far. */
+    public long items;
+
+    /** Files which could not be processed. */
+    public final List<File> failedFiles = new ArrayList<File>();
+
+    /** Exceptions thrown by the failed files, in the same order. */
+    public final List<Exception> failedExceptions = new ArrayList<Exception>();
+
+}
@@ -0,0 +1,469 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jwat.gzip.GzipMemberSplitter;
+import org.jwat.warc.WarcRecordSplitter;
+
+/**
+ * Processes a batch of archive files in parallel using a fixed pool of
+ * worker threads. Idle workers take the next file from the shared queue, so
+ * large files do not hold up the remaining work.
+ *
+ * Compressed files larger than the split size are split into ranges
+ * starting on GZip member boundaries with a <code>GzipMemberSplitter</code>,
+ * if the processors implement <code>ArchiveRangeProcessor</code>. Finding the
+ * boundaries only reads a little data around each split point, so the ranges
+ * of a single large file are processed in parallel.
+ *
+ * Each worker has its own <code>ArchiveFileProcessor</code>, which allows
+ * readers and buffers to be reused between files. The output of each file or
+ * range is buffered and written to the batch <code>Writer</code> in the order
+ * of the file list, so the combined output is the same regardless of the
+ * number of threads. The output of a file is only written once all its
+ * ranges have been processed successfully.
+ *
+ * The memory budget limits the buffered output. The output of a range is
+ * estimated from the ratio of output to input measured on the results
+ * collected so far and no more ranges are submitted once the estimated and
+ * buffered output exceeds the budget.
+ *
+ * @author nicl
+ */
+public class BatchRunner {
+
+    /** Default memory budget. */
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024L * 1024L;
+
+    /** Maximum number of files or ranges submitted per thread ahead of the writer. */
+    public static final int MAX_FILES_AHEAD_PER_THREAD = 4;
+
+    /** Default size above which compressed files are split into ranges. */
+    public static final long DEFAULT_SPLIT_SIZE = 64L * 1024L * 1024L;
+
+    /** Number of bytes used by each buffered output character. */
+    public static final int BYTES_PER_CHAR = 2;
+
+    /** Factory used to create the per-thread processors. */
+    protected ArchiveFileProcessorFactory processorFactory;
+
+    /** Number of worker threads. */
+    protected int threads;
+
+    /** Maximum number of buffered output bytes. */
+    protected long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    /** Size above which compressed files are split into ranges or 0. */
+    protected long splitSize = DEFAULT_SPLIT_SIZE;
+
+    /** Optional progress listener. */
+    protected BatchProgressListener progressListener;
+
+    /**
+     * Construct a batch runner.
+     * @param processorFactory factory used to create the per-thread processors
+     * @param threads number of worker threads
+     */
+    public BatchRunner(ArchiveFileProcessorFactory processorFactory, int threads) {
+        if (processorFactory == null) {
+            throw new IllegalArgumentException("'processorFactory' is null");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("'threads' is less than or equal to zero: " + threads);
+        }
+        this.processorFactory = processorFactory;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     * @return number of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the maximum number of output bytes buffered ahead of the writer,
+     * including the estimated output of the files and ranges being
+     * processed. At least one file or range is always in flight.
+     * @param memoryBudget memory budget in bytes
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("'memoryBudget' is less than or equal to zero: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the memory budget in bytes.
+     * @return memory budget in bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Set the size above which compressed files are split into ranges.
+     * @param splitSize split size in bytes or 0 to disable splitting
+     */
+    public void setSplitSize(long splitSize) {
+        if (splitSize < 0) {
+            throw new IllegalArgumentException("'splitSize' is less than zero: " + splitSize);
+        }
+        this.splitSize = splitSize;
+    }
+
+    /**
+     * Returns the size above which compressed files are split into ranges.
+     * @return split size in bytes or 0 if splitting is disabled
+     */
+    public long getSplitSize() {
+        return splitSize;
+    }
+
+    /**
+     * Set the progress listener.
+     * @param progressListener progress listener or null
+     */
+    public void setProgressListener(BatchProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Returns the progress listener.
+     * @return progress listener or null
+     */
+    public BatchProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * Recursively list the WARC and ARC files in a directory sorted by path.
+     * @param dir directory
+     * @return sorted list of archive files
+     */
+    public static List<File> listArchiveFiles(File dir) {
+        if (dir == null) {
+            throw new IllegalArgumentException("'dir' is null");
+        }
+        List<File> files = new ArrayList<File>();
+        listArchiveFiles(dir, files);
+        return files;
+    }
+
+    /**
+     * Recursively add the WARC and ARC files in a directory sorted by path.
+     * @param dir directory
+     * @param files list of files to add to
+     */
+    protected static void listArchiveFiles(File dir, List<File> files) {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        Arrays.sort(entries);
+        for (int i=0; i<entries.length; ++i) {
+            if (entries[i].isDirectory()) {
+                listArchiveFiles(entries[i], files);
+            } else if (CdxIndexer.getArchiveFormat(entries[i].getName()) != CdxIndexer.ARCHIVE_UNKNOWN) {
+                files.add(entries[i]);
+            }
+        }
+    }
+
+    /**
+     * Process a list of files and write the results in list order.
+     * Files which fail are recorded in the result and do not stop the batch.
+     * @param files list of archive files
+     * @param out output <code>Writer</code>
+     * @return batch result summary
+     * @throws IOException if an i/o exception occurs while writing the output
+     * or the calling thread is interrupted
+     */
+    public BatchResult run(List<File> files, Writer out) throws IOException {
+        if (files == null) {
+            throw new IllegalArgumentException("'files' is null");
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("'out' is null");
+        }
+        BatchResult result = new BatchResult();
+        result.filesTotal = files.size();
+        for (int i=0; i<files.size(); ++i) {
+            result.bytesTotal += files.get(i).length();
+        }
+        final ThreadLocal<ArchiveFileProcessor> processors = new ThreadLocal<ArchiveFileProcessor>() {
+            @Override
+            protected ArchiveFileProcessor initialValue() {
+                return processorFactory.createProcessor();
+            }
+        };
+        boolean bRanges = splitSize > 0 && processorFactory.createProcessor() instanceof ArchiveRangeProcessor;
+        GzipMemberSplitter splitter = new GzipMemberSplitter();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jwat-batch-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        LinkedList<Future<FileResult>> pending = new LinkedList<Future<FileResult>>();
+        int maxPending = threads * MAX_FILES_AHEAD_PER_THREAD;
+        // Ranges of the next file to submit.
+        File file = null;
+        long length = 0;
+        long[] ranges = null;
+        int range = 0;
+        // Output estimated for the submitted ranges and the output kept
+        // until the last range of the oldest file has been processed.
+        long outputReserved = 0;
+        long outputBuffered = 0;
+        long inputMeasured = 0;
+        long outputMeasured = 0;
+        List<String> outputs = new ArrayList<String>();
+        long items = 0;
+        Exception exception = null;
+        int next = 0;
+        try {
+            while (next < files.size() || !pending.isEmpty()) {
+                // Fill the window.
+                while (next < files.size() && pending.size() < maxPending) {
+                    if (ranges == null) {
+                        file = files.get(next);
+                        length = file.length();
+                        ranges = getRanges(splitter, file, length, bRanges);
+                        range = 0;
+                    }
+                    long estimate = 0;
+                    if (inputMeasured > 0) {
+                        estimate = (long)((double)outputMeasured / inputMeasured * (ranges[range + 1] - ranges[range]));
+                    }
+                    if (!pending.isEmpty() && outputBuffered + outputReserved + estimate > memoryBudget) {
+                        break;
+                    }
+                    outputReserved += estimate;
+                    pending.add(executor.submit(new FileTask(file, length, ranges, range, estimate, processors)));
+                    if (++range == ranges.length - 1) {
+                        ranges = null;
+                        ++next;
+                    }
+                }
+                // Collect the oldest result.
+                FileResult fileResult;
+                try {
+                    fileResult = pending.removeFirst().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Batch interrupted");
+                } catch (ExecutionException e) {
+                    // FileTask catches everything but errors.
+                    throw new RuntimeException(e.getCause());
+                }
+                outputReserved -= fileResult.estimate;
+                if (fileResult.exception == null) {
+                    long outputSize = (long)fileResult.output.length() * BYTES_PER_CHAR;
+                    inputMeasured += fileResult.end - fileResult.offset;
+                    outputMeasured += outputSize;
+                    if (exception == null) {
+                        outputs.add(fileResult.output);
+                        outputBuffered += outputSize;
+                        items += fileResult.items;
+                    }
+                } else if (exception == null) {
+                    exception = fileResult.exception;
+                }
+                if (!fileResult.bLast) {
+                    continue;
+                }
+                // Write the output of the file.
+                if (exception == null) {
+                    for (int i=0; i<outputs.size(); ++i) {
+                        out.write(outputs.get(i));
+                    }
+                    result.items += items;
+                } else {
+                    items = -1;
+                    result.failedFiles.add(fileResult.file);
+                    result.failedExceptions.add(exception);
+                }
+                ++result.filesDone;
+                result.bytesDone += fileResult.length;
+                if (progressListener != null) {
+                    progressListener.fileDone(fileResult.file, items, exception, result);
+                }
+                outputs.clear();
+                outputBuffered = 0;
+                items = 0;
+                exception = null;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+        return result;
+    }
+
+    /**
+     * Split a compressed file into ranges starting on GZip member
+     * boundaries. Files which are not split are returned as one range.
+     * @param splitter GZip member splitter
+     * @param file archive file
+     * @param length archive file length
+     * @param bRanges does the processor support ranges
+     * @return range boundaries, starting with 0 and ending with the file length
+     */
+    protected long[] getRanges(GzipMemberSplitter splitter, File file, long length, boolean bRanges) {
+        int archiveFormat = CdxIndexer.getArchiveFormat(file.getName());
+        if (bRanges && length > splitSize && archiveFormat != CdxIndexer.ARCHIVE_UNKNOWN
+                && file.getName().toLowerCase().endsWith(".gz")) {
+            int parts = (int)Math.min((length + splitSize - 1) / splitSize, Integer.MAX_VALUE);
+            try {
+                long[] ranges = splitter.split(file, parts, archiveFormat == CdxIndexer.ARCHIVE_WARC ? WarcRecordSplitter.RECORD_MAGIC : null);
+                if (ranges.length > 2 && ranges[ranges.length - 1] == length) {
+                    return ranges;
+                }
+            } catch (IOException e) {
+                // The task reports the error when it processes the whole file.
+            }
+        }
+        return new long[] {0, length};
+    }
+
+    /**
+     * Task processing a single file, or a range of it, into a buffer.
+     */
+    protected static class FileTask implements Callable<FileResult> {
+
+        /** Archive file. */
+        protected File file;
+
+        /** Archive file length when the task was submitted. */
+        protected long length;
+
+        /** Range boundaries of the file. */
+        protected long[] ranges;
+
+        /** Index of the range to process. */
+        protected int range;
+
+        /** Estimated output size in bytes. */
+        protected long estimate;
+
+        /** Per-thread processors. */
+        protected ThreadLocal<ArchiveFileProcessor> processors;
+
+        /**
+         * Construct a file task.
+         * @param file archive file
+         * @param length archive file length
+         * @param ranges range boundaries of the file
+         * @param range index of the range to process
+         * @param estimate estimated output size in bytes
+         * @param processors per-thread processors
+         */
+        protected FileTask(File file, long length, long[] ranges, int range, long estimate, ThreadLocal<ArchiveFileProcessor> processors) {
+            this.file = file;
+            this.length = length;
+            this.ranges = ranges;
+            this.range = range;
+            this.estimate = estimate;
+            this.processors = processors;
+        }
+
+        @Override
+        public FileResult call() {
+            FileResult fileResult = new FileResult();
+            fileResult.file = file;
+            fileResult.length = length;
+            fileResult.offset = ranges[range];
+            fileResult.end = ranges[range + 1];
+            fileResult.bLast = range == ranges.length - 2;
+            fileResult.estimate = estimate;
+            StringWriter sw = new StringWriter();
+            try {
+                ArchiveFileProcessor processor = processors.get();
+                if (ranges.length > 2) {
+                    fileResult.items = ((ArchiveRangeProcessor)processor).process(file, fileResult.offset, fileResult.end, sw);
+                } else {
+                    fileResult.items = processor.process(file, sw);
+                }
+                fileResult.output = sw.toString();
+            } catch (Exception e) {
+                fileResult.items = -1;
+                fileResult.exception = e;
+            }
+            return fileResult;
+        }
+
+    }
+
+    /**
+     * Buffered result of a single file or range.
+     */
+    protected static class FileResult {
+
+        /** Archive file. */
+        protected File file;
+
+        /** Archive file length. */
+        protected long length;
+
+        /** Offset of the processed range. */
+        protected long offset;
+
+        /** Offset following the processed range. */
+        protected long end;
+
+        /** Is this the last range of the file. */
+        protected boolean bLast;
+
+        /** Output size in bytes estimated when the task was submitted. */
+        protected long estimate;
+
+        /** Buffered output. */
+        protected String output;
+
+        /** Number of items produced or -1. */
+        protected long items;
+
+        /** Exception thrown while processing or null. */
+        protected Exception exception;
+
+    }
+
+}
@@ -0,0 +1,202 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+/**
+ * Mutable holder for the fields of a single CDX index line.
+ * The indexer reuses one instance for all the records it processes and
+ * appends the formatted line to a reusable <code>StringBuilder</code>.
+ * Fields set to null are written as "-" in CDX11 lines and left out of the
+ * JSON block in CDXJ lines.
+ *
+ * @author nicl
+ */
+public class CdxEntry {
+
+    /** Placeholder used for missing CDX11 fields. */
+    public static final String EMPTY_FIELD = "-";
+
+    /** Hexadecimal digits used for JSON escaping. */
+    protected static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** SURT canonicalized URL key. */
+    public String urlkey;
+
+    /** 14 digit capture timestamp. */
+    public String timestamp;
+
+    /** Original URL. */
+    public String original;
+
+    /** Mimetype without parameters. */
+    public String mimetype;
+
+    /** Status code. */
+    public String statuscode;
+
+    /** Payload digest without the algorithm label. */
+    public String digest;
+
+    /** Redirect URL. */
+    public String redirect;
+
+    /** Length of the (compressed) record in the archive file. */
+    public long length;
+
+    /** Offset of the (compressed) record in the archive file. */
+    public long offset;
+
+    /** Archive file name. */
+    public String filename;
+
+    /**
+     * Clear all the fields so the object can be reused.
+     */
+    public void reset() {
+        urlkey = null;
+        timestamp = null;
+        original = null;
+        mimetype = null;
+        statuscode = null;
+        digest = null;
+        redirect = null;
+        length = 0;
+        offset = 0;
+        filename = null;
+    }
+
+    /**
+     * Append this entry as a CDX11 line, without line terminator.
+     * The field order is " CDX N b a m s k r M S V g".
+     * @param sb <code>StringBuilder</code> to append to
+     * @return the <code>StringBuilder</code> for convenience
+     */
+    public StringBuilder appendCdx11(StringBuilder sb) {
+        appendField(sb, urlkey).append(' ');
+        appendField(sb, timestamp).append(' ');
+        appendField(sb, original).append(' ');
+        appendField(sb, mimetype).append(' ');
+        appendField(sb, statuscode).append(' ');
+        appendField(sb, digest).append(' ');
+        appendField(sb, redirect).append(' ');
+        sb.append(EMPTY_FIELD).append(' ');
+        sb.append(length).append(' ');
+        sb.append(offset).append(' ');
+        appendField(sb, filename);
+        return sb;
+    }
+
+    /**
+     * Append this entry as a CDXJ line, without line terminator.
+     * @param sb <code>StringBuilder</code> to append to
+     * @return the <code>StringBuilder</code> for convenience
+     */
+    public StringBuilder appendCdxj(StringBuilder sb) {
+        appendField(sb, urlkey).append(' ');
+        appendField(sb, timestamp).append(' ');
+        sb.append('{');
+        boolean bFirst = true;
+        bFirst = appendJson(sb, "url", original, bFirst);
+        bFirst = appendJson(sb, "mime", mimetype, bFirst);
+        bFirst = appendJson(sb, "status", statuscode, bFirst);
+        bFirst = appendJson(sb, "digest", digest, bFirst);
+        bFirst = appendJson(sb, "redirect", redirect, bFirst);
+        bFirst = appendJson(sb, "length", Long.toString(length), bFirst);
+        bFirst = appendJson(sb, "offset", Long.toString(offset), bFirst);
+        appendJson(sb, "filename", filename, bFirst);
+        sb.append('}');
+        return sb;
+    }
+
+    /**
+     * Append a CDX11 field. Missing fields are written as "-" and
+     * whitespace is percent encoded so the field count stays intact.
+     * @param sb <code>StringBuilder</code> to append to
+     * @param value field value or null
+     * @return the <code>StringBuilder</code> for convenience
+     */
+    protected static StringBuilder appendField(StringBuilder sb, String value) {
+        if (value == null || value.length() == 0) {
+            return sb.append(EMPTY_FIELD);
+        }
+        char c;
+        for (int i=0; i<value.length(); ++i) {
+            c = value.charAt(i);
+            switch (c) {
+            case ' ':
+                sb.append("%20");
+                break;
+            case '\t':
+                sb.append("%09");
+                break;
+            case '\r':
+                sb.append("%0D");
+                break;
+            case '\n':
+                sb.append("%0A");
+                break;
+            default:
+                sb.append(c);
+                break;
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * Append a JSON member if the value is present.
+     * @param sb <code>StringBuilder</code> to append to
+     * @param name member name
+     * @param value member value or null
+     * @param bFirst true if no member has been appended yet
+     * @return true if still no member has been appended
+     */
+    protected static boolean appendJson(StringBuilder sb, String name, String value, boolean bFirst) {
+        if (value == null || value.length() == 0) {
+            return bFirst;
+        }
+        if (!bFirst) {
+            sb.append(", ");
+        }
+        sb.append('"').append(name).append("\": \"");
+        char c;
+        for (int i=0; i<value.length(); ++i) {
+            c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append("\\u00");
+                    sb.append(HEX[(c >> 4) & 0x0F]);
+                    sb.append(HEX[c & 0x0F]);
+                } else {
+                    sb.append(c);
+                }
+                break;
+            }
+        }
+        sb.append('"');
+        return false;
+    }
+
+}
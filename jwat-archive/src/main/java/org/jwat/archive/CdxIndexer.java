@@ -0,0 +1,552 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+import java.util.zip.GZIPInputStream;
+
+import org.jwat.arc.ArcReader;
+import org.jwat.arc.ArcReaderFactory;
+import org.jwat.arc.ArcRecordBase;
+import org.jwat.common.FixedLengthInputStream;
+import org.jwat.common.HeaderLine;
+import org.jwat.common.HttpHeader;
+import org.jwat.common.SurtCanonicalizer;
+import org.jwat.common.UriProfile;
+import org.jwat.warc.WarcConstants;
+import org.jwat.warc.WarcReader;
+import org.jwat.warc.WarcReaderFactory;
+import org.jwat.warc.WarcRecord;
+
+/**
+ * Streaming CDX11/CDXJ indexer for WARC and ARC files.
+ * Records are read sequentially using the normal readers with digest
+ * validation turned off, so only the record and HTTP headers are parsed.
+ * Payloads are skipped when each record is closed.
+ * The offset and length written for each record refer to the bytes in the
+ * archive file, i.e. the gzip member for compressed files.
+ *
+ * One <code>CdxEntry</code>, <code>StringBuilder</code> and character buffer
+ * is reused for all the lines written, which means an instance is not
+ * thread-safe.
+ *
+ * Ranges of a compressed file which start on a GZip member boundary are
+ * indexed with the offsets they have in the whole file, which allows a large
+ * file to be split and indexed in parallel.
+ *
+ * @author nicl
+ */
+public class CdxIndexer implements ArchiveRangeProcessor {
+
+    /** CDX11 output format. */
+    public static final int FORMAT_CDX11 = 1;
+
+    /** CDXJ output format. */
+    public static final int FORMAT_CDXJ = 2;
+
+    /** Unrecognized archive format. */
+    public static final int ARCHIVE_UNKNOWN = 0;
+
+    /** WARC archive format. */
+    public static final int ARCHIVE_WARC = 1;
+
+    /** ARC archive format. */
+    public static final int ARCHIVE_ARC = 2;
+
+    /** CDX11 header line. */
+    public static final String CDX11_HEADER = " CDX N b a m s k r M S V g";
+
+    /** Mimetype used for WARC revisit records. */
+    public static final String MIMETYPE_REVISIT = "warc/revisit";
+
+    /** Input buffer size. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Number of bytes examined when the format can not be deduced from the file name. */
+    public static final int PEEK_SIZE = 1024;
+
+    /** ARC file magic. */
+    protected static final String ARC_MAGIC_HEADER = "filedesc://";
+
+    /** Output format. */
+    public int format = FORMAT_CDX11;
+
+    /** Index all records instead of only response, resource and revisit records. */
+    public boolean bAllRecords = false;
+
+    /** Canonicalizer used to compute the URL key. */
+    public SurtCanonicalizer canonicalizer = new SurtCanonicalizer();
+
+    /** URI profile used by the readers. */
+    protected UriProfile uriProfile = UriProfile.RFC3986_ABS_16BIT_LAX;
+
+    /** Reusable entry. */
+    protected CdxEntry entry = new CdxEntry();
+
+    /** Reusable line buffer. */
+    protected StringBuilder sb = new StringBuilder(512);
+
+    /** Reusable character buffer used to write lines. */
+    protected char[] cbuf = new char[512];
+
+    /** Number of lines written since this indexer was created. */
+    public long lines;
+
+    /** Offset added to the record offsets, used when indexing a range. */
+    protected long baseOffset = 0;
+
+    /**
+     * Write the header line, if the output format has one.
+     * @param out output <code>Writer</code>
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    public void writeHeader(Writer out) throws IOException {
+        if (format == FORMAT_CDX11) {
+            out.write(CDX11_HEADER);
+            out.write('\n');
+        }
+    }
+
+    @Override
+    public long process(File file, Writer out) throws IOException {
+        return indexFile(file, out);
+    }
+
+    /**
+     * Index a WARC or ARC file.
+     * @param file archive file
+     * @param out output <code>Writer</code>
+     * @return number of lines written
+     * @throws IOException if an i/o exception occurs while indexing
+     */
+    public long indexFile(File file, Writer out) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null");
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            return index(in, file.getName(), out);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public long process(File file, long offset, long end, Writer out) throws IOException {
+        return indexRange(file, offset, end, out);
+    }
+
+    /**
+     * Index a byte range of a compressed WARC or ARC file. The range must
+     * start and end on GZip member boundaries and the archive format must
+     * be deducible from the file name, unless the range starts at the
+     * beginning of the file.
+     * @param file archive file
+     * @param offset offset of the first member in the range
+     * @param end offset following the last member in the range
+     * @param out output <code>Writer</code>
+     * @return number of lines written
+     * @throws IOException if an i/o exception occurs while indexing
+     */
+    public long indexRange(File file, long offset, long end, Writer out) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null");
+        }
+        if (offset < 0 || end < offset) {
+            throw new IllegalArgumentException("Invalid range: " + offset + "-" + end);
+        }
+        if (offset > 0 && getArchiveFormat(file.getName()) == ARCHIVE_UNKNOWN) {
+            throw new IOException("Unrecognized archive format: " + file.getName());
+        }
+        FileInputStream fin = new FileInputStream(file);
+        try {
+            fin.getChannel().position(offset);
+            baseOffset = offset;
+            return index(new FixedLengthInputStream(fin, end - offset), file.getName(), out);
+        } finally {
+            baseOffset = 0;
+            fin.close();
+        }
+    }
+
+    /**
+     * Index a WARC or ARC stream. The archive format is deduced from the
+     * file name or else from the first bytes of the stream.
+     * @param in archive input stream
+     * @param filename file name written in each line
+     * @param out output <code>Writer</code>
+     * @return number of lines written
+     * @throws IOException if an i/o exception occurs while indexing or the
+     * archive format is not recognized
+     */
+    public long index(InputStream in, String filename, Writer out) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("'in' is null");
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("'out' is null");
+        }
+        int archiveFormat = getArchiveFormat(filename);
+        if (archiveFormat == ARCHIVE_UNKNOWN) {
+            PushbackInputStream pbin = new PushbackInputStream(in, PEEK_SIZE);
+            archiveFormat = peekArchiveFormat(pbin);
+            in = pbin;
+        }
+        switch (archiveFormat) {
+        case ARCHIVE_WARC:
+            WarcReader warcReader = WarcReaderFactory.getReader(in, DEFAULT_BUFFER_SIZE);
+            try {
+                return indexWarc(warcReader, filename, out);
+            } finally {
+                warcReader.close();
+            }
+        case ARCHIVE_ARC:
+            ArcReader arcReader = ArcReaderFactory.getReader(in, DEFAULT_BUFFER_SIZE);
+            try {
+                return indexArc(arcReader, filename, out);
+            } finally {
+                arcReader.close();
+            }
+        default:
+            throw new IOException("Unrecognized archive format: " + filename);
+        }
+    }
+
+    /**
+     * Deduce the archive format from a file name.
+     * @param filename file name or null
+     * @return archive format or <code>ARCHIVE_UNKNOWN</code>
+     */
+    public static int getArchiveFormat(String filename) {
+        if (filename != null) {
+            String name = filename.toLowerCase();
+            if (name.endsWith(".gz")) {
+                name = name.substring(0, name.length() - 3);
+            }
+            if (name.endsWith(".warc")) {
+                return ARCHIVE_WARC;
+            }
+            if (name.endsWith(".arc")) {
+                return ARCHIVE_ARC;
+            }
+        }
+        return ARCHIVE_UNKNOWN;
+    }
+
+    /**
+     * Deduce the archive format from the first bytes of a stream.
+     * GZip compressed data is partially inflated in memory.
+     * The bytes read are pushed back before returning.
+     * @param pbin <code>PushbackInputStream</code> with a pushback buffer of
+     * at least <code>PEEK_SIZE</code> bytes
+     * @return archive format or <code>ARCHIVE_UNKNOWN</code>
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    public static int peekArchiveFormat(PushbackInputStream pbin) throws IOException {
+        byte[] buf = new byte[PEEK_SIZE];
+        int len = 0;
+        int read;
+        while (len < buf.length && (read = pbin.read(buf, len, buf.length - len)) != -1) {
+            len += read;
+        }
+        if (len > 0) {
+            pbin.unread(buf, 0, len);
+        }
+        byte[] magic = buf;
+        int magicLen = len;
+        if (len >= 2 && (buf[0] & 255) == 0x1f && (buf[1] & 255) == 0x8b) {
+            magic = new byte[ARC_MAGIC_HEADER.length()];
+            magicLen = 0;
+            try {
+                GZIPInputStream gzin = new GZIPInputStream(new ByteArrayInputStream(buf, 0, len));
+                while (magicLen < magic.length && (read = gzin.read(magic, magicLen, magic.length - magicLen)) != -1) {
+                    magicLen += read;
+                }
+            } catch (IOException e) {
+                // Truncated sample, use what was inflated.
+            }
+        }
+        if (startsWith(magic, magicLen, WarcConstants.WARC_MAGIC_HEADER)) {
+            return ARCHIVE_WARC;
+        }
+        if (startsWith(magic, magicLen, ARC_MAGIC_HEADER)) {
+            return ARCHIVE_ARC;
+        }
+        return ARCHIVE_UNKNOWN;
+    }
+
+    /**
+     * Compare the beginning of a byte array with an ASCII string.
+     * @param bytes byte array
+     * @param len number of valid bytes in the array
+     * @param str ASCII string
+     * @return boolean indicating whether the array starts with the string
+     */
+    protected static boolean startsWith(byte[] bytes, int len, String str) {
+        if (len < str.length()) {
+            return false;
+        }
+        for (int i=0; i<str.length(); ++i) {
+            if (bytes[i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Index the records of a WARC reader.
+     * @param reader <code>WarcReader</code> positioned at the first record
+     * @param filename file name written in each line
+     * @param out output <code>Writer</code>
+     * @return number of lines written
+     * @throws IOException if an i/o exception occurs while indexing
+     */
+    public long indexWarc(WarcReader reader, String filename, Writer out) throws IOException {
+        reader.setWarcTargetUriProfile(uriProfile);
+        reader.setUriProfile(uriProfile);
+        reader.setBlockDigestEnabled(false);
+        reader.setPayloadDigestEnabled(false);
+        long count = 0;
+        WarcRecord record;
+        boolean bIndex;
+        long offset;
+        while ((record = reader.getNextRecord()) != null) {
+            entry.reset();
+            bIndex = populate(record);
+            record.close();
+            if (bIndex) {
+                offset = record.getStartOffset();
+                entry.offset = baseOffset + offset;
+                if (reader.isCompressed()) {
+                    entry.length = reader.getConsumed() - offset;
+                } else {
+                    entry.length = record.getConsumed();
+                }
+                entry.filename = filename;
+                writeEntry(out);
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Index the records of an ARC reader.
+     * @param reader <code>ArcReader</code> positioned at the first record
+     * @param filename file name written in each line
+     * @param out output <code>Writer</code>
+     * @return number of lines written
+     * @throws IOException if an i/o exception occurs while indexing
+     */
+    public long indexArc(ArcReader reader, String filename, Writer out) throws IOException {
+        reader.setUriProfile(uriProfile);
+        reader.setBlockDigestEnabled(false);
+        reader.setPayloadDigestEnabled(false);
+        long count = 0;
+        ArcRecordBase record;
+        boolean bIndex;
+        long offset;
+        while ((record = reader.getNextRecord()) != null) {
+            entry.reset();
+            bIndex = populate(record);
+            record.close();
+            if (bIndex) {
+                offset = record.getStartOffset();
+                entry.offset = baseOffset + offset;
+                if (reader.isCompressed()) {
+                    entry.length = reader.getConsumed() - offset;
+                } else {
+                    entry.length = record.getConsumed();
+                }
+                entry.filename = filename;
+                writeEntry(out);
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Populate the reusable entry from a WARC record.
+     * @param record WARC record
+     * @return boolean indicating whether the record should be indexed
+     */
+    protected boolean populate(WarcRecord record) {
+        int typeIdx = WarcConstants.RT_IDX_UNKNOWN;
+        if (record.header.warcTypeIdx != null) {
+            typeIdx = record.header.warcTypeIdx;
+        }
+        if (!bAllRecords
+                && typeIdx != WarcConstants.RT_IDX_RESPONSE
+                && typeIdx != WarcConstants.RT_IDX_RESOURCE
+                && typeIdx != WarcConstants.RT_IDX_REVISIT) {
+            return false;
+        }
+        entry.original = record.header.warcTargetUriStr;
+        entry.urlkey = urlkey(entry.original);
+        entry.timestamp = timestamp(record.header.warcDateStr);
+        HttpHeader httpHeader = record.getHttpHeader();
+        if (httpHeader != null && httpHeader.headerType == HttpHeader.HT_RESPONSE) {
+            entry.statuscode = httpHeader.statusCodeStr;
+            entry.mimetype = mimetype(httpHeader.contentType);
+            entry.redirect = redirect(httpHeader);
+        } else {
+            entry.mimetype = mimetype(record.header.contentTypeStr);
+        }
+        if (typeIdx == WarcConstants.RT_IDX_REVISIT) {
+            entry.mimetype = MIMETYPE_REVISIT;
+        }
+        if (record.header.warcPayloadDigest != null) {
+            entry.digest = record.header.warcPayloadDigest.digestString;
+        }
+        return true;
+    }
+
+    /**
+     * Populate the reusable entry from an ARC record.
+     * @param record ARC record
+     * @return boolean indicating whether the record should be indexed
+     */
+    protected boolean populate(ArcRecordBase record) {
+        if (!bAllRecords && record.recordType == ArcRecordBase.RT_VERSION_BLOCK) {
+            return false;
+        }
+        entry.original = record.getUrlStr();
+        entry.urlkey = urlkey(entry.original);
+        entry.timestamp = timestamp(record.getArchiveDateStr());
+        HttpHeader httpHeader = record.getHttpHeader();
+        if (httpHeader != null && httpHeader.headerType == HttpHeader.HT_RESPONSE) {
+            entry.statuscode = httpHeader.statusCodeStr;
+            entry.mimetype = mimetype(httpHeader.contentType);
+            entry.redirect = redirect(httpHeader);
+        } else {
+            entry.statuscode = record.getResultCodeStr();
+            entry.mimetype = mimetype(record.getContentTypeStr());
+        }
+        entry.digest = record.getChecksum();
+        return true;
+    }
+
+    /**
+     * Compute the URL key, falling back on the original URL if it can not
+     * be canonicalized.
+     * @param original original URL or null
+     * @return URL key or null
+     */
+    protected String urlkey(String original) {
+        if (original == null) {
+            return null;
+        }
+        String urlkey = canonicalizer.canonicalize(original);
+        if (urlkey == null) {
+            urlkey = original;
+        }
+        return urlkey;
+    }
+
+    /**
+     * Extract the first 14 digits of a date string,
+     * e.g. "2012-03-04T05:06:07Z" becomes "20120304050607".
+     * @param dateStr date string or null
+     * @return 14 digit timestamp or null
+     */
+    protected static String timestamp(String dateStr) {
+        if (dateStr == null) {
+            return null;
+        }
+        char[] digits = new char[14];
+        int len = 0;
+        char c;
+        for (int i=0; i<dateStr.length() && len < digits.length; ++i) {
+            c = dateStr.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits[len++] = c;
+            }
+        }
+        if (len == 0) {
+            return null;
+        }
+        return new String(digits, 0, len);
+    }
+
+    /**
+     * Strip parameters and whitespace from a content-type and lower case it.
+     * @param contentType content-type or null
+     * @return mimetype or null
+     */
+    protected static String mimetype(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int idx = contentType.indexOf(';');
+        if (idx != -1) {
+            contentType = contentType.substring(0, idx);
+        }
+        contentType = contentType.trim().toLowerCase();
+        if (contentType.length() == 0) {
+            return null;
+        }
+        return contentType;
+    }
+
+    /**
+     * Return the Location header of a 3xx response.
+     * @param httpHeader HTTP response header
+     * @return redirect location or null
+     */
+    protected static String redirect(HttpHeader httpHeader) {
+        if (httpHeader.statusCode != null
+                && httpHeader.statusCode >= 300 && httpHeader.statusCode < 400) {
+            HeaderLine location = httpHeader.getHeader("Location");
+            if (location != null) {
+                return location.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Format the reusable entry and write it using the reusable buffers.
+     * @param out output <code>Writer</code>
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    protected void writeEntry(Writer out) throws IOException {
+        sb.setLength(0);
+        if (format == FORMAT_CDXJ) {
+            entry.appendCdxj(sb);
+        } else {
+            entry.appendCdx11(sb);
+        }
+        sb.append('\n');
+        int len = sb.length();
+        if (len > cbuf.length) {
+            cbuf = new char[len * 2];
+        }
+        sb.getChars(0, len, cbuf, 0);
+        out.write(cbuf, 0, len);
+        ++lines;
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Assert;
+import org.jwat.warc.WarcRecord;
+import org.jwat.warc.WarcWriter;
+import org.jwat.warc.WarcWriterFactory;
+
+public class TestBaseUtils {
+
+    public static final String RESPONSE_200 =
+            "HTTP/1.1 200 OK\r\n"
+            + "Content-Type: text/html; charset=UTF-8\r\n"
+            + "\r\n"
+            + "<html><body>Hello World</body></html>";
+
+    public static final String RESPONSE_302 =
+            "HTTP/1.1 302 Found\r\n"
+            + "Location: http://www.example.com/new\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + "Moved";
+
+    public static final String REQUEST =
+            "GET / HTTP/1.1\r\n"
+            + "Host: www.example.com\r\n"
+            + "\r\n";
+
+    private TestBaseUtils() {
+    }
+
+    /**
+     * Write a small WARC file and record the offset of each record.
+     */
+    public static byte[] writeWarc(boolean bCompress, List<Long> offsets) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, bCompress);
+        offsets.add((long)out.size());
+        writeRecord(writer, "warcinfo", null, "2012-03-04T05:06:07Z", "application/warc-fields", null, "software: jwat\r\n");
+        offsets.add((long)out.size());
+        writeRecord(writer, "response", "http://WWW.Example.com/index.html?b=2&a=1", "2012-03-04T05:06:08Z", "application/http; msgtype=response", "sha1:AAAABBBBCCCCDDDDEEEEFFFFGGGGHHHH", RESPONSE_200);
+        offsets.add((long)out.size());
+        writeRecord(writer, "request", "http://www.example.com/", "2012-03-04T05:06:09Z", "application/http; msgtype=request", null, REQUEST);
+        offsets.add((long)out.size());
+        writeRecord(writer, "response", "http://www.example.com/old", "2012-03-04T05:06:10Z", "application/http; msgtype=response", null, RESPONSE_302);
+        offsets.add((long)out.size());
+        writeRecord(writer, "revisit", "http://www.example.com/index.html?a=1&b=2", "2012-03-04T05:06:11Z", "application/http; msgtype=response", "sha1:AAAABBBBCCCCDDDDEEEEFFFFGGGGHHHH", "HTTP/1.1 200 OK\r\n\r\n");
+        offsets.add((long)out.size());
+        writeRecord(writer, "resource", "http://www.example.com/notes.txt", "2012-03-04T05:06:12Z", "text/plain", null, "notes");
+        offsets.add((long)out.size());
+        writer.close();
+        return out.toByteArray();
+    }
+
+    public static void writeRecord(WarcWriter writer, String type, String uri, String date, String contentType, String payloadDigest, String payload) throws IOException {
+        byte[] payloadBytes = payload.getBytes("ISO-8859-1");
+        WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", type);
+        record.header.addHeader("WARC-Record-ID", "<urn:uuid:35f02b38-eb19-4f0d-86e4-bfe95815069c>");
+        record.header.addHeader("WARC-Date", date);
+        if (uri != null) {
+            record.header.addHeader("WARC-Target-URI", uri);
+        }
+        if (payloadDigest != null) {
+            record.header.addHeader("WARC-Payload-Digest", payloadDigest);
+        }
+        record.header.addHeader("Content-Length", Integer.toString(payloadBytes.length));
+        record.header.addHeader("Content-Type", contentType);
+        writer.writeHeader(record);
+        writer.writePayload(payloadBytes);
+        writer.closeRecord();
+    }
+
+    public static byte[] readResource(String name) throws IOException {
+        InputStream in = TestBaseUtils.class.getClassLoader().getResourceAsStream(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public static File createTempDir() throws IOException {
+        File dir = File.createTempFile("jwat-batch-", "");
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(dir.mkdir());
+        return dir;
+    }
+
+    public static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        for (int i=0; i<files.length; ++i) {
+            if (files[i].isDirectory()) {
+                deleteDir(files[i]);
+            } else {
+                files[i].delete();
+            }
+        }
+        dir.delete();
+    }
+
+    public static void writeFile(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+    }
+
+}
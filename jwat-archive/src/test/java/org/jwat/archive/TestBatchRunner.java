@@ -0,0 +1,233 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.gzip.GzipMemberSplitter;
+
+@RunWith(JUnit4.class)
+public class TestBatchRunner {
+
+    @Test
+    public void test_batchrunner() throws IOException {
+        File dir = TestBaseUtils.createTempDir();
+        try {
+            File subDir = new File(dir, "sub");
+            Assert.assertTrue(subDir.mkdir());
+            List<Long> offsets = new ArrayList<Long>();
+            for (int i=0; i<6; ++i) {
+                TestBaseUtils.writeFile(new File(i < 3 ? dir : subDir, "file" + i + ".warc" + (i % 2 == 0 ? ".gz" : "")), TestBaseUtils.writeWarc(i % 2 == 0, offsets));
+            }
+            TestBaseUtils.writeFile(new File(dir, "small_BNF.arc"), TestBaseUtils.readResource("small_BNF.arc"));
+            TestBaseUtils.writeFile(new File(dir, "readme.txt"), "not an archive".getBytes());
+
+            List<File> files = BatchRunner.listArchiveFiles(dir);
+            Assert.assertEquals(7, files.size());
+            for (int i=1; i<files.size(); ++i) {
+                Assert.assertTrue(files.get(i - 1).getPath().compareTo(files.get(i).getPath()) < 0);
+            }
+
+            // Sequential reference output.
+            StringWriter expected = new StringWriter();
+            CdxIndexer indexer = new CdxIndexer();
+            long expectedItems = 0;
+            for (int i=0; i<files.size(); ++i) {
+                expectedItems += indexer.indexFile(files.get(i), expected);
+            }
+
+            ArchiveFileProcessorFactory factory = new ArchiveFileProcessorFactory() {
+                @Override
+                public ArchiveFileProcessor createProcessor() {
+                    return new CdxIndexer();
+                }
+            };
+            int[] threads = {1, 2, 8};
+            long[] budgets = {1, BatchRunner.DEFAULT_MEMORY_BUDGET};
+            for (int t=0; t<threads.length; ++t) {
+                for (int b=0; b<budgets.length; ++b) {
+                    BatchRunner runner = new BatchRunner(factory, threads[t]);
+                    runner.setMemoryBudget(budgets[b]);
+                    final List<File> progress = new ArrayList<File>();
+                    runner.setProgressListener(new BatchProgressListener() {
+                        @Override
+                        public void fileDone(File file, long items, Exception exception, BatchResult result) {
+                            progress.add(file);
+                            Assert.assertEquals(progress.size(), result.filesDone);
+                        }
+                    });
+                    StringWriter out = new StringWriter();
+                    BatchResult result = runner.run(files, out);
+                    Assert.assertEquals(expected.toString(), out.toString());
+                    Assert.assertEquals(expectedItems, result.items);
+                    Assert.assertEquals(files.size(), result.filesTotal);
+                    Assert.assertEquals(files.size(), result.filesDone);
+                    Assert.assertEquals(result.bytesTotal, result.bytesDone);
+                    Assert.assertEquals(0, result.failedFiles.size());
+                    Assert.assertEquals(files, progress);
+                }
+            }
+
+            // Missing files are reported but do not stop the batch.
+            List<File> withMissing = new ArrayList<File>(files);
+            File missing = new File(dir, "missing.warc");
+            withMissing.add(1, missing);
+            StringWriter out = new StringWriter();
+            BatchResult result = new BatchRunner(factory, 4).run(withMissing, out);
+            Assert.assertEquals(expected.toString(), out.toString());
+            Assert.assertEquals(1, result.failedFiles.size());
+            Assert.assertEquals(missing, result.failedFiles.get(0));
+            Assert.assertEquals(1, result.failedExceptions.size());
+
+            // Validation summaries.
+            out = new StringWriter();
+            result = new BatchRunner(new ArchiveFileProcessorFactory() {
+                @Override
+                public ArchiveFileProcessor createProcessor() {
+                    return new ArchiveValidator();
+                }
+            }, 3).run(files, out);
+            String[] lines = out.toString().split("\n");
+            Assert.assertEquals(files.size(), lines.length);
+            for (int i=0; i<lines.length; ++i) {
+                String[] fields = lines[i].split(" ");
+                Assert.assertEquals(5, fields.length);
+                Assert.assertEquals(files.get(i).getName(), fields[0]);
+            }
+            // The test WARC files have 6 records with made up payload digests.
+            Assert.assertTrue(lines[0].startsWith("file0.warc.gz 6 "));
+        } finally {
+            TestBaseUtils.deleteDir(dir);
+        }
+    }
+
+    @Test
+    public void test_batchrunner_split() throws IOException {
+        File dir = TestBaseUtils.createTempDir();
+        try {
+            ByteArrayOutputStream warc = new ByteArrayOutputStream();
+            for (int i=0; i<50; ++i) {
+                warc.write(TestBaseUtils.writeWarc(true, new ArrayList<Long>()));
+            }
+            TestBaseUtils.writeFile(new File(dir, "large.warc.gz"), warc.toByteArray());
+            TestBaseUtils.writeFile(new File(dir, "large.arc.gz"), TestBaseUtils.readResource("IAH-20080430204825-00000-blackbook.arc.gz"));
+            TestBaseUtils.writeFile(new File(dir, "small_BNF.arc"), TestBaseUtils.readResource("small_BNF.arc"));
+            List<File> files = BatchRunner.listArchiveFiles(dir);
+            Assert.assertEquals(3, files.size());
+
+            StringWriter expected = new StringWriter();
+            CdxIndexer indexer = new CdxIndexer();
+            long expectedItems = 0;
+            for (int i=0; i<files.size(); ++i) {
+                expectedItems += indexer.indexFile(files.get(i), expected);
+            }
+
+            ArchiveFileProcessorFactory factory = new ArchiveFileProcessorFactory() {
+                @Override
+                public ArchiveFileProcessor createProcessor() {
+                    return new CdxIndexer();
+                }
+            };
+            long splitSize = warc.size() / 4;
+            BatchRunner runner = new BatchRunner(factory, 4);
+            runner.setSplitSize(splitSize);
+            Assert.assertEquals(splitSize, runner.getSplitSize());
+            // The compressed files are split, the uncompressed one is not.
+            GzipMemberSplitter splitter = new GzipMemberSplitter();
+            for (int i=0; i<files.size(); ++i) {
+                long[] ranges = runner.getRanges(splitter, files.get(i), files.get(i).length(), true);
+                Assert.assertEquals(!files.get(i).getName().endsWith(".gz"), ranges.length == 2);
+                Assert.assertEquals(files.get(i).length(), ranges[ranges.length - 1]);
+            }
+            long[] budgets = {1, BatchRunner.DEFAULT_MEMORY_BUDGET};
+            for (int b=0; b<budgets.length; ++b) {
+                runner.setMemoryBudget(budgets[b]);
+                final List<File> progress = new ArrayList<File>();
+                runner.setProgressListener(new BatchProgressListener() {
+                    @Override
+                    public void fileDone(File file, long items, Exception exception, BatchResult result) {
+                        progress.add(file);
+                    }
+                });
+                StringWriter out = new StringWriter();
+                BatchResult result = runner.run(files, out);
+                Assert.assertEquals(expected.toString(), out.toString());
+                Assert.assertEquals(expectedItems, result.items);
+                Assert.assertEquals(files.size(), result.filesDone);
+                Assert.assertEquals(result.bytesTotal, result.bytesDone);
+                Assert.assertEquals(0, result.failedFiles.size());
+                Assert.assertEquals(files, progress);
+            }
+
+            // Processors without range support process whole files.
+            runner = new BatchRunner(new ArchiveFileProcessorFactory() {
+                @Override
+                public ArchiveFileProcessor createProcessor() {
+                    return new ArchiveValidator();
+                }
+            }, 4);
+            runner.setSplitSize(1);
+            StringWriter out = new StringWriter();
+            BatchResult result = runner.run(files, out);
+            Assert.assertEquals(0, result.failedFiles.size());
+            Assert.assertEquals(files.size(), out.toString().split("\n").length);
+        } finally {
+            TestBaseUtils.deleteDir(dir);
+        }
+    }
+
+    @Test
+    public void test_batchrunner_arguments() {
+        ArchiveFileProcessorFactory factory = new ArchiveFileProcessorFactory() {
+            @Override
+            public ArchiveFileProcessor createProcessor() {
+                return new CdxIndexer();
+            }
+        };
+        try {
+            new BatchRunner(null, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new BatchRunner(factory, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new BatchRunner(factory, 1).setMemoryBudget(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new BatchRunner(factory, 1).setSplitSize(-1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestCdxIndexer {
+
+    @Test
+    public void test_cdxindexer_warc() throws IOException {
+        boolean[] compress = {false, true};
+        for (int c=0; c<compress.length; ++c) {
+            List<Long> offsets = new ArrayList<Long>();
+            byte[] warcBytes = TestBaseUtils.writeWarc(compress[c], offsets);
+            String filename = compress[c] ? "test.warc.gz" : "test.warc";
+
+            CdxIndexer indexer = new CdxIndexer();
+            StringWriter out = new StringWriter();
+            indexer.writeHeader(out);
+            long lines = indexer.index(new ByteArrayInputStream(warcBytes), filename, out);
+            Assert.assertEquals(4, lines);
+            Assert.assertEquals(4, indexer.lines);
+            String[] expected = {
+                    CdxIndexer.CDX11_HEADER,
+                    "com,example)/index.html?a=1&b=2 20120304050608 http://WWW.Example.com/index.html?b=2&a=1 text/html 200 AAAABBBBCCCCDDDDEEEEFFFFGGGGHHHH - - "
+                            + (offsets.get(2) - offsets.get(1)) + " " + offsets.get(1) + " " + filename,
+                    "com,example)/old 20120304050610 http://www.example.com/old text/plain 302 - http://www.example.com/new - "
+                            + (offsets.get(4) - offsets.get(3)) + " " + offsets.get(3) + " " + filename,
+                    "com,example)/index.html?a=1&b=2 20120304050611 http://www.example.com/index.html?a=1&b=2 warc/revisit 200 AAAABBBBCCCCDDDDEEEEFFFFGGGGHHHH - - "
+                            + (offsets.get(5) - offsets.get(4)) + " " + offsets.get(4) + " " + filename,
+                    "com,example)/notes.txt 20120304050612 http://www.example.com/notes.txt text/plain - - - - "
+                            + (offsets.get(6) - offsets.get(5)) + " " + offsets.get(5) + " " + filename
+            };
+            String[] actual = out.toString().split("\n");
+            Assert.assertArrayEquals(expected, actual);
+
+            indexer = new CdxIndexer();
+            indexer.format = CdxIndexer.FORMAT_CDXJ;
+            indexer.bAllRecords = true;
+            out = new StringWriter();
+            indexer.writeHeader(out);
+            // No file name, format is detected from the data.
+            lines = indexer.index(new ByteArrayInputStream(warcBytes), null, out);
+            Assert.assertEquals(6, lines);
+            actual = out.toString().split("\n");
+            Assert.assertEquals(6, actual.length);
+            Assert.assertEquals("- 20120304050607 {\"mime\": \"application/warc-fields\", \"length\": \""
+                    + (offsets.get(1) - offsets.get(0)) + "\", \"offset\": \"0\"}", actual[0]);
+            Assert.assertEquals("com,example)/ 20120304050609 {\"url\": \"http://www.example.com/\", \"mime\": \"application/http\", \"length\": \""
+                    + (offsets.get(3) - offsets.get(2)) + "\", \"offset\": \"" + offsets.get(2) + "\"}", actual[2]);
+            Assert.assertEquals("com,example)/old 20120304050610 {\"url\": \"http://www.example.com/old\", \"mime\": \"text/plain\", \"status\": \"302\", \"redirect\": \"http://www.example.com/new\", \"length\": \""
+                    + (offsets.get(4) - offsets.get(3)) + "\", \"offset\": \"" + offsets.get(3) + "\"}", actual[3]);
+        }
+    }
+
+    @Test
+    public void test_cdxindexer_arc() throws IOException {
+        byte[] arcBytes = TestBaseUtils.readResource("small_BNF.arc");
+        CdxIndexer indexer = new CdxIndexer();
+        StringWriter out = new StringWriter();
+        long lines = indexer.index(new ByteArrayInputStream(arcBytes), "small_BNF.arc", out);
+        Assert.assertTrue(lines > 0);
+        String[] actual = out.toString().split("\n");
+        Assert.assertEquals(lines, actual.length);
+        // Records are contiguous and cover the file after the version block.
+        long nextOffset = -1;
+        String[] fields;
+        long length;
+        long offset;
+        for (int i=0; i<actual.length; ++i) {
+            fields = actual[i].split(" ");
+            Assert.assertEquals(11, fields.length);
+            Assert.assertEquals(14, fields[1].length());
+            Assert.assertTrue(fields[2].startsWith("http"));
+            Assert.assertEquals("small_BNF.arc", fields[10]);
+            length = Long.parseLong(fields[8]);
+            offset = Long.parseLong(fields[9]);
+            if (nextOffset != -1) {
+                Assert.assertEquals(nextOffset, offset);
+            }
+            Assert.assertEquals(arcBytes[(int)offset], (byte)'h');
+            nextOffset = offset + length;
+        }
+        Assert.assertEquals(arcBytes.length, nextOffset);
+    }
+
+    @Test
+    public void test_cdxindexer_format_detection() throws IOException {
+        Assert.assertEquals(CdxIndexer.ARCHIVE_WARC, CdxIndexer.getArchiveFormat("a.warc"));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_WARC, CdxIndexer.getArchiveFormat("A.WARC.GZ"));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_ARC, CdxIndexer.getArchiveFormat("a.arc"));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_ARC, CdxIndexer.getArchiveFormat("a.arc.gz"));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_UNKNOWN, CdxIndexer.getArchiveFormat("a.gz"));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_UNKNOWN, CdxIndexer.getArchiveFormat(null));
+
+        List<Long> offsets = new ArrayList<Long>();
+        Assert.assertEquals(CdxIndexer.ARCHIVE_WARC, peek(TestBaseUtils.writeWarc(true, offsets)));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_WARC, peek(TestBaseUtils.writeWarc(false, offsets)));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_ARC, peek(TestBaseUtils.readResource("small_BNF.arc")));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_UNKNOWN, peek(new byte[0]));
+        Assert.assertEquals(CdxIndexer.ARCHIVE_UNKNOWN, peek("monkeys".getBytes()));
+
+        CdxIndexer indexer = new CdxIndexer();
+        try {
+            indexer.index(new ByteArrayInputStream("monkeys".getBytes()), null, new StringWriter());
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+    }
+
+    public static int peek(byte[] bytes) throws IOException {
+        PushbackInputStream pbin = new PushbackInputStream(new ByteArrayInputStream(bytes), CdxIndexer.PEEK_SIZE);
+        int format = CdxIndexer.peekArchiveFormat(pbin);
+        // Peeked bytes must be pushed back.
+        for (int i=0; i<bytes.length; ++i) {
+            Assert.assertEquals(bytes[i] & 255, pbin.read());
+        }
+        Assert.assertEquals(-1, pbin.read());
+        return format;
+    }
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered <code>InputStream</code> without any locking. The standard
+ * <code>BufferedInputStream</code> synchronizes every read, which pins the
+ * carrier of a virtual thread blocked in i/o on older JVMs and costs a lock
+ * per call on all of them. The readers use each stream from one thread at a
+ * time, so the locking buys nothing.
+ *
+ * Reads are otherwise the same as <code>BufferedInputStream</code>: a read
+ * is filled from the buffer and then from the wrapped stream while it has
+ * bytes available, and reads of at least the buffer size bypass the buffer.
+ * Mark/reset is not supported.
+ *
+ * @author nicl
+ */
+public class BufferedInputStreamNoLock extends FilterInputStream {
+
+    /** Default buffer size. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Buffer or null if the stream has been closed. */
+    protected byte[] buf;
+
+    /** Position of the next byte to read from the buffer. */
+    protected int pos;
+
+    /** Number of valid bytes in the buffer. */
+    protected int count;
+
+    /**
+     * Construct a buffered stream with the default buffer size.
+     * @param in input stream to buffer
+     */
+    public BufferedInputStreamNoLock(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Construct a buffered stream with the specified buffer size.
+     * @param in input stream to buffer
+     * @param size buffer size
+     */
+    public BufferedInputStreamNoLock(InputStream in, int size) {
+        super(in);
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The 'in' parameter is null!");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'size' is less than or equal to zero: " + size);
+        }
+        buf = new byte[size];
+    }
+
+    /**
+     * Returns the buffer, throwing an exception if the stream is closed.
+     * @return buffer
+     * @throws IOException if the stream is closed
+     */
+    protected byte[] getBuffer() throws IOException {
+        if (buf == null) {
+            throw new IOException("Stream closed");
+        }
+        return buf;
+    }
+
+    /**
+     * Refill the empty buffer from the wrapped stream.
+     * @throws IOException if an i/o error occurs while reading
+     */
+    protected void fill() throws IOException {
+        byte[] buffer = getBuffer();
+        pos = 0;
+        count = 0;
+        int read = in.read(buffer, 0, buffer.length);
+        if (read > 0) {
+            count = read;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos >= count) {
+            fill();
+            if (pos >= count) {
+                return -1;
+            }
+        }
+        return getBuffer()[pos++] & 255;
+    }
+
+    /**
+     * Read once from the buffer, or from the wrapped stream if the buffer is
+     * empty.
+     * @param b destination buffer
+     * @param off offset in the destination buffer
+     * @param len maximum number of bytes to read
+     * @return number of bytes read or -1
+     * @throws IOException if an i/o error occurs while reading
+     */
+    protected int read1(byte[] b, int off, int len) throws IOException {
+        int avail = count - pos;
+        if (avail <= 0) {
+            if (len >= getBuffer().length) {
+                return in.read(b, off, len);
+            }
+            fill();
+            avail = count - pos;
+            if (avail <= 0) {
+                return -1;
+            }
+        }
+        int cnt = Math.min(avail, len);
+        System.arraycopy(getBuffer(), pos, b, off, cnt);
+        pos += cnt;
+        return cnt;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        getBuffer();
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        int read;
+        while (true) {
+            read = read1(b, off + n, len - n);
+            if (read <= 0) {
+                return (n == 0) ? read : n;
+            }
+            n += read;
+            if (n >= len || in.available() <= 0) {
+                return n;
+            }
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        getBuffer();
+        if (n <= 0) {
+            return 0;
+        }
+        long avail = count - pos;
+        if (avail <= 0) {
+            return in.skip(n);
+        }
+        long skipped = Math.min(avail, n);
+        pos += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        getBuffer();
+        int avail = count - pos;
+        int inAvail = in.available();
+        return avail > Integer.MAX_VALUE - inAvail ? Integer.MAX_VALUE : avail + inAvail;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark and reset not supported!");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buf != null) {
+            buf = null;
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * <code>OutputStream</code> that keeps track of the number of bytes written
+ * at any given time. Optionally the bytes written are also digested.
+ *
+ * @author nicl
+ */
+public class ByteCountingOutputStream extends FilterOutputStream {
+
+    /** Number of bytes written. */
+    protected long written;
+
+    /** Digest updated with the bytes written or null. */
+    protected MessageDigest digest;
+
+    /**
+     * Constructs an <code>OutputStream</code> that counts the bytes as it
+     * writes them.
+     * @param out OutputStream to wrap
+     */
+    public ByteCountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Retrieve the number of bytes written to this stream.
+     * @return current byte offset in this stream
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Set a digest to update with the bytes written from now on.
+     * @param digest digest to update or null
+     */
+    public void setDigest(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * Returns the digest updated with the bytes written or null.
+     * @return digest updated with the bytes written or null
+     */
+    public MessageDigest getDigest() {
+        return digest;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        ++written;
+        if (digest != null) {
+            digest.update((byte)b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        written += len;
+        if (digest != null) {
+            digest.update(b, off, len);
+        }
+    }
+
+}
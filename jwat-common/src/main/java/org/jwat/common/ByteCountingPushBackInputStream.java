@@ -40,12 +40,6 @@ public class ByteCountingPushBackInputStream extends PushbackInputStream {
 
     /** Byte counter which can also be changed. */
     protected long counter = 0;
-    
-    // First 'pushback_size' bytes are reserved for the pushback buffer, the rest are for read ahead buffer
-    protected byte[] buf; 
-    protected int bufPos; // Position in buf of next byte to read
-    protected int bufLen; // Position in buf of the last byte to read +1
-    protected boolean underlyingEmpty;
 
     /**
      * Given an <code>InputStream</code> and a push back buffer size returns
@@ -54,12 +48,8 @@ public class ByteCountingPushBackInputStream extends PushbackInputStream {
      * @param size push back buffer size
      */
     public ByteCountingPushBackInputStream(InputStream in, int size) {
-        super(in, 1); // We dont actually use the underlying buffer
+        super(in, size);
         pushback_size = size;
-        buf = new byte[pushback_size+10000];
-        bufPos = pushback_size;
-        bufLen = pushback_size;
-        underlyingEmpty=false;
     }
 
     /**
@@ -95,31 +85,44 @@ public class ByteCountingPushBackInputStream extends PushbackInputStream {
         return counter;
     }
 
+    /**
+     * Reuse this stream to read from another <code>InputStream</code>.
+     * Pushed back bytes are discarded and the consumed and counter values
+     * are reset to zero.
+     * @param in <code>InputStream</code> to wrap
+     */
+    public void setInputStream(InputStream in) {
+        if (buf == null) {
+            throw new IllegalStateException("Stream closed");
+        }
+        this.in = in;
+        pos = buf.length;
+        consumed = 0;
+        counter = 0;
+    }
+
     @Override
     public boolean markSupported() {
         return false;
     }
 
     @Override
-    public synchronized void mark(int readlimit) {
+    public void mark(int readlimit) {
     }
 
     @Override
-    public synchronized void reset() throws IOException {
+    public void reset() throws IOException {
         throw new UnsupportedOperationException();
     }
 
     @Override
     public int read() throws IOException {
-    	while (bufPos>=bufLen && !underlyingEmpty) {
-    		fillBuffer();
-    	}
-    	if (underlyingEmpty) {
-    		return -1;
-    	}
-    	consumed++;
-    	counter++;
-    	return buf[bufPos++] & 0xff;
+        int b = super.read();
+        if (b != -1) {
+            consumed++;
+            counter++;
+        }
+        return b;
     }
 
     /*
@@ -132,55 +135,19 @@ public class ByteCountingPushBackInputStream extends PushbackInputStream {
         return read(b, 0, b.length);
     }
 
-    protected void fillBuffer() throws IOException {
-    	if (bufPos<bufLen) {
-   			throw new IllegalStateException("Internal buffer not exhausted yet");
-    	}
-    	bufPos = pushback_size;
-    	int read = super.read(buf,pushback_size,buf.length-pushback_size);
-    	bufLen = bufPos + read;
-    	underlyingEmpty = read==-1;
-    }
-    
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-    	if (bufPos>=bufLen) {
-    		fillBuffer();
-        	if (underlyingEmpty) {
-        		return -1;
-        	}
-    	}
-    	int bytesRead = -1; 
-		int leftInBuffer = bufLen-bufPos;
-    	if (bufLen<0) {
-    		bytesRead = -1;
-    	} else {
-    		// Return what is in the buffer up to len or end of buffer
-    		bytesRead = Math.min(leftInBuffer, len);
-    		System.arraycopy(buf, bufPos, b, off, bytesRead);
-    		bufPos+=bytesRead;
-    	} 
-    	consumed+=bytesRead;
-    	counter+=bytesRead;
+        int bytesRead = super.read(b, off, len);
+        if (bytesRead > 0) {
+            consumed += bytesRead;
+            counter += bytesRead;
+        }
         return bytesRead;
     }
 
     @Override
     public long skip(long n) throws IOException {
-		int bytesInBuffer = bufLen-bufPos;
-    	long bytesSkipped = 0;
-		if (n<bytesInBuffer) {
-			bufPos+=n;
-			bytesSkipped=n;
-		} else if (bytesInBuffer<0) {
-			bytesSkipped+=super.skip(n); 
-		} else {
-			long skipUnderlying = n-bytesInBuffer;
-			bufPos = bufLen;
-			bytesSkipped = bytesInBuffer;
-			//We've exhausted the buffer at this point, so can go straight to underlying stream for the rest
-			bytesSkipped+=super.skip(skipUnderlying); 
-		}
+        long bytesSkipped = super.skip(n);
         consumed += bytesSkipped;
         counter += bytesSkipped;
         return bytesSkipped;
@@ -188,11 +155,7 @@ public class ByteCountingPushBackInputStream extends PushbackInputStream {
 
     @Override
     public void unread(int b) throws IOException {
-    	if (bufPos==0) {
-            throw new IOException("Push back buffer too small");
-    	}
-   		// Back up in the buffer to make space for the unread byte
-        buf[--bufPos]=(byte)b;
+        super.unread(b);
         consumed--;
         counter--;
     }
@@ -209,11 +172,7 @@ public class ByteCountingPushBackInputStream extends PushbackInputStream {
 
     @Override
     public void unread(byte[] b, int off, int len) throws IOException {
-    	if (len > bufPos) {
-            throw new IOException("Push back buffer too small");
-    	}
-   		bufPos=bufPos-len; // Back up enough in the buffer to make space for the unread bytes
-        System.arraycopy(b, off, buf, bufPos, len);
+        super.unread(b, off, len);
         consumed -= len;
         counter -= len;
     }
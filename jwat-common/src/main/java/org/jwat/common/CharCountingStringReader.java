@@ -49,11 +49,11 @@ public class CharCountingStringReader extends StringReader {
     }
 
     @Override
-    public synchronized void mark(int readlimit) {
+    public void mark(int readlimit) {
     }
 
     @Override
-    public synchronized void reset() throws IOException {
+    public void reset() throws IOException {
         throw new UnsupportedOperationException();
     }
 
@@ -21,7 +21,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -45,8 +45,8 @@ public class Digest {
     /** Digest encoding used. (E.g. Base16, 32 or 64) */
     public String encoding;
 
-    /** Cache length of algorithm digest output. */
-    protected static Map<String, Integer> digestAlgoLengthache = new TreeMap<String, Integer>();
+    /** Cache length of algorithm digest output, read without locking. */
+    protected static Map<String, Integer> digestAlgoLengthache = new ConcurrentHashMap<String, Integer>();
 
     /**
      * Returns the length of an algorithms digest output or -1 if it is an
@@ -54,7 +54,7 @@ public class Digest {
      * @param digestAlgorithm digest algorithm
      * @return digest algorithm output length or -1 if invalid digest algorithm
      */
-    public static synchronized int digestAlgorithmLength(String digestAlgorithm) {
+    public static int digestAlgorithmLength(String digestAlgorithm) {
         if (digestAlgorithm == null || digestAlgorithm.length() == 0) {
             throw new IllegalArgumentException("'digestAlgorithm' is empty or null");
         }
@@ -34,8 +34,8 @@ public class DigestInputStreamNoSkip extends DigestInputStream {
     /** Buffer size to use when read skipping. */
     public static final int SKIP_READ_BUFFER_SIZE = 8192;
 
-    /** Read buffer used by the skip method. */
-    protected byte[] skip_read_buffer = new byte[SKIP_READ_BUFFER_SIZE];
+    /** Read buffer used by the skip method, allocated on first use. */
+    protected byte[] skip_read_buffer;
 
     /**
      * Construct a <code>DigestInputStream</code> with the skip method
@@ -53,11 +53,11 @@ public class DigestInputStreamNoSkip extends DigestInputStream {
     }
 
     @Override
-    public synchronized void mark(int readlimit) {
+    public void mark(int readlimit) {
     }
 
     @Override
-    public synchronized void reset() throws IOException {
+    public void reset() throws IOException {
         throw new UnsupportedOperationException();
     }
 
@@ -66,6 +66,9 @@ public class DigestInputStreamNoSkip extends DigestInputStream {
         long remaining = n;
         long skipped = 0;
         long readLast = 0;
+        if (skip_read_buffer == null) {
+            skip_read_buffer = new byte[SKIP_READ_BUFFER_SIZE];
+        }
         while (remaining > 0 && readLast != -1) {
             remaining -= readLast;
             skipped += readLast;
@@ -0,0 +1,36 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+/**
+ * Callback receiving the digests a writer computed for a record, e.g. for
+ * indexing, when they could not be written in the record header.
+ *
+ * @param <H> record header type
+ * @author nicl
+ */
+public interface DigestListener<H> {
+
+    /**
+     * Called when a record has been closed.
+     * @param header header of the record or null if written raw
+     * @param digester finished digester holding the block and payload digests
+     */
+    void digestsComputed(H header, PayloadDigester digester);
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class wraps a <code>FileChannel</code> into an <code>InputStream</code>
+ * using positional reads. The stream keeps its own position, so any number
+ * of streams, possibly used by different threads, can share one channel
+ * without affecting each other or the position of the channel.
+ * (@see FileChannel#read(ByteBuffer, long))
+ *
+ * Instances can be reused by supplying a new channel and position.
+ *
+ * @author nicl
+ */
+public class FileChannelInputStream extends InputStream {
+
+    /** Encapsulated <code>FileChannel</code> used for stream data. */
+    protected FileChannel channel;
+
+    /** Current position in the channel. */
+    protected long position;
+
+    /** Current mark position in the channel. */
+    protected long mark_position = -1;
+
+    /** Small buffer used by the read() method. */
+    protected byte[] singleByteArray = new byte[1];
+
+    /**
+     * Create a new positional <code>InputStream</code> without a channel.
+     * A channel must be supplied using <code>setChannel()</code> before the
+     * stream is read.
+     */
+    public FileChannelInputStream() {
+    }
+
+    /**
+     * Create a new positional <code>InputStream</code> on a channel.
+     * @param channel <code>FileChannel</code> used for stream data
+     * @param position initial position in the channel
+     */
+    public FileChannelInputStream(FileChannel channel, long position) {
+        setChannel(channel, position);
+    }
+
+    /**
+     * Reuse this stream on another channel and/or position.
+     * @param channel <code>FileChannel</code> used for stream data
+     * @param position position in the channel
+     */
+    public void setChannel(FileChannel channel, long position) {
+        if (channel == null) {
+            throw new IllegalArgumentException("'channel' is null");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("'position' is negative: " + position);
+        }
+        this.channel = channel;
+        this.position = position;
+        this.mark_position = -1;
+    }
+
+    /**
+     * Returns the current position in the channel.
+     * @return current position in the channel
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Closing this stream does not close the channel.
+     * @throws IOException if an i/o error occurs while closing stream
+     */
+    @Override
+    public void close() throws IOException {
+        channel = null;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        mark_position = position;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        if (mark_position == -1) {
+            throw new IOException("Mark not set or is invalid");
+        }
+        position = mark_position;
+    }
+
+    @Override
+    public int available() throws IOException {
+        long avail = channel.size() - position;
+        return (int) Math.max(0, Math.min(avail, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skip = Math.max(0, Math.min(n, channel.size() - position));
+        position += skip;
+        return skip;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByteArray, 0, 1) != -1 ? (singleByteArray[0] & 255) : -1;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+}
@@ -0,0 +1,284 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread-safe pool of read-only <code>FileChannel</code>s with LRU eviction.
+ * Channels are meant to be read using positional reads, e.g. through
+ * <code>FileChannelInputStream</code>, so one channel can be shared by any
+ * number of threads.
+ *
+ * A channel is acquired with <code>acquire()</code> and must be handed back
+ * with <code>release()</code>. When the pool holds more than the maximum
+ * number of open channels the least recently used ones are evicted, but a
+ * channel is not closed until the last user has released it.
+ *
+ * @author nicl
+ */
+public class FileChannelPool implements Closeable {
+
+    /** Default maximum number of open channels. */
+    public static final int DEFAULT_MAX_OPEN = 64;
+
+    /** Maximum number of open channels kept in the pool. */
+    protected final int maxOpen;
+
+    /** Open channels in least recently used order. */
+    protected final LinkedHashMap<String, Handle> handles;
+
+    /** Is the pool closed. */
+    protected boolean bClosed;
+
+    /** Number of channels opened since the pool was created. */
+    protected long opened;
+
+    /**
+     * Construct a pool with a default maximum number of open channels.
+     */
+    public FileChannelPool() {
+        this(DEFAULT_MAX_OPEN);
+    }
+
+    /**
+     * Construct a pool with a maximum number of open channels.
+     * @param maxOpen maximum number of open channels
+     */
+    public FileChannelPool(int maxOpen) {
+        if (maxOpen <= 0) {
+            throw new IllegalArgumentException("'maxOpen' is less than or equal to zero: " + maxOpen);
+        }
+        this.maxOpen = maxOpen;
+        this.handles = new LinkedHashMap<String, Handle>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the maximum number of open channels.
+     * @return maximum number of open channels
+     */
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    /**
+     * Returns the number of channels currently in the pool.
+     * @return number of channels currently in the pool
+     */
+    public synchronized int size() {
+        return handles.size();
+    }
+
+    /**
+     * Returns the number of channels opened since the pool was created.
+     * @return number of channels opened
+     */
+    public synchronized long getOpened() {
+        return opened;
+    }
+
+    /**
+     * Acquire the channel of a file, opening it if it is not in the pool.
+     * A pooled channel which has been closed, e.g. by an interrupted read,
+     * is dropped and the file is opened again. Files are opened without
+     * holding the pool lock, so a slow open does not block other lookups.
+     * @param file file to read
+     * @return handle holding the channel
+     * @throws IOException if an i/o exception occurs while opening the file
+     */
+    public Handle acquire(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null");
+        }
+        String key = file.getPath();
+        Handle handle;
+        synchronized (this) {
+            handle = lookup(key);
+            if (handle != null) {
+                ++handle.refs;
+                return handle;
+            }
+        }
+        RandomAccessFile raf = open(file);
+        try {
+            synchronized (this) {
+                handle = lookup(key);
+                if (handle == null) {
+                    handle = new Handle(key, raf);
+                    handles.put(key, handle);
+                    ++opened;
+                    evict();
+                    raf = null;
+                }
+                ++handle.refs;
+            }
+        } finally {
+            if (raf != null) {
+                // Another thread opened the file first, or the pool was
+                // closed while the file was being opened.
+                raf.close();
+            }
+        }
+        return handle;
+    }
+
+    /**
+     * Open a file for reading. Called without holding the pool lock.
+     * @param file file to open
+     * @return random access file opened for reading
+     * @throws IOException if an i/o exception occurs while opening the file
+     */
+    protected RandomAccessFile open(File file) throws IOException {
+        return new RandomAccessFile(file, "r");
+    }
+
+    /**
+     * Returns the open pooled handle of a file, dropping it if its channel
+     * has been closed. Must be called while holding the pool lock.
+     * @param key pool key
+     * @return open handle or null
+     */
+    protected Handle lookup(String key) {
+        if (bClosed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+        Handle handle = handles.get(key);
+        if (handle != null && !handle.isOpen()) {
+            handles.remove(key);
+            handle.bEvicted = true;
+            if (handle.refs == 0) {
+                handle.closeQuietly();
+            }
+            handle = null;
+        }
+        return handle;
+    }
+
+    /**
+     * Hand back a channel acquired from this pool.
+     * @param handle handle returned by <code>acquire()</code>
+     */
+    public synchronized void release(Handle handle) {
+        if (handle == null) {
+            throw new IllegalArgumentException("'handle' is null");
+        }
+        if (handle.refs <= 0) {
+            throw new IllegalStateException("Handle released more times than acquired");
+        }
+        --handle.refs;
+        if (handle.refs == 0 && handle.bEvicted) {
+            handle.closeQuietly();
+        }
+    }
+
+    /**
+     * Remove the least recently used channels above the maximum.
+     * Channels still in use are closed when released.
+     */
+    protected void evict() {
+        Iterator<Map.Entry<String, Handle>> iter = handles.entrySet().iterator();
+        Handle handle;
+        while (handles.size() > maxOpen && iter.hasNext()) {
+            handle = iter.next().getValue();
+            iter.remove();
+            handle.bEvicted = true;
+            if (handle.refs == 0) {
+                handle.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Close all channels not in use and stop accepting new acquisitions.
+     * Channels still in use are closed when released.
+     */
+    @Override
+    public synchronized void close() {
+        bClosed = true;
+        List<Handle> list = new ArrayList<Handle>(handles.values());
+        handles.clear();
+        Handle handle;
+        for (int i=0; i<list.size(); ++i) {
+            handle = list.get(i);
+            handle.bEvicted = true;
+            if (handle.refs == 0) {
+                handle.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Open channel in the pool.
+     */
+    public static class Handle {
+
+        /** Pool key. */
+        protected final String key;
+
+        /** File the channel was obtained from. */
+        protected final RandomAccessFile raf;
+
+        /** Read-only channel. */
+        public final FileChannel channel;
+
+        /** Number of users. */
+        protected int refs;
+
+        /** Has the handle been removed from the pool. */
+        protected boolean bEvicted;
+
+        /**
+         * Construct a handle.
+         * @param key pool key
+         * @param raf file the channel is obtained from
+         */
+        protected Handle(String key, RandomAccessFile raf) {
+            this.key = key;
+            this.raf = raf;
+            this.channel = raf.getChannel();
+        }
+
+        /**
+         * Returns a boolean indicating whether the channel is still open.
+         * @return boolean indicating whether the channel is still open
+         */
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        /**
+         * Close the file ignoring exceptions.
+         */
+        protected void closeQuietly() {
+            try {
+                raf.close();
+            } catch (IOException e) { /* ignore */ }
+        }
+
+    }
+
+}
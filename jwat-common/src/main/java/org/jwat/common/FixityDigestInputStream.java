@@ -0,0 +1,226 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <code>InputStream</code> which computes one or more whole-file digests,
+ * e.g. for a fixity register, over the raw bytes read from the wrapped
+ * stream. The digests are available once the end of the stream has been
+ * reached, so fixity and validation can be done in one read.
+ *
+ * This stream must wrap the raw file stream, below any buffering and
+ * pushback streams. Bytes unread into a pushback stream above it are then
+ * never read from this stream again, so every byte is digested exactly
+ * once. For the same reason skipped bytes are read and digested, and
+ * mark/reset is not supported.
+ *
+ * @author nicl
+ */
+public class FixityDigestInputStream extends FilterInputStream {
+
+    /** Buffer size used to read skipped bytes and to drain the stream. */
+    public static final int SKIP_READ_BUFFER_SIZE = 8192;
+
+    /** Digest algorithms. */
+    protected final String[] algorithms;
+
+    /** Digests, one per algorithm. */
+    protected final MessageDigest[] mds;
+
+    /** Computed digests, one per algorithm, once the end has been reached. */
+    protected byte[][] digests;
+
+    /** Number of bytes digested. */
+    protected long length;
+
+    /** Has the end of the stream been reached. */
+    protected boolean bEof;
+
+    /** Buffer used to read skipped bytes. */
+    protected byte[] skip_read_buffer;
+
+    /** Small buffer used by the read() method. */
+    protected byte[] singleByteArray = new byte[1];
+
+    /**
+     * Construct a stream computing digests with the given algorithms.
+     * @param in raw input stream
+     * @param algorithms digest algorithms, e.g. "SHA-256"
+     * @throws NoSuchAlgorithmException if an algorithm is not supported
+     */
+    public FixityDigestInputStream(InputStream in, String... algorithms) throws NoSuchAlgorithmException {
+        super(in);
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The 'in' parameter is null!");
+        }
+        if (algorithms == null || algorithms.length == 0) {
+            throw new IllegalArgumentException(
+                    "The 'algorithms' parameter is null or empty!");
+        }
+        this.algorithms = algorithms.clone();
+        mds = new MessageDigest[algorithms.length];
+        for (int i=0; i<algorithms.length; ++i) {
+            if (algorithms[i] == null) {
+                throw new IllegalArgumentException(
+                        "The 'algorithms' parameter contains null!");
+            }
+            mds[i] = MessageDigest.getInstance(algorithms[i]);
+        }
+    }
+
+    /**
+     * Returns the digest algorithms.
+     * @return digest algorithms
+     */
+    public String[] getAlgorithms() {
+        return algorithms.clone();
+    }
+
+    /**
+     * Returns the number of bytes digested so far.
+     * @return number of bytes digested so far
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns a boolean indicating whether the end of the stream has been
+     * reached and the digests are available.
+     * @return a boolean indicating whether the digests are available
+     */
+    public boolean isEof() {
+        return bEof;
+    }
+
+    /**
+     * Returns the digest computed with the given algorithm, or null if the
+     * end of the stream has not been reached yet.
+     * @param algorithm digest algorithm given to the constructor
+     * @return digest of all the bytes in the stream or null
+     */
+    public byte[] getDigest(String algorithm) {
+        for (int i=0; i<algorithms.length; ++i) {
+            if (algorithms[i].equalsIgnoreCase(algorithm)) {
+                return getDigest(i);
+            }
+        }
+        throw new IllegalArgumentException(
+                "The 'algorithm' is not computed: " + algorithm);
+    }
+
+    /**
+     * Returns the digest computed with the algorithm at the given index, or
+     * null if the end of the stream has not been reached yet.
+     * @param index index of the digest algorithm given to the constructor
+     * @return digest of all the bytes in the stream or null
+     */
+    public byte[] getDigest(int index) {
+        if (!bEof) {
+            return null;
+        }
+        if (digests == null) {
+            digests = new byte[mds.length][];
+            for (int i=0; i<mds.length; ++i) {
+                digests[i] = mds[i].digest();
+            }
+        }
+        return digests[index].clone();
+    }
+
+    /**
+     * Read and digest the rest of the stream, e.g. trailing bytes a reader
+     * did not consume.
+     * @return number of bytes read
+     * @throws IOException if an i/o error occurs while reading
+     */
+    public long drain() throws IOException {
+        long drained = 0;
+        long skipped;
+        while ((skipped = skip(SKIP_READ_BUFFER_SIZE)) > 0) {
+            drained += skipped;
+        }
+        return drained;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark and reset not supported!");
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByteArray, 0, 1) != -1 ? (singleByteArray[0] & 255) : -1;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (bEof) {
+            return -1;
+        }
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            for (int i=0; i<mds.length; ++i) {
+                mds[i].update(b, off, read);
+            }
+            length += read;
+        } else if (read == -1) {
+            bEof = true;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (skip_read_buffer == null) {
+            skip_read_buffer = new byte[SKIP_READ_BUFFER_SIZE];
+        }
+        long skipped = 0;
+        int read;
+        while (skipped < n) {
+            read = read(skip_read_buffer, 0, (int)Math.min(n - skipped, skip_read_buffer.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+}
@@ -33,8 +33,8 @@ public class MaxLengthRecordingInputStream extends FilterInputStream {
     /** Buffer size to use when read skipping. */
     public static final int SKIP_READ_BUFFER_SIZE = 1024;
 
-    /** Read buffer used by the skip method. */
-    protected byte[] skip_read_buffer = new byte[SKIP_READ_BUFFER_SIZE];
+    /** Read buffer used by the skip method, allocated on first use. */
+    protected byte[] skip_read_buffer;
 
     /** Output stream used to keep a record of data read. */
     protected ByteArrayOutputStream record;
@@ -84,11 +84,11 @@ public class MaxLengthRecordingInputStream extends FilterInputStream {
     }
 
     @Override
-    public synchronized void mark(int readlimit) {
+    public void mark(int readlimit) {
     }
 
     @Override
-    public synchronized void reset() throws IOException {
+    public void reset() throws IOException {
         throw new UnsupportedOperationException();
     }
 
@@ -127,6 +127,9 @@ public class MaxLengthRecordingInputStream extends FilterInputStream {
     public long skip(long n) throws IOException {
         long bytesSkipped = 0;
         if (available > 0) {
+            if (skip_read_buffer == null) {
+                skip_read_buffer = new byte[SKIP_READ_BUFFER_SIZE];
+            }
             bytesSkipped = read(skip_read_buffer, 0, (int) Math.min(
                             Math.min(n, available), SKIP_READ_BUFFER_SIZE));
             if (bytesSkipped == -1) {
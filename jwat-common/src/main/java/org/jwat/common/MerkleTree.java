@@ -0,0 +1,216 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary hash tree over a list of leaf digests, e.g. the digests of the raw
+ * bytes of each record in an archive file. Any leaf can be verified against
+ * the root using a proof path of about log2(n) sibling hashes, so a subset
+ * of the leaves can be checked without the others.
+ *
+ * Leaf and interior node hashes are domain separated as in RFC 6962: a
+ * leaf hashes to H(0x00 || digest) and a node to H(0x01 || left || right).
+ * On a level with an odd number of nodes the last node is promoted to the
+ * next level unchanged. The root of an empty tree is H().
+ *
+ * Instances are immutable and thread-safe.
+ *
+ * @author nicl
+ */
+public class MerkleTree {
+
+    /** Prefix of leaf hashes. */
+    public static final byte LEAF_PREFIX = 0x00;
+
+    /** Prefix of interior node hashes. */
+    public static final byte NODE_PREFIX = 0x01;
+
+    /** Digest algorithm. */
+    protected final String algorithm;
+
+    /** Node hashes per level, leaf hashes first and the root last. */
+    protected final byte[][][] levels;
+
+    /**
+     * Build a tree over a list of leaf digests.
+     * @param algorithm digest algorithm used for the tree hashes
+     * @param leaves leaf digests
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public MerkleTree(String algorithm, List<byte[]> leaves) throws NoSuchAlgorithmException {
+        if (algorithm == null) {
+            throw new IllegalArgumentException(
+                    "The 'algorithm' parameter is null!");
+        }
+        if (leaves == null) {
+            throw new IllegalArgumentException(
+                    "The 'leaves' parameter is null!");
+        }
+        this.algorithm = algorithm;
+        MessageDigest md = MessageDigest.getInstance(algorithm);
+        int depth = 1;
+        for (int n=leaves.size(); n>1; n=(n + 1) / 2) {
+            ++depth;
+        }
+        levels = new byte[depth][][];
+        byte[][] level = new byte[leaves.size()][];
+        for (int i=0; i<level.length; ++i) {
+            level[i] = hashLeaf(md, leaves.get(i));
+        }
+        levels[0] = level;
+        for (int d=1; d<depth; ++d) {
+            byte[][] prev = levels[d - 1];
+            level = new byte[(prev.length + 1) / 2][];
+            for (int i=0; i<level.length; ++i) {
+                if (2 * i + 1 < prev.length) {
+                    level[i] = hashNode(md, prev[2 * i], prev[2 * i + 1]);
+                } else {
+                    level[i] = prev[2 * i];
+                }
+            }
+            levels[d] = level;
+        }
+    }
+
+    /**
+     * Returns the digest algorithm used for the tree hashes.
+     * @return digest algorithm used for the tree hashes
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the number of leaves.
+     * @return number of leaves
+     */
+    public int getLeafCount() {
+        return levels[0].length;
+    }
+
+    /**
+     * Returns the root hash.
+     * @return root hash
+     */
+    public byte[] getRoot() {
+        if (levels[0].length == 0) {
+            try {
+                return MessageDigest.getInstance(algorithm).digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return levels[levels.length - 1][0].clone();
+    }
+
+    /**
+     * Returns the proof path of a leaf: the sibling hashes from the leaf
+     * level up to, but excluding, the root.
+     * @param index leaf index
+     * @return proof path of the leaf
+     */
+    public byte[][] getProof(int index) {
+        if (index < 0 || index >= levels[0].length) {
+            throw new IndexOutOfBoundsException("Leaf index out of range: " + index);
+        }
+        byte[][] proof = new byte[levels.length][];
+        int len = 0;
+        int sibling;
+        for (int d=0; d<levels.length - 1; ++d) {
+            sibling = index ^ 1;
+            if (sibling < levels[d].length) {
+                proof[len++] = levels[d][sibling].clone();
+            }
+            index >>= 1;
+        }
+        return Arrays.copyOf(proof, len);
+    }
+
+    /**
+     * Verify a leaf digest against a root using its proof path.
+     * @param algorithm digest algorithm used for the tree hashes
+     * @param leaf leaf digest
+     * @param index leaf index
+     * @param leafCount number of leaves in the tree
+     * @param proof proof path of the leaf
+     * @param root root hash
+     * @return boolean indicating whether the leaf belongs to the tree
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public static boolean verify(String algorithm, byte[] leaf, int index, int leafCount,
+            byte[][] proof, byte[] root) throws NoSuchAlgorithmException {
+        if (leaf == null || proof == null || root == null) {
+            throw new IllegalArgumentException(
+                    "The 'leaf', 'proof' or 'root' parameter is null!");
+        }
+        if (index < 0 || index >= leafCount) {
+            return false;
+        }
+        MessageDigest md = MessageDigest.getInstance(algorithm);
+        byte[] hash = hashLeaf(md, leaf);
+        int p = 0;
+        for (int n=leafCount; n>1; n=(n + 1) / 2) {
+            if ((index ^ 1) < n) {
+                if (p == proof.length) {
+                    return false;
+                }
+                if ((index & 1) == 0) {
+                    hash = hashNode(md, hash, proof[p++]);
+                } else {
+                    hash = hashNode(md, proof[p++], hash);
+                }
+            }
+            index >>= 1;
+        }
+        return p == proof.length && MessageDigest.isEqual(hash, root);
+    }
+
+    /**
+     * Hash a leaf digest.
+     * @param md message digest
+     * @param leaf leaf digest
+     * @return leaf hash
+     */
+    protected static byte[] hashLeaf(MessageDigest md, byte[] leaf) {
+        md.reset();
+        md.update(LEAF_PREFIX);
+        md.update(leaf);
+        return md.digest();
+    }
+
+    /**
+     * Hash two child node hashes.
+     * @param md message digest
+     * @param left left child hash
+     * @param right right child hash
+     * @return node hash
+     */
+    protected static byte[] hashNode(MessageDigest md, byte[] left, byte[] right) {
+        md.reset();
+        md.update(NODE_PREFIX);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+
+}
@@ -17,7 +17,6 @@
  */
 package org.jwat.common;
 
-import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -60,7 +59,7 @@ public class Payload implements Closeable {
     protected boolean bNoSuchAlgorithmException;
 
     /** Payload content. */
-    protected BufferedInputStream in_buffered;
+    protected BufferedInputStreamNoLock in_buffered;
 
     /** Pushback input stream exposed to the outside, usable by payload processors. */
     protected ByteCountingPushBackInputStream in_pb_exposed;
@@ -123,9 +122,9 @@ public class Payload implements Closeable {
         }
         if (pl.md != null) {
             pl.in_digest = new DigestInputStreamNoSkip(pl.in_fl, pl.md);
-            pl.in_buffered = new BufferedInputStream(pl.in_digest, BUFFER_SIZE);
+            pl.in_buffered = new BufferedInputStreamNoLock(pl.in_digest, BUFFER_SIZE);
         } else {
-            pl.in_buffered = new BufferedInputStream(pl.in_fl, BUFFER_SIZE);
+            pl.in_buffered = new BufferedInputStreamNoLock(pl.in_fl, BUFFER_SIZE);
         }
         /*
          * Ensure close() is not called on the payload stream!
@@ -0,0 +1,321 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Incremental block and payload digester for record blocks being written.
+ * The block digest covers all bytes. The payload digest covers the bytes
+ * after a leading HTTP header, which is detected while the block streams
+ * through: bytes are kept until the empty line ending the header has been
+ * seen, then the header is validated by <code>HttpHeader</code> the same
+ * way a reader would, and the payload digest starts right after it. The
+ * payload start may instead be marked explicitly.
+ *
+ * If the header is invalid, or longer than the maximum header size, no
+ * payload digest is computed, as a reader would not find a payload either.
+ *
+ * Instances may be reused by calling <code>reset()</code> and are not
+ * thread-safe.
+ *
+ * @author nicl
+ */
+public class PayloadDigester {
+
+    /** Default maximum HTTP header size, same as the readers default. */
+    public static final int DEFAULT_MAX_HEADER_SIZE = 32768;
+
+    /** Payload start not known yet, collecting header bytes. */
+    protected static final int S_HEADER = 0;
+
+    /** Digesting payload bytes. */
+    protected static final int S_PAYLOAD = 1;
+
+    /** No payload, only the block is digested. */
+    protected static final int S_NO_PAYLOAD = 2;
+
+    /** Block digest algorithm or null. */
+    protected final String blockDigestAlgorithm;
+
+    /** Payload digest algorithm or null. */
+    protected final String payloadDigestAlgorithm;
+
+    /** Block digest or null. */
+    protected final MessageDigest blockMd;
+
+    /** Payload digest or null. */
+    protected final MessageDigest payloadMd;
+
+    /** Maximum HTTP header size. */
+    protected int maxHeaderSize = DEFAULT_MAX_HEADER_SIZE;
+
+    /** HTTP header type to detect or 0 if the payload start is marked explicitly. */
+    protected int httpHeaderType;
+
+    /** Current state. */
+    protected int state;
+
+    /** Header bytes collected so far. */
+    protected final ByteArrayOutputStream headerBuf = new ByteArrayOutputStream();
+
+    /** Newline state, 1 after a LF and 2 after a LF followed by a CR. */
+    protected int nlState;
+
+    /** Number of bytes digested. */
+    protected long length;
+
+    /** Offset of the payload or -1. */
+    protected long payloadOffset;
+
+    /** Validated HTTP header or null. */
+    protected HttpHeader httpHeader;
+
+    /** Computed block digest. */
+    protected byte[] blockDigest;
+
+    /** Computed payload digest. */
+    protected byte[] payloadDigest;
+
+    /** Is the digester finished. */
+    protected boolean bFinished;
+
+    /**
+     * Construct a digester with the given algorithms.
+     * @param blockDigestAlgorithm block digest algorithm, e.g. "sha1", or null
+     * @param payloadDigestAlgorithm payload digest algorithm or null
+     * @throws NoSuchAlgorithmException if an algorithm is not supported
+     */
+    public PayloadDigester(String blockDigestAlgorithm, String payloadDigestAlgorithm) throws NoSuchAlgorithmException {
+        this.blockDigestAlgorithm = blockDigestAlgorithm;
+        this.payloadDigestAlgorithm = payloadDigestAlgorithm;
+        blockMd = blockDigestAlgorithm != null ? MessageDigest.getInstance(blockDigestAlgorithm) : null;
+        payloadMd = payloadDigestAlgorithm != null ? MessageDigest.getInstance(payloadDigestAlgorithm) : null;
+        reset(0);
+    }
+
+    /**
+     * Set the maximum HTTP header size.
+     * @param size maximum HTTP header size
+     */
+    public void setMaxHeaderSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'size' is not positive: " + size);
+        }
+        maxHeaderSize = size;
+    }
+
+    /**
+     * Prepare for a new block.
+     * @param httpHeaderType <code>HttpHeader.HT_RESPONSE</code> or
+     * <code>HttpHeader.HT_REQUEST</code> to detect a HTTP header, or 0 to
+     * compute a payload digest only if the start is marked explicitly
+     */
+    public void reset(int httpHeaderType) {
+        if (httpHeaderType != 0 && httpHeaderType != HttpHeader.HT_RESPONSE
+                && httpHeaderType != HttpHeader.HT_REQUEST) {
+            throw new IllegalArgumentException(
+                    "Invalid 'httpHeaderType' argument: " + httpHeaderType);
+        }
+        this.httpHeaderType = httpHeaderType;
+        state = httpHeaderType != 0 ? S_HEADER : S_NO_PAYLOAD;
+        headerBuf.reset();
+        nlState = 0;
+        length = 0;
+        payloadOffset = -1;
+        httpHeader = null;
+        blockDigest = null;
+        payloadDigest = null;
+        bFinished = false;
+        if (blockMd != null) {
+            blockMd.reset();
+        }
+        if (payloadMd != null) {
+            payloadMd.reset();
+        }
+    }
+
+    /**
+     * Mark the current position as the start of the payload, disabling
+     * HTTP header detection.
+     */
+    public void markPayloadStart() {
+        if (payloadOffset == -1) {
+            payloadOffset = length;
+            state = S_PAYLOAD;
+            headerBuf.reset();
+        }
+    }
+
+    /**
+     * Digest a part of the block.
+     * @param b byte array
+     * @param off offset of the data
+     * @param len length of the data
+     */
+    public void update(byte[] b, int off, int len) {
+        if (bFinished) {
+            throw new IllegalStateException("Digest already computed");
+        }
+        if (blockMd != null) {
+            blockMd.update(b, off, len);
+        }
+        length += len;
+        if (state == S_PAYLOAD) {
+            if (payloadMd != null) {
+                payloadMd.update(b, off, len);
+            }
+        } else if (state == S_HEADER) {
+            int end = off + len;
+            int i = off;
+            while (i < end && state == S_HEADER) {
+                byte c = b[i++];
+                if (c == '\n') {
+                    if (nlState != 0) {
+                        headerBuf.write(b, off, i - off);
+                        off = i;
+                        headerEnd(headerBuf.size());
+                    } else {
+                        nlState = 1;
+                    }
+                } else if (c == '\r' && nlState == 1) {
+                    nlState = 2;
+                } else {
+                    nlState = 0;
+                }
+            }
+            if (state == S_HEADER) {
+                if (headerBuf.size() + (end - off) > maxHeaderSize) {
+                    state = S_NO_PAYLOAD;
+                    headerBuf.reset();
+                } else {
+                    headerBuf.write(b, off, end - off);
+                }
+            } else if (state == S_PAYLOAD && payloadMd != null) {
+                payloadMd.update(b, off, end - off);
+            }
+        }
+    }
+
+    /**
+     * Validate the collected header and start the payload after it.
+     * @param payloadLength length passed to the header parser, which
+     * accepts a header without an empty line if it spans the whole block
+     */
+    protected void headerEnd(long payloadLength) {
+        byte[] bytes = headerBuf.toByteArray();
+        headerBuf.reset();
+        HttpHeader hh = null;
+        try {
+            hh = HttpHeader.processPayload(httpHeaderType,
+                    new ByteCountingPushBackInputStream(new ByteArrayInputStream(bytes), maxHeaderSize),
+                    payloadLength, null);
+        } catch (IOException e) {
+            // Reading from a byte array does not fail.
+        }
+        if (hh != null && hh.isValid() && hh.getHeader().length == bytes.length) {
+            httpHeader = hh;
+            payloadOffset = bytes.length;
+            state = S_PAYLOAD;
+        } else {
+            state = S_NO_PAYLOAD;
+        }
+    }
+
+    /**
+     * Finish digesting the block. Called implicitly by the digest getters.
+     */
+    public void finish() {
+        if (!bFinished) {
+            if (state == S_HEADER && headerBuf.size() > 0) {
+                headerEnd(headerBuf.size());
+            }
+            bFinished = true;
+            if (blockMd != null) {
+                blockDigest = blockMd.digest();
+            }
+            if (payloadMd != null && state == S_PAYLOAD) {
+                payloadDigest = payloadMd.digest();
+            }
+        }
+    }
+
+    /**
+     * Returns the block digest algorithm.
+     * @return block digest algorithm or null
+     */
+    public String getBlockDigestAlgorithm() {
+        return blockDigestAlgorithm;
+    }
+
+    /**
+     * Returns the payload digest algorithm.
+     * @return payload digest algorithm or null
+     */
+    public String getPayloadDigestAlgorithm() {
+        return payloadDigestAlgorithm;
+    }
+
+    /**
+     * Returns the number of bytes digested.
+     * @return number of bytes digested
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the offset of the payload.
+     * @return offset of the payload or -1 if not known
+     */
+    public long getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    /**
+     * Returns the detected HTTP header.
+     * @return detected HTTP header or null
+     */
+    public HttpHeader getHttpHeader() {
+        return httpHeader;
+    }
+
+    /**
+     * Returns the block digest, finishing the digester.
+     * @return block digest or null if not enabled
+     */
+    public byte[] getBlockDigest() {
+        finish();
+        return blockDigest;
+    }
+
+    /**
+     * Returns the payload digest, finishing the digester.
+     * @return payload digest or null if not enabled or there is no payload
+     */
+    public byte[] getPayloadDigest() {
+        finish();
+        return payloadDigest;
+    }
+
+}
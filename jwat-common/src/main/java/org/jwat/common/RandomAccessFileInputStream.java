@@ -61,7 +61,7 @@ public class RandomAccessFileInputStream extends InputStream {
     }
 
     @Override
-    public synchronized void mark(int readlimit) {
+    public void mark(int readlimit) {
         try {
             mark_position = raf.getFilePointer();
         } catch (IOException e) {
@@ -70,7 +70,7 @@ public class RandomAccessFileInputStream extends InputStream {
     }
 
     @Override
-    public synchronized void reset() throws IOException {
+    public void reset() throws IOException {
         if (mark_position == -1) {
             throw new IOException("Mark not set or is invalid");
         }
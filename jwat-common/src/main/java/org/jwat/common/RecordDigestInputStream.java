@@ -0,0 +1,242 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <code>InputStream</code> which computes a digest of the raw bytes of each
+ * record, e.g. for Merkle tree leaves, while the bytes are read from the
+ * wrapped stream. Records are delimited by calling
+ * <code>digestRecord</code> with the end offset of each record once the
+ * reader knows it.
+ *
+ * Like <code>FixityDigestInputStream</code> this stream must wrap the raw
+ * file stream, below any buffering and pushback streams. Those streams read
+ * ahead of the record being parsed, so the last <code>windowSize</code>
+ * bytes read are kept undigested until a record end is known. The window
+ * must be at least the total size of the buffers above this stream.
+ * Skipped bytes are read and digested and mark/reset is not supported.
+ *
+ * @author nicl
+ */
+public class RecordDigestInputStream extends FilterInputStream {
+
+    /** Buffer size used to read skipped bytes. */
+    public static final int SKIP_READ_BUFFER_SIZE = 8192;
+
+    /** Digest algorithm. */
+    protected final String algorithm;
+
+    /** Digest of the current record. */
+    protected final MessageDigest md;
+
+    /** Ring buffer with the bytes read but not digested yet. */
+    protected final byte[] window;
+
+    /** Index of the oldest undigested byte in the window. */
+    protected int windowPos;
+
+    /** Number of undigested bytes in the window. */
+    protected int windowLen;
+
+    /** Number of bytes read from the wrapped stream. */
+    protected long position;
+
+    /** Offset where the current record digest starts. */
+    protected long recordStart;
+
+    /** Buffer used to read skipped bytes. */
+    protected byte[] skip_read_buffer;
+
+    /** Small buffer used by the read() method. */
+    protected byte[] singleByteArray = new byte[1];
+
+    /**
+     * Construct a stream computing record digests with the given algorithm.
+     * @param in raw input stream
+     * @param algorithm digest algorithm, e.g. "SHA-256"
+     * @param windowSize maximum number of bytes read ahead by the streams
+     * above this stream
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public RecordDigestInputStream(InputStream in, String algorithm, int windowSize) throws NoSuchAlgorithmException {
+        super(in);
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The 'in' parameter is null!");
+        }
+        if (algorithm == null) {
+            throw new IllegalArgumentException(
+                    "The 'algorithm' parameter is null!");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'windowSize' is less than or equal to zero: " + windowSize);
+        }
+        this.algorithm = algorithm;
+        md = MessageDigest.getInstance(algorithm);
+        window = new byte[windowSize];
+    }
+
+    /**
+     * Returns the digest algorithm.
+     * @return digest algorithm
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the number of bytes read from the wrapped stream.
+     * @return number of bytes read from the wrapped stream
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the offset where the current record digest starts, i.e. the
+     * end of the previous record.
+     * @return offset where the current record digest starts
+     */
+    public long getRecordStart() {
+        return recordStart;
+    }
+
+    /**
+     * End the current record and return the digest of its raw bytes, from
+     * the end of the previous record up to the given offset. The next record
+     * starts at the given offset.
+     * @param end offset following the last byte of the record
+     * @return digest of the raw bytes of the record
+     * @throws IllegalStateException if the end offset is not within the window
+     */
+    public byte[] digestRecord(long end) {
+        long undigested = position - windowLen;
+        if (end < undigested || end > position) {
+            throw new IllegalStateException(
+                    "Record end outside the read window: " + end);
+        }
+        digestWindow((int)(end - undigested));
+        recordStart = end;
+        return md.digest();
+    }
+
+    /**
+     * Digest the oldest bytes of the window.
+     * @param len number of bytes to digest
+     */
+    protected void digestWindow(int len) {
+        int chunk;
+        while (len > 0) {
+            chunk = Math.min(len, window.length - windowPos);
+            md.update(window, windowPos, chunk);
+            windowPos = (windowPos + chunk) % window.length;
+            windowLen -= chunk;
+            len -= chunk;
+        }
+    }
+
+    /**
+     * Add bytes read to the window, digesting the bytes which no longer fit.
+     * @param b byte array
+     * @param off offset of the bytes
+     * @param len number of bytes
+     */
+    protected void append(byte[] b, int off, int len) {
+        int overflow = windowLen + len - window.length;
+        if (overflow > 0) {
+            if (overflow > windowLen) {
+                overflow -= windowLen;
+                digestWindow(windowLen);
+                md.update(b, off, overflow);
+                off += overflow;
+                len -= overflow;
+            } else {
+                digestWindow(overflow);
+            }
+        }
+        int idx;
+        int chunk;
+        while (len > 0) {
+            idx = (windowPos + windowLen) % window.length;
+            chunk = Math.min(len, window.length - idx);
+            System.arraycopy(b, off, window, idx, chunk);
+            windowLen += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark and reset not supported!");
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByteArray, 0, 1) != -1 ? (singleByteArray[0] & 255) : -1;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+            append(b, off, read);
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (skip_read_buffer == null) {
+            skip_read_buffer = new byte[SKIP_READ_BUFFER_SIZE];
+        }
+        long skipped = 0;
+        int read;
+        while (skipped < n) {
+            read = read(skip_read_buffer, 0, (int)Math.min(n - skipped, skip_read_buffer.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.IOException;
+
+/**
+ * Callback which handles archive records one at a time, e.g. when records
+ * of a file are read in parallel.
+ *
+ * @param <R> record type
+ * @author nicl
+ */
+public interface RecordHandler<R> {
+
+    /**
+     * Handle a record. The record, including its payload, can only be read
+     * during the call.
+     * @param record archive record
+     * @throws IOException if an i/o exception occurs while handling the record
+     */
+    void handleRecord(R record) throws IOException;
+
+}
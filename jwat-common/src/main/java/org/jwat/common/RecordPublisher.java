@@ -0,0 +1,336 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the records of an archive reader, and optionally their payload
+ * in chunks, to a single <code>RecordSubscriber</code> with demand driven
+ * back pressure. Records are only read when the subscriber has requested
+ * them and reading is done on a caller supplied <code>Executor</code>. No
+ * thread is held while there is no demand, so many archives can be
+ * published using a small thread pool.
+ *
+ * Exceptions thrown while reading are delivered to the subscriber through
+ * <code>onError</code> and the reader is closed. The reader is also closed
+ * on completion and cancellation.
+ *
+ * @param <R> record type
+ * @author nicl
+ */
+public abstract class RecordPublisher<R> {
+
+    /** Default maximum size of payload chunks. */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /** Executor used to read records and deliver signals. */
+    protected final Executor executor;
+
+    /** Maximum size of payload chunks. */
+    protected int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /** Deliver payload chunks to the subscriber. */
+    protected boolean bPayloadChunks = true;
+
+    /** Has a subscriber been accepted. */
+    protected final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /** The subscriber. */
+    protected RecordSubscriber<? super R> subscriber;
+
+    /** Outstanding demand. */
+    protected final AtomicLong requested = new AtomicLong();
+
+    /** Number of pending drain requests. */
+    protected final AtomicInteger wip = new AtomicInteger();
+
+    /** Has the subscription been cancelled. */
+    protected volatile boolean bCancelled;
+
+    /** Invalid request reported by the subscriber. */
+    protected volatile Throwable requestError;
+
+    /** Has <code>onSubscribe</code> been delivered. */
+    protected boolean bSubscribeSignalled;
+
+    /** Has a terminal state been reached. */
+    protected boolean bDone;
+
+    /** Current record. */
+    protected R record;
+
+    /** Payload stream of the current record or null. */
+    protected InputStream payloadIn;
+
+    /** Buffer used for payload chunks. */
+    protected byte[] chunkBuf;
+
+    /** Subscription handed to the subscriber. */
+    protected final RecordSubscription subscription = new RecordSubscription() {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException(
+                        "The 'n' is less than or equal to zero: " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+        @Override
+        public void cancel() {
+            bCancelled = true;
+            schedule();
+        }
+    };
+
+    /** Task which reads records and delivers signals. */
+    protected final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Construct a publisher which reads on the supplied executor.
+     * @param executor executor used to read records and deliver signals
+     */
+    protected RecordPublisher(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException(
+                    "The 'executor' is null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Set the maximum size of payload chunks. Must be called before
+     * subscribing.
+     * @param size maximum size of payload chunks
+     */
+    public void setChunkSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'size' is less than or equal to zero: " + size);
+        }
+        chunkSize = size;
+    }
+
+    /**
+     * Returns the maximum size of payload chunks.
+     * @return maximum size of payload chunks
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Enable or disable delivery of payload chunks. When disabled only
+     * records are delivered and payloads are skipped. Must be called before
+     * subscribing.
+     * @param enabled boolean indicating whether payload chunks are delivered
+     */
+    public void setPayloadChunksEnabled(boolean enabled) {
+        bPayloadChunks = enabled;
+    }
+
+    /**
+     * Returns a boolean indicating whether payload chunks are delivered.
+     * @return boolean indicating whether payload chunks are delivered
+     */
+    public boolean getPayloadChunksEnabled() {
+        return bPayloadChunks;
+    }
+
+    /**
+     * Subscribe to the records of this publisher. Only one subscriber is
+     * supported, others are rejected through <code>onError</code>.
+     * @param s subscriber
+     */
+    public void subscribe(final RecordSubscriber<? super R> s) {
+        if (s == null) {
+            throw new IllegalArgumentException(
+                    "The 's' is null");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    s.onSubscribe(new RecordSubscription() {
+                        @Override
+                        public void request(long n) {
+                        }
+                        @Override
+                        public void cancel() {
+                        }
+                    });
+                    s.onError(new IllegalStateException("Publisher only supports one subscriber"));
+                }
+            });
+            return;
+        }
+        subscriber = s;
+        chunkBuf = new byte[chunkSize];
+        schedule();
+    }
+
+    /**
+     * Make sure a drain task runs after this call.
+     */
+    protected void schedule() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(drainTask);
+        }
+    }
+
+    /**
+     * Deliver signals while there is demand. Only one thread drains at a
+     * time.
+     */
+    protected void drain() {
+        int missed = 1;
+        while (missed != 0) {
+            if (!bSubscribeSignalled) {
+                bSubscribeSignalled = true;
+                subscriber.onSubscribe(subscription);
+            }
+            if (!bDone) {
+                if (bCancelled) {
+                    done();
+                } else if (requestError != null) {
+                    done();
+                    subscriber.onError(requestError);
+                } else {
+                    try {
+                        while (!bDone && !bCancelled && requestError == null && requested.get() > 0) {
+                            emitNext();
+                        }
+                    } catch (IOException e) {
+                        done();
+                        subscriber.onError(e);
+                    } catch (RuntimeException e) {
+                        done();
+                        subscriber.onError(e);
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        }
+    }
+
+    /**
+     * Deliver the next signal.
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected void emitNext() throws IOException {
+        if (record == null) {
+            record = nextRecord();
+            if (record == null) {
+                done();
+                subscriber.onComplete();
+                return;
+            }
+            payloadIn = bPayloadChunks ? getPayloadStream(record) : null;
+            produced();
+            subscriber.onRecord(record);
+        } else {
+            int read = -1;
+            if (payloadIn != null) {
+                read = payloadIn.read(chunkBuf, 0, chunkBuf.length);
+            }
+            if (read == -1) {
+                R closedRecord = record;
+                record = null;
+                payloadIn = null;
+                closeRecord(closedRecord);
+                subscriber.onRecordClosed(closedRecord);
+            } else {
+                produced();
+                subscriber.onPayload(record, ByteBuffer.wrap(chunkBuf, 0, read));
+            }
+        }
+    }
+
+    /**
+     * Decrement demand unless it is unbounded.
+     */
+    protected void produced() {
+        if (requested.get() != Long.MAX_VALUE) {
+            requested.decrementAndGet();
+        }
+    }
+
+    /**
+     * Enter the terminal state and release the reader.
+     */
+    protected void done() {
+        bDone = true;
+        if (record != null) {
+            try {
+                closeRecord(record);
+            } catch (IOException e) { /* ignore */ }
+            record = null;
+            payloadIn = null;
+        }
+        closeSource();
+    }
+
+    /**
+     * Read the next record.
+     * @return next record or null if there are no more records
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected abstract R nextRecord() throws IOException;
+
+    /**
+     * Returns the stream used to read the payload of a record.
+     * @param record archive record
+     * @return payload stream or null if the record has no payload
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected abstract InputStream getPayloadStream(R record) throws IOException;
+
+    /**
+     * Close a record, which completes its validation.
+     * @param record archive record
+     * @throws IOException if an i/o exception occurs while closing
+     */
+    protected abstract void closeRecord(R record) throws IOException;
+
+    /**
+     * Close the reader.
+     */
+    protected abstract void closeSource();
+
+}
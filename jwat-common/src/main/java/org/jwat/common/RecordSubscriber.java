@@ -0,0 +1,76 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receiver of records and payload chunks from a <code>RecordPublisher</code>.
+ * Signals are delivered sequentially, never concurrently, on a thread from
+ * the executor supplied to the publisher.
+ *
+ * <code>onRecord</code> and <code>onPayload</code> are only delivered when
+ * requested through the subscription and each consumes one unit of demand.
+ * <code>onRecordClosed</code>, <code>onError</code> and
+ * <code>onComplete</code> do not require demand.
+ *
+ * @param <R> record type
+ * @author nicl
+ */
+public interface RecordSubscriber<R> {
+
+    /**
+     * Called once before any other signal.
+     * @param subscription subscription used to request signals
+     */
+    void onSubscribe(RecordSubscription subscription);
+
+    /**
+     * Called with the next record. Payload chunks, if requested, follow.
+     * @param record archive record
+     */
+    void onRecord(R record);
+
+    /**
+     * Called with the next chunk of the record payload. The buffer is only
+     * valid for the duration of the call.
+     * @param record archive record
+     * @param buffer payload chunk
+     */
+    void onPayload(R record, ByteBuffer buffer);
+
+    /**
+     * Called when the record has been read to the end and closed, so its
+     * validation results are final.
+     * @param record closed archive record
+     */
+    void onRecordClosed(R record);
+
+    /**
+     * Called when reading failed. No further signals are delivered.
+     * @param t cause of the failure
+     */
+    void onError(Throwable t);
+
+    /**
+     * Called when all records have been delivered. No further signals are
+     * delivered.
+     */
+    void onComplete();
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+/**
+ * Link between a <code>RecordPublisher</code> and its subscriber, used to
+ * signal demand or cancel the subscription.
+ *
+ * @author nicl
+ */
+public interface RecordSubscription {
+
+    /**
+     * Request up to <code>n</code> more records or payload chunks.
+     * Demand is accumulated until it reaches <code>Long.MAX_VALUE</code>.
+     * @param n number of additional signals requested, must be positive
+     */
+    void request(long n);
+
+    /**
+     * Cancel the subscription. No further signals are delivered, apart from
+     * one which may already be in progress, and the source is closed.
+     */
+    void cancel();
+
+}
@@ -0,0 +1,446 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Output stream buffering data of unknown length, e.g. a record block,
+ * until its length is known. Data is held in fixed size heap chunks up to
+ * a threshold and spilled to a temporary file beyond it, so the heap used
+ * per buffer is bounded by the threshold. Chunks are taken from, and
+ * returned to, a pool shared by all buffers.
+ *
+ * The length and optionally a block digest and a payload digest are
+ * computed by a <code>PayloadDigester</code> while the data is written. The
+ * payload digest covers the data after a HTTP header detected on the fly,
+ * or after the position where <code>markPayloadStart()</code> was called.
+ *
+ * Buffers may be reused by calling <code>reset()</code>, which like
+ * <code>close()</code> returns the chunks and deletes the temporary file.
+ * Instances are not thread-safe.
+ *
+ * @author nicl
+ */
+public class SpillBuffer extends OutputStream {
+
+    /** Size of heap chunks. */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /** Default size of data held in memory. */
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    /** Maximum number of free chunks kept in the pool. */
+    public static final int MAX_POOLED_CHUNKS = 256;
+
+    /** Free chunks shared by all buffers. */
+    protected static final ConcurrentLinkedQueue<byte[]> chunkPool = new ConcurrentLinkedQueue<byte[]>();
+
+    /** Number of free chunks in the pool. */
+    protected static final AtomicInteger pooledChunks = new AtomicInteger();
+
+    /** Size of data held in memory. */
+    protected int threshold = DEFAULT_THRESHOLD;
+
+    /** Directory for temporary files or null for the default. */
+    protected File tmpDirectory;
+
+    /** Heap chunks in use. */
+    protected final List<byte[]> chunks = new ArrayList<byte[]>();
+
+    /** Bytes used in the last chunk. */
+    protected int chunkPos = CHUNK_SIZE;
+
+    /** Temporary file or null if nothing has been spilled. */
+    protected File tmpFile;
+
+    /** Temporary file output stream while spilled. */
+    protected OutputStream tmpOut;
+
+    /** Number of bytes written. */
+    protected long length;
+
+    /** Block digest algorithm or null. */
+    protected String blockDigestAlgorithm;
+
+    /** Payload digest algorithm or null. */
+    protected String payloadDigestAlgorithm;
+
+    /** HTTP header type to detect or 0. */
+    protected int httpHeaderType;
+
+    /** Digester or null if no digests are enabled. */
+    protected PayloadDigester digester;
+
+    /** Single byte write buffer. */
+    protected final byte[] singleByte = new byte[1];
+
+    /** Is the buffer closed. */
+    protected boolean bClosed;
+
+    /**
+     * Set the size of data held in memory before spilling to a temporary
+     * file. The heap used is the threshold rounded up to whole chunks.
+     * @param size size of data held in memory
+     */
+    public void setThreshold(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException(
+                    "The 'size' is negative: " + size);
+        }
+        threshold = size;
+    }
+
+    /**
+     * Returns the size of data held in memory before spilling.
+     * @return size of data held in memory before spilling
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Set the directory used for temporary files.
+     * @param directory directory used for temporary files or null for the default
+     */
+    public void setTmpDirectory(File directory) {
+        tmpDirectory = directory;
+    }
+
+    /**
+     * Enable block digesting with the given algorithm, or disable it.
+     * Must be called before data is written.
+     * @param algorithm digest algorithm, e.g. "sha1", or null
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public void setBlockDigestAlgorithm(String algorithm) throws NoSuchAlgorithmException {
+        blockDigestAlgorithm = algorithm;
+        createDigester();
+    }
+
+    /**
+     * Returns the block digest algorithm.
+     * @return block digest algorithm or null
+     */
+    public String getBlockDigestAlgorithm() {
+        return blockDigestAlgorithm;
+    }
+
+    /**
+     * Enable payload digesting with the given algorithm, or disable it.
+     * Must be called before data is written.
+     * @param algorithm digest algorithm, e.g. "sha1", or null
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     */
+    public void setPayloadDigestAlgorithm(String algorithm) throws NoSuchAlgorithmException {
+        payloadDigestAlgorithm = algorithm;
+        createDigester();
+    }
+
+    /**
+     * Returns the payload digest algorithm.
+     * @return payload digest algorithm or null
+     */
+    public String getPayloadDigestAlgorithm() {
+        return payloadDigestAlgorithm;
+    }
+
+    /**
+     * Set the type of HTTP header detected at the start of the data, which
+     * is excluded from the payload digest. Must be called before data is
+     * written and is kept across resets.
+     * @param httpHeaderType <code>HttpHeader.HT_RESPONSE</code>,
+     * <code>HttpHeader.HT_REQUEST</code> or 0 for none
+     */
+    public void setHttpHeaderType(int httpHeaderType) {
+        this.httpHeaderType = httpHeaderType;
+        if (digester != null) {
+            digester.reset(httpHeaderType);
+        }
+    }
+
+    /**
+     * Create a digester for the current algorithms.
+     * @throws NoSuchAlgorithmException if an algorithm is not supported
+     */
+    protected void createDigester() throws NoSuchAlgorithmException {
+        if (blockDigestAlgorithm != null || payloadDigestAlgorithm != null) {
+            digester = new PayloadDigester(blockDigestAlgorithm, payloadDigestAlgorithm);
+            digester.reset(httpHeaderType);
+        } else {
+            digester = null;
+        }
+    }
+
+    /**
+     * Returns the digester used, e.g. to get the detected HTTP header.
+     * @return digester or null if no digests are enabled
+     */
+    public PayloadDigester getDigester() {
+        return digester;
+    }
+
+    /**
+     * Mark the current position as the start of the payload. Data written
+     * from now on is included in the payload digest.
+     */
+    public void markPayloadStart() {
+        if (digester != null) {
+            digester.markPayloadStart();
+        }
+    }
+
+    /**
+     * Returns the offset of the payload.
+     * @return offset of the payload or -1 if not known
+     */
+    public long getPayloadOffset() {
+        return digester != null ? digester.getPayloadOffset() : -1;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     * @return number of bytes written
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns a boolean indicating whether data has been spilled to a
+     * temporary file.
+     * @return boolean indicating whether data has been spilled
+     */
+    public boolean isSpilled() {
+        return tmpOut != null;
+    }
+
+    /**
+     * Returns the block digest of the data written. Writing more data after
+     * this call is not allowed.
+     * @return block digest or null if not enabled
+     */
+    public byte[] getBlockDigest() {
+        return digester != null ? digester.getBlockDigest() : null;
+    }
+
+    /**
+     * Returns the payload digest of the data written after the payload
+     * start. Writing more data after this call is not allowed.
+     * @return payload digest or null if not enabled or there is no payload
+     */
+    public byte[] getPayloadDigest() {
+        return digester != null ? digester.getPayloadDigest() : null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte)b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (bClosed) {
+            throw new IOException("Buffer closed");
+        }
+        if (digester != null) {
+            digester.update(b, off, len);
+        }
+        if (tmpOut == null && length + len > threshold) {
+            spill();
+        }
+        length += len;
+        if (tmpOut != null) {
+            tmpOut.write(b, off, len);
+            return;
+        }
+        while (len > 0) {
+            if (chunkPos == CHUNK_SIZE) {
+                chunks.add(takeChunk());
+                chunkPos = 0;
+            }
+            int n = Math.min(len, CHUNK_SIZE - chunkPos);
+            System.arraycopy(b, off, chunks.get(chunks.size() - 1), chunkPos, n);
+            chunkPos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Move the data held in memory to a temporary file.
+     * @throws IOException if an i/o exception occurs while spilling
+     */
+    protected void spill() throws IOException {
+        tmpFile = File.createTempFile("jwat-", ".spill", tmpDirectory);
+        tmpOut = new BufferedOutputStream(new FileOutputStream(tmpFile), CHUNK_SIZE);
+        long remaining = length;
+        for (int i=0; i<chunks.size(); ++i) {
+            int n = (int)Math.min(remaining, CHUNK_SIZE);
+            tmpOut.write(chunks.get(i), 0, n);
+            remaining -= n;
+        }
+        releaseChunks();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (tmpOut != null) {
+            tmpOut.flush();
+        }
+    }
+
+    /**
+     * Returns an input stream reading the data written so far.
+     * @return input stream reading the data written so far
+     * @throws IOException if an i/o exception occurs while opening the temporary file
+     */
+    public InputStream getInputStream() throws IOException {
+        if (tmpOut != null) {
+            tmpOut.flush();
+            return new FileInputStream(tmpFile);
+        }
+        List<InputStream> streams = new ArrayList<InputStream>();
+        long remaining = length;
+        for (int i=0; i<chunks.size(); ++i) {
+            int n = (int)Math.min(remaining, CHUNK_SIZE);
+            streams.add(new ByteArrayInputStream(chunks.get(i), 0, n));
+            remaining -= n;
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * Copy the data written so far to an output stream. Spilled data is
+     * copied with <code>FileChannel.transferTo</code>.
+     * @param out output stream to copy to
+     * @return number of bytes copied
+     * @throws IOException if an i/o exception occurs while copying
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        if (tmpOut != null) {
+            tmpOut.flush();
+            FileInputStream in = new FileInputStream(tmpFile);
+            try {
+                FileChannel channel = in.getChannel();
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = 0;
+                while (position < length) {
+                    long transferred = channel.transferTo(position, length - position, target);
+                    if (transferred <= 0) {
+                        throw new IOException("Temporary file truncated at " + position + " bytes");
+                    }
+                    position += transferred;
+                }
+            } finally {
+                in.close();
+            }
+            return length;
+        }
+        long remaining = length;
+        for (int i=0; i<chunks.size(); ++i) {
+            int n = (int)Math.min(remaining, CHUNK_SIZE);
+            out.write(chunks.get(i), 0, n);
+            remaining -= n;
+        }
+        return length;
+    }
+
+    /**
+     * Discard the data and digests so the buffer can be reused, deleting
+     * the temporary file. The digest algorithms are kept.
+     * @throws IOException if an i/o exception occurs while closing the temporary file
+     */
+    public void reset() throws IOException {
+        try {
+            if (tmpOut != null) {
+                tmpOut.close();
+            }
+        } finally {
+            tmpOut = null;
+            if (tmpFile != null) {
+                tmpFile.delete();
+                tmpFile = null;
+            }
+            releaseChunks();
+            length = 0;
+            if (digester != null) {
+                digester.reset(httpHeaderType);
+            }
+        }
+    }
+
+    /**
+     * Return the chunks in use to the pool.
+     */
+    protected void releaseChunks() {
+        for (int i=0; i<chunks.size(); ++i) {
+            if (pooledChunks.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+                chunkPool.offer(chunks.get(i));
+            } else {
+                pooledChunks.decrementAndGet();
+            }
+        }
+        chunks.clear();
+        chunkPos = CHUNK_SIZE;
+    }
+
+    /**
+     * Take a chunk from the pool or allocate a new one.
+     * @return free chunk
+     */
+    protected static byte[] takeChunk() {
+        byte[] chunk = chunkPool.poll();
+        if (chunk != null) {
+            pooledChunks.decrementAndGet();
+            return chunk;
+        }
+        return new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Release the chunks and delete the temporary file.
+     * @throws IOException if an i/o exception occurs while closing the temporary file
+     */
+    @Override
+    public void close() throws IOException {
+        if (!bClosed) {
+            bClosed = true;
+            reset();
+        }
+    }
+
+}
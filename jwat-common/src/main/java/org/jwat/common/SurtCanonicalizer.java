@@ -0,0 +1,477 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Canonicalizes URIs into SURT (Sort-friendly URI Reordering Transform)
+ * form, as used by wayback style CDX indexes. The canonicalizer works on
+ * the components of an already parsed <code>Uri</code> object and appends
+ * the result to a reusable <code>StringBuilder</code>.
+ *
+ * <pre>
+ * http://www.Example.com:80/Path?b=2&amp;a=1&amp;jsessionid=42
+ * com,example)/path?a=1&amp;b=2
+ * </pre>
+ *
+ * The individual canonicalization rules can be toggled using the public
+ * boolean fields. Instances keep internal buffers between calls and are
+ * therefore not thread-safe.
+ *
+ * @author nicl
+ */
+public class SurtCanonicalizer {
+
+    /** Session id query parameter names, compared case insensitively. */
+    public static final String[] SESSION_ID_PARAMETERS = {
+        "jsessionid",
+        "phpsessid",
+        "sid",
+        "sessionid",
+        "cfid",
+        "cftoken"
+    };
+
+    /** Session id query parameter name prefixes, compared case insensitively. */
+    public static final String[] SESSION_ID_PARAMETER_PREFIXES = {
+        "aspsessionid"
+    };
+
+    /** Lower case the path and query components. The host is always lower cased. */
+    public boolean bCaseFold = true;
+
+    /** Reverse the host labels, "www.example.com" becomes "com,example,www". */
+    public boolean bReverseHost = true;
+
+    /** Strip a leading "www" or "www" followed by digits label from the host. */
+    public boolean bStripWww = true;
+
+    /** Leave out the scheme and produce the short key form "com,example)/". */
+    public boolean bStripScheme = true;
+
+    /** Leave out the port if it is the default port for the scheme. */
+    public boolean bStripDefaultPort = true;
+
+    /** Leave out the userinfo component. */
+    public boolean bStripUserinfo = true;
+
+    /** Leave out the fragment component. */
+    public boolean bStripFragment = true;
+
+    /** Remove session id query parameters and ";jsessionid=" path parameters. */
+    public boolean bStripSessionIds = true;
+
+    /** Sort the query parameters. */
+    public boolean bSortQuery = true;
+
+    /** Profile used when canonicalizing URI strings. */
+    protected UriProfile uriProfile = UriProfile.RFC3986_ABS_16BIT_LAX;
+
+    /** Reusable URI validation result. */
+    protected UriValidation uriValidation = new UriValidation();
+
+    /** Reusable buffer used for the canonicalized string result. */
+    protected StringBuilder sbResult = new StringBuilder(256);
+
+    /** Reusable buffer used while canonicalizing a component. */
+    protected StringBuilder sbTmp = new StringBuilder(256);
+
+    /** Reusable list of query parameters. */
+    protected List<String> queryParams = new ArrayList<String>();
+
+    /**
+     * Construct a SURT canonicalizer with the default rules enabled.
+     */
+    public SurtCanonicalizer() {
+    }
+
+    /**
+     * Set the URI profile used by <code>canonicalize(String)</code>.
+     * @param uriProfile URI profile to use, null sets the default profile
+     */
+    public void setUriProfile(UriProfile uriProfile) {
+        if (uriProfile == null) {
+            uriProfile = UriProfile.RFC3986_ABS_16BIT_LAX;
+        }
+        this.uriProfile = uriProfile;
+    }
+
+    /**
+     * Get the URI profile used by <code>canonicalize(String)</code>.
+     * @return the URI profile used by <code>canonicalize(String)</code>
+     */
+    public UriProfile getUriProfile() {
+        return uriProfile;
+    }
+
+    /**
+     * Parse and canonicalize an URI string.
+     * @param uriStr URI string
+     * @return SURT form of the URI or null, if the URI is invalid
+     */
+    public String canonicalize(String uriStr) {
+        if (uriStr == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(uriStr, uriProfile, uriValidation);
+        if (uri == null) {
+            return null;
+        }
+        return canonicalize(uri);
+    }
+
+    /**
+     * Canonicalize an URI.
+     * @param uri parsed URI
+     * @return SURT form of the URI
+     */
+    public String canonicalize(Uri uri) {
+        sbResult.setLength(0);
+        canonicalize(uri, sbResult);
+        return sbResult.toString();
+    }
+
+    /**
+     * Canonicalize an URI and append the result to the supplied buffer.
+     * @param uri parsed URI
+     * @param sb buffer the SURT form is appended to
+     * @return the supplied buffer
+     */
+    public StringBuilder canonicalize(Uri uri, StringBuilder sb) {
+        String scheme = uri.getScheme();
+        if (scheme != null) {
+            scheme = scheme.toLowerCase();
+        }
+        String host = uri.getHost();
+        if (host == null) {
+            // Opaque or relative URIs have no host to reorder.
+            if (!bStripScheme && scheme != null) {
+                sb.append(scheme);
+                sb.append(':');
+            }
+            appendCase(uri.getRawSchemeSpecificPart(), sb);
+            appendFragment(uri, sb);
+            return sb;
+        }
+        if (!bStripScheme && scheme != null) {
+            sb.append(scheme);
+            sb.append("://(");
+        }
+        appendHost(host, sb);
+        int port = uri.getPort();
+        if (port != -1 && !(bStripDefaultPort && isDefaultPort(scheme, port))) {
+            sb.append(':');
+            sb.append(port);
+        }
+        if (!bStripUserinfo && uri.getRawUserInfo() != null) {
+            sb.append('@');
+            appendCase(uri.getRawUserInfo(), sb);
+        }
+        sb.append(')');
+        String path = uri.getRawPath();
+        if (path == null || path.length() == 0) {
+            sb.append('/');
+        } else {
+            if (bStripSessionIds) {
+                path = stripPathSessionId(path);
+            }
+            appendCase(path, sb);
+        }
+        String query = uri.getRawQuery();
+        if (query != null) {
+            appendQuery(query, sb);
+        }
+        appendFragment(uri, sb);
+        return sb;
+    }
+
+    /**
+     * Append the host, lower cased, optionally stripped of its www label
+     * and optionally reversed.
+     * @param host host component
+     * @param sb buffer to append to
+     */
+    protected void appendHost(String host, StringBuilder sb) {
+        int len = host.length();
+        // Strip a trailing dot.
+        if (len > 0 && host.charAt(len - 1) == '.') {
+            --len;
+        }
+        int start = 0;
+        if (bStripWww) {
+            start = wwwLabelLength(host, len);
+        }
+        if (!bReverseHost || isIpAddress(host, start, len)) {
+            appendLower(host, start, len, sb);
+            return;
+        }
+        int end = len;
+        int idx = len - 1;
+        boolean bFirst = true;
+        while (idx >= start) {
+            if (host.charAt(idx) == '.') {
+                if (!bFirst) {
+                    sb.append(',');
+                }
+                appendLower(host, idx + 1, end, sb);
+                bFirst = false;
+                end = idx;
+            }
+            --idx;
+        }
+        if (!bFirst) {
+            sb.append(',');
+        }
+        appendLower(host, start, end, sb);
+        if (!bStripScheme) {
+            sb.append(',');
+        }
+    }
+
+    /**
+     * Returns the length of a leading "www." or "www" + digits + "." label,
+     * or 0 if the host does not start with such a label or it is the only
+     * remaining label.
+     * @param host host component
+     * @param len length of host to consider
+     * @return length of the www label including the dot, or 0
+     */
+    protected static int wwwLabelLength(String host, int len) {
+        if (len < 4) {
+            return 0;
+        }
+        char c;
+        if (((c = host.charAt(0)) != 'w' && c != 'W')
+                || ((c = host.charAt(1)) != 'w' && c != 'W')
+                || ((c = host.charAt(2)) != 'w' && c != 'W')) {
+            return 0;
+        }
+        int idx = 3;
+        while (idx < len && (c = host.charAt(idx)) >= '0' && c <= '9') {
+            ++idx;
+        }
+        if (idx < len && host.charAt(idx) == '.' && host.indexOf('.', idx + 1) != -1) {
+            return idx + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a boolean indicating whether the host is an IP address, in
+     * which case it must not be reversed.
+     * @param host host component
+     * @param start start index
+     * @param end end index
+     * @return boolean indicating whether the host is an IP address
+     */
+    protected static boolean isIpAddress(String host, int start, int end) {
+        if (start < end && host.charAt(start) == '[') {
+            return true;
+        }
+        char c;
+        while (start < end) {
+            c = host.charAt(start++);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a boolean indicating whether the port is the default port for
+     * the scheme.
+     * @param scheme lower cased scheme or null
+     * @param port port number
+     * @return boolean indicating whether the port is the default port
+     */
+    protected static boolean isDefaultPort(String scheme, int port) {
+        if (scheme == null) {
+            return false;
+        }
+        if (port == 80) {
+            return "http".equals(scheme);
+        }
+        if (port == 443) {
+            return "https".equals(scheme);
+        }
+        if (port == 21) {
+            return "ftp".equals(scheme);
+        }
+        return false;
+    }
+
+    /**
+     * Remove ";jsessionid=..." path parameters from the path.
+     * @param path raw path component
+     * @return path without session id path parameters
+     */
+    protected String stripPathSessionId(String path) {
+        int idx = path.indexOf(';');
+        if (idx == -1) {
+            return path;
+        }
+        sbTmp.setLength(0);
+        int pIdx = 0;
+        int end;
+        while (idx != -1) {
+            end = idx + 1;
+            while (end < path.length() && path.charAt(end) != ';' && path.charAt(end) != '/') {
+                ++end;
+            }
+            if (isSessionIdParameter(path, idx + 1, end)) {
+                sbTmp.append(path, pIdx, idx);
+                pIdx = end;
+            }
+            idx = path.indexOf(';', end);
+        }
+        if (pIdx == 0) {
+            return path;
+        }
+        sbTmp.append(path, pIdx, path.length());
+        return sbTmp.toString();
+    }
+
+    /**
+     * Append the query component, optionally stripped of session id
+     * parameters and sorted. An empty query is omitted.
+     * @param query raw query component
+     * @param sb buffer to append to
+     */
+    protected void appendQuery(String query, StringBuilder sb) {
+        if (!bStripSessionIds && !bSortQuery) {
+            if (query.length() > 0) {
+                sb.append('?');
+                appendCase(query, sb);
+            }
+            return;
+        }
+        queryParams.clear();
+        int pIdx = 0;
+        int idx;
+        int len = query.length();
+        while (pIdx <= len) {
+            idx = query.indexOf('&', pIdx);
+            if (idx == -1) {
+                idx = len;
+            }
+            if (idx > pIdx && !(bStripSessionIds && isSessionIdParameter(query, pIdx, idx))) {
+                if (bCaseFold) {
+                    sbTmp.setLength(0);
+                    appendLower(query, pIdx, idx, sbTmp);
+                    queryParams.add(sbTmp.toString());
+                } else {
+                    queryParams.add(query.substring(pIdx, idx));
+                }
+            }
+            pIdx = idx + 1;
+        }
+        if (queryParams.size() == 0) {
+            return;
+        }
+        if (bSortQuery) {
+            Collections.sort(queryParams);
+        }
+        sb.append('?');
+        for (int i=0; i<queryParams.size(); ++i) {
+            if (i > 0) {
+                sb.append('&');
+            }
+            sb.append(queryParams.get(i));
+        }
+    }
+
+    /**
+     * Append the fragment component unless it is stripped.
+     * @param uri parsed URI
+     * @param sb buffer to append to
+     */
+    protected void appendFragment(Uri uri, StringBuilder sb) {
+        if (!bStripFragment && uri.getRawFragment() != null) {
+            sb.append('#');
+            appendCase(uri.getRawFragment(), sb);
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the "name=value" parameter in the
+     * given range is a session id.
+     * @param str string containing the parameter
+     * @param start start index of parameter
+     * @param end end index of parameter
+     * @return boolean indicating whether the parameter is a session id
+     */
+    protected static boolean isSessionIdParameter(String str, int start, int end) {
+        int eIdx = start;
+        while (eIdx < end && str.charAt(eIdx) != '=') {
+            ++eIdx;
+        }
+        int nameLen = eIdx - start;
+        String name;
+        for (int i=0; i<SESSION_ID_PARAMETERS.length; ++i) {
+            name = SESSION_ID_PARAMETERS[i];
+            if (name.length() == nameLen && str.regionMatches(true, start, name, 0, nameLen)) {
+                return true;
+            }
+        }
+        for (int i=0; i<SESSION_ID_PARAMETER_PREFIXES.length; ++i) {
+            name = SESSION_ID_PARAMETER_PREFIXES[i];
+            if (name.length() <= nameLen && str.regionMatches(true, start, name, 0, name.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Append a string, lower cased if case folding is enabled.
+     * @param str string to append
+     * @param sb buffer to append to
+     */
+    protected void appendCase(String str, StringBuilder sb) {
+        if (bCaseFold) {
+            appendLower(str, 0, str.length(), sb);
+        } else {
+            sb.append(str);
+        }
+    }
+
+    /**
+     * Append a range of characters lower cased.
+     * @param str string to append from
+     * @param start start index
+     * @param end end index
+     * @param sb buffer to append to
+     */
+    protected static void appendLower(String str, int start, int end, StringBuilder sb) {
+        char c;
+        while (start < end) {
+            c = str.charAt(start++);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            } else if (c > 127) {
+                c = Character.toLowerCase(c);
+            }
+            sb.append(c);
+        }
+    }
+
+}
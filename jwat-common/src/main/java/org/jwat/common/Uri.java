@@ -140,12 +140,49 @@ public class Uri implements Comparable<Uri> {
      * @throws URISyntaxException If the given string violates the profile
      */
     public Uri(String str, UriProfile uriProfile) throws URISyntaxException {
+        UriValidation validation = new UriValidation();
+        if (!parse_uri(str, uriProfile, validation)) {
+            throw validation.toException();
+        }
+    }
+
+    /**
+     * Parses the given string using the requested profile without throwing
+     * an exception if the string is invalid. Instead the supplied validation
+     * object is updated with a status code and the position of the error.
+     * @param str The string to be parsed into a URI
+     * @param uriProfile the requested profile
+     * @param validation validation result object, reset before use
+     * @return The new URI or null, if the given string violates the profile
+     */
+    public static Uri parse(String str, UriProfile uriProfile, UriValidation validation) {
+        validation.reset();
+        Uri uri = new Uri();
+        if (!uri.parse_uri(str, uriProfile, validation)) {
+            uri = null;
+        }
+        return uri;
+    }
+
+    /**
+     * Parse and validate an URI string.
+     * @param str URI string
+     * @param uriProfile the requested profile
+     * @param validation validation result object
+     * @return boolean indicating whether the URI is valid
+     */
+    protected boolean parse_uri(String str, UriProfile uriProfile, UriValidation validation) {
         this.uriProfile = uriProfile;
-        int idx = uriProfile.indexOf(UriProfile.B_GEN_DELIMS, str, 0);
+        int idx = uriProfile.indexOf(UriProfile.B_GEN_DELIMS, str, 0, validation);
+        if (validation.status != UriValidation.S_VALID) {
+            return false;
+        }
         if (idx != -1 && str.charAt(idx) == ':') {
             // Try validating as an absolute URI.
             scheme = str.substring(0, idx++);
-            validate_absoluteUri(str, idx);
+            if (!validate_absoluteUri(str, idx, validation)) {
+                return false;
+            }
             bAbsolute = true;
             if (schemeSpecificPart.length() > 0
                     && !schemeSpecificPart.startsWith("/")) {
@@ -153,28 +190,34 @@ public class Uri implements Comparable<Uri> {
             }
         } else {
             if (uriProfile.bAllowRelativeUris) {
-                validate_relativeUri(str, 0);
+                if (!validate_relativeUri(str, 0, validation)) {
+                    return false;
+                }
             } else {
-                throw new URISyntaxException(str, "Invalid URI - relative URIs not allowed");
+                return validation.setError(UriValidation.S_RELATIVE_NOT_ALLOWED, 0, str, null, (char) 0);
             }
         }
+        return true;
     }
 
     /**
      * Parse and validate an absolute URI string.
      * @param uriStr URI string
      * @param uIdx index in string after scheme colon character
-     * @throws URISyntaxException if the URI is invalid in some way
+     * @param validation validation result object
+     * @return boolean indicating whether the URI is valid
      */
-    protected void validate_absoluteUri(String uriStr, int uIdx) throws URISyntaxException {
+    protected boolean validate_absoluteUri(String uriStr, int uIdx, UriValidation validation) {
         // Scheme validation.
         if (scheme.length() > 0) {
             //scheme = scheme.toLowerCase();
-            uriProfile.validate_first_follow(scheme, UriProfile.B_SCHEME_FIRST, UriProfile.B_SCHEME_FOLLOW);
+            if (!uriProfile.validate_first_follow(scheme, UriProfile.B_SCHEME_FIRST, UriProfile.B_SCHEME_FOLLOW, validation, 0)) {
+                return false;
+            }
         } else {
-            throw new URISyntaxException(scheme, "Empty URI scheme component");
+            return validation.setError(UriValidation.S_EMPTY_SCHEME, 0, scheme, "scheme", (char) 0);
         }
-        validate_relativeUri(uriStr, uIdx);
+        return validate_relativeUri(uriStr, uIdx, validation);
     }
 
     /**
@@ -183,9 +226,10 @@ public class Uri implements Comparable<Uri> {
      * been identified.
      * @param uriStr URI string
      * @param uIdx index in string to start parsing from
-     * @throws URISyntaxException if the URI is invalid in some way
+     * @param validation validation result object
+     * @return boolean indicating whether the URI is valid
      */
-    protected void validate_relativeUri(String uriStr, int uIdx) throws URISyntaxException {
+    protected boolean validate_relativeUri(String uriStr, int uIdx, UriValidation validation) {
         // QueryRaw.
         int qfIdx = uriStr.length();
         int qIdx = uriStr.indexOf('?', uIdx);
@@ -211,14 +255,20 @@ public class Uri implements Comparable<Uri> {
         }
         // HierPartRaw / AuthorityRaw / PathRaw.
         hierPartRaw = uriStr.substring(uIdx, qfIdx);
+        // Offsets of the raw components in the URI string, used to report
+        // the position of validation errors.
+        int aOffset = uIdx + 2;
+        int pOffset = uIdx;
         if (hierPartRaw.startsWith("//")) {
             int pIdx = hierPartRaw.indexOf('/', 2);
             if (pIdx != -1) {
                 authorityRaw = hierPartRaw.substring(2, pIdx);
                 pathRaw = hierPartRaw.substring(pIdx);
+                pOffset = uIdx + pIdx;
             } else {
                 authorityRaw = hierPartRaw.substring(2);
                 pathRaw = "";
+                pOffset = qfIdx;
             }
         } else {
             pathRaw = hierPartRaw;
@@ -238,6 +288,7 @@ public class Uri implements Comparable<Uri> {
             } else {
                 aIdx = 0;
             }
+            int portOffset = -1;
             // Host / PortRaw.
             if (aIdx < authorityRaw.length() && authorityRaw.charAt(aIdx) == '[') {
                 // ipv6 or new address type.
@@ -249,12 +300,13 @@ public class Uri implements Comparable<Uri> {
                     if (bIdx < authorityRaw.length()) {
                         if (authorityRaw.charAt(bIdx++) == ':') {
                             portRaw = authorityRaw.substring(bIdx);
+                            portOffset = aOffset + bIdx;
                         } else {
-                            throw new URISyntaxException(authorityRaw, "Invalid URI authority/port component - expected a ':'");
+                            return validation.setError(UriValidation.S_AUTHORITY_EXPECTED_COLON, aOffset + bIdx - 1, authorityRaw, "authority", authorityRaw.charAt(bIdx - 1));
                         }
                     }
                 } else {
-                    throw new URISyntaxException(authorityRaw, "Invalid URI authority/host component - missing ']'");
+                    return validation.setError(UriValidation.S_AUTHORITY_MISSING_BRACKET, aOffset + aIdx, authorityRaw, "authority", '[');
                 }
             } else {
                 // ipv4 or hostname.
@@ -262,31 +314,34 @@ public class Uri implements Comparable<Uri> {
                 if (pIdx != -1) {
                     hostRaw = authorityRaw.substring(aIdx, pIdx++);
                     portRaw = authorityRaw.substring(pIdx);
+                    portOffset = aOffset + pIdx;
                 } else {
                     hostRaw = authorityRaw.substring(aIdx);
                     //portRaw = null;
                 }
-                host = uriProfile.validate_decode(UriProfile.B_REGNAME, "host", hostRaw);
+                host = uriProfile.validate_decode(UriProfile.B_REGNAME, "host", hostRaw, validation, aOffset + aIdx);
+                if (host == null) {
+                    return false;
+                }
             }
             // Userinfo validation.
             authority = "";
             if (userinfoRaw != null) {
-                userinfo = uriProfile.validate_decode(UriProfile.B_USERINFO, "userinfo", userinfoRaw);
+                userinfo = uriProfile.validate_decode(UriProfile.B_USERINFO, "userinfo", userinfoRaw, validation, aOffset);
+                if (userinfo == null) {
+                    return false;
+                }
                 authority += userinfo + '@';
             }
             authority += host;
             // Port validation.
             if (portRaw != null) {
                 if (portRaw.length() > 0) {
-                    try {
-                        port = Integer.parseInt(portRaw);
-                        if (port < 1 || port > 65535) {
-                            throw new URISyntaxException(portRaw, "Invalid URI port component - port is not within range [1-65535]");
-                        }
-                        authority += ':' + portRaw;
-                    } catch (NumberFormatException e) {
-                        throw new URISyntaxException(portRaw, "Invalid URI port component");
+                    port = parse_port(portRaw, portOffset, validation);
+                    if (port == -1) {
+                        return false;
                     }
+                    authority += ':' + portRaw;
                 } else {
                     authority += ':';
                 }
@@ -294,7 +349,10 @@ public class Uri implements Comparable<Uri> {
             schemeSpecificPart = "//" + authority;
             // Path validation (path-abempty).
             if (pathRaw.length() > 0) {
-                path = uriProfile.validate_decode(UriProfile.B_PATH, "path", pathRaw);
+                path = uriProfile.validate_decode(UriProfile.B_PATH, "path", pathRaw, validation, pOffset);
+                if (path == null) {
+                    return false;
+                }
             } else {
                 path = "";
             }
@@ -302,7 +360,10 @@ public class Uri implements Comparable<Uri> {
         } else {
             // Path validation (path-absolute / path-rootless / path-empty).
             if (pathRaw.length() > 0) {
-                path = uriProfile.validate_decode(UriProfile.B_PATH, "path", pathRaw);
+                path = uriProfile.validate_decode(UriProfile.B_PATH, "path", pathRaw, validation, pOffset);
+                if (path == null) {
+                    return false;
+                }
             } else {
                 path = "";
             }
@@ -310,13 +371,64 @@ public class Uri implements Comparable<Uri> {
         }
         // Query validation.
         if (queryRaw != null) {
-            query = uriProfile.validate_decode(UriProfile.B_QUERY, "query", queryRaw);
+            query = uriProfile.validate_decode(UriProfile.B_QUERY, "query", queryRaw, validation, qIdx);
+            if (query == null) {
+                return false;
+            }
             schemeSpecificPart += '?' + query;
         }
         // Fragment validation.
         if (fragmentRaw != null) {
-            fragment = uriProfile.validate_decode(UriProfile.B_FRAGMENT, "fragment", fragmentRaw);
+            fragment = uriProfile.validate_decode(UriProfile.B_FRAGMENT, "fragment", fragmentRaw, validation, fIdx);
+            if (fragment == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse and validate a port number without relying on
+     * <code>NumberFormatException</code>s.
+     * @param portStr port string
+     * @param offset offset of the port in the URI string
+     * @param validation validation result object
+     * @return port number or -1, if the port is invalid
+     */
+    protected static int parse_port(String portStr, int offset, UriValidation validation) {
+        int limit = portStr.length();
+        int pos = 0;
+        boolean bNegative = false;
+        char c = portStr.charAt(0);
+        if (c == '-' || c == '+') {
+            bNegative = (c == '-');
+            ++pos;
+            if (pos == limit) {
+                validation.setError(UriValidation.S_INVALID_PORT, offset, portStr, "port", c);
+                return -1;
+            }
+        }
+        long value = 0;
+        while (pos < limit) {
+            c = portStr.charAt(pos);
+            if (c < '0' || c > '9') {
+                validation.setError(UriValidation.S_INVALID_PORT, offset + pos, portStr, "port", c);
+                return -1;
+            }
+            if (value <= Integer.MAX_VALUE) {
+                value = value * 10 + (c - '0');
+            }
+            ++pos;
+        }
+        if (value > Integer.MAX_VALUE + (bNegative ? 1L : 0L)) {
+            validation.setError(UriValidation.S_INVALID_PORT, offset, portStr, "port", (char) 0);
+            return -1;
+        }
+        if (bNegative || value < 1 || value > 65535) {
+            validation.setError(UriValidation.S_PORT_RANGE, offset, portStr, "port", (char) 0);
+            return -1;
         }
+        return (int) value;
     }
 
     /**
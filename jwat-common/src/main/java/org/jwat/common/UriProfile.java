@@ -127,6 +127,28 @@ public class UriProfile {
      * is encountered
      */
     public int indexOf(int bw_and, String str, int pos) throws URISyntaxException {
+        UriValidation validation = new UriValidation();
+        pos = indexOf(bw_and, str, pos, validation);
+        if (validation.status != UriValidation.S_VALID) {
+            throw validation.toException();
+        }
+        return pos;
+    }
+
+    /**
+     * Given a collection of characters find the index of the first occurrence
+     * of any of the characters in the supplied string starting from a certain
+     * position. Instead of throwing an exception the validation object is
+     * updated if a character with a value larger than 255 is encountered.
+     * @param bw_and bits identifying one or more character categories
+     * @param str string to search through
+     * @param pos position to start searching from
+     * @param validation validation result object
+     * @return index of the first character in the string present in the
+     * character collection(s) or -1, check the validation object to
+     * distinguish between not found and invalid
+     */
+    public int indexOf(int bw_and, String str, int pos, UriValidation validation) {
         int limit = str.length();
         char c;
         while (pos < limit) {
@@ -137,7 +159,8 @@ public class UriProfile {
                 }
                 ++pos;
             } else {
-                throw new URISyntaxException(str, "Invalid URI character '" + c + "'");
+                validation.setError(UriValidation.S_INVALID_CHARACTER, pos, str, null, c);
+                return -1;
             }
         }
         return -1;
@@ -152,6 +175,24 @@ public class UriProfile {
      * @throws URISyntaxException if an error occurs parsing component
      */
     public void validate_first_follow(String str, int bw_and_first, int bw_and_follow) throws URISyntaxException {
+        UriValidation validation = new UriValidation();
+        if (!validate_first_follow(str, bw_and_first, bw_and_follow, validation, 0)) {
+            throw validation.toException();
+        }
+    }
+
+    /**
+     * Validate an URI component using two character categories. One category
+     * for the first character and another for the following characters.
+     * Instead of throwing an exception the validation object is updated.
+     * @param str URI component string
+     * @param bw_and_first bits identifying first character categories
+     * @param bw_and_follow bits identifying following character categories
+     * @param validation validation result object
+     * @param offset offset of the component in the URI string
+     * @return boolean indicating whether the component is valid
+     */
+    public boolean validate_first_follow(String str, int bw_and_first, int bw_and_follow, UriValidation validation, int offset) {
         int pos = 0;
         int limit = str.length();
         char c;
@@ -159,12 +200,13 @@ public class UriProfile {
             c = str.charAt(pos);
             // indexOf has ensured that the scheme does not have character values > 255.
             if (pos == 0 && ((charTypeMap[c] & UriProfile.B_SCHEME_FIRST) == 0)) {
-                throw new URISyntaxException(str, "Invalid URI scheme component");
+                return validation.setError(UriValidation.S_INVALID_SCHEME, offset + pos, str, "scheme", c);
             } else if ((charTypeMap[c] & UriProfile.B_SCHEME_FOLLOW) == 0) {
-                throw new URISyntaxException(str, "Invalid URI scheme component");
+                return validation.setError(UriValidation.S_INVALID_SCHEME, offset + pos, str, "scheme", c);
             }
             ++pos;
         }
+        return true;
     }
 
     /**
@@ -177,7 +219,27 @@ public class UriProfile {
      * @throws URISyntaxException if an error occurs parsing/validating component
      */
     public String validate_decode(int bw_and, String componentName, String str) throws URISyntaxException {
-        StringBuilder sb = new StringBuilder();
+        UriValidation validation = new UriValidation();
+        String decoded = validate_decode(bw_and, componentName, str, validation, 0);
+        if (decoded == null) {
+            throw validation.toException();
+        }
+        return decoded;
+    }
+
+    /**
+     * Validates an URI component according to the supplied character category
+     * bitfield. Instead of throwing an exception the validation object is
+     * updated with a status code and the position of the error.
+     * @param bw_and bits identifying one or more character categories
+     * @param componentName URI component name
+     * @param str URI component string
+     * @param validation validation result object
+     * @param offset offset of the component in the URI string
+     * @return decoded and validated string or null, if the component is invalid
+     */
+    public String validate_decode(int bw_and, String componentName, String str, UriValidation validation, int offset) {
+        StringBuilder sb = new StringBuilder(str.length());
         int pos = 0;
         int ppos;
         int limit = str.length();
@@ -197,7 +259,8 @@ public class UriProfile {
                             if (c == 'u' || c == 'U') {
                                 if (!bAllow16bitPercentEncoding) {
                                     if (!bAllowinvalidPercentEncoding) {
-                                        throw new URISyntaxException(str, "Invalid URI " + componentName + " component - 16-bit percent encoding not allowed");
+                                        validation.setError(UriValidation.S_16BIT_PERCENT_ENCODING, offset + ppos, str, componentName, '%');
+                                        return null;
                                     } else {
                                         bValid = false;
                                     }
@@ -231,12 +294,14 @@ public class UriProfile {
                                 }
                             }
                             if (!bValid && !bAllowinvalidPercentEncoding) {
-                                throw new URISyntaxException(str, "Invalid URI " + componentName + " component - invalid percent encoding");
+                                validation.setError(UriValidation.S_INVALID_PERCENT_ENCODING, offset + ppos, str, componentName, '%');
+                                return null;
                             }
                             sb.append((char) decodedC);
                         } else {
                             if (!bAllowinvalidPercentEncoding) {
-                                throw new URISyntaxException(str, "Invalid URI " + componentName + " component - incomplete percent encoding");
+                                validation.setError(UriValidation.S_INCOMPLETE_PERCENT_ENCODING, offset + ppos, str, componentName, '%');
+                                return null;
                             } else {
                                 bValid = false;
                             }
@@ -247,18 +312,33 @@ public class UriProfile {
                             }
                         }
                     } else {
-                        throw new URISyntaxException(str, "Invalid URI " + componentName + " component - invalid character '" + c + "'");
+                        validation.setError(UriValidation.S_INVALID_COMPONENT_CHARACTER, offset + pos - 1, str, componentName, c);
+                        return null;
                     }
                 } else {
                     sb.append(c);
                 }
             } else {
-                throw new URISyntaxException(str, "Invalid URI " + componentName + " component - invalid character '" + c + "'");
+                validation.setError(UriValidation.S_INVALID_COMPONENT_CHARACTER, offset + pos - 1, str, componentName, c);
+                return null;
             }
         }
         return sb.toString();
     }
 
+    /**
+     * Validate an URI string using this profile without throwing an exception.
+     * The status code is returned and the position of the error, if any,
+     * is available from the validation object.
+     * @param str URI string
+     * @param validation validation result object, reset before use
+     * @return validation status code, <code>UriValidation.S_VALID</code> if valid
+     */
+    public int validate(String str, UriValidation validation) {
+        Uri.parse(str, this, validation);
+        return validation.status;
+    }
+
     /** Hex char to integer conversion table. */
     public static int[] asciiHexTab = new int[256];
 
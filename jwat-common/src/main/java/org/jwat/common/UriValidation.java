@@ -0,0 +1,173 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.net.URISyntaxException;
+
+/**
+ * Result of an exception free URI validation. Instead of throwing an
+ * <code>URISyntaxException</code> the URI parser records a status code and
+ * the position of the offending character in an instance of this class.
+ * The human readable message is only constructed on demand, which makes
+ * invalid URIs about as cheap to validate as valid ones.
+ *
+ * Instances are mutable and may be reused for consecutive validations,
+ * but are not thread-safe.
+ *
+ * @author nicl
+ */
+public class UriValidation {
+
+    /** URI is valid. */
+    public static final int S_VALID = 0;
+    /** Character with a value larger than 255 encountered. */
+    public static final int S_INVALID_CHARACTER = 1;
+    /** Relative URI not allowed by profile. */
+    public static final int S_RELATIVE_NOT_ALLOWED = 2;
+    /** Empty scheme component. */
+    public static final int S_EMPTY_SCHEME = 3;
+    /** Invalid scheme component. */
+    public static final int S_INVALID_SCHEME = 4;
+    /** Expected a ':' after an ipv6 host. */
+    public static final int S_AUTHORITY_EXPECTED_COLON = 5;
+    /** Missing ']' after an ipv6 host. */
+    public static final int S_AUTHORITY_MISSING_BRACKET = 6;
+    /** Port not within range [1-65535]. */
+    public static final int S_PORT_RANGE = 7;
+    /** Port is not a number. */
+    public static final int S_INVALID_PORT = 8;
+    /** 16-bit percent encoding not allowed by profile. */
+    public static final int S_16BIT_PERCENT_ENCODING = 9;
+    /** Invalid percent encoding. */
+    public static final int S_INVALID_PERCENT_ENCODING = 10;
+    /** Incomplete percent encoding. */
+    public static final int S_INCOMPLETE_PERCENT_ENCODING = 11;
+    /** Character not allowed in component. */
+    public static final int S_INVALID_COMPONENT_CHARACTER = 12;
+
+    /** Validation status code. */
+    public int status = S_VALID;
+
+    /** Index in the validated string of the offending character, or -1. */
+    public int index = -1;
+
+    /** String reported as the input, mirrors <code>URISyntaxException.getInput()</code>. */
+    public String input;
+
+    /** Name of the component that failed validation, if applicable. */
+    public String componentName;
+
+    /** Offending character, if applicable. */
+    public char character;
+
+    /**
+     * Reset the validation result so the object can be reused.
+     */
+    public void reset() {
+        status = S_VALID;
+        index = -1;
+        input = null;
+        componentName = null;
+        character = 0;
+    }
+
+    /**
+     * Returns a boolean indicating whether the validation succeeded.
+     * @return boolean indicating whether the validation succeeded
+     */
+    public boolean isValid() {
+        return status == S_VALID;
+    }
+
+    /**
+     * Record a validation error.
+     * @param status validation status code
+     * @param index index of the offending character or -1
+     * @param input string reported as the input
+     * @param componentName component name or null
+     * @param character offending character or 0
+     * @return always false, for convenience
+     */
+    protected boolean setError(int status, int index, String input, String componentName, char character) {
+        this.status = status;
+        this.index = index;
+        this.input = input;
+        this.componentName = componentName;
+        this.character = character;
+        return false;
+    }
+
+    /**
+     * Returns the reason the URI failed validation, or null if it is valid.
+     * The text is identical to the one used by the exception based parser.
+     * @return the reason the URI failed validation, or null
+     */
+    public String getReason() {
+        switch (status) {
+        case S_VALID:
+            return null;
+        case S_INVALID_CHARACTER:
+            return "Invalid URI character '" + character + "'";
+        case S_RELATIVE_NOT_ALLOWED:
+            return "Invalid URI - relative URIs not allowed";
+        case S_EMPTY_SCHEME:
+            return "Empty URI scheme component";
+        case S_INVALID_SCHEME:
+            return "Invalid URI scheme component";
+        case S_AUTHORITY_EXPECTED_COLON:
+            return "Invalid URI authority/port component - expected a ':'";
+        case S_AUTHORITY_MISSING_BRACKET:
+            return "Invalid URI authority/host component - missing ']'";
+        case S_PORT_RANGE:
+            return "Invalid URI port component - port is not within range [1-65535]";
+        case S_INVALID_PORT:
+            return "Invalid URI port component";
+        case S_16BIT_PERCENT_ENCODING:
+            return "Invalid URI " + componentName + " component - 16-bit percent encoding not allowed";
+        case S_INVALID_PERCENT_ENCODING:
+            return "Invalid URI " + componentName + " component - invalid percent encoding";
+        case S_INCOMPLETE_PERCENT_ENCODING:
+            return "Invalid URI " + componentName + " component - incomplete percent encoding";
+        case S_INVALID_COMPONENT_CHARACTER:
+            return "Invalid URI " + componentName + " component - invalid character '" + character + "'";
+        default:
+            return "Invalid URI";
+        }
+    }
+
+    /**
+     * Returns the same message as <code>URISyntaxException.getMessage()</code>
+     * would have for this validation error, or null if the URI is valid.
+     * @return validation error message or null
+     */
+    public String getMessage() {
+        if (status == S_VALID) {
+            return null;
+        }
+        return getReason() + ": " + input;
+    }
+
+    /**
+     * Create an exception from the recorded validation error.
+     * @return <code>URISyntaxException</code> describing the validation error
+     */
+    public URISyntaxException toException() {
+        return new URISyntaxException(input, getReason());
+    }
+
+}
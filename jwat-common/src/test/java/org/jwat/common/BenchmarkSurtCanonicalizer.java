@@ -0,0 +1,57 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+/**
+ * Simple benchmark of the SURT canonicalizer, not run as part of the unit
+ * tests. Usage: BenchmarkSurtCanonicalizer [count], default 10M URLs.
+ *
+ * @author nicl
+ */
+public class BenchmarkSurtCanonicalizer {
+
+    public static void main(String[] args) {
+        int count = 10000000;
+        if (args.length > 0) {
+            count = Integer.parseInt(args[0]);
+        }
+        String[] urls = {
+                "http://www.example.com/index.html",
+                "http://www.Example.com/Path/To/Page?b=2&a=1&jsessionid=0123456789",
+                "https://sub.domain.example.co.uk:8443/a/b/c.php?id=42&PHPSESSID=abc",
+                "http://192.168.1.1/status",
+                "http://example.org/a;jsessionid=ABC/b?q=jwat#top"
+        };
+        SurtCanonicalizer surt = new SurtCanonicalizer();
+        UriValidation validation = new UriValidation();
+        StringBuilder sb = new StringBuilder(256);
+        long chars = 0;
+        long start = System.nanoTime();
+        Uri uri;
+        for (int i=0; i<count; ++i) {
+            uri = Uri.parse(urls[i % urls.length], UriProfile.RFC3986_ABS_16BIT_LAX, validation);
+            sb.setLength(0);
+            surt.canonicalize(uri, sb);
+            chars += sb.length();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(count + " URLs in " + (elapsed / 1000000) + " ms, "
+                + (count * 1000000000L / Math.max(elapsed, 1)) + " URLs/s (" + chars + " chars)");
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestBufferedInputStreamNoLock {
+
+    @Test
+    public void test_bufferedinputstreamnolock() throws IOException {
+        byte[] bytes = new byte[20000];
+        for (int i=0; i<bytes.length; ++i) {
+            bytes[i] = (byte)(i * 31);
+        }
+        int[] bufferSizes = {1, 7, 1024, 8192, 65536};
+        int[] readSizes = {1, 13, 1024, 5000, 30000};
+        for (int b=0; b<bufferSizes.length; ++b) {
+            for (int r=0; r<readSizes.length; ++r) {
+                // Wrapped stream returning short reads.
+                InputStream in = new ByteArrayInputStream(bytes) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        return super.read(b, off, Math.min(len, 777));
+                    }
+                };
+                BufferedInputStreamNoLock bin = new BufferedInputStreamNoLock(in, bufferSizes[b]);
+                Assert.assertFalse(bin.markSupported());
+                Assert.assertEquals(bytes.length, bin.available());
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] tmp = new byte[readSizes[r]];
+                int read;
+                int c;
+                int idx = 0;
+                while (true) {
+                    // Mix single byte reads, array reads and skips.
+                    switch (idx++ % 3) {
+                    case 0:
+                        c = bin.read();
+                        if (c == -1) {
+                            break;
+                        }
+                        out.write(c);
+                        continue;
+                    case 1:
+                        read = bin.read(tmp, 0, tmp.length);
+                        if (read == -1) {
+                            break;
+                        }
+                        Assert.assertTrue(read > 0);
+                        out.write(tmp, 0, read);
+                        continue;
+                    default:
+                        long skipped = bin.skip(10);
+                        for (long i=0; i<skipped; ++i) {
+                            out.write(bytes[out.size()]);
+                        }
+                        continue;
+                    }
+                    break;
+                }
+                Assert.assertArrayEquals(bytes, out.toByteArray());
+                Assert.assertEquals(-1, bin.read());
+                Assert.assertEquals(-1, bin.read(tmp, 0, tmp.length));
+                Assert.assertEquals(0, bin.read(tmp, 0, 0));
+                Assert.assertEquals(0, bin.available());
+                bin.close();
+                bin.close();
+                try {
+                    bin.read();
+                    Assert.fail("Exception expected!");
+                } catch (IOException e) {
+                }
+                try {
+                    bin.available();
+                    Assert.fail("Exception expected!");
+                } catch (IOException e) {
+                }
+            }
+        }
+
+        BufferedInputStreamNoLock bin = new BufferedInputStreamNoLock(new ByteArrayInputStream(bytes));
+        try {
+            bin.read(bytes, 10, bytes.length);
+            Assert.fail("Exception expected!");
+        } catch (IndexOutOfBoundsException e) {
+        }
+        try {
+            bin.reset();
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        try {
+            new BufferedInputStreamNoLock(null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new BufferedInputStreamNoLock(new ByteArrayInputStream(bytes), 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
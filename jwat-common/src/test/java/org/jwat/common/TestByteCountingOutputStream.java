@@ -0,0 +1,63 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestByteCountingOutputStream {
+
+    @Test
+    public void test_bytecountingoutputstream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteCountingOutputStream cout = new ByteCountingOutputStream(out);
+        Assert.assertEquals(0, cout.getWritten());
+        cout.write(42);
+        Assert.assertEquals(1, cout.getWritten());
+        cout.write(new byte[10]);
+        Assert.assertEquals(11, cout.getWritten());
+        cout.write(new byte[10], 2, 5);
+        Assert.assertEquals(16, cout.getWritten());
+        cout.write(new byte[0]);
+        cout.flush();
+        Assert.assertEquals(16, cout.getWritten());
+        Assert.assertEquals(16, out.size());
+        cout.close();
+
+        out = new ByteArrayOutputStream();
+        cout = new ByteCountingOutputStream(out);
+        cout.write(1);
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        cout.setDigest(md);
+        Assert.assertSame(md, cout.getDigest());
+        cout.write(2);
+        cout.write(new byte[] {0, 3, 4, 0}, 1, 2);
+        cout.setDigest(null);
+        cout.write(5);
+        Assert.assertEquals(5, cout.getWritten());
+        Assert.assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(new byte[] {2, 3, 4}), md.digest());
+        cout.close();
+    }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestFileChannelPool {
+
+    public static File createFile(String content) throws IOException {
+        File file = File.createTempFile("jwat-channelpool-", ".dat");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("ISO-8859-1"));
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void test_filechannelpool() throws IOException {
+        File file1 = createFile("0123456789");
+        File file2 = createFile("abcdefghij");
+        File file3 = createFile("ABCDEFGHIJ");
+        FileChannelPool pool = new FileChannelPool(2);
+        Assert.assertEquals(2, pool.getMaxOpen());
+
+        FileChannelPool.Handle h1 = pool.acquire(file1);
+        FileChannelPool.Handle h1b = pool.acquire(file1);
+        Assert.assertSame(h1, h1b);
+        Assert.assertEquals(1, pool.size());
+        Assert.assertEquals(1, pool.getOpened());
+        pool.release(h1b);
+
+        FileChannelPool.Handle h2 = pool.acquire(file2);
+        pool.release(h2);
+        Assert.assertEquals(2, pool.size());
+
+        // file1 is the least recently used but still in use.
+        FileChannelPool.Handle h3 = pool.acquire(file3);
+        Assert.assertEquals(2, pool.size());
+        Assert.assertTrue(h1.isOpen());
+        Assert.assertTrue(h2.isOpen());
+        pool.release(h1);
+        Assert.assertFalse(h1.isOpen());
+
+        // file2 is now least recently used and not in use.
+        FileChannelPool.Handle h1c = pool.acquire(file1);
+        Assert.assertNotSame(h1, h1c);
+        Assert.assertFalse(h2.isOpen());
+        Assert.assertEquals(4, pool.getOpened());
+
+        try {
+            pool.release(h2);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+
+        pool.release(h1c);
+        pool.close();
+        Assert.assertFalse(h1c.isOpen());
+        Assert.assertTrue(h3.isOpen());
+        pool.release(h3);
+        Assert.assertFalse(h3.isOpen());
+        try {
+            pool.acquire(file1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            new FileChannelPool(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void test_filechannelpool_closedchannel() throws IOException {
+        File file = createFile("0123456789");
+        FileChannelPool pool = new FileChannelPool();
+        FileChannelPool.Handle h1 = pool.acquire(file);
+        // E.g. closed by an interrupted positional read.
+        h1.channel.close();
+        FileChannelPool.Handle h2 = pool.acquire(file);
+        Assert.assertNotSame(h1, h2);
+        Assert.assertTrue(h2.isOpen());
+        Assert.assertEquals(1, pool.size());
+        Assert.assertEquals(2, pool.getOpened());
+        Assert.assertSame(h2, pool.acquire(file));
+        pool.release(h1);
+        pool.release(h2);
+        pool.release(h2);
+        Assert.assertTrue(h2.isOpen());
+        pool.close();
+        Assert.assertFalse(h2.isOpen());
+    }
+
+    @Test
+    public void test_filechannelpool_closedwhileopening() throws IOException {
+        File file = createFile("0123456789");
+        final RandomAccessFile[] rafs = new RandomAccessFile[1];
+        FileChannelPool pool = new FileChannelPool() {
+            @Override
+            protected RandomAccessFile open(File file) throws IOException {
+                rafs[0] = super.open(file);
+                // Closed by another thread while the file is being opened.
+                close();
+                return rafs[0];
+            }
+        };
+        try {
+            pool.acquire(file);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        Assert.assertNotNull(rafs[0]);
+        Assert.assertFalse(rafs[0].getChannel().isOpen());
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void test_filechannelinputstream() throws IOException {
+        File file = createFile("0123456789");
+        FileChannelPool pool = new FileChannelPool();
+        FileChannelPool.Handle handle = pool.acquire(file);
+        FileChannelInputStream in1 = new FileChannelInputStream(handle.channel, 2);
+        FileChannelInputStream in2 = new FileChannelInputStream(handle.channel, 5);
+        Assert.assertEquals('2', in1.read());
+        Assert.assertEquals('5', in2.read());
+        Assert.assertEquals(7, in1.available());
+        byte[] buf = new byte[4];
+        Assert.assertEquals(4, in1.read(buf));
+        Assert.assertEquals("3456", new String(buf, "ISO-8859-1"));
+        Assert.assertEquals(7, in1.getPosition());
+        Assert.assertEquals(0, handle.channel.position());
+        Assert.assertTrue(in1.markSupported());
+        in1.mark(0);
+        Assert.assertEquals(3, in1.skip(100));
+        Assert.assertEquals(-1, in1.read());
+        Assert.assertEquals(-1, in1.read(buf, 0, 4));
+        Assert.assertEquals(0, in1.available());
+        in1.reset();
+        Assert.assertEquals('7', in1.read());
+        in1.setChannel(handle.channel, 0);
+        Assert.assertEquals('0', in1.read());
+        try {
+            in1.reset();
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        Assert.assertEquals('6', in2.read());
+        in1.close();
+        in2.close();
+        pool.release(handle);
+        pool.close();
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestFixityDigestInputStream {
+
+    @Test
+    public void test_fixitydigestinputstream() throws IOException, NoSuchAlgorithmException {
+        byte[] bytes = new byte[20000];
+        for (int i=0; i<bytes.length; ++i) {
+            bytes[i] = (byte)(i * 31);
+        }
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(bytes);
+        byte[] md5 = MessageDigest.getInstance("MD5").digest(bytes);
+
+        FixityDigestInputStream fin = new FixityDigestInputStream(new ByteArrayInputStream(bytes), "SHA-256", "MD5");
+        Assert.assertFalse(fin.markSupported());
+        ByteCountingPushBackInputStream pbin = new ByteCountingPushBackInputStream(fin, 16);
+        byte[] tmp = new byte[16];
+        Assert.assertEquals(16, pbin.readFully(tmp));
+        // Unread bytes are not read from the digest stream again.
+        pbin.unread(tmp);
+        Assert.assertEquals(16, pbin.readFully(tmp));
+        Assert.assertEquals(1000, pbin.skip(1000));
+        Assert.assertEquals(bytes[1016] & 255, pbin.read());
+        Assert.assertNull(fin.getDigest("SHA-256"));
+        Assert.assertFalse(fin.isEof());
+        Assert.assertEquals(bytes.length - 1017, fin.drain());
+        Assert.assertEquals(-1, pbin.read());
+        Assert.assertTrue(fin.isEof());
+        Assert.assertEquals(bytes.length, fin.getLength());
+        Assert.assertArrayEquals(sha256, fin.getDigest("SHA-256"));
+        Assert.assertArrayEquals(sha256, fin.getDigest("sha-256"));
+        Assert.assertArrayEquals(md5, fin.getDigest(1));
+        Assert.assertArrayEquals(new String[] {"SHA-256", "MD5"}, fin.getAlgorithms());
+        Assert.assertEquals(0, fin.drain());
+        fin.close();
+
+        try {
+            fin.getDigest("SHA-1");
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new FixityDigestInputStream(new ByteArrayInputStream(bytes));
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new FixityDigestInputStream(null, "SHA-256");
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new FixityDigestInputStream(new ByteArrayInputStream(bytes), "NO-SUCH-DIGEST");
+            Assert.fail("Exception expected!");
+        } catch (NoSuchAlgorithmException e) {
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestMerkleTree {
+
+    public static byte[] sha256(byte[]... parts) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        for (int i=0; i<parts.length; ++i) {
+            md.update(parts[i]);
+        }
+        return md.digest();
+    }
+
+    @Test
+    public void test_merkletree() throws Exception {
+        for (int n=0; n<=17; ++n) {
+            List<byte[]> leaves = new ArrayList<byte[]>();
+            for (int i=0; i<n; ++i) {
+                leaves.add(sha256(new byte[] {(byte)i}));
+            }
+            MerkleTree tree = new MerkleTree("SHA-256", leaves);
+            Assert.assertEquals("SHA-256", tree.getAlgorithm());
+            Assert.assertEquals(n, tree.getLeafCount());
+            byte[] root = tree.getRoot();
+            for (int i=0; i<n; ++i) {
+                byte[][] proof = tree.getProof(i);
+                Assert.assertTrue(proof.length <= 5);
+                Assert.assertTrue(MerkleTree.verify("SHA-256", leaves.get(i), i, n, proof, root));
+                // Wrong leaf or index.
+                Assert.assertFalse(MerkleTree.verify("SHA-256", sha256(new byte[] {(byte)-1}), i, n, proof, root));
+                if (n > 1) {
+                    Assert.assertFalse(MerkleTree.verify("SHA-256", leaves.get(i), (i + 1) % n, n, proof, root));
+                }
+                Assert.assertFalse(MerkleTree.verify("SHA-256", leaves.get(i), n, n, proof, root));
+            }
+            try {
+                tree.getProof(n);
+                Assert.fail("Exception expected!");
+            } catch (IndexOutOfBoundsException e) {
+            }
+        }
+
+        // Known structure of a tree with three leaves.
+        byte[] a = sha256("a".getBytes());
+        byte[] b = sha256("b".getBytes());
+        byte[] c = sha256("c".getBytes());
+        List<byte[]> leaves = new ArrayList<byte[]>();
+        leaves.add(a);
+        leaves.add(b);
+        leaves.add(c);
+        byte[] la = sha256(new byte[] {0}, a);
+        byte[] lb = sha256(new byte[] {0}, b);
+        byte[] lc = sha256(new byte[] {0}, c);
+        byte[] ab = sha256(new byte[] {1}, la, lb);
+        MerkleTree tree = new MerkleTree("SHA-256", leaves);
+        Assert.assertArrayEquals(sha256(new byte[] {1}, ab, lc), tree.getRoot());
+        byte[][] proof = tree.getProof(2);
+        Assert.assertEquals(1, proof.length);
+        Assert.assertArrayEquals(ab, proof[0]);
+        proof = tree.getProof(0);
+        Assert.assertEquals(2, proof.length);
+        Assert.assertArrayEquals(lb, proof[0]);
+        Assert.assertArrayEquals(lc, proof[1]);
+        Assert.assertArrayEquals(sha256(), new MerkleTree("SHA-256", new ArrayList<byte[]>()).getRoot());
+        Assert.assertArrayEquals(la, new MerkleTree("SHA-256", leaves.subList(0, 1)).getRoot());
+    }
+
+}
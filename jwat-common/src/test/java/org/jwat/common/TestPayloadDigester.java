@@ -0,0 +1,129 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestPayloadDigester {
+
+    public static byte[] sha1(byte[] b, int off, int len) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA1");
+        md.update(b, off, len);
+        return md.digest();
+    }
+
+    /**
+     * Feed a block in pieces of the given size.
+     */
+    public static void feed(PayloadDigester digester, byte[] block, int step) {
+        int pos = 0;
+        while (pos < block.length) {
+            int n = Math.min(step, block.length - pos);
+            digester.update(block, pos, n);
+            pos += n;
+        }
+    }
+
+    @Test
+    public void test_payloaddigester() throws Exception {
+        Object[][] cases = {
+                // block, header type, payload offset or -1
+                {"HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\nHello world!", HttpHeader.HT_RESPONSE, 45},
+                {"HTTP/1.1 200 OK\nContent-Type: text/plain\n\nHello\n\nworld!", HttpHeader.HT_RESPONSE, 42},
+                {"HTTP/1.1 404 Not Found\r\n\r\n", HttpHeader.HT_RESPONSE, 26},
+                {"GET / HTTP/1.1\r\nHost: example.com\r\n\r\nbody", HttpHeader.HT_REQUEST, 37},
+                // Header spanning the whole block without an empty line.
+                {"HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n", HttpHeader.HT_RESPONSE, 43},
+                {"Not a HTTP header\r\n\r\npayload", HttpHeader.HT_RESPONSE, -1},
+                {"GET / HTTP/1.1\r\n\r\n", HttpHeader.HT_RESPONSE, -1},
+                {"", HttpHeader.HT_RESPONSE, -1},
+                {"HTTP/1.1 200 OK\r\n\r\nno detection", 0, -1}
+        };
+        PayloadDigester digester = new PayloadDigester("sha1", "sha1");
+        for (int i=0; i<cases.length; ++i) {
+            byte[] block = ((String)cases[i][0]).getBytes("ISO-8859-1");
+            int type = (Integer)cases[i][1];
+            int offset = (Integer)cases[i][2];
+            for (int step=1; step<=block.length + 1; ++step) {
+                digester.reset(type);
+                feed(digester, block, step);
+                digester.finish();
+                Assert.assertEquals(block.length, digester.getLength());
+                Assert.assertArrayEquals(sha1(block, 0, block.length), digester.getBlockDigest());
+                Assert.assertEquals(cases[i][0] + " / " + step, offset, digester.getPayloadOffset());
+                if (offset != -1) {
+                    Assert.assertNotNull(digester.getHttpHeader());
+                    Assert.assertArrayEquals(sha1(block, offset, block.length - offset), digester.getPayloadDigest());
+                } else {
+                    Assert.assertNull(digester.getHttpHeader());
+                    Assert.assertNull(digester.getPayloadDigest());
+                }
+            }
+        }
+        Assert.assertEquals("sha1", digester.getBlockDigestAlgorithm());
+        Assert.assertEquals("sha1", digester.getPayloadDigestAlgorithm());
+
+        // Header larger than the maximum size.
+        digester.setMaxHeaderSize(16);
+        byte[] block = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\nHello world!".getBytes();
+        digester.reset(HttpHeader.HT_RESPONSE);
+        feed(digester, block, 5);
+        Assert.assertNull(digester.getPayloadDigest());
+        Assert.assertArrayEquals(sha1(block, 0, block.length), digester.getBlockDigest());
+        try {
+            digester.update(block, 0, 1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+
+        // Explicit payload start.
+        digester.reset(HttpHeader.HT_RESPONSE);
+        digester.update(block, 0, 10);
+        digester.markPayloadStart();
+        digester.update(block, 10, block.length - 10);
+        Assert.assertEquals(10, digester.getPayloadOffset());
+        Assert.assertArrayEquals(sha1(block, 10, block.length - 10), digester.getPayloadDigest());
+
+        // Only a payload digest.
+        digester = new PayloadDigester(null, "md5");
+        digester.reset(HttpHeader.HT_RESPONSE);
+        feed(digester, block, 7);
+        Assert.assertNull(digester.getBlockDigest());
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(block, 45, block.length - 45);
+        Assert.assertArrayEquals(md.digest(), digester.getPayloadDigest());
+
+        try {
+            digester.reset(42);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new PayloadDigester("nosuchalgorithm", null);
+            Assert.fail("Exception expected!");
+        } catch (java.security.NoSuchAlgorithmException e) {
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestRecordDigestInputStream {
+
+    @Test
+    public void test_recorddigestinputstream() throws IOException, NoSuchAlgorithmException {
+        byte[] bytes = new byte[20000];
+        for (int i=0; i<bytes.length; ++i) {
+            bytes[i] = (byte)(i * 31);
+        }
+        int[] ends = {0, 1, 100, 1500, 1501, 9000, 12000, 20000};
+        int[] windows = {1024 + 16, 4096, 30000};
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        for (int w=0; w<windows.length; ++w) {
+            RecordDigestInputStream rin = new RecordDigestInputStream(new ByteArrayInputStream(bytes), "SHA-256", windows[w]);
+            Assert.assertFalse(rin.markSupported());
+            Assert.assertEquals("SHA-256", rin.getAlgorithm());
+            ByteCountingPushBackInputStream pbin = new ByteCountingPushBackInputStream(new BufferedInputStream(rin, 1024), 16);
+            byte[] tmp = new byte[700];
+            int read;
+            int start = 0;
+            for (int i=0; i<ends.length; ++i) {
+                // Read up to the record end, leaving read ahead bytes in the buffers.
+                while (pbin.getConsumed() < ends[i]) {
+                    read = pbin.read(tmp, 0, (int)Math.min(tmp.length, ends[i] - pbin.getConsumed()));
+                    if (read > 16) {
+                        pbin.unread(tmp, read - 16, 16);
+                    }
+                }
+                Assert.assertEquals(start, rin.getRecordStart());
+                md.reset();
+                md.update(bytes, start, ends[i] - start);
+                Assert.assertArrayEquals(md.digest(), rin.digestRecord(ends[i]));
+                start = ends[i];
+                if (i == 5) {
+                    long skipped = 0;
+                    while (skipped < 1000) {
+                        skipped += pbin.skip(1000 - skipped);
+                    }
+                    start += 1000;
+                    Assert.assertArrayEquals(getDigest(md, bytes, ends[i], start), rin.digestRecord(start));
+                }
+            }
+            Assert.assertEquals(bytes.length, rin.getPosition());
+            pbin.close();
+        }
+
+        RecordDigestInputStream rin = new RecordDigestInputStream(new ByteArrayInputStream(bytes), "SHA-256", 100);
+        Assert.assertEquals(1000, rin.skip(1000));
+        try {
+            rin.digestRecord(800);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            rin.digestRecord(1001);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            rin.reset();
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        try {
+            new RecordDigestInputStream(null, "SHA-256", 100);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new RecordDigestInputStream(new ByteArrayInputStream(bytes), null, 100);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new RecordDigestInputStream(new ByteArrayInputStream(bytes), "SHA-256", 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new RecordDigestInputStream(new ByteArrayInputStream(bytes), "NO-SUCH-DIGEST", 100);
+            Assert.fail("Exception expected!");
+        } catch (NoSuchAlgorithmException e) {
+        }
+    }
+
+    public static byte[] getDigest(MessageDigest md, byte[] bytes, int start, int end) {
+        md.reset();
+        md.update(bytes, start, end - start);
+        return md.digest();
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestSpillBuffer {
+
+    public static byte[] data(int length) {
+        byte[] bytes = new byte[length];
+        for (int i=0; i<length; ++i) {
+            bytes[i] = (byte)(i * 31 + (i >> 8));
+        }
+        return bytes;
+    }
+
+    public static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1000];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void test_spillbuffer() throws Exception {
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"), "jwat-spillbuffer-" + System.nanoTime());
+        Assert.assertTrue(tmpDir.mkdirs());
+        SpillBuffer buffer = new SpillBuffer();
+        buffer.setThreshold(SpillBuffer.CHUNK_SIZE * 2);
+        buffer.setTmpDirectory(tmpDir);
+        buffer.setBlockDigestAlgorithm("sha1");
+        buffer.setPayloadDigestAlgorithm("sha1");
+        int[] lengths = {0, 1, 100, SpillBuffer.CHUNK_SIZE, SpillBuffer.CHUNK_SIZE + 1,
+                SpillBuffer.CHUNK_SIZE * 2, SpillBuffer.CHUNK_SIZE * 2 + 1, 500000};
+        for (int i=0; i<lengths.length; ++i) {
+            byte[] bytes = data(lengths[i]);
+            int headerLength = Math.min(10, bytes.length);
+            buffer.reset();
+            buffer.write(bytes, 0, headerLength);
+            buffer.markPayloadStart();
+            int pos = headerLength;
+            int step = 1;
+            while (pos < bytes.length) {
+                int n = Math.min(step, bytes.length - pos);
+                if (n == 1) {
+                    buffer.write(bytes[pos]);
+                } else {
+                    buffer.write(bytes, pos, n);
+                }
+                pos += n;
+                step = step * 3 + 1;
+            }
+            Assert.assertEquals(bytes.length, buffer.getLength());
+            Assert.assertEquals(headerLength, buffer.getPayloadOffset());
+            Assert.assertEquals(bytes.length > SpillBuffer.CHUNK_SIZE * 2, buffer.isSpilled());
+            Assert.assertEquals(buffer.isSpilled() ? 1 : 0, tmpDir.list().length);
+            Assert.assertArrayEquals(MessageDigest.getInstance("sha1").digest(bytes), buffer.getBlockDigest());
+            MessageDigest md = MessageDigest.getInstance("sha1");
+            md.update(bytes, headerLength, bytes.length - headerLength);
+            Assert.assertArrayEquals(md.digest(), buffer.getPayloadDigest());
+            Assert.assertArrayEquals(bytes, readAll(buffer.getInputStream()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals(bytes.length, buffer.writeTo(out));
+            Assert.assertArrayEquals(bytes, out.toByteArray());
+            try {
+                buffer.write(1);
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+        }
+        buffer.close();
+        Assert.assertEquals(0, tmpDir.list().length);
+        try {
+            buffer.write(1);
+            Assert.fail("Exception expected!");
+        } catch (java.io.IOException e) {
+        }
+        tmpDir.delete();
+
+        // No digests and no payload mark.
+        buffer = new SpillBuffer();
+        buffer.write(data(10));
+        Assert.assertNull(buffer.getBlockDigest());
+        Assert.assertNull(buffer.getPayloadDigest());
+        Assert.assertEquals(-1, buffer.getPayloadOffset());
+        buffer.setPayloadDigestAlgorithm("md5");
+        Assert.assertNull(buffer.getPayloadDigest());
+        buffer.close();
+        try {
+            buffer.setThreshold(-1);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestSurtCanonicalizer {
+
+    @Test
+    public void test_surtcanonicalizer_defaults() {
+        SurtCanonicalizer surt = new SurtCanonicalizer();
+        String[][] cases = {
+                {"http://www.Example.com/Path?b=2&a=1", "com,example)/path?a=1&b=2"},
+                {"http://example.com", "com,example)/"},
+                {"http://www2.example.com:80/", "com,example)/"},
+                {"https://example.com:443/", "com,example)/"},
+                {"http://example.com:8080/", "com,example:8080)/"},
+                {"http://www.com/", "com,www)/"},
+                {"http://user:pw@example.com/", "com,example)/"},
+                {"http://example.com/a?jsessionid=42&x=1&PHPSESSID=7", "com,example)/a?x=1"},
+                {"http://example.com/a?ASPSESSIONIDQQ=1", "com,example)/a"},
+                {"http://example.com/a;jsessionid=ABC/b?", "com,example)/a/b"},
+                {"http://example.com/a#frag", "com,example)/a"},
+                {"http://192.168.1.1/x", "192.168.1.1)/x"},
+                {"http://example.com./x", "com,example)/x"},
+                {"mailto:John.Doe@Example.com", "john.doe@example.com"}
+        };
+        for (int i=0; i<cases.length; ++i) {
+            Assert.assertEquals(cases[i][1], surt.canonicalize(cases[i][0]));
+        }
+        Assert.assertNull(surt.canonicalize((String)null));
+        Assert.assertNull(surt.canonicalize("relative/uri"));
+        Assert.assertNull(surt.canonicalize("http://example.com:port/"));
+    }
+
+    @Test
+    public void test_surtcanonicalizer_options() {
+        SurtCanonicalizer surt = new SurtCanonicalizer();
+        surt.bStripScheme = false;
+        Assert.assertEquals("http://(com,example,)/path", surt.canonicalize("http://www.example.com/path"));
+        surt.bStripWww = false;
+        Assert.assertEquals("http://(com,example,www,)/path", surt.canonicalize("http://www.example.com/path"));
+        surt.bStripScheme = true;
+        surt.bReverseHost = false;
+        Assert.assertEquals("www.example.com)/path", surt.canonicalize("http://www.example.com/path"));
+        surt.bReverseHost = true;
+        surt.bCaseFold = false;
+        surt.bSortQuery = false;
+        surt.bStripSessionIds = false;
+        Assert.assertEquals("com,example,www)/Path?b=2&sid=1&a=1", surt.canonicalize("http://WWW.example.com/Path?b=2&sid=1&a=1"));
+        surt.bSortQuery = true;
+        Assert.assertEquals("com,example,www)/Path?a=1&b=2&sid=1", surt.canonicalize("http://WWW.example.com/Path?b=2&sid=1&a=1"));
+        surt.bStripDefaultPort = false;
+        surt.bStripUserinfo = false;
+        surt.bStripFragment = false;
+        Assert.assertEquals("com,example:80@user)/#frag", surt.canonicalize("http://user@example.com:80/#frag"));
+
+        surt = new SurtCanonicalizer();
+        StringBuilder sb = new StringBuilder("key ");
+        Uri uri = Uri.create("http://www.example.com/index.html");
+        Assert.assertSame(sb, surt.canonicalize(uri, sb));
+        Assert.assertEquals("key com,example)/index.html", sb.toString());
+
+        Assert.assertEquals(UriProfile.RFC3986_ABS_16BIT_LAX, surt.getUriProfile());
+        surt.setUriProfile(UriProfile.RFC3986);
+        Assert.assertEquals(UriProfile.RFC3986, surt.getUriProfile());
+        Assert.assertEquals("com,example)/", surt.canonicalize("http://example.com/"));
+        surt.setUriProfile(null);
+        Assert.assertEquals(UriProfile.RFC3986_ABS_16BIT_LAX, surt.getUriProfile());
+    }
+
+}
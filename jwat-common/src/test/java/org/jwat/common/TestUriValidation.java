@@ -0,0 +1,103 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.common;
+
+import java.net.URISyntaxException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestUriValidation {
+
+    @Test
+    public void test_urivalidation_valid() {
+        UriValidation validation = new UriValidation();
+        String[] valid_cases = {
+                "http://www.ietf.org/rfc/rfc2396.txt",
+                "ldap://[2001:db8::7]/c=GB?objectClass?one",
+                "scheme://userinfo@host:42/path?query#fragment",
+                "mailto:John.Doe@example.com",
+                "urn:oasis:names:specification:docbook:dtd:xml:4.1.2"
+        };
+        for (int i=0; i<valid_cases.length; ++i) {
+            Uri uri = Uri.parse(valid_cases[i], UriProfile.RFC3986, validation);
+            Assert.assertNotNull(uri);
+            Assert.assertTrue(validation.isValid());
+            Assert.assertEquals(UriValidation.S_VALID, validation.status);
+            Assert.assertEquals(-1, validation.index);
+            Assert.assertNull(validation.getReason());
+            Assert.assertNull(validation.getMessage());
+            Assert.assertEquals(valid_cases[i], uri.toString());
+            Assert.assertEquals(UriValidation.S_VALID, UriProfile.RFC3986.validate(valid_cases[i], validation));
+        }
+        Uri uri = Uri.parse("scheme://host:8080/", UriProfile.RFC3986, validation);
+        Assert.assertEquals(8080, uri.getPort());
+    }
+
+    @Test
+    public void test_urivalidation_invalid() {
+        UriValidation validation = new UriValidation();
+        Object[][] invalid_cases = {
+                {"ሴa:", UriValidation.S_INVALID_CHARACTER, 0},
+                {"4a:", UriValidation.S_INVALID_SCHEME, 0},
+                {"aä:", UriValidation.S_INVALID_SCHEME, 1},
+                {":", UriValidation.S_EMPTY_SCHEME, 0},
+                {"scheme://[2001:db8::7/path", UriValidation.S_AUTHORITY_MISSING_BRACKET, 9},
+                {"scheme://userinfo@[2001:db8::7]42/path", UriValidation.S_AUTHORITY_EXPECTED_COLON, 31},
+                {"scheme://userinfo@[2001:db8::7]:-1/path", UriValidation.S_PORT_RANGE, 32},
+                {"scheme://userinfo@host:65536/path", UriValidation.S_PORT_RANGE, 23},
+                {"scheme://userinfo@host:p0rt/path", UriValidation.S_INVALID_PORT, 23},
+                {"scheme://userinfo@host:99999999999/path", UriValidation.S_INVALID_PORT, 23},
+                {"http://host/pa th", UriValidation.S_INVALID_COMPONENT_CHARACTER, 14},
+                {"http://host/path?que ry", UriValidation.S_INVALID_COMPONENT_CHARACTER, 20},
+                {"http://host/path#frag ment", UriValidation.S_INVALID_COMPONENT_CHARACTER, 21},
+                {"http://ho st/path", UriValidation.S_INVALID_COMPONENT_CHARACTER, 9},
+                {"http://host/path%zz", UriValidation.S_INVALID_PERCENT_ENCODING, 16},
+                {"http://host/path%", UriValidation.S_INCOMPLETE_PERCENT_ENCODING, 16},
+                {"http://host/path%u00e6", UriValidation.S_16BIT_PERCENT_ENCODING, 16}
+        };
+        for (int i=0; i<invalid_cases.length; ++i) {
+            String str = (String)invalid_cases[i][0];
+            Uri uri = Uri.parse(str, UriProfile.RFC3986, validation);
+            Assert.assertNull(uri);
+            Assert.assertFalse(validation.isValid());
+            Assert.assertEquals(str, invalid_cases[i][1], validation.status);
+            Assert.assertEquals(str, invalid_cases[i][2], validation.index);
+            Assert.assertEquals(invalid_cases[i][1], UriProfile.RFC3986.validate(str, validation));
+            // Same message as the exception based parser.
+            try {
+                new Uri(str, UriProfile.RFC3986);
+                Assert.fail("Exception expected!");
+            } catch (URISyntaxException e) {
+                Assert.assertEquals(e.getMessage(), validation.getMessage());
+                Assert.assertEquals(e.getReason(), validation.getReason());
+                Assert.assertEquals(e.getInput(), validation.input);
+            }
+        }
+        Assert.assertEquals(UriValidation.S_RELATIVE_NOT_ALLOWED, UriProfile.RFC3986_ABS_16BIT.validate("/relative", validation));
+        Assert.assertEquals(UriValidation.S_VALID, UriProfile.RFC3986.validate("/relative", validation));
+        Assert.assertEquals(UriValidation.S_VALID, UriProfile.RFC3986_ABS_16BIT.validate("http://host/path%u00e6", validation));
+        validation.reset();
+        Assert.assertTrue(validation.isValid());
+        Assert.assertNull(validation.input);
+    }
+
+}
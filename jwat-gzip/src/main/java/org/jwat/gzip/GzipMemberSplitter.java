@@ -0,0 +1,449 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jwat.common.ByteCountingInputStream;
+import org.jwat.common.FixedLengthInputStream;
+import org.jwat.common.RandomAccessFileInputStream;
+
+/**
+ * Splits a multi-member GZip file into byte ranges which start on member
+ * boundaries, so the ranges can be read independently and in parallel.
+ *
+ * Member boundaries are found by scanning for the GZip magic and the deflate
+ * compression method and verifying the candidate: the reserved flags must be
+ * zero, the header must be complete and the member must inflate without
+ * errors. Short members are inflated to the end and the CRC32 and ISize of
+ * the trailer are checked. Optionally the inflated data must start with a
+ * given prefix, e.g. the WARC magic.
+ *
+ * Instances are not thread-safe, but reuse their inflater and buffers.
+ *
+ * @author nicl
+ */
+public class GzipMemberSplitter {
+
+    /** Number of inflated bytes which verify a member candidate. */
+    public static final int VERIFY_SIZE = 65536;
+
+    /** Buffer size used when scanning for member candidates. */
+    public static final int SCAN_BUFFER_SIZE = 65536;
+
+    /** Maximum length of the zero terminated header fields. */
+    public static final int MAX_HEADER_FIELD_SIZE = 65536;
+
+    /** Returned by <code>getMemberEnd</code> if the member does not end before the end offset. */
+    public static final long INCOMPLETE = -1;
+
+    /** Returned by <code>getMemberEnd</code> if the member is invalid. */
+    public static final long INVALID = -2;
+
+    /** Inflater used to verify members. */
+    protected Inflater inf = new Inflater(true);
+
+    /** Checksum used to verify short members. */
+    protected CRC32 crc = new CRC32();
+
+    /** Scan buffer. */
+    protected byte[] scanBuf = new byte[SCAN_BUFFER_SIZE];
+
+    /** Compressed input buffer. */
+    protected byte[] inputBuf = new byte[8192];
+
+    /** Inflated output buffer. */
+    protected byte[] outputBuf = new byte[8192];
+
+    /** Inflater used to find member ends, kept between calls on the same member. */
+    protected Inflater endInf = new Inflater(true);
+
+    /** Checksum of the data inflated by <code>endInf</code>. */
+    protected CRC32 endCrc = new CRC32();
+
+    /** Compressed input buffer of <code>endInf</code>. */
+    protected byte[] endInputBuf = new byte[8192];
+
+    /** Offset of the member <code>endInf</code> is inflating or -1. */
+    protected long endOffset = -1;
+
+    /** Offset of the next compressed byte to inflate or -1 before the header is parsed. */
+    protected long endInputPos = -1;
+
+    /** Has the member <code>endInf</code> is inflating turned out to be invalid. */
+    protected boolean bEndInvalid;
+
+    /**
+     * Split a GZip file into ranges starting on member boundaries.
+     * @param file GZip file
+     * @param parts wanted number of ranges
+     * @param prefix required prefix of the inflated member data or null
+     * @return range boundaries, starting with 0 and ending with the file length
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long[] split(File file, int parts, byte[] prefix) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' is null");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return split(raf, parts, prefix);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Split a GZip file into ranges starting on member boundaries. Each
+     * range, except the last, starts near an equal fraction of the file.
+     * Fewer ranges are returned if no member boundary is found after a
+     * split point.
+     * @param raf GZip file
+     * @param parts wanted number of ranges
+     * @param prefix required prefix of the inflated member data or null
+     * @return range boundaries, starting with 0 and ending with the file length
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long[] split(RandomAccessFile raf, int parts, byte[] prefix) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException(
+                    "The 'raf' is null");
+        }
+        if (parts <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'parts' is less than or equal to zero: " + parts);
+        }
+        long length = raf.length();
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(0L);
+        long prev = 0;
+        long offset;
+        for (int i=1; i<parts; ++i) {
+            offset = length / parts * i;
+            if (offset <= prev) {
+                offset = prev + 1;
+            }
+            offset = findMember(raf, offset, length, prefix);
+            if (offset == -1) {
+                break;
+            }
+            if (offset > prev) {
+                boundaries.add(offset);
+                prev = offset;
+            }
+        }
+        if (length > prev) {
+            boundaries.add(length);
+        }
+        long[] result = new long[boundaries.size()];
+        for (int i=0; i<result.length; ++i) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Find the first verified member starting at or after an offset.
+     * @param raf GZip file
+     * @param offset offset to start scanning from
+     * @param end offset to stop scanning at
+     * @param prefix required prefix of the inflated member data or null
+     * @return offset of the member or -1 if none was found
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long findMember(RandomAccessFile raf, long offset, long end, byte[] prefix) throws IOException {
+        // Magic and compression method.
+        int patternLen = 3;
+        while (offset + patternLen <= end) {
+            raf.seek(offset);
+            int len = (int)Math.min(scanBuf.length, end - offset);
+            raf.readFully(scanBuf, 0, len);
+            int idx = 0;
+            while (idx + patternLen <= len) {
+                if ((scanBuf[idx] & 255) == 0x1f
+                        && (scanBuf[idx + 1] & 255) == 0x8b
+                        && (scanBuf[idx + 2] & 255) == GzipConstants.CM_DEFLATE) {
+                    if (isMember(raf, offset + idx, prefix)) {
+                        return offset + idx;
+                    }
+                }
+                ++idx;
+            }
+            // Overlap so a pattern across buffers is not missed.
+            offset += idx;
+        }
+        return -1;
+    }
+
+    /**
+     * Verify that a GZip member starts at the given offset.
+     * @param raf GZip file
+     * @param offset candidate member offset
+     * @param prefix required prefix of the inflated member data or null
+     * @return boolean indicating whether a member starts at the offset
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public boolean isMember(RandomAccessFile raf, long offset, byte[] prefix) throws IOException {
+        raf.seek(offset);
+        InputStream in = new BufferedInputStream(new RandomAccessFileInputStream(raf), 8192);
+        if (!skipHeader(in)) {
+            return false;
+        }
+        inf.reset();
+        crc.reset();
+        int prefixIdx = 0;
+        int lastInput = 0;
+        int read;
+        int inflated;
+        try {
+            while (!inf.finished()) {
+                if (inf.needsInput()) {
+                    read = in.read(inputBuf, 0, inputBuf.length);
+                    if (read == -1) {
+                        return false;
+                    }
+                    inf.setInput(inputBuf, 0, read);
+                    lastInput = read;
+                } else if (inf.needsDictionary()) {
+                    return false;
+                }
+                inflated = inf.inflate(outputBuf, 0, outputBuf.length);
+                crc.update(outputBuf, 0, inflated);
+                for (int i=0; prefix != null && prefixIdx < prefix.length && i < inflated; ++i) {
+                    if (outputBuf[i] != prefix[prefixIdx++]) {
+                        return false;
+                    }
+                }
+                if (inf.getBytesWritten() >= VERIFY_SIZE && (prefix == null || prefixIdx == prefix.length)) {
+                    return true;
+                }
+            }
+        } catch (DataFormatException e) {
+            return false;
+        }
+        if (prefix != null && prefixIdx < prefix.length) {
+            return false;
+        }
+        // Short member, check the trailer.
+        byte[] trailer = new byte[8];
+        int remaining = inf.getRemaining();
+        int trailerLen = Math.min(remaining, trailer.length);
+        System.arraycopy(inputBuf, lastInput - remaining, trailer, 0, trailerLen);
+        while (trailerLen < trailer.length) {
+            read = in.read();
+            if (read == -1) {
+                return false;
+            }
+            trailer[trailerLen++] = (byte)read;
+        }
+        int crc32 = (trailer[0] & 255) | ((trailer[1] & 255) << 8)
+                | ((trailer[2] & 255) << 16) | ((trailer[3] & 255) << 24);
+        int isize = (trailer[4] & 255) | ((trailer[5] & 255) << 8)
+                | ((trailer[6] & 255) << 16) | ((trailer[7] & 255) << 24);
+        return crc32 == (int)crc.getValue() && isize == (int)inf.getBytesWritten();
+    }
+
+    /**
+     * Inflate the GZip member starting at an offset to its end and return the
+     * offset following its trailer. Since a member which is still being
+     * written is indistinguishable from a truncated one, both are reported
+     * as <code>INCOMPLETE</code>. A member with an invalid header, deflate
+     * data which fails to inflate or a trailer with a wrong CRC32 or ISize
+     * is reported as <code>INVALID</code>, since more data will not make it
+     * valid.
+     *
+     * The inflater state is kept between calls, so calling again for the
+     * same offset with a larger end offset, e.g. when following a growing
+     * file, resumes where the previous call ran out of data instead of
+     * inflating the member from its start again. The state is reset when
+     * the offset changes or the end offset shrinks.
+     * @param raf GZip file
+     * @param offset member offset
+     * @param end offset where the available data ends
+     * @return offset following the member trailer, <code>INCOMPLETE</code>
+     * if the member does not end before the end offset or
+     * <code>INVALID</code> if the member is invalid
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long getMemberEnd(RandomAccessFile raf, long offset, long end) throws IOException {
+        if (offset < 0 || offset >= end) {
+            return INCOMPLETE;
+        }
+        if (offset != endOffset || end < endInputPos) {
+            endOffset = offset;
+            endInputPos = -1;
+            bEndInvalid = false;
+            endInf.reset();
+            endCrc.reset();
+        }
+        if (bEndInvalid) {
+            return INVALID;
+        }
+        if (endInputPos == -1) {
+            // The header is short, so an incomplete header is simply parsed
+            // again next time.
+            raf.seek(offset);
+            ByteCountingInputStream in = new ByteCountingInputStream(new BufferedInputStream(
+                    new FixedLengthInputStream(new RandomAccessFileInputStream(raf), end - offset), 8192));
+            if (!skipHeader(in)) {
+                // Running out of data before the header was rejected means
+                // the header may still be completed.
+                if (in.getConsumed() < end - offset) {
+                    bEndInvalid = true;
+                    return INVALID;
+                }
+                return INCOMPLETE;
+            }
+            endInputPos = offset + in.getConsumed();
+        }
+        int read;
+        int inflated;
+        try {
+            while (!endInf.finished()) {
+                if (endInf.needsInput()) {
+                    if (endInputPos >= end) {
+                        return INCOMPLETE;
+                    }
+                    raf.seek(endInputPos);
+                    read = raf.read(endInputBuf, 0, (int)Math.min(endInputBuf.length, end - endInputPos));
+                    if (read == -1) {
+                        return INCOMPLETE;
+                    }
+                    endInf.setInput(endInputBuf, 0, read);
+                    endInputPos += read;
+                } else if (endInf.needsDictionary()) {
+                    bEndInvalid = true;
+                    return INVALID;
+                }
+                inflated = endInf.inflate(outputBuf, 0, outputBuf.length);
+                endCrc.update(outputBuf, 0, inflated);
+            }
+        } catch (DataFormatException e) {
+            bEndInvalid = true;
+            return INVALID;
+        }
+        long trailer = endInputPos - endInf.getRemaining();
+        if (trailer + 8 > end) {
+            return INCOMPLETE;
+        }
+        raf.seek(trailer);
+        raf.readFully(endInputBuf, 0, 8);
+        int crc32 = (endInputBuf[0] & 255) | ((endInputBuf[1] & 255) << 8)
+                | ((endInputBuf[2] & 255) << 16) | ((endInputBuf[3] & 255) << 24);
+        int isize = (endInputBuf[4] & 255) | ((endInputBuf[5] & 255) << 8)
+                | ((endInputBuf[6] & 255) << 16) | ((endInputBuf[7] & 255) << 24);
+        if (crc32 != (int)endCrc.getValue() || isize != (int)endInf.getBytesWritten()) {
+            bEndInvalid = true;
+            return INVALID;
+        }
+        return trailer + 8;
+    }
+
+    /**
+     * Read and check a GZip member header, leaving the stream positioned at
+     * the compressed data.
+     * @param in input stream positioned at the member start
+     * @return boolean indicating whether the header is valid and complete
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected static boolean skipHeader(InputStream in) throws IOException {
+        int b0 = in.read();
+        int b1 = in.read();
+        int cm = in.read();
+        int flg = in.read();
+        if (b0 != 0x1f || b1 != 0x8b || cm != GzipConstants.CM_DEFLATE
+                || flg == -1 || (flg & GzipConstants.FLG_FRESERVED) != 0) {
+            return false;
+        }
+        // MTIME, XFL and OS.
+        if (skip(in, 6) != 6) {
+            return false;
+        }
+        if ((flg & GzipConstants.FLG_FEXTRA) == GzipConstants.FLG_FEXTRA) {
+            int lo = in.read();
+            int hi = in.read();
+            if (hi == -1) {
+                return false;
+            }
+            int xlen = lo | (hi << 8);
+            if (skip(in, xlen) != xlen) {
+                return false;
+            }
+        }
+        if ((flg & GzipConstants.FLG_FNAME) == GzipConstants.FLG_FNAME) {
+            if (!skipZeroTerminated(in)) {
+                return false;
+            }
+        }
+        if ((flg & GzipConstants.FLG_FCOMMENT) == GzipConstants.FLG_FCOMMENT) {
+            if (!skipZeroTerminated(in)) {
+                return false;
+            }
+        }
+        if ((flg & GzipConstants.FLG_FHCRC) == GzipConstants.FLG_FHCRC) {
+            if (skip(in, 2) != 2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skip bytes by reading them.
+     * @param in input stream
+     * @param n number of bytes to skip
+     * @return number of bytes skipped
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected static int skip(InputStream in, int n) throws IOException {
+        int skipped = 0;
+        while (skipped < n && in.read() != -1) {
+            ++skipped;
+        }
+        return skipped;
+    }
+
+    /**
+     * Skip a zero terminated header field.
+     * @param in input stream
+     * @return boolean indicating whether the terminator was found
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected static boolean skipZeroTerminated(InputStream in) throws IOException {
+        int b;
+        int len = 0;
+        while ((b = in.read()) != -1 && len < MAX_HEADER_FIELD_SIZE) {
+            if (b == 0) {
+                return true;
+            }
+            ++len;
+        }
+        return false;
+    }
+
+}
@@ -17,18 +17,20 @@
  */
 package org.jwat.gzip;
 
+import org.jwat.common.BufferedInputStreamNoLock;
 import org.jwat.common.ByteCountingPushBackInputStream;
 import org.jwat.common.Diagnosis;
 import org.jwat.common.DiagnosisType;
 import org.jwat.common.Diagnostics;
+import org.jwat.common.FixityDigestInputStream;
 import org.jwat.common.ISO8859_1;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
@@ -47,8 +49,8 @@ public class GzipReader implements Closeable {
     /** Buffer size to use when read skipping. */
     public static final int SKIP_READ_BUFFER_SIZE = 8192;
 
-    /** Read buffer used by the skip method. */
-    protected byte[] skip_read_buffer = new byte[SKIP_READ_BUFFER_SIZE];
+    /** Read buffer used by the skip method, allocated on first use. */
+    protected byte[] skip_read_buffer;
 
     /** Default input buffer size. */
     public static final int DEFAULT_INPUT_BUFFER_SIZE = 8192;
@@ -101,6 +103,9 @@ public class GzipReader implements Closeable {
     /** Buffer used to read trailer. */
     protected byte[] trailerBytes = new byte[8];
 
+    /** Whole-file fixity digest stream or null. */
+    protected FixityDigestInputStream fixityIn;
+
     /**
      * Check head of <code>PushBackInputStream</code> for a GZip magic number.
      * The state of the <code>PushBackInputStream</code> is the same after the
@@ -152,11 +157,89 @@ public class GzipReader implements Closeable {
             throw new IllegalArgumentException(
                     "buffer_size is less or equals to zero: " + buffer_size);
         }
-        in = new BufferedInputStream(in, buffer_size);
+        in = new BufferedInputStreamNoLock(in, buffer_size);
         pbin = new ByteCountingPushBackInputStream(in, DEFAULT_INPUT_BUFFER_SIZE);
         inputBytes = new byte[DEFAULT_INPUT_BUFFER_SIZE];
     }
 
+    /**
+     * Construct a GZip reader with the specified read buffer and inflater
+     * input buffer sizes. Small buffers reduce the memory used per reader
+     * when many files are read at the same time.
+     * @param in input stream of GZip file
+     * @param buffer_size read buffer size to use or 0 if the input stream
+     * is already buffered
+     * @param input_buffer_size inflater input buffer size to use
+     */
+    public GzipReader(InputStream in, int buffer_size, int input_buffer_size) {
+        if (in == null) {
+            throw new IllegalArgumentException("in is null!");
+        }
+        if (buffer_size < 0) {
+            throw new IllegalArgumentException(
+                    "buffer_size is less than zero: " + buffer_size);
+        }
+        if (input_buffer_size <= 0) {
+            throw new IllegalArgumentException(
+                    "input_buffer_size is less or equals to zero: " + input_buffer_size);
+        }
+        if (buffer_size > 0) {
+            in = new BufferedInputStreamNoLock(in, buffer_size);
+        }
+        pbin = new ByteCountingPushBackInputStream(in, input_buffer_size);
+        inputBytes = new byte[input_buffer_size];
+    }
+
+    /**
+     * Construct a GZip reader with the specified input buffer size, which
+     * also computes whole-file digests over the raw bytes read.
+     * (@see #getFixityDigest(String))
+     * @param in input stream of GZip file
+     * @param buffer_size input buffer size to use
+     * @param fixityAlgorithms whole-file digest algorithms, e.g. "SHA-256"
+     * @throws NoSuchAlgorithmException if an algorithm is not supported
+     */
+    public GzipReader(InputStream in, int buffer_size, String... fixityAlgorithms) throws NoSuchAlgorithmException {
+        if (in == null) {
+            throw new IllegalArgumentException("in is null!");
+        }
+        if (buffer_size <= 0) {
+            throw new IllegalArgumentException(
+                    "buffer_size is less or equals to zero: " + buffer_size);
+        }
+        fixityIn = new FixityDigestInputStream(in, fixityAlgorithms);
+        pbin = new ByteCountingPushBackInputStream(
+                new BufferedInputStreamNoLock(fixityIn, buffer_size), DEFAULT_INPUT_BUFFER_SIZE);
+        inputBytes = new byte[DEFAULT_INPUT_BUFFER_SIZE];
+    }
+
+    /**
+     * Reuse this reader, including its inflater and buffers, to read from
+     * another input stream. The current entry, if any, is abandoned and must
+     * not be read after this call.
+     * @param in input stream of GZip file
+     */
+    public void reset(InputStream in) {
+        if (in == null) {
+            throw new IllegalArgumentException("in is null!");
+        }
+        if (pbin == null) {
+            throw new IllegalStateException("Reader is closed!");
+        }
+        pbin.setInputStream(in);
+        inf.reset();
+        crc.reset();
+        lastInput = 0;
+        bIsCompliant = true;
+        diagnostics.reset();
+        entries = 0;
+        startOffset = -1;
+        consumed = 0;
+        gzipEntry = null;
+        partialEntry = null;
+        fixityIn = null;
+    }
+
     /**
      * Release resources associated with this reader.
      * Also closes the <code>InputStream</code> supplied to the constructor.
@@ -216,6 +299,26 @@ public class GzipReader implements Closeable {
         return consumed;
     }
 
+    /**
+     * Returns the whole-file digest computed with the given algorithm, or
+     * null if no digests are computed or the end of the file has not been
+     * reached yet. The digest covers the raw compressed bytes, including
+     * any trailing data.
+     * @param algorithm digest algorithm given to the constructor
+     * @return whole-file digest or null
+     */
+    public byte[] getFixityDigest(String algorithm) {
+        return fixityIn != null ? fixityIn.getDigest(algorithm) : null;
+    }
+
+    /**
+     * Returns the whole-file fixity digest stream or null.
+     * @return whole-file fixity digest stream or null
+     */
+    public FixityDigestInputStream getFixityStream() {
+        return fixityIn;
+    }
+
     /**
      * Get the next GZip entry header and prepare the compressed data for
      * input stream retrieval.
@@ -605,7 +708,7 @@ public class GzipReader implements Closeable {
         @Override
         public void close() throws IOException {
             while (!bEof) {
-                skip(reader.skip_read_buffer.length);
+                skip(SKIP_READ_BUFFER_SIZE);
             }
             reader = null;
             gzipEntry = null;
@@ -665,6 +768,9 @@ public class GzipReader implements Closeable {
             long remaining = n;
             long skipped = 0;
             long readLast = 0;
+            if (reader.skip_read_buffer == null) {
+                reader.skip_read_buffer = new byte[SKIP_READ_BUFFER_SIZE];
+            }
             while (remaining > 0 && readLast != -1) {
                 remaining -= readLast;
                 skipped += readLast;
@@ -682,11 +788,11 @@ public class GzipReader implements Closeable {
         }
 
         @Override
-        public synchronized void mark(int readlimit) {
+        public void mark(int readlimit) {
         }
 
         @Override
-        public synchronized void reset() throws IOException {
+        public void reset() throws IOException {
             throw new UnsupportedOperationException();
         }
 
@@ -0,0 +1,153 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.gzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestGzipMemberSplitter {
+
+    public static File writeMembers(int members, List<Long> offsets) throws IOException {
+        Random random = new Random(1234);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i=0; i<members; ++i) {
+            offsets.add((long)out.size());
+            final boolean bStored = (i % 3) == 0;
+            GZIPOutputStream gzout = new GZIPOutputStream(out) {
+                {
+                    if (bStored) {
+                        def.setLevel(Deflater.NO_COMPRESSION);
+                    }
+                }
+            };
+            byte[] data = new byte[random.nextInt(i % 5 == 0 ? 200000 : 4000)];
+            random.nextBytes(data);
+            byte[] magic = ("member-" + i).getBytes();
+            System.arraycopy(magic, 0, data, 0, Math.min(magic.length, data.length));
+            // Fake member headers inside the data.
+            for (int j=magic.length; j + 4 < data.length; j += 997) {
+                data[j] = (byte)0x1f;
+                data[j + 1] = (byte)0x8b;
+                data[j + 2] = 8;
+                data[j + 3] = 0;
+            }
+            gzout.write(magic);
+            gzout.write(data, Math.min(magic.length, data.length), data.length - Math.min(magic.length, data.length));
+            gzout.finish();
+        }
+        File file = File.createTempFile("jwat-splitter-", ".gz");
+        file.deleteOnExit();
+        FileOutputStream fout = new FileOutputStream(file);
+        fout.write(out.toByteArray());
+        fout.close();
+        return file;
+    }
+
+    @Test
+    public void test_gzipmembersplitter() throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        File file = writeMembers(60, offsets);
+        GzipMemberSplitter splitter = new GzipMemberSplitter();
+        for (int parts=1; parts<=16; ++parts) {
+            long[] boundaries = splitter.split(file, parts, null);
+            Assert.assertEquals(0, boundaries[0]);
+            Assert.assertEquals(file.length(), boundaries[boundaries.length - 1]);
+            Assert.assertTrue(boundaries.length >= 2 && boundaries.length <= parts + 1);
+            for (int i=1; i<boundaries.length; ++i) {
+                Assert.assertTrue(boundaries[i] > boundaries[i - 1]);
+                if (i < boundaries.length - 1) {
+                    Assert.assertTrue(offsets.contains(boundaries[i]));
+                }
+            }
+        }
+        Assert.assertEquals(4, splitter.split(file, 3, "member-".getBytes()).length);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        // Every member is found from the byte after the previous member.
+        for (int i=1; i<offsets.size(); ++i) {
+            Assert.assertEquals(offsets.get(i).longValue(), splitter.findMember(raf, offsets.get(i - 1) + 1, raf.length(), null));
+            Assert.assertTrue(splitter.isMember(raf, offsets.get(i), ("member-" + i).getBytes()));
+            Assert.assertFalse(splitter.isMember(raf, offsets.get(i), "WARC/".getBytes()));
+        }
+        Assert.assertEquals(-1, splitter.findMember(raf, offsets.get(offsets.size() - 1) + 1, raf.length(), null));
+        // Member ends, with truncated members reported as incomplete.
+        offsets.add(raf.length());
+        for (int i=0; i<offsets.size() - 1; ++i) {
+            long start = offsets.get(i);
+            long end = offsets.get(i + 1);
+            Assert.assertEquals(end, splitter.getMemberEnd(raf, start, raf.length()));
+            Assert.assertEquals(end, splitter.getMemberEnd(raf, start, end));
+            Assert.assertEquals(GzipMemberSplitter.INCOMPLETE, splitter.getMemberEnd(raf, start, end - 1));
+            Assert.assertEquals(GzipMemberSplitter.INCOMPLETE, splitter.getMemberEnd(raf, start, start + (end - start) / 2));
+        }
+        // A growing member is inflated incrementally.
+        for (int i=0; i<offsets.size() - 1; i += 5) {
+            long start = offsets.get(i);
+            long end = offsets.get(i + 1);
+            long inputPos = -1;
+            for (long available=start + 1; available<end; available += 500) {
+                Assert.assertEquals(GzipMemberSplitter.INCOMPLETE, splitter.getMemberEnd(raf, start, available));
+                Assert.assertTrue(splitter.endInputPos >= inputPos);
+                inputPos = splitter.endInputPos;
+            }
+            Assert.assertEquals(end, splitter.getMemberEnd(raf, start, end));
+            Assert.assertEquals(end, splitter.getMemberEnd(raf, start, end + 100));
+        }
+        // Invalid members are told apart from incomplete ones.
+        Assert.assertEquals(GzipMemberSplitter.INVALID, splitter.getMemberEnd(raf, offsets.get(1) + 1, raf.length()));
+        Assert.assertEquals(GzipMemberSplitter.INCOMPLETE, splitter.getMemberEnd(raf, offsets.get(1), offsets.get(1) + 2));
+        Assert.assertEquals(GzipMemberSplitter.INCOMPLETE, splitter.getMemberEnd(raf, raf.length(), raf.length()));
+        raf.close();
+        byte[] bytes = new byte[(int)file.length()];
+        raf = new RandomAccessFile(file, "r");
+        raf.readFully(bytes);
+        raf.close();
+        // Wrong CRC32 in the trailer of the second member.
+        bytes[offsets.get(2).intValue() - 8] ^= 1;
+        File damaged = File.createTempFile("jwat-splitter-", ".gz");
+        damaged.deleteOnExit();
+        FileOutputStream fout = new FileOutputStream(damaged);
+        fout.write(bytes);
+        fout.close();
+        raf = new RandomAccessFile(damaged, "r");
+        Assert.assertEquals(offsets.get(1).longValue(), splitter.getMemberEnd(raf, offsets.get(0), raf.length()));
+        Assert.assertEquals(GzipMemberSplitter.INVALID, splitter.getMemberEnd(raf, offsets.get(1), raf.length()));
+        Assert.assertEquals(GzipMemberSplitter.INVALID, splitter.getMemberEnd(raf, offsets.get(1), raf.length()));
+        Assert.assertEquals(offsets.get(3).longValue(), splitter.getMemberEnd(raf, offsets.get(2), raf.length()));
+        raf.close();
+        try {
+            splitter.split(file, 0, null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
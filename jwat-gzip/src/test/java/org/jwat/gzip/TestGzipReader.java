@@ -25,6 +25,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -186,4 +188,39 @@ public class TestGzipReader {
         }
     }
 
+    @Test
+    public void test_gzipreader_fixity() throws IOException, NoSuchAlgorithmException {
+        String fname = "three-files.gz";
+        InputStream in = this.getClass().getClassLoader().getResourceAsStream(fname);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] tmp = new byte[8192];
+        int read;
+        while ((read = in.read(tmp)) != -1) {
+            out.write(tmp, 0, read);
+        }
+        in.close();
+        byte[] bytes = out.toByteArray();
+
+        GzipReader reader = new GzipReader(new ByteArrayInputStream(bytes), 1024, "SHA-256");
+        GzipEntry entry;
+        int entries = 0;
+        while ((entry = reader.getNextEntry()) != null) {
+            InputStream ein = entry.getInputStream();
+            while (ein.read(tmp) != -1) {
+            }
+            entry.close();
+            ++entries;
+        }
+        Assert.assertEquals(3, entries);
+        Assert.assertTrue(reader.getFixityStream().isEof());
+        Assert.assertEquals(bytes.length, reader.getFixityStream().getLength());
+        Assert.assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes), reader.getFixityDigest("SHA-256"));
+        reader.close();
+
+        reader = new GzipReader(new ByteArrayInputStream(bytes));
+        Assert.assertNull(reader.getFixityStream());
+        Assert.assertNull(reader.getFixityDigest("SHA-256"));
+        reader.close();
+    }
+
 }
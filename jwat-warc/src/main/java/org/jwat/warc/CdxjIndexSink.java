@@ -0,0 +1,263 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jwat.common.SurtCanonicalizer;
+
+/**
+ * Index listener writing a CDXJ line for each indexable record written.
+ * Each line consists of the SURT form of the target URI, the 14 digit
+ * timestamp of the WARC-Date and a JSON block with the url, mime, status,
+ * digest, length, offset and filename of the record.
+ *
+ * <pre>
+ * com,example)/ 20120101123000 {"url":"http://example.com/","mime":"text/html","status":"200","digest":"...","length":"1043","offset":"0","filename":"example.warc.gz"}
+ * </pre>
+ *
+ * Lines are written in the order the records are written, so the output
+ * must be sorted before it can be used for lookups. The sink may be shared
+ * between several writers, lines are written atomically.
+ *
+ * @author nicl
+ */
+public class CdxjIndexSink implements WarcIndexListener, Closeable {
+
+    /** Record types indexed by default. */
+    public static final String[] DEFAULT_RECORD_TYPES = {
+        WarcConstants.RT_RESPONSE,
+        WarcConstants.RT_REVISIT,
+        WarcConstants.RT_RESOURCE
+    };
+
+    /** Mime type used for revisit records. */
+    public static final String REVISIT_MIME = "warc/revisit";
+
+    /** Writer receiving the CDXJ lines. */
+    protected Writer writer;
+
+    /** Filename included in each line or null. */
+    protected String filename;
+
+    /** Canonicalizer used to compute the SURT of the target URI. */
+    protected SurtCanonicalizer canonicalizer = new SurtCanonicalizer();
+
+    /** Record types to index. */
+    protected Set<String> recordTypes = new HashSet<String>();
+
+    /** Line buffer. */
+    protected StringBuilder sb = new StringBuilder(512);
+
+    /** Number of lines written. */
+    protected long lines;
+
+    /**
+     * Construct a CDXJ sink writing to the given writer.
+     * @param writer writer receiving the CDXJ lines
+     * @param filename filename of the WARC file included in each line or null
+     */
+    public CdxjIndexSink(Writer writer, String filename) {
+        if (writer == null) {
+            throw new IllegalArgumentException(
+                    "The 'writer' parameter is null!");
+        }
+        this.writer = writer;
+        this.filename = filename;
+        setRecordTypes(DEFAULT_RECORD_TYPES);
+    }
+
+    /**
+     * Construct a CDXJ sink without a writer, for subclasses overriding
+     * <code>writeLine</code>.
+     * @param filename filename of the WARC file included in each line or null
+     */
+    protected CdxjIndexSink(String filename) {
+        this.filename = filename;
+        setRecordTypes(DEFAULT_RECORD_TYPES);
+    }
+
+    /**
+     * Set the record types to index.
+     * @param types record types to index
+     */
+    public synchronized void setRecordTypes(String... types) {
+        recordTypes.clear();
+        for (int i=0; i<types.length; ++i) {
+            recordTypes.add(types[i]);
+        }
+    }
+
+    /**
+     * Returns the canonicalizer used for the SURT of the target URI,
+     * allowing its rules to be adjusted.
+     * @return canonicalizer used for the SURT of the target URI
+     */
+    public SurtCanonicalizer getCanonicalizer() {
+        return canonicalizer;
+    }
+
+    /**
+     * Returns the number of lines written.
+     * @return number of lines written
+     */
+    public synchronized long getLines() {
+        return lines;
+    }
+
+    @Override
+    public synchronized void recordWritten(WarcIndexEntry entry) throws IOException {
+        if (entry.recordType == null || !recordTypes.contains(entry.recordType)
+                || entry.targetUri == null || entry.date == null) {
+            return;
+        }
+        String surt = canonicalizer.canonicalize(entry.targetUri);
+        if (surt == null) {
+            surt = entry.targetUri;
+        }
+        String mime = entry.mimeType;
+        if (WarcConstants.RT_REVISIT.equals(entry.recordType)) {
+            mime = REVISIT_MIME;
+        }
+        String digest = entry.payloadDigest;
+        if (digest != null && digest.startsWith("sha1:")) {
+            digest = digest.substring("sha1:".length());
+        }
+        sb.setLength(0);
+        sb.append(surt);
+        sb.append(' ');
+        appendTimestamp(entry.date);
+        sb.append(" {");
+        appendField("url", entry.targetUri, false);
+        if (mime != null) {
+            appendField("mime", mime, true);
+        }
+        if (entry.httpStatus != null) {
+            appendField("status", entry.httpStatus.toString(), true);
+        }
+        if (digest != null) {
+            appendField("digest", digest, true);
+        }
+        appendField("length", Long.toString(entry.length), true);
+        appendField("offset", Long.toString(entry.offset), true);
+        if (filename != null) {
+            appendField("filename", filename, true);
+        }
+        sb.append("}\n");
+        writeLine(sb.toString());
+        ++lines;
+    }
+
+    /**
+     * Output a complete CDXJ line.
+     * @param line CDXJ line including the trailing newline
+     * @throws IOException if an i/o exception occurs while writing the line
+     */
+    protected void writeLine(String line) throws IOException {
+        writer.write(line);
+    }
+
+    /**
+     * Append the first 14 digits of a WARC-Date, padded with zeros.
+     * @param date WARC-Date string
+     */
+    protected void appendTimestamp(String date) {
+        int digits = 0;
+        char c;
+        for (int i=0; i<date.length() && digits < 14; ++i) {
+            c = date.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sb.append(c);
+                ++digits;
+            }
+        }
+        while (digits < 14) {
+            sb.append('0');
+            ++digits;
+        }
+    }
+
+    /**
+     * Append a JSON string field.
+     * @param name field name
+     * @param value field value
+     * @param bComma prepend a separating comma
+     */
+    protected void appendField(String name, String value, boolean bComma) {
+        if (bComma) {
+            sb.append(',');
+        }
+        sb.append('"');
+        sb.append(name);
+        sb.append("\":\"");
+        char c;
+        for (int i=0; i<value.length(); ++i) {
+            c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append("\\u00");
+                    sb.append(Character.forDigit((c >> 4) & 15, 16));
+                    sb.append(Character.forDigit(c & 15, 16));
+                } else {
+                    sb.append(c);
+                }
+                break;
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Flush the underlying writer.
+     * @throws IOException if an i/o exception occurs while flushing
+     */
+    public synchronized void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+}
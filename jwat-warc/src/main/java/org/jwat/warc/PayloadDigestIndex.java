@@ -0,0 +1,264 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe bounded index of payload digests seen at write time. Maps a
+ * labelled payload digest, e.g. "sha1:...", to the record which first
+ * stored the payload. When the index holds the maximum number of entries
+ * the least recently used one is evicted.
+ *
+ * Entries are kept on the heap as strings: the digest, the record id, the
+ * target URI and the date. An entry costs roughly 350 to 600 bytes, mostly
+ * depending on the URI length and whether the JVM uses compact strings, so
+ * the default of 100000 entries needs up to about 60 MB. Size the maximum
+ * number of entries against the available heap before raising it.
+ *
+ * The index can be saved to and loaded from a local file so it survives
+ * between runs. Entries are saved in least recently used order, one per
+ * line with tab separated fields.
+ *
+ * @author nicl
+ */
+public class PayloadDigestIndex {
+
+    /** Default maximum number of entries, up to about 60 MB of heap. */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    /** Maximum number of entries. */
+    protected final int maxEntries;
+
+    /** Entries in least recently used order. */
+    protected final LinkedHashMap<String, Entry> entries;
+
+    /** Number of lookups which found an entry. */
+    protected long hits;
+
+    /** Number of lookups which found nothing. */
+    protected long misses;
+
+    /**
+     * Construct an index with a default maximum number of entries.
+     */
+    public PayloadDigestIndex() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Construct an index with a maximum number of entries.
+     * @param maxEntries maximum number of entries
+     */
+    public PayloadDigestIndex(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'maxEntries' is less than or equal to zero: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PayloadDigestIndex.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     * @return maximum number of entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups which found an entry.
+     * @return number of lookups which found an entry
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups which found nothing.
+     * @return number of lookups which found nothing
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Look up the record which first stored a payload.
+     * @param digest labelled payload digest
+     * @return entry of the record or null
+     */
+    public synchronized Entry lookup(String digest) {
+        if (digest == null) {
+            throw new IllegalArgumentException(
+                    "The 'digest' is null");
+        }
+        Entry entry = entries.get(digest);
+        if (entry != null) {
+            ++hits;
+        } else {
+            ++misses;
+        }
+        return entry;
+    }
+
+    /**
+     * Add the record which stored a payload.
+     * @param digest labelled payload digest
+     * @param recordId record id, without angle brackets
+     * @param targetUri target URI of the record
+     * @param date WARC date of the record
+     */
+    public synchronized void put(String digest, String recordId, String targetUri, String date) {
+        if (digest == null || recordId == null) {
+            throw new IllegalArgumentException(
+                    "The 'digest' or 'recordId' is null");
+        }
+        entries.put(digest, new Entry(recordId, targetUri, date));
+    }
+
+    /**
+     * Save the entries to a file. The entries are written to a temporary
+     * file which replaces the file when complete.
+     * @param file file to save to
+     * @throws IOException if an i/o exception occurs while saving
+     */
+    public synchronized void save(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' is null");
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+        try {
+            Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+            Map.Entry<String, Entry> mapEntry;
+            Entry entry;
+            while (iter.hasNext()) {
+                mapEntry = iter.next();
+                entry = mapEntry.getValue();
+                out.write(mapEntry.getKey());
+                out.write('\t');
+                out.write(entry.recordId);
+                out.write('\t');
+                out.write(entry.targetUri != null ? entry.targetUri : "-");
+                out.write('\t');
+                out.write(entry.date != null ? entry.date : "-");
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete '" + file.getPath() + "'");
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Unable to rename '" + tmpFile.getPath()
+                    + "' to '" + file.getPath() + "'");
+        }
+    }
+
+    /**
+     * Load entries from a file saved with <code>save()</code>. Loaded entries
+     * are added to the current ones. A missing file is ignored.
+     * @param file file to load from
+     * @return number of entries loaded
+     * @throws IOException if an i/o exception occurs while loading
+     */
+    public synchronized int load(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' is null");
+        }
+        if (!file.exists()) {
+            return 0;
+        }
+        int loaded = 0;
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            String[] fields;
+            while ((line = in.readLine()) != null) {
+                fields = line.split("\t", -1);
+                if (fields.length == 4) {
+                    entries.put(fields[0], new Entry(fields[1],
+                            "-".equals(fields[2]) ? null : fields[2],
+                            "-".equals(fields[3]) ? null : fields[3]));
+                    ++loaded;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return loaded;
+    }
+
+    /**
+     * Record which first stored a payload.
+     */
+    public static class Entry {
+
+        /** Record id, without angle brackets. */
+        public final String recordId;
+
+        /** Target URI of the record. */
+        public final String targetUri;
+
+        /** WARC date of the record. */
+        public final String date;
+
+        /**
+         * Construct an entry.
+         * @param recordId record id, without angle brackets
+         * @param targetUri target URI of the record
+         * @param date WARC date of the record
+         */
+        public Entry(String recordId, String targetUri, String date) {
+            this.recordId = recordId;
+            this.targetUri = targetUri;
+            this.date = date;
+        }
+
+    }
+
+}
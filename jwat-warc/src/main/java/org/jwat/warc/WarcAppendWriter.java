@@ -0,0 +1,355 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jwat.common.RandomAccessFileInputStream;
+import org.jwat.gzip.GzipEntry;
+import org.jwat.gzip.GzipReader;
+
+/**
+ * Appends WARC records to a single file from several threads without
+ * serializing them through one writer.
+ *
+ * Each thread writes its records with its own <code>WarcWriter</code> into
+ * a private buffer, for compressed files one GZip member per record as
+ * written by <code>WarcWriterCompressed</code>. When the records are
+ * complete, <code>append()</code> reserves a range of the file with an
+ * atomic counter and writes the buffer at that position with a positional
+ * <code>FileChannel</code> write. Records are never interleaved and, after
+ * a clean close, every reserved range has been written.
+ *
+ * If the process dies while appending, ranges reserved after an unfinished
+ * write may have been written, leaving a gap. <code>recover()</code>
+ * truncates a file after the last complete record before such a gap.
+ *
+ * @author nicl
+ */
+public class WarcAppendWriter implements Closeable {
+
+    /** Largest private buffer kept between appends. */
+    public static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /** File appended to. */
+    protected final File file;
+
+    /** Write compressed records. */
+    protected final boolean bCompressed;
+
+    /** File. */
+    protected final RandomAccessFile raf;
+
+    /** Channel used for positional writes. */
+    protected final FileChannel channel;
+
+    /** Offset of the next range to reserve. */
+    protected final AtomicLong position;
+
+    /** Number of appends writing their range. */
+    protected final AtomicInteger inFlight = new AtomicInteger();
+
+    /** Signalled by the last append in flight once the writer is closing. */
+    protected final Object inFlightLock = new Object();
+
+    /** Number of appends. */
+    protected final AtomicLong appends = new AtomicLong();
+
+    /** Is the writer closed. */
+    protected volatile boolean bClosed;
+
+    /** Private record buffer and writer of each thread. */
+    protected final ThreadLocal<RecordBuffer> buffers = new ThreadLocal<RecordBuffer>() {
+        @Override
+        protected RecordBuffer initialValue() {
+            return new RecordBuffer(bCompressed);
+        }
+    };
+
+    /**
+     * Open a file for appending records. Existing content is kept, so a file
+     * left by a crash should be passed through <code>recover()</code> first.
+     * @param file file to append to
+     * @param bCompressed write compressed records
+     * @throws IOException if an i/o exception occurs while opening the file
+     */
+    public WarcAppendWriter(File file, boolean bCompressed) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' is null");
+        }
+        this.file = file;
+        this.bCompressed = bCompressed;
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        position = new AtomicLong(raf.length());
+    }
+
+    /**
+     * Returns the file appended to.
+     * @return file appended to
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns a boolean indicating whether records are compressed.
+     * @return boolean indicating whether records are compressed
+     */
+    public boolean isCompressed() {
+        return bCompressed;
+    }
+
+    /**
+     * Returns the length of the file including all reserved ranges.
+     * @return length of the file including all reserved ranges
+     */
+    public long getLength() {
+        return position.get();
+    }
+
+    /**
+     * Returns the number of appends.
+     * @return number of appends
+     */
+    public long getAppends() {
+        return appends.get();
+    }
+
+    /**
+     * Returns the private writer of the calling thread. Records written with
+     * it are buffered until the thread calls <code>append()</code>.
+     * @return private writer of the calling thread
+     */
+    public WarcWriter getWriter() {
+        return buffers.get().writer;
+    }
+
+    /**
+     * Append the records buffered by the private writer of the calling
+     * thread to the file. The last record must have been closed.
+     * @return offset of the first appended record or -1 if nothing was buffered
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    public long append() throws IOException {
+        RecordBuffer buffer = buffers.get();
+        int state = buffer.writer.state;
+        if (state == WarcWriter.S_HEADER_WRITTEN || state == WarcWriter.S_PAYLOAD_WRITTEN) {
+            throw new IllegalStateException("The last record has not been closed");
+        }
+        int len = buffer.size();
+        if (len == 0) {
+            return -1;
+        }
+        inFlight.incrementAndGet();
+        try {
+            if (bClosed) {
+                throw new IllegalStateException("Writer is closed");
+            }
+            long offset = position.getAndAdd(len);
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer.getBuffer(), 0, len);
+            long pos = offset;
+            while (byteBuffer.hasRemaining()) {
+                pos += channel.write(byteBuffer, pos);
+            }
+            appends.incrementAndGet();
+            return offset;
+        } finally {
+            if (inFlight.decrementAndGet() == 0 && bClosed) {
+                synchronized (inFlightLock) {
+                    inFlightLock.notifyAll();
+                }
+            }
+            if (buffer.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+                buffers.remove();
+            } else {
+                buffer.reset();
+            }
+        }
+    }
+
+    /**
+     * Discard the records buffered by the private writer of the calling
+     * thread, e.g. after an exception while writing a record.
+     */
+    public void discard() {
+        buffers.remove();
+    }
+
+    /**
+     * Close the writer. Waits for appends writing their range to finish,
+     * so every reserved range has been written when the file is closed.
+     * @throws IOException if an i/o exception occurs while closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (bClosed) {
+            return;
+        }
+        bClosed = true;
+        boolean bInterrupted = false;
+        synchronized (inFlightLock) {
+            while (inFlight.get() > 0) {
+                try {
+                    inFlightLock.wait();
+                } catch (InterruptedException e) {
+                    bInterrupted = true;
+                }
+            }
+        }
+        if (bInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        channel.force(false);
+        raf.close();
+    }
+
+    /**
+     * Truncate a file after the last complete record before any gap or
+     * partial record, e.g. after a crash while appending.
+     * @param file file to recover
+     * @param bCompressed file contains compressed records
+     * @return length of the recovered file
+     * @throws IOException if an i/o exception occurs while recovering
+     */
+    public static long recover(File file, boolean bCompressed) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' is null");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long valid;
+            if (bCompressed) {
+                valid = validCompressedLength(raf);
+            } else {
+                valid = validUncompressedLength(raf);
+            }
+            if (valid < raf.length()) {
+                raf.setLength(valid);
+            }
+            return valid;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the length of the leading complete records of an uncompressed
+     * file, verified as by <code>WarcRecordSplitter</code>.
+     * @param raf uncompressed WARC file
+     * @return length of the leading complete records
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected static long validUncompressedLength(RandomAccessFile raf) throws IOException {
+        WarcRecordSplitter splitter = new WarcRecordSplitter();
+        long valid = 0;
+        long end;
+        while ((end = splitter.getRecordEnd(raf, valid)) >= 0) {
+            valid = end;
+        }
+        return valid;
+    }
+
+    /**
+     * Returns the length of the leading complete GZip members of a file. A
+     * member is complete if it directly follows the previous one, inflates
+     * without errors to a WARC record and has a valid trailer.
+     * @param raf compressed WARC file
+     * @return length of the leading complete members
+     * @throws IOException if an i/o exception occurs while reading
+     */
+    protected static long validCompressedLength(RandomAccessFile raf) throws IOException {
+        byte[] magic = WarcConstants.WARC_MAGIC_HEADER.getBytes();
+        byte[] buf = new byte[8192];
+        long valid = 0;
+        raf.seek(0);
+        GzipReader reader = new GzipReader(new RandomAccessFileInputStream(raf));
+        try {
+            GzipEntry entry;
+            while ((entry = reader.getNextEntry()) != null) {
+                if (entry.getStartOffset() != valid || !entry.isCompliant()) {
+                    break;
+                }
+                InputStream in = entry.getInputStream();
+                int read;
+                int idx;
+                int pos = 0;
+                boolean bMagic = true;
+                while ((read = in.read(buf)) != -1) {
+                    idx = 0;
+                    while (pos < magic.length && idx < read) {
+                        bMagic &= buf[idx++] == magic[pos++];
+                    }
+                }
+                in.close();
+                entry.close();
+                if (!bMagic || pos < magic.length || !entry.isCompliant()) {
+                    break;
+                }
+                valid = entry.getStartOffset() + entry.consumed;
+            }
+        } catch (IOException e) {
+            // Partial member, keep what has been verified.
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // Closing skips the rest of an invalid member.
+        }
+        return valid;
+    }
+
+    /**
+     * Private buffer and writer of a thread.
+     */
+    protected static class RecordBuffer extends ByteArrayOutputStream {
+
+        /** Writer buffering records in this buffer. */
+        protected final WarcWriter writer;
+
+        /**
+         * Construct a buffer with a writer.
+         * @param bCompressed write compressed records
+         */
+        protected RecordBuffer(boolean bCompressed) {
+            super(8192);
+            writer = WarcWriterFactory.getWriter(this, bCompressed);
+        }
+
+        /**
+         * Returns the internal buffer, valid up to <code>size()</code>.
+         * @return internal buffer
+         */
+        protected byte[] getBuffer() {
+            return buf;
+        }
+
+    }
+
+}
@@ -0,0 +1,267 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+
+import org.jwat.common.SpillBuffer;
+
+/**
+ * Writes response records through a <code>WarcWriter</code> and replaces
+ * responses whose payload has already been stored by revisit records.
+ *
+ * The SHA-1 payload digest is computed while the payload is streamed into
+ * a <code>SpillBuffer</code>, in memory up to a threshold and in a temporary
+ * file beyond it.
+ * The digest is looked up in a <code>PayloadDigestIndex</code>. On a hit an
+ * identical-payload-digest revisit record with the <code>WARC-Refers-To</code>
+ * fields of the original record and only the HTTP header as its block is
+ * written. On a miss the full response is written and added to the index.
+ *
+ * Instances are not thread-safe, like the writer they wrap. The index may
+ * be shared between writers.
+ *
+ * @author nicl
+ */
+public class WarcDedupWriter {
+
+    /** Default size of payloads buffered in memory. */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    /** Payload digest algorithm. */
+    public static final String DIGEST_ALGORITHM = "sha1";
+
+    /** Writer records are written with. */
+    protected final WarcWriter writer;
+
+    /** Payload digest index. */
+    protected final PayloadDigestIndex index;
+
+    /** Payload buffer computing the payload digest. */
+    protected final SpillBuffer buffer = new SpillBuffer();
+
+    /** Copy buffer. */
+    protected final byte[] copyBuf = new byte[8192];
+
+    /** Number of responses written. */
+    protected long responses;
+
+    /** Number of revisits written. */
+    protected long revisits;
+
+    /** Payload bytes not written because of revisits. */
+    protected long bytesSaved;
+
+    /**
+     * Construct a deduplicating writer.
+     * @param writer writer records are written with
+     * @param index payload digest index
+     */
+    public WarcDedupWriter(WarcWriter writer, PayloadDigestIndex index) {
+        if (writer == null) {
+            throw new IllegalArgumentException(
+                    "The 'writer' is null");
+        }
+        if (index == null) {
+            throw new IllegalArgumentException(
+                    "The 'index' is null");
+        }
+        this.writer = writer;
+        this.index = index;
+        buffer.setThreshold(DEFAULT_MEMORY_THRESHOLD);
+        try {
+            buffer.setPayloadDigestAlgorithm(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Set the size of payloads buffered in memory. Larger payloads are
+     * buffered in a temporary file.
+     * @param size size of payloads buffered in memory
+     */
+    public void setMemoryThreshold(int size) {
+        buffer.setThreshold(size);
+    }
+
+    /**
+     * Set the directory used for temporary files.
+     * @param directory directory used for temporary files or null for the default
+     */
+    public void setTmpDirectory(File directory) {
+        buffer.setTmpDirectory(directory);
+    }
+
+    /**
+     * Returns the wrapped writer.
+     * @return wrapped writer
+     */
+    public WarcWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Returns the payload digest index.
+     * @return payload digest index
+     */
+    public PayloadDigestIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the number of responses written.
+     * @return number of responses written
+     */
+    public long getResponses() {
+        return responses;
+    }
+
+    /**
+     * Returns the number of revisits written.
+     * @return number of revisits written
+     */
+    public long getRevisits() {
+        return revisits;
+    }
+
+    /**
+     * Returns the number of payload bytes not written because of revisits.
+     * @return number of payload bytes saved
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /**
+     * Write a response, or a revisit if the payload has been stored before.
+     * The record must have been created with the wrapped writer and carry
+     * all fields except <code>WARC-Type</code>, <code>Content-Length</code>,
+     * <code>WARC-Payload-Digest</code> and the revisit fields, which are added
+     * here.
+     * @param record record to write
+     * @param httpHeader HTTP response header bytes
+     * @param payload HTTP response entity
+     * @return boolean indicating whether a revisit was written
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    public boolean writeResponse(WarcRecord record, byte[] httpHeader, InputStream payload) throws IOException {
+        if (record == null) {
+            throw new IllegalArgumentException(
+                    "The 'record' is null");
+        }
+        if (httpHeader == null) {
+            throw new IllegalArgumentException(
+                    "The 'httpHeader' is null");
+        }
+        if (payload == null) {
+            throw new IllegalArgumentException(
+                    "The 'payload' is null");
+        }
+        try {
+            buffer.reset();
+            buffer.markPayloadStart();
+            int read;
+            while ((read = payload.read(copyBuf)) != -1) {
+                buffer.write(copyBuf, 0, read);
+            }
+            long length = buffer.getLength();
+            WarcDigest payloadDigest = WarcWriter.createWarcDigest(DIGEST_ALGORITHM, buffer.getPayloadDigest());
+            String labelledDigest = payloadDigest.toString();
+            WarcHeader header = record.header;
+            PayloadDigestIndex.Entry entry = index.lookup(labelledDigest);
+            header.addHeader(WarcConstants.FN_WARC_PAYLOAD_DIGEST, payloadDigest, null);
+            if (entry != null) {
+                header.addHeader(WarcConstants.FN_WARC_TYPE, WarcConstants.RT_REVISIT);
+                header.addHeader(WarcConstants.FN_WARC_PROFILE, WarcConstants.PROFILE_IDENTICAL_PAYLOAD_DIGEST);
+                header.addHeader(WarcConstants.FN_WARC_REFERS_TO, "<" + entry.recordId + ">");
+                if (entry.targetUri != null) {
+                    header.addHeader(WarcConstants.FN_WARC_REFERS_TO_TARGET_URI, entry.targetUri);
+                }
+                if (entry.date != null) {
+                    header.addHeader(WarcConstants.FN_WARC_REFERS_TO_DATE, entry.date);
+                }
+                header.addHeader(WarcConstants.FN_CONTENT_LENGTH, (long)httpHeader.length, null);
+                writer.writeRecordHeader(record);
+                writer.writePayload(httpHeader);
+                writer.closeRecord();
+                ++revisits;
+                bytesSaved += length;
+                return true;
+            }
+            header.addHeader(WarcConstants.FN_WARC_TYPE, WarcConstants.RT_RESPONSE);
+            header.addHeader(WarcConstants.FN_CONTENT_LENGTH, httpHeader.length + length, null);
+            writer.writeRecordHeader(record);
+            writer.writePayload(httpHeader);
+            writer.writePayloadFrom(buffer);
+            writer.closeRecord();
+            ++responses;
+            String recordId = getRecordId(header);
+            if (recordId != null) {
+                index.put(labelledDigest, recordId, getTargetUri(header), getDate(header));
+            }
+            return false;
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Returns the record id of a header without angle brackets.
+     * @param header WARC header
+     * @return record id or null
+     */
+    protected static String getRecordId(WarcHeader header) {
+        if (header.warcRecordIdUri != null) {
+            return header.warcRecordIdUri.toString();
+        }
+        String id = header.warcRecordIdStr;
+        if (id != null && id.startsWith("<") && id.endsWith(">")) {
+            id = id.substring(1, id.length() - 1);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the target URI of a header.
+     * @param header WARC header
+     * @return target URI or null
+     */
+    protected static String getTargetUri(WarcHeader header) {
+        if (header.warcTargetUriUri != null) {
+            return header.warcTargetUriUri.toString();
+        }
+        return header.warcTargetUriStr;
+    }
+
+    /**
+     * Returns the WARC date of a header.
+     * @param header WARC header
+     * @return WARC date or null
+     */
+    protected String getDate(WarcHeader header) {
+        if (header.warcDate != null) {
+            return writer.warcDateFormat.format(header.warcDate);
+        }
+        return header.warcDateStr;
+    }
+
+}
@@ -24,6 +24,7 @@ import org.jwat.common.Diagnostics;
 import org.jwat.common.IPAddressParser;
 import org.jwat.common.Uri;
 import org.jwat.common.UriProfile;
+import org.jwat.common.UriValidation;
 
 import java.net.InetAddress;
 import java.util.Date;
@@ -41,6 +42,9 @@ public class WarcFieldParsers {
      * Must be set prior to calling the various methods. */
     protected Diagnostics<Diagnosis> diagnostics;
 
+    /** Reusable URI validation result, avoids exceptions on invalid URIs. */
+    protected UriValidation uriValidation = new UriValidation();
+
     /**
      * Add an error diagnosis on the given entity stating that it is invalid
      * and something else was expected. The optional information should provide
@@ -229,13 +233,12 @@ public class WarcFieldParsers {
                     break;
                 }
             }
-            try {
-                uri = new Uri(uriStrClean, uriProfile);
-            } catch (Exception e) {
+            uri = Uri.parse(uriStrClean, uriProfile, uriValidation);
+            if (uri == null) {
                 // Invalid URI.
                 addInvalidExpectedError("'" + field + "' value",
                         uriStrClean,
-                        e.getMessage());
+                        uriValidation.getMessage());
             }
             if (uri != null) {
                 String scheme = uri.getScheme();
@@ -0,0 +1,150 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.UUID;
+
+import org.jwat.archive.common.ArchiveFileRepacker;
+
+/**
+ * Splits and merges WARC files at record boundaries without recompressing.
+ * The records of compressed files are moved as complete GZip members.
+ *
+ * An output starting in the middle of an input gets a new warcinfo record
+ * first, with the block of the input's warcinfo record, a new record id
+ * and the output file name. Records keep referring to the original
+ * warcinfo record id, since they are copied verbatim.
+ *
+ * <pre>
+ * WarcFileRepacker repacker = new WarcFileRepacker(dir, "crawl");
+ * repacker.setMaxSize(1024L * 1024L * 1024L);
+ * List&lt;File&gt; outputs = repacker.split(new File("big.warc.gz"));
+ * </pre>
+ *
+ * @author nicl
+ */
+public class WarcFileRepacker extends ArchiveFileRepacker {
+
+    /** Buffer size used by the reader. */
+    public static final int READER_BUFFER_SIZE = 65536;
+
+    /** Reader of the current input. */
+    protected WarcReader reader;
+
+    /** Record id of the last created warcinfo record. */
+    protected String headRecordId;
+
+    /**
+     * Construct a WARC repacker writing outputs to a directory.
+     * @param outputDir directory outputs are written to
+     * @param prefix prefix of the output file names
+     */
+    public WarcFileRepacker(File outputDir, String prefix) {
+        super(outputDir, prefix);
+    }
+
+    @Override
+    protected boolean openInput(File input) throws IOException {
+        reader = WarcReaderFactory.getReader(new FileInputStream(input), READER_BUFFER_SIZE);
+        return reader.isCompressed();
+    }
+
+    @Override
+    protected boolean nextRecord() throws IOException {
+        WarcRecord record = reader.getNextRecord();
+        if (record == null) {
+            return false;
+        }
+        record.close();
+        recordOffset = reader.getRawRecordOffset();
+        recordLength = reader.getRawRecordLength();
+        recordId = record.header.warcRecordIdStr;
+        bHeadRecord = WarcConstants.RT_WARCINFO.equals(record.header.warcTypeStr);
+        return true;
+    }
+
+    @Override
+    protected long getInputConsumed() {
+        return reader.getConsumed();
+    }
+
+    @Override
+    protected void closeInput() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    @Override
+    protected String getExtension(boolean bCompressed) {
+        return bCompressed ? ".warc.gz" : ".warc";
+    }
+
+    @Override
+    protected byte[] createHeadRecord(byte[] headRecord, String outputName) throws IOException {
+        WarcReader headReader = WarcReaderFactory.getReader(new ByteArrayInputStream(headRecord));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(headRecord.length + 256);
+        try {
+            WarcRecord origin = headReader.getNextRecord();
+            if (origin == null) {
+                throw new IOException("Unable to parse the warcinfo record!");
+            }
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            if (origin.hasPayload()) {
+                InputStream in = origin.getPayload().getInputStreamComplete();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    block.write(buffer, 0, read);
+                }
+            }
+            WarcWriter writer = WarcWriterFactory.getWriter(out, headReader.isCompressed());
+            WarcRecord record = WarcRecord.createRecord(writer);
+            WarcHeader header = record.header;
+            headRecordId = "<urn:uuid:" + UUID.randomUUID() + ">";
+            header.addHeader(WarcConstants.FN_WARC_TYPE, WarcConstants.RT_WARCINFO);
+            header.addHeader(WarcConstants.FN_WARC_DATE, new Date(), null);
+            header.addHeader(WarcConstants.FN_WARC_FILENAME, outputName);
+            header.addHeader(WarcConstants.FN_WARC_RECORD_ID, headRecordId);
+            if (origin.header.contentTypeStr != null) {
+                header.addHeader(WarcConstants.FN_CONTENT_TYPE, origin.header.contentTypeStr);
+            }
+            header.addHeader(WarcConstants.FN_CONTENT_LENGTH, (long)block.size(), null);
+            writer.writeRecordHeader(record);
+            writer.writePayload(block.toByteArray());
+            writer.close();
+        } finally {
+            headReader.close();
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    protected String getHeadRecordId() {
+        return headRecordId;
+    }
+
+}
@@ -0,0 +1,439 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.jwat.archive.common.ArchiveRecoveryReader;
+import org.jwat.common.Diagnosis;
+import org.jwat.common.DiagnosisType;
+import org.jwat.common.Diagnostics;
+import org.jwat.common.FileChannelInputStream;
+import org.jwat.gzip.GzipMemberSplitter;
+
+/**
+ * Reads the records of a WARC file which is still being written, waiting
+ * for the file to grow when the available records have been read.
+ *
+ * A record is only returned once it is complete on disk, i.e. its GZip
+ * member inflates to the trailer or its Content-Length lands on the record
+ * trailer. Data following the last complete record is incomplete rather
+ * than an error, and reading resumes from the last complete record
+ * boundary when more data has been written. The same boundary can be
+ * stored and passed to a new reader to resume after a restart.
+ *
+ * Growth is detected by polling the file length. The poll interval doubles
+ * while the file is idle, up to a maximum, and a partial record is only
+ * checked again when the file has grown, so an idle reader costs a file
+ * length lookup per interval. A partial GZip member is inflated
+ * incrementally as it grows, resuming where the previous check ran out of
+ * data, so the member is inflated once while waiting for its end.
+ *
+ * Only data which runs into the end of the file counts as incomplete. A
+ * damaged record, i.e. a GZip member which fails to inflate or has a wrong
+ * CRC32 or ISize, or an uncompressed record whose header can not be parsed
+ * or whose Content-Length does not land on the record trailer, is skipped
+ * up to the next record found by the same scan as
+ * <code>WarcRecoveryReader</code> uses. Each skipped range is reported as
+ * an error in <code>diagnostics</code>. While no record is found after
+ * damaged data the reader waits for more data, like for a partial record.
+ *
+ * Instances are not thread-safe, except that <code>close()</code> may be
+ * called from another thread to stop a waiting reader.
+ *
+ * @author nicl
+ */
+public class WarcFollowReader implements Closeable {
+
+    /** Default initial poll interval in milliseconds. */
+    public static final long DEFAULT_POLL_INTERVAL = 100;
+
+    /** Default maximum poll interval in milliseconds. */
+    public static final long DEFAULT_MAX_POLL_INTERVAL = 2000;
+
+    /** Default buffer size used on record streams. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** WARC file. */
+    protected RandomAccessFile raf;
+
+    /** Is the WARC file compressed. */
+    protected boolean bCompressed;
+
+    /** Reader used to parse records. */
+    protected WarcReader reader;
+
+    /** Used to find the end of compressed records. */
+    protected GzipMemberSplitter memberSplitter;
+
+    /** Used to find the end of uncompressed records. */
+    protected WarcRecordSplitter recordSplitter;
+
+    /** Buffer size used on record streams. */
+    protected int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /** Initial poll interval in milliseconds. */
+    protected long pollInterval = DEFAULT_POLL_INTERVAL;
+
+    /** Maximum poll interval in milliseconds. */
+    protected long maxPollInterval = DEFAULT_MAX_POLL_INTERVAL;
+
+    /** Offset following the last complete record read. */
+    protected long offset;
+
+    /** Current record or null. */
+    protected WarcRecord currentRecord;
+
+    /** Offset of the current record. */
+    protected long currentOffset = -1;
+
+    /** Offset following the current record. */
+    protected long currentEnd = -1;
+
+    /** File length when the data after the offset was last found incomplete. */
+    protected long incompleteLength = -1;
+
+    /** Number of records read. */
+    protected int records;
+
+    /** Number of times the file length has been polled. */
+    protected long polls;
+
+    /** Total number of damaged bytes skipped. */
+    protected long skippedBytes;
+
+    /** Skipped damaged data. */
+    public final Diagnostics<Diagnosis> diagnostics = new Diagnostics<Diagnosis>();
+
+    /** Has this reader been closed. */
+    protected volatile boolean bClosed;
+
+    /**
+     * Construct a follow reader on a WARC file, starting at the beginning.
+     * The file is compressed if it starts with the GZip magic number or its
+     * name ends with ".gz".
+     * @param file WARC file
+     * @throws IOException if an i/o exception occurs while opening the file
+     */
+    public WarcFollowReader(File file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * Construct a follow reader on a WARC file, resuming at a record
+     * boundary previously returned by <code>getOffset()</code>.
+     * @param file WARC file
+     * @param offset record boundary to start at
+     * @throws IOException if an i/o exception occurs while opening the file
+     */
+    public WarcFollowReader(File file, long offset) throws IOException {
+        this(new RandomAccessFile(file, "r"), WarcRecoveryReader.isCompressed(file), offset);
+    }
+
+    /**
+     * Construct a follow reader on a WARC file, starting at a record boundary.
+     * @param raf WARC file, closed when this reader is closed
+     * @param bCompressed is the WARC file compressed
+     * @param offset record boundary to start at
+     */
+    public WarcFollowReader(RandomAccessFile raf, boolean bCompressed, long offset) {
+        if (raf == null) {
+            throw new IllegalArgumentException(
+                    "The 'raf' parameter is null!");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException(
+                    "The 'offset' parameter is negative: " + offset);
+        }
+        this.raf = raf;
+        this.bCompressed = bCompressed;
+        this.offset = offset;
+        if (bCompressed) {
+            reader = new WarcReaderCompressed();
+            memberSplitter = new GzipMemberSplitter();
+        } else {
+            reader = new WarcReaderUncompressed();
+            recordSplitter = new WarcRecordSplitter();
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the WARC file is compressed.
+     * @return a boolean indicating whether the WARC file is compressed
+     */
+    public boolean isCompressed() {
+        return bCompressed;
+    }
+
+    /**
+     * Set the buffer size used on record streams.
+     * @param bufferSize buffer size used on record streams
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'bufferSize' is less than or equal to zero: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Set the initial and maximum poll intervals. The interval starts at the
+     * initial value and doubles while the file does not grow.
+     * @param pollInterval initial poll interval in milliseconds
+     * @param maxPollInterval maximum poll interval in milliseconds
+     */
+    public void setPollInterval(long pollInterval, long maxPollInterval) {
+        if (pollInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'pollInterval' is less than or equal to zero: " + pollInterval);
+        }
+        if (maxPollInterval < pollInterval) {
+            throw new IllegalArgumentException(
+                    "The 'maxPollInterval' is less than the 'pollInterval': " + maxPollInterval);
+        }
+        this.pollInterval = pollInterval;
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    /**
+     * Closes the current record and the WARC file. A thread waiting for
+     * the file to grow returns null.
+     * @throws IOException if an i/o exception occurs while closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        bClosed = true;
+        synchronized (this) {
+            notifyAll();
+            if (currentRecord != null) {
+                closeRecord();
+            }
+            if (raf != null) {
+                raf.close();
+                raf = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the next complete record without waiting for the file to grow.
+     * @return next record or null if no complete record is available
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public WarcRecord getNextRecord() throws IOException {
+        return getNextRecord(0);
+    }
+
+    /**
+     * Returns the next complete record, closing the previous one, and waits
+     * for it to be written if necessary.
+     * @param timeout maximum time to wait in milliseconds, 0 to not wait
+     * and a negative value to wait until a record is available or the reader
+     * is closed
+     * @return next record or null if the timeout expired or the reader was
+     * closed before a complete record became available
+     * @throws IOException if an i/o exception occurs while reading the file
+     * or the file has been truncated below the current offset
+     */
+    public synchronized WarcRecord getNextRecord(long timeout) throws IOException {
+        if (bClosed) {
+            return null;
+        }
+        if (currentRecord != null) {
+            closeRecord();
+        }
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        long interval = pollInterval;
+        long length;
+        long end;
+        while (true) {
+            length = raf.length();
+            ++polls;
+            if (length < offset) {
+                throw new IOException("The file has been truncated below offset " + offset);
+            }
+            if (length > offset && length != incompleteLength) {
+                end = getRecordEnd(offset, length);
+                if (end == WarcRecordSplitter.INVALID) {
+                    end = findRecord(offset + 1, length);
+                    if (end != -1) {
+                        skip(end);
+                        continue;
+                    }
+                } else if (end >= 0) {
+                    incompleteLength = -1;
+                    break;
+                }
+                incompleteLength = length;
+                // The file grew, expect more data soon.
+                interval = pollInterval;
+            }
+            long wait = interval;
+            if (timeout == 0) {
+                return null;
+            } else if (timeout > 0) {
+                wait = Math.min(wait, deadline - System.currentTimeMillis());
+                if (wait <= 0) {
+                    return null;
+                }
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (bClosed) {
+                return null;
+            }
+            interval = Math.min(interval * 2, maxPollInterval);
+        }
+        WarcRecord record = reader.getNextRecordFrom(
+                new FileChannelInputStream(raf.getChannel(), offset), offset, bufferSize);
+        if (record == null) {
+            throw new IOException("Unable to parse the record at offset " + offset);
+        }
+        currentRecord = record;
+        currentOffset = offset;
+        currentEnd = end;
+        ++records;
+        return record;
+    }
+
+    /**
+     * Find the end of the record starting at an offset, if it is complete.
+     * @param offset record offset
+     * @param length current file length
+     * @return offset following the record, <code>WarcRecordSplitter.INCOMPLETE</code>
+     * if it is incomplete or <code>WarcRecordSplitter.INVALID</code> if it
+     * is damaged
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    protected long getRecordEnd(long offset, long length) throws IOException {
+        long end;
+        if (bCompressed) {
+            end = memberSplitter.getMemberEnd(raf, offset, length);
+            if (end == GzipMemberSplitter.INVALID) {
+                return WarcRecordSplitter.INVALID;
+            }
+        } else {
+            end = recordSplitter.getRecordEnd(raf, offset);
+            if (end == WarcRecordSplitter.INVALID) {
+                return end;
+            }
+        }
+        return end >= 0 && end <= length ? end : WarcRecordSplitter.INCOMPLETE;
+    }
+
+    /**
+     * Find the next complete record after damaged data.
+     * @param offset offset to start scanning from
+     * @param length current file length
+     * @return offset of the record or -1 if none was found
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    protected long findRecord(long offset, long length) throws IOException {
+        if (bCompressed) {
+            return memberSplitter.findMember(raf, offset, length, WarcRecordSplitter.RECORD_MAGIC);
+        } else {
+            return recordSplitter.findRecordStart(raf, offset, length, 1);
+        }
+    }
+
+    /**
+     * Skip the damaged data between the offset and the next record and
+     * report it.
+     * @param next offset of the next record
+     */
+    protected void skip(long next) {
+        diagnostics.addError(new Diagnosis(DiagnosisType.UNDESIRED_DATA,
+                ArchiveRecoveryReader.SKIPPED_DATA_ENTITY, Long.toString(offset), Long.toString(next - offset)));
+        skippedBytes += next - offset;
+        offset = next;
+        incompleteLength = -1;
+    }
+
+    /**
+     * Close the current record and move the offset past it.
+     * @throws IOException if an i/o exception occurs while closing the record
+     */
+    protected void closeRecord() throws IOException {
+        try {
+            currentRecord.close();
+        } finally {
+            currentRecord = null;
+            offset = currentEnd;
+        }
+    }
+
+    /**
+     * Returns the offset following the last complete record read, which is
+     * where reading resumes. The current record is included once it has
+     * been closed by the next call to <code>getNextRecord()</code>.
+     * @return offset following the last complete record read
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the offset of the current record or -1.
+     * @return offset of the current record or -1
+     */
+    public long getRecordOffset() {
+        return currentRecord != null ? currentOffset : -1;
+    }
+
+    /**
+     * Returns a boolean indicating whether the data following the last
+     * complete record was incomplete when the file was last polled.
+     * @return boolean indicating whether a partial record has been seen
+     */
+    public boolean isIncomplete() {
+        return incompleteLength != -1;
+    }
+
+    /**
+     * Returns the number of records read.
+     * @return number of records read
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the total number of damaged bytes skipped.
+     * @return total number of damaged bytes skipped
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * Returns the number of times the file length has been polled.
+     * @return number of times the file length has been polled
+     */
+    public long getPolls() {
+        return polls;
+    }
+
+}
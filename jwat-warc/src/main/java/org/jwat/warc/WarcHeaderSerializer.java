@@ -0,0 +1,557 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.util.Date;
+
+/**
+ * Serializes WARC headers into a reusable growable byte buffer. Field names
+ * and separators are precomputed byte arrays and numbers and dates are
+ * encoded directly as ASCII, so serializing a header allocates nothing but
+ * the string values of the header objects.
+ *
+ * Fields are written in the same order and with the same values as
+ * <code>WarcWriter</code> has always used. A <code>Template</code> holds
+ * pre-encoded constant fields, e.g. <code>WARC-Warcinfo-ID</code> and
+ * <code>WARC-IP-Address</code>, which are written for every header that
+ * does not have its own value for the field.
+ *
+ * Instances are not thread-safe, each writer has its own.
+ *
+ * @author nicl
+ */
+public class WarcHeaderSerializer {
+
+    /** Field index of WARC-Type. */
+    public static final int F_WARC_TYPE = 0;
+    /** Field index of WARC-Record-ID. */
+    public static final int F_WARC_RECORD_ID = 1;
+    /** Field index of WARC-Date. */
+    public static final int F_WARC_DATE = 2;
+    /** Field index of Content-Length. */
+    public static final int F_CONTENT_LENGTH = 3;
+    /** Field index of Content-Type. */
+    public static final int F_CONTENT_TYPE = 4;
+    /** Field index of WARC-Concurrent-To. */
+    public static final int F_WARC_CONCURRENT_TO = 5;
+    /** Field index of WARC-Block-Digest. */
+    public static final int F_WARC_BLOCK_DIGEST = 6;
+    /** Field index of WARC-Payload-Digest. */
+    public static final int F_WARC_PAYLOAD_DIGEST = 7;
+    /** Field index of WARC-IP-Address. */
+    public static final int F_WARC_IP_ADDRESS = 8;
+    /** Field index of WARC-Refers-To. */
+    public static final int F_WARC_REFERS_TO = 9;
+    /** Field index of WARC-Target-URI. */
+    public static final int F_WARC_TARGET_URI = 10;
+    /** Field index of WARC-Truncated. */
+    public static final int F_WARC_TRUNCATED = 11;
+    /** Field index of WARC-Warcinfo-ID. */
+    public static final int F_WARC_WARCINFO_ID = 12;
+    /** Field index of WARC-Filename. */
+    public static final int F_WARC_FILENAME = 13;
+    /** Field index of WARC-Profile. */
+    public static final int F_WARC_PROFILE = 14;
+    /** Field index of WARC-Identified-Payload-Type. */
+    public static final int F_WARC_IDENTIFIED_PAYLOAD_TYPE = 15;
+    /** Field index of WARC-Segment-Number. */
+    public static final int F_WARC_SEGMENT_NUMBER = 16;
+    /** Field index of WARC-Segment-Origin-ID. */
+    public static final int F_WARC_SEGMENT_ORIGIN_ID = 17;
+    /** Field index of WARC-Segment-Total-Length. */
+    public static final int F_WARC_SEGMENT_TOTAL_LENGTH = 18;
+    /** Field index of WARC-Refers-To-Target-URI. */
+    public static final int F_WARC_REFERS_TO_TARGET_URI = 19;
+    /** Field index of WARC-Refers-To-Date. */
+    public static final int F_WARC_REFERS_TO_DATE = 20;
+    /** Number of fields. */
+    public static final int F_COUNT = 21;
+
+    /** Field names in serialization order. */
+    public static final String[] FIELD_NAMES = {
+        WarcConstants.FN_WARC_TYPE,
+        WarcConstants.FN_WARC_RECORD_ID,
+        WarcConstants.FN_WARC_DATE,
+        WarcConstants.FN_CONTENT_LENGTH,
+        WarcConstants.FN_CONTENT_TYPE,
+        WarcConstants.FN_WARC_CONCURRENT_TO,
+        WarcConstants.FN_WARC_BLOCK_DIGEST,
+        WarcConstants.FN_WARC_PAYLOAD_DIGEST,
+        WarcConstants.FN_WARC_IP_ADDRESS,
+        WarcConstants.FN_WARC_REFERS_TO,
+        WarcConstants.FN_WARC_TARGET_URI,
+        WarcConstants.FN_WARC_TRUNCATED,
+        WarcConstants.FN_WARC_WARCINFO_ID,
+        WarcConstants.FN_WARC_FILENAME,
+        WarcConstants.FN_WARC_PROFILE,
+        WarcConstants.FN_WARC_IDENTIFIED_PAYLOAD_TYPE,
+        WarcConstants.FN_WARC_SEGMENT_NUMBER,
+        WarcConstants.FN_WARC_SEGMENT_ORIGIN_ID,
+        WarcConstants.FN_WARC_SEGMENT_TOTAL_LENGTH,
+        WarcConstants.FN_WARC_REFERS_TO_TARGET_URI,
+        WarcConstants.FN_WARC_REFERS_TO_DATE
+    };
+
+    /** Fields whose values are enclosed in angle brackets. */
+    protected static final boolean[] BRACKETED = new boolean[F_COUNT];
+
+    /** Field name and separator bytes, e.g. "WARC-Type: ". */
+    protected static final byte[][] FIELD_PREFIX = new byte[F_COUNT][];
+
+    /** Field value terminator bytes, "\r\n" or "&gt;\r\n". */
+    protected static final byte[][] FIELD_SUFFIX = new byte[F_COUNT][];
+
+    /** WARC magic bytes. */
+    protected static final byte[] MAGIC = WarcConstants.WARC_MAGIC_HEADER.getBytes();
+
+    /** Line terminator bytes. */
+    protected static final byte[] CRLF = "\r\n".getBytes();
+
+    static {
+        BRACKETED[F_WARC_RECORD_ID] = true;
+        BRACKETED[F_WARC_CONCURRENT_TO] = true;
+        BRACKETED[F_WARC_REFERS_TO] = true;
+        BRACKETED[F_WARC_WARCINFO_ID] = true;
+        BRACKETED[F_WARC_SEGMENT_ORIGIN_ID] = true;
+        for (int i=0; i<F_COUNT; ++i) {
+            FIELD_PREFIX[i] = (FIELD_NAMES[i] + (BRACKETED[i] ? ": <" : ": ")).getBytes();
+            FIELD_SUFFIX[i] = (BRACKETED[i] ? ">\r\n" : "\r\n").getBytes();
+        }
+    }
+
+    /** Date format used for dates before 1970. */
+    protected DateFormat dateFormat;
+
+    /** Serialized bytes. */
+    protected byte[] buf = new byte[1024];
+
+    /** Number of serialized bytes. */
+    protected int len;
+
+    /** Second of the last date encoded directly. */
+    protected long cachedSecond = Long.MIN_VALUE;
+
+    /** Encoded last date. */
+    protected final byte[] cachedDate = new byte[20];
+
+    /**
+     * Construct a serializer.
+     * @param dateFormat date format used for dates which can not be encoded
+     * directly
+     */
+    public WarcHeaderSerializer(DateFormat dateFormat) {
+        if (dateFormat == null) {
+            throw new IllegalArgumentException(
+                    "The 'dateFormat' is null");
+        }
+        this.dateFormat = dateFormat;
+    }
+
+    /**
+     * Returns the number of serialized bytes.
+     * @return number of serialized bytes
+     */
+    public int size() {
+        return len;
+    }
+
+    /**
+     * Discard the serialized bytes.
+     */
+    public void reset() {
+        len = 0;
+    }
+
+    /**
+     * Returns a copy of the serialized bytes.
+     * @return copy of the serialized bytes
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[len];
+        System.arraycopy(buf, 0, bytes, 0, len);
+        return bytes;
+    }
+
+    /**
+     * Write the serialized bytes to an output stream.
+     * @param out output stream
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, len);
+    }
+
+    /**
+     * Serialize a complete header, including the terminating empty line,
+     * replacing any previously serialized bytes.
+     * @param header WARC header
+     * @param template template with constant fields or null
+     */
+    public void serialize(WarcHeader header, Template template) {
+        len = 0;
+        write(MAGIC);
+        writeLong(header.major);
+        write((byte)'.');
+        writeLong(header.minor);
+        write(CRLF);
+        for (int f=0; f<F_COUNT; ++f) {
+            if (!serializeField(header, f) && template != null && template.fields[f] != null) {
+                write(template.fields[f]);
+            }
+        }
+        write(CRLF);
+    }
+
+    /**
+     * Create a template from the fields present in a header. Content-Length
+     * is record specific and never part of a template.
+     * @param header header with the constant fields
+     * @return template with the pre-encoded fields
+     */
+    public Template createTemplate(WarcHeader header) {
+        if (header == null) {
+            throw new IllegalArgumentException(
+                    "The 'header' is null");
+        }
+        Template template = new Template();
+        int saved = len;
+        byte[] savedBuf = buf;
+        buf = new byte[256];
+        for (int f=0; f<F_COUNT; ++f) {
+            len = 0;
+            if (f != F_CONTENT_LENGTH && serializeField(header, f)) {
+                template.fields[f] = toByteArray();
+            }
+        }
+        buf = savedBuf;
+        len = saved;
+        return template;
+    }
+
+    /**
+     * Serialize one field of a header if it has a value.
+     * @param header WARC header
+     * @param f field index
+     * @return boolean indicating whether the field was written
+     */
+    protected boolean serializeField(WarcHeader header, int f) {
+        switch (f) {
+        case F_WARC_TYPE:
+            String warcTypeStr = null;
+            if (header.warcTypeIdx != null && header.warcTypeIdx > 0
+                    && header.warcTypeIdx < WarcConstants.RT_IDX_STRINGS.length) {
+                warcTypeStr = WarcConstants.RT_IDX_STRINGS[header.warcTypeIdx];
+            }
+            if (warcTypeStr == null) {
+                warcTypeStr = header.warcTypeStr;
+            }
+            return writeField(f, warcTypeStr);
+        case F_WARC_RECORD_ID:
+            return writeField(f, header.warcRecordIdUri != null ? header.warcRecordIdUri.toString() : header.warcRecordIdStr);
+        case F_WARC_DATE:
+            if (header.warcDate != null) {
+                write(FIELD_PREFIX[f]);
+                writeDate(header.warcDate);
+                write(FIELD_SUFFIX[f]);
+                return true;
+            }
+            return writeField(f, header.warcDateStr);
+        case F_CONTENT_LENGTH:
+            if (header.contentLength != null) {
+                write(FIELD_PREFIX[f]);
+                writeLong(header.contentLength);
+                write(FIELD_SUFFIX[f]);
+                return true;
+            }
+            return writeField(f, header.contentLengthStr);
+        case F_CONTENT_TYPE:
+            return writeField(f, header.contentType != null ? header.contentType.toString() : header.contentTypeStr);
+        case F_WARC_CONCURRENT_TO:
+            boolean bWritten = false;
+            if (header.warcConcurrentToList != null) {
+                WarcConcurrentTo warcConcurrentTo;
+                for (int i=0; i<header.warcConcurrentToList.size(); ++i) {
+                    warcConcurrentTo = header.warcConcurrentToList.get(i);
+                    bWritten |= writeField(f, warcConcurrentTo.warcConcurrentToUri != null
+                            ? warcConcurrentTo.warcConcurrentToUri.toString() : warcConcurrentTo.warcConcurrentToStr);
+                }
+            }
+            return bWritten;
+        case F_WARC_BLOCK_DIGEST:
+            return writeField(f, header.warcBlockDigest != null ? header.warcBlockDigest.toString() : header.warcBlockDigestStr);
+        case F_WARC_PAYLOAD_DIGEST:
+            return writeField(f, header.warcPayloadDigest != null ? header.warcPayloadDigest.toString() : header.warcPayloadDigestStr);
+        case F_WARC_IP_ADDRESS:
+            return writeField(f, header.warcInetAddress != null ? header.warcInetAddress.getHostAddress() : header.warcIpAddress);
+        case F_WARC_REFERS_TO:
+            return writeField(f, header.warcRefersToUri != null ? header.warcRefersToUri.toString() : header.warcRefersToStr);
+        case F_WARC_TARGET_URI:
+            return writeField(f, header.warcTargetUriUri != null ? header.warcTargetUriUri.toString() : header.warcTargetUriStr);
+        case F_WARC_TRUNCATED:
+            String warcTruncatedStr = null;
+            if (header.warcTruncatedIdx != null && header.warcTruncatedIdx > 0
+                    && header.warcTruncatedIdx < WarcConstants.TT_IDX_STRINGS.length) {
+                warcTruncatedStr = WarcConstants.TT_IDX_STRINGS[header.warcTruncatedIdx];
+            }
+            if (warcTruncatedStr == null) {
+                warcTruncatedStr = header.warcTruncatedStr;
+            }
+            return writeField(f, warcTruncatedStr);
+        case F_WARC_WARCINFO_ID:
+            return writeField(f, header.warcWarcinfoIdUri != null ? header.warcWarcinfoIdUri.toString() : header.warcWarcinfoIdStr);
+        case F_WARC_FILENAME:
+            return writeField(f, header.warcFilename);
+        case F_WARC_PROFILE:
+            String warcProfileStr = null;
+            if (header.warcProfileUri != null) {
+                warcProfileStr = header.warcProfileUri.toString();
+            } else if (header.warcProfileIdx != null && header.warcProfileIdx > 0
+                    && header.warcProfileIdx < WarcConstants.P_IDX_STRINGS.length) {
+                warcProfileStr = WarcConstants.P_IDX_STRINGS[header.warcProfileIdx];
+            }
+            if (warcProfileStr == null) {
+                warcProfileStr = header.warcProfileStr;
+            }
+            return writeField(f, warcProfileStr);
+        case F_WARC_IDENTIFIED_PAYLOAD_TYPE:
+            return writeField(f, header.warcIdentifiedPayloadType != null
+                    ? header.warcIdentifiedPayloadType.toString() : header.warcIdentifiedPayloadTypeStr);
+        case F_WARC_SEGMENT_NUMBER:
+            if (header.warcSegmentNumber != null) {
+                write(FIELD_PREFIX[f]);
+                writeLong(header.warcSegmentNumber);
+                write(FIELD_SUFFIX[f]);
+                return true;
+            }
+            return writeField(f, header.warcSegmentNumberStr);
+        case F_WARC_SEGMENT_ORIGIN_ID:
+            return writeField(f, header.warcSegmentOriginIdUrl != null
+                    ? header.warcSegmentOriginIdUrl.toString() : header.warcSegmentOriginIdStr);
+        case F_WARC_SEGMENT_TOTAL_LENGTH:
+            if (header.warcSegmentTotalLength != null) {
+                write(FIELD_PREFIX[f]);
+                writeLong(header.warcSegmentTotalLength);
+                write(FIELD_SUFFIX[f]);
+                return true;
+            }
+            return writeField(f, header.warcSegmentTotalLengthStr);
+        case F_WARC_REFERS_TO_TARGET_URI:
+            return writeField(f, header.warcRefersToTargetUriUri != null
+                    ? header.warcRefersToTargetUriUri.toString() : header.warcRefersToTargetUriStr);
+        case F_WARC_REFERS_TO_DATE:
+            if (header.warcRefersToDate != null) {
+                write(FIELD_PREFIX[f]);
+                writeDate(header.warcRefersToDate);
+                write(FIELD_SUFFIX[f]);
+                return true;
+            }
+            return writeField(f, header.warcRefersToDateStr);
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Write a field if it has a value.
+     * @param f field index
+     * @param value field value or null
+     * @return boolean indicating whether the field was written
+     */
+    protected boolean writeField(int f, String value) {
+        if (value == null) {
+            return false;
+        }
+        write(FIELD_PREFIX[f]);
+        writeString(value);
+        write(FIELD_SUFFIX[f]);
+        return true;
+    }
+
+    /**
+     * Make room for more bytes.
+     * @param n number of bytes to make room for
+     */
+    protected void ensureCapacity(int n) {
+        if (len + n > buf.length) {
+            byte[] tmpBuf = new byte[Math.max(buf.length << 1, len + n)];
+            System.arraycopy(buf, 0, tmpBuf, 0, len);
+            buf = tmpBuf;
+        }
+    }
+
+    /**
+     * Write a byte.
+     * @param b byte
+     */
+    protected void write(byte b) {
+        ensureCapacity(1);
+        buf[len++] = b;
+    }
+
+    /**
+     * Write a byte array.
+     * @param bytes byte array
+     */
+    protected void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+    }
+
+    /**
+     * Write a string. ASCII strings are copied directly, others are encoded
+     * with the platform encoding like <code>String.getBytes()</code>.
+     * @param str string
+     */
+    protected void writeString(String str) {
+        int strLen = str.length();
+        ensureCapacity(strLen);
+        int start = len;
+        char c;
+        for (int i=0; i<strLen; ++i) {
+            c = str.charAt(i);
+            if (c >= 0x80) {
+                len = start;
+                write(str.getBytes());
+                return;
+            }
+            buf[len++] = (byte)c;
+        }
+    }
+
+    /**
+     * Write a number as ASCII digits.
+     * @param value number
+     */
+    protected void writeLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                writeString(Long.toString(value));
+                return;
+            }
+            write((byte)'-');
+            value = -value;
+        }
+        int digits = 1;
+        long tmp = value;
+        while (tmp >= 10) {
+            tmp /= 10;
+            ++digits;
+        }
+        ensureCapacity(digits);
+        int idx = len + digits;
+        do {
+            buf[--idx] = (byte)('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        len += digits;
+    }
+
+    /**
+     * Write a date in the "yyyy-MM-dd'T'HH:mm:ss'Z'" format. Dates from 1970
+     * until 10000 are encoded directly, the last one is cached. Other dates
+     * use the date format, which also handles the Julian calendar.
+     * @param date date
+     */
+    protected void writeDate(Date date) {
+        long millis = date.getTime();
+        if (millis < 0 || millis >= 253402300800000L) {
+            writeString(dateFormat.format(date));
+            return;
+        }
+        long second = millis / 1000;
+        if (second != cachedSecond) {
+            encodeDate(second, cachedDate);
+            cachedSecond = second;
+        }
+        write(cachedDate);
+    }
+
+    /**
+     * Encode seconds since the epoch as "yyyy-MM-dd'T'HH:mm:ss'Z'".
+     * @param second non-negative seconds since the epoch
+     * @param out 20 byte output array
+     */
+    protected static void encodeDate(long second, byte[] out) {
+        long days = second / 86400;
+        int secs = (int)(second % 86400);
+        // Civil date from days since the epoch, proleptic Gregorian calendar.
+        long z = days + 719468;
+        long era = z / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int)(doy - (153 * mp + 2) / 5 + 1);
+        int month = (int)(mp < 10 ? mp + 3 : mp - 9);
+        int year = (int)(yoe + era * 400 + (month <= 2 ? 1 : 0));
+        out[0] = (byte)('0' + year / 1000);
+        out[1] = (byte)('0' + year / 100 % 10);
+        out[2] = (byte)('0' + year / 10 % 10);
+        out[3] = (byte)('0' + year % 10);
+        out[4] = '-';
+        out[5] = (byte)('0' + month / 10);
+        out[6] = (byte)('0' + month % 10);
+        out[7] = '-';
+        out[8] = (byte)('0' + day / 10);
+        out[9] = (byte)('0' + day % 10);
+        out[10] = 'T';
+        int hour = secs / 3600;
+        int minute = secs / 60 % 60;
+        secs %= 60;
+        out[11] = (byte)('0' + hour / 10);
+        out[12] = (byte)('0' + hour % 10);
+        out[13] = ':';
+        out[14] = (byte)('0' + minute / 10);
+        out[15] = (byte)('0' + minute % 10);
+        out[16] = ':';
+        out[17] = (byte)('0' + secs / 10);
+        out[18] = (byte)('0' + secs % 10);
+        out[19] = 'Z';
+    }
+
+    /**
+     * Pre-encoded constant header fields, created with
+     * <code>createTemplate()</code>. Immutable and thread-safe.
+     */
+    public static class Template {
+
+        /** Pre-encoded field lines by field index. */
+        protected final byte[][] fields = new byte[F_COUNT][];
+
+        /**
+         * Construct an empty template.
+         */
+        protected Template() {
+        }
+
+        /**
+         * Returns a boolean indicating whether the template has a field.
+         * @param f field index
+         * @return boolean indicating whether the template has a field
+         */
+        public boolean hasField(int f) {
+            return fields[f] != null;
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+/**
+ * Index information about a record, reported by a <code>WarcWriter</code>
+ * to its <code>WarcIndexListener</code> once the record has been written.
+ *
+ * @author nicl
+ */
+public class WarcIndexEntry {
+
+    /** Offset of the record, or its gzip member, in the output. */
+    public long offset;
+
+    /** Length of the record, or its gzip member, in the output. */
+    public long length;
+
+    /** Uncompressed length of the record including the trailing newlines, or -1 if unknown. */
+    public long uncompressedLength;
+
+    /** WARC-Type or null if written raw. */
+    public String recordType;
+
+    /** WARC-Record-ID without angle brackets or null. */
+    public String recordId;
+
+    /** WARC-Target-URI or null. */
+    public String targetUri;
+
+    /** WARC-Date or null. */
+    public String date;
+
+    /** Labelled payload digest, from the header or computed, or null. */
+    public String payloadDigest;
+
+    /** HTTP status code or null if the block has no HTTP response header. */
+    public Integer httpStatus;
+
+    /** Media type of the HTTP payload or record block without parameters, or null. */
+    public String mimeType;
+
+}
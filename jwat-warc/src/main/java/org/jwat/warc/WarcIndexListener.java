@@ -0,0 +1,38 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.IOException;
+
+/**
+ * Callback receiving the index information of each record written by a
+ * <code>WarcWriter</code>, so indexes can be built while writing.
+ *
+ * @author nicl
+ */
+public interface WarcIndexListener {
+
+    /**
+     * Called when a record has been completely written to the output. The
+     * entry object may be reused by the writer after the call.
+     * @param entry index information about the record
+     * @throws IOException if an i/o exception occurs while indexing
+     */
+    void recordWritten(WarcIndexEntry entry) throws IOException;
+
+}
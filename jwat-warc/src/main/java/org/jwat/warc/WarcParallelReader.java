@@ -0,0 +1,287 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jwat.common.FixedLengthInputStream;
+import org.jwat.common.RandomAccessFileInputStream;
+import org.jwat.common.RecordHandler;
+import org.jwat.gzip.GzipConstants;
+import org.jwat.gzip.GzipMemberSplitter;
+
+/**
+ * Reads the records of a single WARC file on several threads. The file is
+ * split into byte ranges which start on record boundaries and each range is
+ * read by its own reader, so records and their payload streams are
+ * independent of each other.
+ *
+ * Compressed files are split on GZip member boundaries which are verified
+ * by inflating the member and checking it starts with the WARC magic.
+ * Uncompressed files are split on record boundaries which are verified by
+ * parsing the header and checking the record trailer.
+ *
+ * The record handler is called concurrently from several threads. Records
+ * within a range are handled in file order. Record offsets are relative to
+ * the start of the file, as in a sequential read.
+ *
+ * @author nicl
+ */
+public class WarcParallelReader {
+
+    /** Default buffer size used by range readers. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Ranges per thread, to even out ranges of different cost. */
+    public static final int RANGES_PER_THREAD = 4;
+
+    /** Number of threads. */
+    protected final int threads;
+
+    /** Buffer size used by range readers. */
+    protected int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /** Records read by the last <code>process</code> call. */
+    protected long records;
+
+    /** Errors found by the last <code>process</code> call. */
+    protected long errors;
+
+    /** Warnings found by the last <code>process</code> call. */
+    protected long warnings;
+
+    /** Compliance of the file read by the last <code>process</code> call. */
+    protected boolean bIsCompliant;
+
+    /**
+     * Construct a parallel reader using the given number of threads.
+     * @param threads number of threads
+     */
+    public WarcParallelReader(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'threads' is less than or equal to zero: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Set the buffer size used by range readers.
+     * @param size buffer size used by range readers
+     */
+    public void setBufferSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'size' is less than or equal to zero: " + size);
+        }
+        bufferSize = size;
+    }
+
+    /**
+     * Returns the number of records read by the last <code>process</code> call.
+     * @return number of records read
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the number of errors found by the last <code>process</code> call.
+     * @return number of errors found
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the number of warnings found by the last <code>process</code> call.
+     * @return number of warnings found
+     */
+    public long getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Returns a boolean indicating whether all ranges read by the last
+     * <code>process</code> call were compliant.
+     * @return boolean indicating whether the file is compliant
+     */
+    public boolean isCompliant() {
+        return bIsCompliant;
+    }
+
+    /**
+     * Returns a boolean indicating whether a file is GZip compressed.
+     * @param raf file
+     * @return boolean indicating whether the file is GZip compressed
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public static boolean isCompressed(RandomAccessFile raf) throws IOException {
+        if (raf.length() < 2) {
+            return false;
+        }
+        raf.seek(0);
+        int magic = raf.read() | (raf.read() << 8);
+        return magic == GzipConstants.GZIP_MAGIC;
+    }
+
+    /**
+     * Split a WARC file into ranges which start on record boundaries.
+     * @param file WARC file
+     * @param parts wanted number of ranges
+     * @return range boundaries, starting with 0 and ending with the file length
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long[] split(File file, int parts) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' is null");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (isCompressed(raf)) {
+                return new GzipMemberSplitter().split(raf, parts, WarcConstants.WARC_MAGIC_HEADER.getBytes());
+            }
+            return new WarcRecordSplitter().split(raf, parts);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Read all records of a WARC file in parallel.
+     * @param file WARC file
+     * @param handler record handler, called concurrently
+     * @return number of records read
+     * @throws IOException if an i/o exception occurs while reading the file
+     * or in the handler
+     */
+    public long process(final File file, final RecordHandler<WarcRecord> handler) throws IOException {
+        if (handler == null) {
+            throw new IllegalArgumentException(
+                    "The 'handler' is null");
+        }
+        final long[] boundaries = split(file, threads * RANGES_PER_THREAD);
+        records = 0;
+        errors = 0;
+        warnings = 0;
+        bIsCompliant = true;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jwat-warc-parallel");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<WarcReader>> futures = new ArrayList<Future<WarcReader>>();
+            for (int i=1; i<boundaries.length; ++i) {
+                final long start = boundaries[i - 1];
+                final long end = boundaries[i];
+                futures.add(executor.submit(new Callable<WarcReader>() {
+                    @Override
+                    public WarcReader call() throws Exception {
+                        return processRange(file, start, end, handler);
+                    }
+                }));
+            }
+            WarcReader reader;
+            for (int i=0; i<futures.size(); ++i) {
+                try {
+                    reader = futures.get(i).get();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException)e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+                records += reader.records;
+                errors += reader.errors;
+                warnings += reader.warnings;
+                bIsCompliant &= reader.isCompliant();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return records;
+    }
+
+    /**
+     * Read the records of a range of a WARC file. The range must start on a
+     * record boundary, as returned by <code>split</code>.
+     * @param file WARC file
+     * @param start start offset of the range
+     * @param end end offset of the range
+     * @param handler record handler
+     * @return the closed reader used, with the totals of the range
+     * @throws IOException if an i/o exception occurs while reading the file
+     * or in the handler
+     */
+    public WarcReader processRange(File file, long start, long end, RecordHandler<WarcRecord> handler) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        WarcReader reader = null;
+        try {
+            boolean bCompressed = isCompressed(raf);
+            raf.seek(start);
+            InputStream in = new FixedLengthInputStream(new RandomAccessFileInputStream(raf), end - start);
+            reader = createReader(in, bCompressed);
+            WarcRecord record;
+            while ((record = reader.getNextRecord()) != null) {
+                record.header.startOffset += start;
+                handler.handleRecord(record);
+                record.close();
+            }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            raf.close();
+        }
+        return reader;
+    }
+
+    /**
+     * Create the reader used for a range. Override to configure readers,
+     * e.g. to enable digest validation.
+     * @param in input stream of the range
+     * @param bCompressed boolean indicating whether the file is compressed
+     * @return reader for the range
+     * @throws IOException if an i/o exception occurs while creating the reader
+     */
+    protected WarcReader createReader(InputStream in, boolean bCompressed) throws IOException {
+        if (bCompressed) {
+            return WarcReaderFactory.getReaderCompressed(in, bufferSize);
+        }
+        return WarcReaderFactory.getReaderUncompressed(in, bufferSize);
+    }
+
+}
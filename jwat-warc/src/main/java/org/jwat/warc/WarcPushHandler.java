@@ -0,0 +1,55 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Callback interface used by <code>WarcPushParser</code> to report records
+ * as they are parsed from the data fed to the parser.
+ *
+ * @author nicl
+ */
+public interface WarcPushHandler {
+
+    /**
+     * Called when a record header has been parsed and validated.
+     * @param record WARC record with a parsed header
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    void recordHeader(WarcRecord record) throws IOException;
+
+    /**
+     * Called with a chunk of the record payload. The buffer is only valid
+     * for the duration of the call.
+     * @param record WARC record the payload belongs to
+     * @param buffer payload chunk
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    void payloadChunk(WarcRecord record, ByteBuffer buffer) throws IOException;
+
+    /**
+     * Called when the record payload and trailing newlines have been
+     * consumed and the final validation has been performed.
+     * @param record closed WARC record
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    void recordEnd(WarcRecord record) throws IOException;
+
+}
@@ -0,0 +1,1035 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jwat.common.ByteCountingPushBackInputStream;
+import org.jwat.common.Diagnosis;
+import org.jwat.common.DiagnosisType;
+import org.jwat.common.Diagnostics;
+import org.jwat.common.HttpHeader;
+import org.jwat.common.PayloadDigester;
+import org.jwat.gzip.GzipConstants;
+
+/**
+ * Incremental WARC parser which is fed with chunks of data instead of
+ * reading from an <code>InputStream</code>. All state, including the
+ * inflater state of a GZip member, is kept between chunks so a single
+ * thread can parse many WARC streams as their data arrives.
+ *
+ * Compression is detected from the first two bytes. Parsed records are
+ * reported to a <code>WarcPushHandler</code>. Record headers are validated
+ * exactly as by <code>WarcRecord.parseRecord</code> and the block digest,
+ * payload length and trailing newlines are validated when the record ends.
+ * The HTTP header of an <code>application/http</code> record is detected
+ * incrementally by a <code>PayloadDigester</code>, which also computes the
+ * payload digest, so the payload digest and HTTP header diagnoses are the
+ * same as for a blocking read. Since the payload is delivered in chunks,
+ * <code>getHttpHeader()</code> returns the header once it has been read
+ * and validated, and an invalid header is only reported when the record
+ * ends.
+ *
+ * Records are owned by the parser and should not be closed by the handler.
+ * Reader options, such as digest settings and header size limits, are set
+ * on the reader returned by <code>getReader()</code>.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author nicl
+ */
+public class WarcPushParser {
+
+    /** Buffer size used for inflated data and direct buffer copies. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Compression not detected yet. */
+    protected static final int M_DETECT = 0;
+    /** Uncompressed WARC data. */
+    protected static final int M_UNCOMPRESSED = 1;
+    /** GZip compressed WARC data. */
+    protected static final int M_GZIP = 2;
+
+    /** Reading a GZip member header. */
+    protected static final int G_HEADER = 0;
+    /** Inflating a GZip member. */
+    protected static final int G_INFLATE = 1;
+    /** Reading a GZip member trailer. */
+    protected static final int G_TRAILER = 2;
+    /** Unrecoverable GZip error, remaining data is ignored. */
+    protected static final int G_ERROR = 3;
+
+    /** Looking for a WARC record header. */
+    protected static final int W_HEADER = 0;
+    /** Reading the record payload. */
+    protected static final int W_PAYLOAD = 1;
+    /** Reading the newlines after the record payload. */
+    protected static final int W_TRAILER = 2;
+    /** Skipping data after a record in a GZip member. */
+    protected static final int W_SKIP = 3;
+
+    /** Handler notified of parsed records. */
+    protected final WarcPushHandler handler;
+
+    /** Reader used for options and record validation context. */
+    protected final WarcReaderUncompressed reader;
+
+    /** Diagnostics for errors in the GZip layer. */
+    public final Diagnostics<Diagnosis> diagnostics = new Diagnostics<Diagnosis>();
+
+    /** Has the end of input been signalled. */
+    protected boolean bFinished;
+
+    /** Detected compression mode. */
+    protected int mode = M_DETECT;
+
+    /** Bytes kept until the compression has been detected. */
+    protected byte[] detectBuf = new byte[2];
+
+    /** Number of bytes in the detection buffer. */
+    protected int detectLen;
+
+    /** Buffer used to copy data from buffers without a backing array. */
+    protected byte[] copyBuf;
+
+    /** Number of bytes fed to the parser. */
+    protected long rawOffset;
+
+    /*
+     * GZip state.
+     */
+
+    /** Current GZip state. */
+    protected int gState = G_HEADER;
+
+    /** Start offset of the current GZip member. */
+    protected long memberOffset;
+
+    /** Number of GZip members parsed. */
+    protected int members;
+
+    /** Buffer with the current GZip member header. */
+    protected byte[] gzHdrBuf = new byte[64];
+
+    /** Number of bytes in the GZip member header buffer. */
+    protected int gzHdrLen;
+
+    /** Inflater, reused for all members. */
+    protected Inflater inf;
+
+    /** Checksum of the inflated data of the current member. */
+    protected CRC32 crc;
+
+    /** Buffer for inflated data. */
+    protected byte[] inflateBuf;
+
+    /** Buffer with the current GZip member trailer. */
+    protected byte[] trailerBuf = new byte[8];
+
+    /** Number of bytes in the GZip member trailer buffer. */
+    protected int trailerLen;
+
+    /*
+     * WARC state.
+     */
+
+    /** Current WARC state. */
+    protected int wState = W_HEADER;
+
+    /** Offset of the next WARC byte, relative to the GZip member if compressed. */
+    protected long wOffset;
+
+    /** Offset where the search for the current record header started. */
+    protected long recordOffset;
+
+    /** Offset of the current record header version line. */
+    protected long headerOffset;
+
+    /** Buffer with the current line or record header. */
+    protected byte[] hdrBuf = new byte[1024];
+
+    /** Number of bytes in the header buffer. */
+    protected int hdrLen;
+
+    /** Index of the current line in the header buffer. */
+    protected int lineIdx;
+
+    /** Length of the version line in the header buffer. */
+    protected int versionLen;
+
+    /** Has the WARC version line been found. */
+    protected boolean bMagic;
+
+    /** Is the current line before the version line known not to be it. */
+    protected boolean bLineInvalid;
+
+    /** Was invalid data seen before the version line. */
+    protected boolean bInvalidDataBeforeVersion;
+
+    /** Were empty lines seen before the version line. */
+    protected boolean bEmptyLinesBeforeVersion;
+
+    /** Record currently being parsed. */
+    protected WarcRecord record;
+
+    /** Does the current record have a payload. */
+    protected boolean bPayload;
+
+    /** Payload bytes not yet received. */
+    protected long remaining;
+
+    /** Block digest of the current record or null. */
+    protected MessageDigest md;
+
+    /** HTTP header detector and payload digest of the current record or null. */
+    protected PayloadDigester payloadDigester;
+
+    /** Buffer with the newlines after the payload. */
+    protected byte[] nlBuf = new byte[16];
+
+    /** Number of bytes in the newline buffer. */
+    protected int nlLen;
+
+    /**
+     * Construct a push parser reporting to the supplied handler.
+     * @param handler handler notified of parsed records
+     */
+    public WarcPushParser(WarcPushHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException(
+                    "The 'handler' is null");
+        }
+        this.handler = handler;
+        reader = new WarcReaderUncompressed();
+    }
+
+    /**
+     * Returns the reader used for options and validation context.
+     * Record, error and warning totals are also accumulated here.
+     * @return reader used for options and validation context
+     */
+    public WarcReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Returns a boolean indicating whether the data is GZip compressed.
+     * Only meaningful once the first two bytes have been fed.
+     * @return boolean indicating whether the data is GZip compressed
+     */
+    public boolean isCompressed() {
+        return mode == M_GZIP;
+    }
+
+    /**
+     * Returns the number of bytes fed to the parser.
+     * @return number of bytes fed to the parser
+     */
+    public long getConsumed() {
+        return rawOffset + detectLen;
+    }
+
+    /**
+     * Returns a boolean indicating whether the data parsed so far is
+     * compliant, including the GZip layer.
+     * @return boolean indicating whether the data parsed so far is compliant
+     */
+    public boolean isCompliant() {
+        return reader.isCompliant() && !diagnostics.hasErrors() && !diagnostics.hasWarnings();
+    }
+
+    /**
+     * Feed the remaining bytes of a buffer to the parser. The buffer
+     * position is moved to its limit.
+     * @param buffer buffer with the next chunk of data
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    public void feed(ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            throw new IllegalArgumentException(
+                    "The 'buffer' is null");
+        }
+        if (buffer.hasArray()) {
+            feed(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            if (copyBuf == null) {
+                copyBuf = new byte[DEFAULT_BUFFER_SIZE];
+            }
+            int len;
+            while ((len = buffer.remaining()) > 0) {
+                if (len > copyBuf.length) {
+                    len = copyBuf.length;
+                }
+                buffer.get(copyBuf, 0, len);
+                feed(copyBuf, 0, len);
+            }
+        }
+    }
+
+    /**
+     * Feed a chunk of bytes to the parser.
+     * @param b byte array with the next chunk of data
+     * @param off offset of the chunk
+     * @param len length of the chunk
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    public void feed(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new IllegalArgumentException(
+                    "The byte array 'b' is null");
+        }
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IllegalArgumentException(
+                    "Invalid 'off' or 'len': " + off + ", " + len);
+        }
+        if (bFinished) {
+            throw new IllegalStateException("The parser has been finished");
+        }
+        if (mode == M_DETECT) {
+            while (len > 0 && detectLen < 2) {
+                detectBuf[detectLen++] = b[off++];
+                --len;
+            }
+            if (detectLen < 2) {
+                return;
+            }
+            int magic = (detectBuf[0] & 255) | ((detectBuf[1] & 255) << 8);
+            detectMode(magic == GzipConstants.GZIP_MAGIC ? M_GZIP : M_UNCOMPRESSED);
+        }
+        if (len > 0) {
+            rawBytes(b, off, len);
+        }
+    }
+
+    /**
+     * Signal the end of input. Incomplete records are closed and reported
+     * as truncated.
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    public void finish() throws IOException {
+        if (bFinished) {
+            return;
+        }
+        if (mode == M_DETECT) {
+            detectMode(M_UNCOMPRESSED);
+        }
+        if (mode == M_GZIP) {
+            if (gState != G_HEADER || gzHdrLen > 0) {
+                if (gState != G_ERROR) {
+                    diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA, "GZip file", "Unexpected EOF!"));
+                    endOfData();
+                }
+            }
+        } else {
+            endOfData();
+        }
+        bFinished = true;
+    }
+
+    /**
+     * Select the compression mode and process the bytes used to detect it.
+     * @param detected compression mode
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    protected void detectMode(int detected) throws IOException {
+        mode = detected;
+        if (mode == M_GZIP) {
+            inf = new Inflater(true);
+            crc = new CRC32();
+            inflateBuf = new byte[DEFAULT_BUFFER_SIZE];
+        }
+        int len = detectLen;
+        detectLen = 0;
+        if (len > 0) {
+            rawBytes(detectBuf, 0, len);
+        }
+    }
+
+    /**
+     * Process raw input bytes according to the detected compression mode.
+     * @param b byte array
+     * @param off offset of data
+     * @param len length of data
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    protected void rawBytes(byte[] b, int off, int len) throws IOException {
+        if (mode == M_GZIP) {
+            gzipBytes(b, off, len);
+        } else {
+            rawOffset += len;
+            warcBytes(b, off, len);
+        }
+    }
+
+    /**
+     * Process GZip compressed input bytes.
+     * @param b byte array
+     * @param off offset of data
+     * @param len length of data
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    protected void gzipBytes(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        int hl;
+        int n;
+        while (off < end) {
+            switch (gState) {
+            case G_HEADER:
+                if (gzHdrLen == 0) {
+                    memberOffset = rawOffset;
+                }
+                if (gzHdrLen == gzHdrBuf.length) {
+                    byte[] tmpBuf = new byte[gzHdrBuf.length * 2];
+                    System.arraycopy(gzHdrBuf, 0, tmpBuf, 0, gzHdrLen);
+                    gzHdrBuf = tmpBuf;
+                }
+                gzHdrBuf[gzHdrLen++] = b[off++];
+                ++rawOffset;
+                hl = gzipHeaderLength();
+                if (hl != -1) {
+                    gState = gzipHeaderValid() ? G_INFLATE : G_ERROR;
+                }
+                break;
+            case G_INFLATE:
+                inf.setInput(b, off, end - off);
+                try {
+                    while ((n = inf.inflate(inflateBuf, 0, inflateBuf.length)) > 0) {
+                        crc.update(inflateBuf, 0, n);
+                        warcBytes(inflateBuf, 0, n);
+                    }
+                } catch (DataFormatException e) {
+                    diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA, "GZip file", e.getMessage()));
+                    gState = G_ERROR;
+                    endOfData();
+                    break;
+                }
+                if (inf.needsDictionary()) {
+                    diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA, "GZip file", "Dictionary required!"));
+                    gState = G_ERROR;
+                    endOfData();
+                    break;
+                }
+                n = inf.finished() ? inf.getRemaining() : 0;
+                rawOffset += (end - off) - n;
+                off = end - n;
+                if (inf.finished()) {
+                    trailerLen = 0;
+                    gState = G_TRAILER;
+                }
+                break;
+            case G_TRAILER:
+                trailerBuf[trailerLen++] = b[off++];
+                ++rawOffset;
+                if (trailerLen == trailerBuf.length) {
+                    gzipTrailer();
+                    endOfData();
+                    ++members;
+                    inf.reset();
+                    crc.reset();
+                    gzHdrLen = 0;
+                    gState = G_HEADER;
+                }
+                break;
+            case G_ERROR:
+            default:
+                rawOffset += end - off;
+                off = end;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the GZip member header in the header buffer or
+     * -1 if the header is not complete.
+     * @return length of the GZip member header or -1
+     */
+    protected int gzipHeaderLength() {
+        if (gzHdrLen < 10) {
+            return -1;
+        }
+        int flg = gzHdrBuf[3] & 255;
+        int pos = 10;
+        if ((flg & GzipConstants.FLG_FEXTRA) == GzipConstants.FLG_FEXTRA) {
+            if (gzHdrLen < pos + 2) {
+                return -1;
+            }
+            pos += 2 + ((gzHdrBuf[pos] & 255) | ((gzHdrBuf[pos + 1] & 255) << 8));
+        }
+        if ((flg & GzipConstants.FLG_FNAME) == GzipConstants.FLG_FNAME) {
+            pos = gzipZeroTerminated(pos);
+        }
+        if (pos != -1 && (flg & GzipConstants.FLG_FCOMMENT) == GzipConstants.FLG_FCOMMENT) {
+            pos = gzipZeroTerminated(pos);
+        }
+        if (pos != -1 && (flg & GzipConstants.FLG_FHCRC) == GzipConstants.FLG_FHCRC) {
+            pos += 2;
+        }
+        if (pos == -1 || gzHdrLen < pos) {
+            return -1;
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the index after a zero terminated header field or -1 if the
+     * terminator has not been read yet.
+     * @param pos start index of the field
+     * @return index after the zero terminated field or -1
+     */
+    protected int gzipZeroTerminated(int pos) {
+        while (pos < gzHdrLen) {
+            if (gzHdrBuf[pos++] == 0) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Validate the magic value and compression method of the member header.
+     * @return boolean indicating whether the member can be inflated
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    protected boolean gzipHeaderValid() throws IOException {
+        int magic = (gzHdrBuf[0] & 255) | ((gzHdrBuf[1] & 255) << 8);
+        int cm = gzHdrBuf[2] & 255;
+        if (magic != GzipConstants.GZIP_MAGIC) {
+            diagnostics.addError(
+                    new Diagnosis(
+                            DiagnosisType.INVALID_EXPECTED,
+                            "Magic Value",
+                            Integer.toHexString(magic),
+                            Integer.toHexString(GzipConstants.GZIP_MAGIC)
+                        )
+                    );
+            return false;
+        }
+        if (cm != GzipConstants.CM_DEFLATE) {
+            diagnostics.addError(
+                    new Diagnosis(
+                            DiagnosisType.INVALID_EXPECTED,
+                            "Compression Method",
+                            Integer.toHexString(cm),
+                            Integer.toHexString(GzipConstants.CM_DEFLATE)
+                        )
+                    );
+            return false;
+        }
+        // A new member holds a new record.
+        wOffset = 0;
+        recordOffset = 0;
+        wState = W_HEADER;
+        return true;
+    }
+
+    /**
+     * Validate the CRC32 and ISize of the member trailer.
+     */
+    protected void gzipTrailer() {
+        int crc32 = (trailerBuf[0] & 255) | ((trailerBuf[1] & 255) << 8)
+                | ((trailerBuf[2] & 255) << 16) | ((trailerBuf[3] & 255) << 24);
+        int isize = (trailerBuf[4] & 255) | ((trailerBuf[5] & 255) << 8)
+                | ((trailerBuf[6] & 255) << 16) | ((trailerBuf[7] & 255) << 24);
+        int comp_crc32 = (int)(crc.getValue() & 0xffffffff);
+        int comp_isize = (int)(inf.getBytesWritten() & 0xffffffff);
+        if (comp_crc32 != crc32) {
+            diagnostics.addError(
+                    new Diagnosis(
+                            DiagnosisType.INVALID_EXPECTED,
+                            "CRC32",
+                            Integer.toHexString(crc32),
+                            Integer.toHexString(comp_crc32)
+                        )
+                    );
+        }
+        if (comp_isize != isize) {
+            diagnostics.addError(
+                    new Diagnosis(
+                            DiagnosisType.INVALID_EXPECTED,
+                            "ISize",
+                            Long.toString(isize),
+                            Long.toString(comp_isize)
+                        )
+                    );
+        }
+    }
+
+    /**
+     * Process uncompressed WARC bytes.
+     * @param b byte array
+     * @param off offset of data
+     * @param len length of data
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    protected void warcBytes(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        int n;
+        byte c;
+        while (off < end) {
+            switch (wState) {
+            case W_HEADER:
+                c = b[off++];
+                ++wOffset;
+                if (!bMagic) {
+                    versionLineByte(c);
+                } else {
+                    appendHeader(c);
+                    if (c == '\n') {
+                        n = hdrLen - lineIdx;
+                        if (n == 1 || (n == 2 && hdrBuf[lineIdx] == '\r')) {
+                            parseHeader();
+                        } else {
+                            lineIdx = hdrLen;
+                        }
+                    }
+                    // Same limit as the blocking parser, excluding the version line.
+                    if (bMagic && hdrLen - versionLen > reader.recordHeaderMaxSize) {
+                        parseHeader();
+                    }
+                }
+                break;
+            case W_PAYLOAD:
+                n = end - off;
+                if (n > remaining) {
+                    n = (int)remaining;
+                }
+                if (md != null) {
+                    md.update(b, off, n);
+                }
+                if (payloadDigester != null) {
+                    payloadDigester.update(b, off, n);
+                    if (record.httpHeader == null) {
+                        record.httpHeader = payloadDigester.getHttpHeader();
+                    }
+                }
+                handler.payloadChunk(record, ByteBuffer.wrap(b, off, n));
+                off += n;
+                wOffset += n;
+                remaining -= n;
+                if (remaining == 0) {
+                    nlLen = 0;
+                    wState = W_TRAILER;
+                }
+                break;
+            case W_TRAILER:
+                c = b[off];
+                if (c == '\r' || c == '\n') {
+                    if (nlLen == nlBuf.length) {
+                        byte[] tmpBuf = new byte[nlBuf.length * 2];
+                        System.arraycopy(nlBuf, 0, tmpBuf, 0, nlLen);
+                        nlBuf = tmpBuf;
+                    }
+                    nlBuf[nlLen++] = c;
+                    ++off;
+                    ++wOffset;
+                } else {
+                    recordEnd();
+                }
+                break;
+            case W_SKIP:
+            default:
+                wOffset += end - off;
+                off = end;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Process a byte while looking for the WARC version line. Lines which
+     * are not version lines are discarded and only remembered as empty lines
+     * or invalid data.
+     * @param c byte
+     */
+    protected void versionLineByte(byte c) {
+        if (hdrLen == 0 && !bLineInvalid) {
+            headerOffset = wOffset - 1;
+        }
+        if (c == '\n') {
+            if (!bLineInvalid && isVersionLine()) {
+                appendHeader(c);
+                bMagic = true;
+                lineIdx = hdrLen;
+                versionLen = hdrLen;
+                return;
+            }
+            if (bLineInvalid || (hdrLen > 0 && !(hdrLen == 1 && hdrBuf[0] == '\r'))) {
+                bInvalidDataBeforeVersion = true;
+            } else {
+                bEmptyLinesBeforeVersion = true;
+            }
+            hdrLen = 0;
+            bLineInvalid = false;
+        } else if (!bLineInvalid) {
+            appendHeader(c);
+            int magicLen = WarcConstants.WARC_MAGIC_HEADER.length();
+            if (hdrLen == magicLen && !isVersionLine()) {
+                // Not a version line, no need to keep the rest.
+                bLineInvalid = true;
+                hdrLen = 0;
+            }
+        }
+    }
+
+    /**
+     * Check if the line in the header buffer starts with the WARC magic.
+     * @return boolean indicating whether the line is a version line
+     */
+    protected boolean isVersionLine() {
+        String magic = WarcConstants.WARC_MAGIC_HEADER;
+        if (hdrLen < magic.length()) {
+            return false;
+        }
+        for (int i=0; i<magic.length(); ++i) {
+            if (Character.toUpperCase((char)(hdrBuf[i] & 255)) != magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append a byte to the header buffer.
+     * @param c byte
+     */
+    protected void appendHeader(byte c) {
+        if (hdrLen == hdrBuf.length) {
+            byte[] tmpBuf = new byte[hdrBuf.length * 2];
+            System.arraycopy(hdrBuf, 0, tmpBuf, 0, hdrLen);
+            hdrBuf = tmpBuf;
+        }
+        hdrBuf[hdrLen++] = c;
+    }
+
+    /**
+     * Build the input used by the header parser. Lines discarded before the
+     * version line are replaced by single lines which result in the same
+     * diagnoses.
+     * @return input stream for the header parser
+     */
+    protected ByteCountingPushBackInputStream headerInputStream() {
+        int prefix = (bInvalidDataBeforeVersion ? 2 : 0) + (bEmptyLinesBeforeVersion ? 1 : 0);
+        byte[] tmpBuf = new byte[prefix + hdrLen];
+        int idx = 0;
+        if (bInvalidDataBeforeVersion) {
+            tmpBuf[idx++] = '-';
+            tmpBuf[idx++] = '\n';
+        }
+        if (bEmptyLinesBeforeVersion) {
+            tmpBuf[idx++] = '\n';
+        }
+        System.arraycopy(hdrBuf, 0, tmpBuf, idx, hdrLen);
+        return new ByteCountingPushBackInputStream(
+                new ByteArrayInputStream(tmpBuf), WarcReaderUncompressed.PUSHBACK_BUFFER_SIZE);
+    }
+
+    /**
+     * Parse the buffered record header and start processing the payload.
+     * Bytes buffered but not consumed by the header parser are processed
+     * again as record data.
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    protected void parseHeader() throws IOException {
+        int prefix = (bInvalidDataBeforeVersion ? 2 : 0) + (bEmptyLinesBeforeVersion ? 1 : 0);
+        ByteCountingPushBackInputStream pbin = headerInputStream();
+        record = new WarcRecord();
+        record.reader = reader;
+        record.startOffset = recordOffset;
+        // Initialize WarcHeader with required context.
+        record.header = WarcHeader.initHeader(reader, headerOffset, record.diagnostics);
+        WarcHeader header = record.header;
+        // Initialize WarcFieldParser to report diagnoses here.
+        reader.fieldParsers.diagnostics = record.diagnostics;
+        header.parseHeader(pbin);
+        header.startOffset = (mode == M_GZIP) ? memberOffset : headerOffset;
+        ++reader.records;
+        // Unconsumed bytes are returned to the record data.
+        int leftover = prefix + hdrLen - (int)pbin.getConsumed();
+        byte[] leftoverBuf = null;
+        if (leftover > 0) {
+            leftoverBuf = new byte[leftover];
+            System.arraycopy(hdrBuf, hdrLen - leftover, leftoverBuf, 0, leftover);
+            wOffset -= leftover;
+        }
+        resetHeader();
+        bPayload = false;
+        md = null;
+        payloadDigester = null;
+        nlLen = 0;
+        if (header.contentLength != null && header.contentLength > 0) {
+            bPayload = true;
+            remaining = header.contentLength;
+            if (reader.bBlockDigest) {
+                String digestAlgorithm;
+                if (header.warcBlockDigest != null && header.warcBlockDigest.algorithm != null) {
+                    digestAlgorithm = header.warcBlockDigest.algorithm;
+                } else {
+                    digestAlgorithm = reader.blockDigestAlgorithm;
+                }
+                if (digestAlgorithm != null) {
+                    try {
+                        md = MessageDigest.getInstance(digestAlgorithm);
+                    } catch (NoSuchAlgorithmException e) {
+                        md = null;
+                    }
+                }
+            }
+            initHttpHeader(header);
+            wState = W_PAYLOAD;
+        } else {
+            wState = W_TRAILER;
+        }
+        // Preliminary compliance status, will be updated when the
+        // record ends.
+        if (record.diagnostics.hasErrors() || record.diagnostics.hasWarnings()) {
+            record.bIsCompliant = false;
+        } else {
+            record.bIsCompliant = true;
+        }
+        reader.bIsCompliant &= record.bIsCompliant;
+        // The record is finished by the parser.
+        record.bPayloadClosed = true;
+        reader.currentRecord = record;
+        handler.recordHeader(record);
+        if (leftoverBuf != null) {
+            warcBytes(leftoverBuf, 0, leftoverBuf.length);
+        }
+    }
+
+    /**
+     * Prepare the detection of the HTTP header of an <code>application/http</code>
+     * record, using the same digest algorithm selection as
+     * <code>WarcRecord.parseRecord</code>.
+     * @param header header of the current record
+     */
+    protected void initHttpHeader(WarcHeader header) {
+        if (header.contentType == null
+                || !header.contentType.contentType.equals("application")
+                || !header.contentType.mediaType.equals("http")) {
+            return;
+        }
+        String value = header.contentType.getParameter("msgtype");
+        int httpHeaderType = 0;
+        if ("response".equalsIgnoreCase(value)) {
+            httpHeaderType = HttpHeader.HT_RESPONSE;
+        } else if ("request".equalsIgnoreCase(value)) {
+            httpHeaderType = HttpHeader.HT_REQUEST;
+        }
+        if (httpHeaderType == 0) {
+            return;
+        }
+        String digestAlgorithm = null;
+        if (reader.bPayloadDigest) {
+            if (header.warcPayloadDigest != null && header.warcPayloadDigest.algorithm != null) {
+                digestAlgorithm = header.warcPayloadDigest.algorithm;
+            } else {
+                digestAlgorithm = reader.payloadDigestAlgorithm;
+            }
+        }
+        try {
+            payloadDigester = new PayloadDigester(null, digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // Unknown algorithm, only detect the header.
+            try {
+                payloadDigester = new PayloadDigester(null, null);
+            } catch (NoSuchAlgorithmException e2) {
+                // No algorithms to look up.
+            }
+        }
+        payloadDigester.setMaxHeaderSize(reader.payloadHeaderMaxSize);
+        payloadDigester.reset(httpHeaderType);
+    }
+
+    /**
+     * Reset the header buffer and version line state.
+     */
+    protected void resetHeader() {
+        hdrLen = 0;
+        lineIdx = 0;
+        versionLen = 0;
+        bMagic = false;
+        bLineInvalid = false;
+        bInvalidDataBeforeVersion = false;
+        bEmptyLinesBeforeVersion = false;
+    }
+
+    /**
+     * Perform the final validation of the current record, as done when the
+     * payload of a record read by a <code>WarcReader</code> is closed.
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    protected void recordEnd() throws IOException {
+        if (payloadDigester != null) {
+            // Reported when the record header is parsed by a blocking read.
+            payloadDigester.finish();
+            record.httpHeader = payloadDigester.getHttpHeader();
+            if (record.httpHeader == null) {
+                record.diagnostics.addError(
+                        new Diagnosis(DiagnosisType.ERROR,
+                                "http header",
+                                "Unable to parse http header!"));
+            }
+        }
+        if (bPayload) {
+            // Check for truncated payload.
+            if (remaining > 0) {
+                // Payload length mismatch - Payload truncated
+                record.addErrorDiagnosis(DiagnosisType.INVALID_DATA, "Payload length mismatch", "Payload truncated");
+            }
+            /*
+             * Check block digest.
+             */
+            if (md != null) {
+                record.computedBlockDigest = new WarcDigest();
+                record.computedBlockDigest.digestBytes = md.digest();
+            }
+            // Auto detect encoding used in WARC header.
+            WarcHeader header = record.header;
+            if (header.warcBlockDigest != null && header.warcBlockDigest.digestString != null) {
+                record.isValidBlockDigest = record.processWarcDigest(header.warcBlockDigest, record.computedBlockDigest, "block");
+            }
+            // Adjust information about computed block digest.
+            if (record.computedBlockDigest != null) {
+                record.processComputedDigest(record.computedBlockDigest,
+                        reader.blockDigestAlgorithm, reader.blockDigestEncoding, "block");
+            }
+            if (record.httpHeader != null) {
+                /*
+                 * Check payload digest.
+                 */
+                byte[] digest = payloadDigester.getPayloadDigest();
+                if (digest != null) {
+                    record.computedPayloadDigest = new WarcDigest();
+                    record.computedPayloadDigest.digestBytes = digest;
+                }
+                // Auto detect encoding used in WARC header.
+                if (header.warcPayloadDigest != null && header.warcPayloadDigest.digestString != null) {
+                    record.isValidPayloadDigest = record.processWarcDigest(header.warcPayloadDigest, record.computedPayloadDigest, "payload");
+                }
+                // Adjust information about computed payload digest.
+                if (record.computedPayloadDigest != null) {
+                    record.processComputedDigest(record.computedPayloadDigest,
+                            reader.payloadDigestAlgorithm, reader.payloadDigestEncoding, "payload");
+                }
+            }
+        }
+        // Check for trailing newlines.
+        ByteCountingPushBackInputStream pbin = new ByteCountingPushBackInputStream(
+                new ByteArrayInputStream(nlBuf, 0, nlLen), WarcReaderUncompressed.PUSHBACK_BUFFER_SIZE);
+        record.trailingNewlines = record.nlp.parseCRLFs(pbin, record.diagnostics);
+        if (record.trailingNewlines != WarcConstants.WARC_RECORD_TRAILING_NEWLINES) {
+            record.addErrorDiagnosis(DiagnosisType.INVALID_EXPECTED,
+                    "Trailing newlines",
+                    Integer.toString(record.trailingNewlines),
+                    Integer.toString(WarcConstants.WARC_RECORD_TRAILING_NEWLINES));
+        }
+        // isCompliant status update.
+        if (record.diagnostics.hasErrors() || record.diagnostics.hasWarnings()) {
+            record.bIsCompliant = false;
+            reader.errors += record.diagnostics.getErrors().size();
+            reader.warnings += record.diagnostics.getWarnings().size();
+        } else {
+            record.bIsCompliant = true;
+        }
+        reader.bIsCompliant &= record.bIsCompliant;
+        record.consumed = wOffset - record.startOffset;
+        reader.recordClosed();
+        reader.currentRecord = null;
+        record.reader = null;
+        record.bClosed = true;
+        WarcRecord closedRecord = record;
+        record = null;
+        md = null;
+        payloadDigester = null;
+        nlLen = 0;
+        recordOffset = wOffset;
+        wState = (mode == M_GZIP) ? W_SKIP : W_HEADER;
+        handler.recordEnd(closedRecord);
+    }
+
+    /**
+     * Handle the end of the WARC data, either the end of a GZip member or
+     * the end of input.
+     * @throws IOException if an i/o exception occurs in the handler
+     */
+    protected void endOfData() throws IOException {
+        boolean bLoop = true;
+        while (bLoop) {
+            switch (wState) {
+            case W_HEADER:
+                if (bMagic) {
+                    parseHeader();
+                } else {
+                    // Same as a blocking read which finds no more records.
+                    noRecord();
+                    bLoop = false;
+                }
+                break;
+            case W_PAYLOAD:
+            case W_TRAILER:
+                recordEnd();
+                break;
+            case W_SKIP:
+            default:
+                bLoop = false;
+                break;
+            }
+        }
+    }
+
+    /**
+     * No record found before the end of data. Diagnoses are transferred to
+     * the reader like <code>WarcRecord.parseRecord</code> does.
+     * @throws IOException if an i/o exception occurs while parsing
+     */
+    protected void noRecord() throws IOException {
+        if (hdrLen > 0 || bLineInvalid) {
+            bInvalidDataBeforeVersion = true;
+            hdrLen = 0;
+        }
+        WarcRecord tmpRecord = new WarcRecord();
+        tmpRecord.header = WarcHeader.initHeader(reader, wOffset, tmpRecord.diagnostics);
+        reader.fieldParsers.diagnostics = tmpRecord.diagnostics;
+        tmpRecord.header.parseHeader(headerInputStream());
+        // In case no record is found the errors/warnings in the record
+        // object are transfered to the Reader.
+        reader.diagnostics.addAll(tmpRecord.diagnostics);
+        if (tmpRecord.diagnostics.hasErrors() || tmpRecord.diagnostics.hasWarnings()) {
+            reader.errors += tmpRecord.diagnostics.getErrors().size();
+            reader.warnings += tmpRecord.diagnostics.getWarnings().size();
+            reader.bIsCompliant = false;
+        }
+        // Require one or more records to be present.
+        if (reader.records == 0) {
+            reader.diagnostics.addError(new Diagnosis(DiagnosisType.ERROR_EXPECTED, "WARC file", "One or more records"));
+            ++reader.errors;
+            reader.bIsCompliant = false;
+        }
+        resetHeader();
+    }
+
+}
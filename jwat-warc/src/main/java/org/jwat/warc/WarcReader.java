@@ -17,14 +17,20 @@
  */
 package org.jwat.warc;
 
+import org.jwat.archive.common.MerkleSidecar;
 import org.jwat.common.Diagnosis;
 import org.jwat.common.Diagnostics;
+import org.jwat.common.FixityDigestInputStream;
 import org.jwat.common.HeaderLineReader;
+import org.jwat.common.RecordDigestInputStream;
 import org.jwat.common.UriProfile;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -107,6 +113,21 @@ public abstract class WarcReader implements Closeable {
     /** Current WARC record object. */
     protected WarcRecord currentRecord;
 
+    /** Offset of the raw bytes of the last closed record or -1. */
+    protected long rawRecordOffset = -1;
+
+    /** Length of the raw bytes of the last closed record or -1. */
+    protected long rawRecordLength = -1;
+
+    /** Whole-file fixity digest stream or null. */
+    protected FixityDigestInputStream fixityIn;
+
+    /** Raw record digest stream feeding the Merkle sidecar or null. */
+    protected RecordDigestInputStream recordDigestIn;
+
+    /** Merkle sidecar the raw records are added to as they are read or null. */
+    protected MerkleSidecar merkleSidecar;
+
     /** Exception thrown while using the iterator. */
     protected Exception iteratorExceptionThrown;
 
@@ -142,6 +163,8 @@ public abstract class WarcReader implements Closeable {
         errors = 0;
         warnings = 0;
         currentRecord = null;
+        rawRecordOffset = -1;
+        rawRecordLength = -1;
     }
 
     /**
@@ -396,6 +419,103 @@ public abstract class WarcReader implements Closeable {
      */
    public abstract long getConsumed();
 
+    /**
+     * Returns the offset of the raw bytes of the last closed record, i.e.
+     * its GZip member in compressed files, or -1 if unknown.
+     * @return offset of the raw bytes of the last closed record or -1
+     */
+    public long getRawRecordOffset() {
+        return rawRecordOffset;
+    }
+
+    /**
+     * Returns the length of the raw bytes of the last closed record, i.e.
+     * its GZip member in compressed files, or -1 if unknown.
+     * @return length of the raw bytes of the last closed record or -1
+     */
+    public long getRawRecordLength() {
+        return rawRecordLength;
+    }
+
+    /**
+     * Read the raw bytes of the last closed record from the file being read,
+     * i.e. its complete GZip member in compressed files. The bytes can be
+     * written verbatim using <code>WarcWriter.writeRawRecord</code>.
+     * @param channel channel of the file being read
+     * @return raw bytes of the last closed record
+     * @throws IOException if an i/o exception occurs while reading the bytes
+     */
+    public byte[] getRawRecordBytes(FileChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException(
+                    "The 'channel' parameter is null!");
+        }
+        if (rawRecordOffset < 0 || rawRecordLength < 0) {
+            throw new IllegalStateException("No closed record with a known offset!");
+        }
+        if (rawRecordLength > Integer.MAX_VALUE) {
+            throw new IOException("Record too large for a byte array: " + rawRecordLength);
+        }
+        byte[] bytes = new byte[(int)rawRecordLength];
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        long position = rawRecordOffset;
+        int read;
+        while (bb.hasRemaining()) {
+            read = channel.read(bb, position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at offset " + position);
+            }
+            position += read;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the whole-file digest computed with the given algorithm, or
+     * null if no digests are computed or the end of the file has not been
+     * reached yet. The digest covers the raw bytes of the file, compressed
+     * or not. (@see WarcReaderFactory#getReader(InputStream, int, String...))
+     * @param algorithm digest algorithm given to the factory
+     * @return whole-file digest or null
+     */
+    public byte[] getFixityDigest(String algorithm) {
+        return fixityIn != null ? fixityIn.getDigest(algorithm) : null;
+    }
+
+    /**
+     * Returns the Merkle sidecar the raw records are added to as they are
+     * read or null.
+     * (@see WarcReaderFactory#getReaderWithMerkleSidecar(InputStream, int, MerkleSidecar))
+     * @return Merkle sidecar or null
+     */
+    public MerkleSidecar getMerkleSidecar() {
+        return merkleSidecar;
+    }
+
+    /**
+     * Add the last closed record to the Merkle sidecar, if any, using the
+     * digest of its raw bytes computed while they were read. The record
+     * covers the bytes from the end of the previous record, so bytes skipped
+     * in front of a damaged record are part of the following record.
+     */
+    protected void addMerkleRecord() {
+        if (merkleSidecar != null && rawRecordOffset >= 0 && rawRecordLength >= 0) {
+            long start = recordDigestIn.getRecordStart();
+            long end = rawRecordOffset + rawRecordLength;
+            merkleSidecar.addRecord(start, end - start, recordDigestIn.digestRecord(end));
+        }
+    }
+
+    /**
+     * Returns the whole-file fixity digest stream or null. Trailing bytes
+     * not consumed by the reader can be included using its
+     * <code>drain()</code> method.
+     * @return whole-file fixity digest stream or null
+     */
+    public FixityDigestInputStream getFixityStream() {
+        return fixityIn;
+    }
+
    /**
      * Parses and gets the next record.
      * This method is for linear access to records.
@@ -17,10 +17,10 @@
  */
 package org.jwat.warc;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.jwat.common.BufferedInputStreamNoLock;
 import org.jwat.common.ByteCountingPushBackInputStream;
 import org.jwat.gzip.GzipEntry;
 import org.jwat.gzip.GzipReader;
@@ -121,6 +121,9 @@ public class WarcReaderCompressed extends WarcReader {
             try {
                 currentEntry.close();
                 consumed += currentEntry.consumed;
+                rawRecordOffset = currentRecord != null ? currentRecord.header.startOffset : -1;
+                rawRecordLength = currentEntry.consumed;
+                addMerkleRecord();
             } catch (IOException e) { /* ignore */ }
             currentEntry = null;
         } else {
@@ -186,7 +189,7 @@ public class WarcReaderCompressed extends WarcReader {
             ByteCountingPushBackInputStream pbin;
             if (bufferSize > 0) {
                 pbin = new ByteCountingPushBackInputStream(
-                        new BufferedInputStream(
+                        new BufferedInputStreamNoLock(
                                 currentEntry.getInputStream(), bufferSize),
                                 PUSHBACK_BUFFER_SIZE);
             }
@@ -222,7 +225,12 @@ public class WarcReaderCompressed extends WarcReader {
                     "The 'offset' is less than -1: " + offset);
         }
         currentRecord = null;
-        currentReader = new GzipReader(rin);
+        // Reuse the inflater and buffers from the previous lookup.
+        if (currentReader == null) {
+            currentReader = new GzipReader(rin);
+        } else {
+            currentReader.reset(rin);
+        }
         currentEntry = currentReader.getNextEntry();
         if (currentEntry != null) {
             ByteCountingPushBackInputStream pbin =
@@ -261,12 +269,17 @@ public class WarcReaderCompressed extends WarcReader {
                     + buffer_size);
         }
         currentRecord = null;
-        currentReader = new GzipReader(rin);
+        // Reuse the inflater and buffers from the previous lookup.
+        if (currentReader == null) {
+            currentReader = new GzipReader(rin);
+        } else {
+            currentReader.reset(rin);
+        }
         currentEntry = currentReader.getNextEntry();
         if (currentEntry != null) {
             ByteCountingPushBackInputStream pbin =
                     new ByteCountingPushBackInputStream(
-                            new BufferedInputStream(
+                            new BufferedInputStreamNoLock(
                                     currentEntry.getInputStream(), buffer_size),
                                     PUSHBACK_BUFFER_SIZE);
             currentRecord = WarcRecord.parseRecord(pbin, this);
@@ -17,13 +17,17 @@
  */
 package org.jwat.warc;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
+import org.jwat.archive.common.MerkleSidecar;
 import org.jwat.archive.common.ReaderFactoryAbstract;
+import org.jwat.common.BufferedInputStreamNoLock;
 import org.jwat.common.ByteCountingPushBackInputStream;
+import org.jwat.common.FixityDigestInputStream;
+import org.jwat.common.RecordDigestInputStream;
 import org.jwat.gzip.GzipReader;
 
 /**
@@ -76,7 +80,7 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
 
     /**
      * Creates a new <code>WarcReader</code> from an <code>InputStream</code>
-     * wrapped by a <code>BufferedInputStream</code>.
+     * wrapped by a <code>BufferedInputStreamNoLock</code>.
      * The <code>WarcReader</code> implementation returned is chosen based on
      * GZip auto detection.
      * @param in WARC File represented as <code>InputStream</code>
@@ -98,7 +102,7 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
         }
         ByteCountingPushBackInputStream pbin =
                 new ByteCountingPushBackInputStream(
-                        new BufferedInputStream(in, buffer_size),
+                        new BufferedInputStreamNoLock(in, buffer_size),
                 PUSHBACK_BUFFER_SIZE);
         if (GzipReader.isGzipped(pbin)) {
             return new WarcReaderCompressed(new GzipReader(pbin),
@@ -107,6 +111,109 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
         return new WarcReaderUncompressed(pbin);
     }
 
+    /**
+     * Creates a new <code>WarcReader</code> from an <code>InputStream</code>
+     * wrapped by a <code>BufferedInputStreamNoLock</code>, which also computes
+     * whole-file digests, e.g. for a fixity register, over the raw bytes
+     * as they are read. Compressed files are digested as compressed bytes.
+     * The digests are available from the reader once the end of the file
+     * has been reached, so fixity and validation take one read.
+     * The <code>WarcReader</code> implementation returned is chosen based on
+     * GZip auto detection.
+     * @param in WARC File represented as <code>InputStream</code>
+     * @param buffer_size buffer size to use
+     * @param fixityAlgorithms whole-file digest algorithms, e.g. "SHA-256"
+     * @return appropriate <code>WarcReader</code> based on data read from
+     * <code>InputStream</code>
+     * @throws IOException if an i/o exception occurs during initialization
+     * @throws NoSuchAlgorithmException if an algorithm is not supported
+     */
+    public static WarcReader getReader(InputStream in, int buffer_size,
+            String... fixityAlgorithms) throws IOException, NoSuchAlgorithmException {
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The inputstream 'in' is null");
+        }
+        // Digest below the buffer and pushback streams, so unread bytes are
+        // only digested once.
+        FixityDigestInputStream fixityIn = new FixityDigestInputStream(in, fixityAlgorithms);
+        WarcReader reader = getReader(fixityIn, buffer_size);
+        reader.fixityIn = fixityIn;
+        return reader;
+    }
+
+    /**
+     * Creates a new <code>WarcReader</code> from an <code>InputStream</code>
+     * wrapped by a <code>BufferedInputStreamNoLock</code>, which also adds each
+     * record to a Merkle sidecar as it is closed. The leaf digests are
+     * computed over the raw bytes as they are read, i.e. each GZip member in
+     * compressed files, so the sidecar of an existing file is built in the
+     * same pass as the validation.
+     * The <code>WarcReader</code> implementation returned is chosen based on
+     * GZip auto detection.
+     * @param in WARC File represented as <code>InputStream</code>
+     * @param buffer_size buffer size to use
+     * @param merkleSidecar sidecar the records are added to
+     * @return appropriate <code>WarcReader</code> based on data read from
+     * <code>InputStream</code>
+     * @throws IOException if an i/o exception occurs during initialization
+     * @throws NoSuchAlgorithmException if the sidecar algorithm is not supported
+     */
+    public static WarcReader getReaderWithMerkleSidecar(InputStream in, int buffer_size,
+            MerkleSidecar merkleSidecar) throws IOException, NoSuchAlgorithmException {
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The inputstream 'in' is null");
+        }
+        if (merkleSidecar == null) {
+            throw new IllegalArgumentException(
+                    "The 'merkleSidecar' is null");
+        }
+        if (buffer_size <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'buffer_size' is less than or equal to zero: " +
+                    buffer_size);
+        }
+        // Digest below the buffer and pushback streams. The window holds the
+        // bytes they may have read ahead of a record end: the buffer, the
+        // pushback buffer and the GZip input buffer and pushback buffer.
+        RecordDigestInputStream recordDigestIn = new RecordDigestInputStream(in, merkleSidecar.getAlgorithm(),
+                buffer_size + PUSHBACK_BUFFER_SIZE + 2 * GzipReader.DEFAULT_INPUT_BUFFER_SIZE);
+        WarcReader reader = getReader(recordDigestIn, buffer_size);
+        reader.recordDigestIn = recordDigestIn;
+        reader.merkleSidecar = merkleSidecar;
+        return reader;
+    }
+
+    /**
+     * Creates a new <code>WarcReader</code> configured for high fan-out,
+     * i.e. thousands of files read at the same time, e.g. one virtual thread
+     * per file. The read path uses no locks and all the per-reader buffers,
+     * including the GZip input buffer, are
+     * <code>HIGH_FAN_OUT_BUFFER_SIZE</code> bytes.
+     * The <code>WarcReader</code> implementation returned is chosen based on
+     * GZip auto detection.
+     * @param in WARC File represented as <code>InputStream</code>
+     * @return appropriate <code>WarcReader</code> based on data read from
+     * <code>InputStream</code>
+     * @throws IOException if an i/o exception occurs during initialization
+     */
+    public static WarcReader getReaderHighFanOut(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The inputstream 'in' is null");
+        }
+        ByteCountingPushBackInputStream pbin =
+                new ByteCountingPushBackInputStream(
+                        new BufferedInputStreamNoLock(in, HIGH_FAN_OUT_BUFFER_SIZE),
+                        PUSHBACK_BUFFER_SIZE);
+        if (GzipReader.isGzipped(pbin)) {
+            return new WarcReaderCompressed(new GzipReader(pbin, 0, HIGH_FAN_OUT_BUFFER_SIZE),
+                                            HIGH_FAN_OUT_BUFFER_SIZE);
+        }
+        return new WarcReaderUncompressed(pbin);
+    }
+
     /**
      * Creates a new <code>WarcReader</code> from an <code>InputStream</code>.
      * The <code>WarcReader</code> implementation returned is chosen based on
@@ -160,7 +267,7 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
 
     /**
      * Creates a new <code>WarcReader</code> from an <code>InputStream</code>
-     * wrapped by a <code>BufferedInputStream</code> primarily for random
+     * wrapped by a <code>BufferedInputStreamNoLock</code> primarily for random
      * access to uncompressed records.
      * @param in WARC File represented as <code>InputStream</code>
      * @param buffer_size buffer size to use
@@ -181,7 +288,7 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
         }
         ByteCountingPushBackInputStream pbin =
                 new ByteCountingPushBackInputStream(
-                        new BufferedInputStream(in, buffer_size),
+                        new BufferedInputStreamNoLock(in, buffer_size),
                 PUSHBACK_BUFFER_SIZE);
         return new WarcReaderUncompressed(pbin);
     }
@@ -215,7 +322,7 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
 
     /**
      * Creates a new <code>WarcReader</code> from an <code>InputStream</code>
-     * wrapped by a <code>BufferedInputStream</code> primarily for random
+     * wrapped by a <code>BufferedInputStreamNoLock</code> primarily for random
      * access to GZip compressed records.
      * @param in WARC File represented as <code>InputStream</code>
      * @param buffer_size buffer size to use
@@ -235,7 +342,7 @@ public class WarcReaderFactory extends ReaderFactoryAbstract {
                     buffer_size);
         }
         return new WarcReaderCompressed(new GzipReader(
-                new BufferedInputStream(in, buffer_size)));
+                new BufferedInputStreamNoLock(in, buffer_size)));
     }
 
 }
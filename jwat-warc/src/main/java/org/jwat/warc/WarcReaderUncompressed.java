@@ -17,10 +17,10 @@
  */
 package org.jwat.warc;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.jwat.common.BufferedInputStreamNoLock;
 import org.jwat.common.ByteCountingPushBackInputStream;
 
 /**
@@ -89,6 +89,9 @@ public class WarcReaderUncompressed extends WarcReader {
     protected void recordClosed() {
         if (currentRecord != null) {
             consumed += currentRecord.consumed;
+            rawRecordOffset = currentRecord.header.startOffset;
+            rawRecordLength = currentRecord.consumed;
+            addMerkleRecord();
         } else {
             throw new IllegalStateException("'currentRecord' is null, this should never happen!");
         }
@@ -186,7 +189,7 @@ public class WarcReaderUncompressed extends WarcReader {
         }
         ByteCountingPushBackInputStream pbin =
                 new ByteCountingPushBackInputStream(
-                        new BufferedInputStream(rin, buffer_size),
+                        new BufferedInputStreamNoLock(rin, buffer_size),
                         PUSHBACK_BUFFER_SIZE);
         currentRecord = WarcRecord.parseRecord(pbin, this);
         if (currentRecord != null) {
@@ -0,0 +1,194 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.jwat.common.FileChannelInputStream;
+import org.jwat.common.FileChannelPool;
+import org.jwat.gzip.GzipConstants;
+
+/**
+ * Thread-safe service which returns the WARC record found at a given offset
+ * in a given file. Compressed and uncompressed files are both supported and
+ * detected per record.
+ *
+ * Open files are kept in a shared <code>FileChannelPool</code> and read
+ * with positional reads, so all threads can use the same channel. Each
+ * thread has its own readers, inflater and buffers which are reused between
+ * lookups.
+ *
+ * A returned record, including its payload, can be read until the next
+ * lookup on the same thread or until <code>release()</code> is called.
+ *
+ * @author nicl
+ */
+public class WarcRecordLocator implements Closeable {
+
+    /** Default buffer size used on record streams. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Pool of open files. */
+    protected final FileChannelPool pool;
+
+    /** Buffer size used on record streams. */
+    protected final int bufferSize;
+
+    /** Per-thread readers and buffers. */
+    protected final ThreadLocal<LocatorState> states = new ThreadLocal<LocatorState>() {
+        @Override
+        protected LocatorState initialValue() {
+            return new LocatorState();
+        }
+    };
+
+    /**
+     * Construct a locator with a default number of open files.
+     */
+    public WarcRecordLocator() {
+        this(new FileChannelPool(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Construct a locator using the supplied pool of open files.
+     * @param pool pool of open files
+     * @param bufferSize buffer size used on record streams
+     */
+    public WarcRecordLocator(FileChannelPool pool, int bufferSize) {
+        if (pool == null) {
+            throw new IllegalArgumentException("'pool' is null");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'bufferSize' is less than or equal to zero: " + bufferSize);
+        }
+        this.pool = pool;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Returns the pool of open files.
+     * @return pool of open files
+     */
+    public FileChannelPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Parse and return the record starting at the supplied offset.
+     * The previous record returned to the calling thread is closed.
+     * @param file WARC file
+     * @param offset offset of the record, or GZip entry, in the file
+     * @return parsed record or null if no record was found at the offset
+     * @throws IOException if an i/o exception occurs while reading the record
+     */
+    public WarcRecord getRecord(File file, long offset) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("'file' is null");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("The 'offset' is negative: " + offset);
+        }
+        LocatorState state = states.get();
+        state.release(pool);
+        state.handle = pool.acquire(file);
+        boolean bSuccess = false;
+        try {
+            state.in.setChannel(state.handle.channel, offset);
+            state.magic.clear();
+            int read = state.handle.channel.read(state.magic, offset);
+            WarcReader reader;
+            if (read == 2 && (((state.magic.get(1) & 255) << 8) | (state.magic.get(0) & 255)) == GzipConstants.GZIP_MAGIC) {
+                reader = state.compressedReader;
+            } else {
+                reader = state.uncompressedReader;
+            }
+            state.record = reader.getNextRecordFrom(state.in, offset, bufferSize);
+            bSuccess = true;
+            return state.record;
+        } finally {
+            if (!bSuccess) {
+                state.release(pool);
+            }
+        }
+    }
+
+    /**
+     * Close the record last returned to the calling thread and release its
+     * file.
+     */
+    public void release() {
+        states.get().release(pool);
+    }
+
+    /**
+     * Close the pool of open files. Files in use by other threads are closed
+     * when they are released.
+     */
+    @Override
+    public void close() {
+        release();
+        pool.close();
+    }
+
+    /**
+     * Per-thread locator state.
+     */
+    protected static class LocatorState {
+
+        /** Reader used for compressed records. */
+        protected final WarcReaderCompressed compressedReader = new WarcReaderCompressed();
+
+        /** Reader used for uncompressed records. */
+        protected final WarcReaderUncompressed uncompressedReader = new WarcReaderUncompressed();
+
+        /** Reusable positional input stream. */
+        protected final FileChannelInputStream in = new FileChannelInputStream();
+
+        /** Buffer used to check for the GZip magic number. */
+        protected final ByteBuffer magic = ByteBuffer.allocate(2);
+
+        /** Handle of the file currently in use or null. */
+        protected FileChannelPool.Handle handle;
+
+        /** Record last returned or null. */
+        protected WarcRecord record;
+
+        /**
+         * Close the current record and release its file.
+         * @param pool pool the file was acquired from
+         */
+        protected void release(FileChannelPool pool) {
+            if (record != null) {
+                try {
+                    record.close();
+                } catch (IOException e) { /* ignore */ }
+                record = null;
+            }
+            if (handle != null) {
+                pool.release(handle);
+                handle = null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+
+import org.jwat.common.RecordPublisher;
+
+/**
+ * Publishes the records of a <code>WarcReader</code> to a single subscriber with
+ * demand driven back pressure, reading on a caller supplied executor.
+ * Payload chunks contain the complete record block, including any HTTP
+ * header.
+ *
+ * @author nicl
+ */
+public class WarcRecordPublisher extends RecordPublisher<WarcRecord> {
+
+    /** WARC reader. */
+    protected final WarcReader reader;
+
+    /**
+     * Construct a publisher of the records of the supplied reader. The
+     * reader is closed when the publisher completes, fails or is cancelled.
+     * @param reader WARC reader positioned before the first record
+     * @param executor executor used to read records and deliver signals
+     */
+    public WarcRecordPublisher(WarcReader reader, Executor executor) {
+        super(executor);
+        if (reader == null) {
+            throw new IllegalArgumentException(
+                    "The 'reader' is null");
+        }
+        this.reader = reader;
+    }
+
+    @Override
+    protected WarcRecord nextRecord() throws IOException {
+        return reader.getNextRecord();
+    }
+
+    @Override
+    protected InputStream getPayloadStream(WarcRecord record) throws IOException {
+        if (record.getPayload() != null) {
+            return record.getPayload().getInputStreamComplete();
+        }
+        return null;
+    }
+
+    @Override
+    protected void closeRecord(WarcRecord record) throws IOException {
+        record.close();
+    }
+
+    @Override
+    protected void closeSource() {
+        reader.close();
+    }
+
+}
@@ -0,0 +1,317 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jwat.common.ByteCountingPushBackInputStream;
+import org.jwat.common.Diagnosis;
+import org.jwat.common.Diagnostics;
+import org.jwat.common.RandomAccessFileInputStream;
+
+/**
+ * Splits an uncompressed WARC file into byte ranges which start on record
+ * boundaries, so the ranges can be read independently and in parallel.
+ *
+ * Record boundaries are found by scanning for the WARC/1. magic at the start
+ * of a line and verifying the candidate: the header must parse and have a
+ * Content-Length which lands on the CRLFCRLF record trailer, followed by
+ * another record or the end of the file. A few consecutive records are
+ * verified this way, which rejects magic lines inside payloads, e.g.
+ * archived WARC files. The range boundary is placed after the first
+ * verified record, where its trailer is known to be clean.
+ *
+ * Instances are not thread-safe, but reuse their buffers.
+ *
+ * @author nicl
+ */
+public class WarcRecordSplitter {
+
+    /** Magic which starts a record. */
+    public static final byte[] RECORD_MAGIC = "WARC/1.".getBytes();
+
+    /** Record trailer. */
+    public static final byte[] RECORD_TRAILER = "\r\n\r\n".getBytes();
+
+    /** Number of consecutive records which verify a record candidate. */
+    public static final int VERIFY_RECORDS = 4;
+
+    /** Buffer size used when scanning for record candidates. */
+    public static final int SCAN_BUFFER_SIZE = 65536;
+
+    /** Returned by <code>getRecordEnd</code> if the record does not end before the end of the file. */
+    public static final long INCOMPLETE = -1;
+
+    /** Returned by <code>getRecordEnd</code> if the record is invalid. */
+    public static final long INVALID = -2;
+
+    /** Reader supplying the header parsing context. */
+    protected WarcReaderUncompressed reader = new WarcReaderUncompressed();
+
+    /** Scan buffer. */
+    protected byte[] scanBuf = new byte[SCAN_BUFFER_SIZE];
+
+    /** Buffer used to compare the magic and the trailer. */
+    protected byte[] cmpBuf = new byte[Math.max(RECORD_MAGIC.length, RECORD_TRAILER.length)];
+
+    /**
+     * Split a WARC file into ranges starting on record boundaries.
+     * @param file uncompressed WARC file
+     * @param parts wanted number of ranges
+     * @return range boundaries, starting with 0 and ending with the file length
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long[] split(File file, int parts) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' is null");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return split(raf, parts);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Split a WARC file into ranges starting on record boundaries. Each
+     * range, except the last, starts near an equal fraction of the file.
+     * Fewer ranges are returned if no record boundary is found after a
+     * split point.
+     * @param raf uncompressed WARC file
+     * @param parts wanted number of ranges
+     * @return range boundaries, starting with 0 and ending with the file length
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long[] split(RandomAccessFile raf, int parts) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException(
+                    "The 'raf' is null");
+        }
+        if (parts <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'parts' is less than or equal to zero: " + parts);
+        }
+        long length = raf.length();
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(0L);
+        long prev = 0;
+        long offset;
+        for (int i=1; i<parts; ++i) {
+            offset = length / parts * i;
+            if (offset <= prev) {
+                offset = prev + 1;
+            }
+            offset = findRecord(raf, offset, length);
+            if (offset == -1) {
+                break;
+            }
+            if (offset > prev) {
+                boundaries.add(offset);
+                prev = offset;
+            }
+        }
+        if (length > prev) {
+            boundaries.add(length);
+        }
+        long[] result = new long[boundaries.size()];
+        for (int i=0; i<result.length; ++i) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Find the first record boundary at or after an offset. The boundary
+     * returned is the end of the first verified record found, so a
+     * sequential reader would also have finished the preceding record
+     * exactly there and attributes the same diagnoses to each record.
+     * @param raf uncompressed WARC file
+     * @param offset offset to start scanning from
+     * @param end offset to stop scanning at
+     * @return offset of the record boundary or -1 if none was found
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long findRecord(RandomAccessFile raf, long offset, long end) throws IOException {
+        long recordStart = findRecordStart(raf, offset, end, VERIFY_RECORDS);
+        if (recordStart == -1) {
+            return -1;
+        }
+        long recordEnd = getRecordEnd(raf, recordStart);
+        return recordEnd >= 0 && recordEnd < raf.length() ? recordEnd : -1;
+    }
+
+    /**
+     * Find the start of the first verified record at or after an offset.
+     * @param raf uncompressed WARC file
+     * @param offset offset to start scanning from
+     * @param end offset to stop scanning at
+     * @param verifyRecords number of consecutive records which verify a
+     * record candidate
+     * @return offset of the record or -1 if none was found
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long findRecordStart(RandomAccessFile raf, long offset, long end, int verifyRecords) throws IOException {
+        int patternLen = RECORD_MAGIC.length;
+        // Include the preceding byte so the line start can be checked.
+        long pos = offset > 0 ? offset - 1 : 0;
+        while (pos + patternLen <= end) {
+            raf.seek(pos);
+            int len = (int)Math.min(scanBuf.length, end - pos);
+            raf.readFully(scanBuf, 0, len);
+            int idx = 0;
+            while (idx + patternLen <= len) {
+                if (scanBuf[idx] == 'W'
+                        && pos + idx >= offset
+                        && (pos + idx == 0 || (idx > 0 && scanBuf[idx - 1] == '\n'))
+                        && startsWith(scanBuf, idx, RECORD_MAGIC)) {
+                    if (isRecord(raf, pos + idx, verifyRecords)) {
+                        return pos + idx;
+                    }
+                    // Scanning changed the file position.
+                    raf.seek(pos + len);
+                }
+                ++idx;
+            }
+            // Overlap so a pattern and its preceding newline are not missed.
+            if (idx == 0) {
+                break;
+            }
+            pos += idx - 1;
+            if (pos + patternLen + 1 > end) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Verify that a record starts at the given offset. The record and up to
+     * <code>VERIFY_RECORDS</code> records following it must each end on a
+     * record trailer directly followed by the next record or the end of the
+     * file.
+     * @param raf uncompressed WARC file
+     * @param offset candidate record offset
+     * @return boolean indicating whether a record starts at the offset
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public boolean isRecord(RandomAccessFile raf, long offset) throws IOException {
+        return isRecord(raf, offset, VERIFY_RECORDS);
+    }
+
+    /**
+     * Verify that a record starts at the given offset. The record and up to
+     * <code>verifyRecords</code> - 1 records following it must each end on a
+     * record trailer directly followed by the next record or the end of the
+     * file.
+     * @param raf uncompressed WARC file
+     * @param offset candidate record offset
+     * @param verifyRecords number of consecutive records to verify
+     * @return boolean indicating whether a record starts at the offset
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public boolean isRecord(RandomAccessFile raf, long offset, int verifyRecords) throws IOException {
+        long length = raf.length();
+        for (int i=0; i<verifyRecords; ++i) {
+            offset = getRecordEnd(raf, offset);
+            if (offset < 0) {
+                return false;
+            }
+            if (offset == length) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the header of a record candidate and return the offset following
+     * its record trailer. A record which runs past the end of the file, e.g.
+     * because it is still being written, is <code>INCOMPLETE</code>. A
+     * candidate without the magic, with a header which can not be parsed
+     * before the end of the file or with a Content-Length which does not
+     * land on a trailer is <code>INVALID</code>.
+     * @param raf uncompressed WARC file
+     * @param offset candidate record offset
+     * @return offset following the record trailer, <code>INCOMPLETE</code>
+     * or <code>INVALID</code>
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public long getRecordEnd(RandomAccessFile raf, long offset) throws IOException {
+        long length = raf.length();
+        int len = (int)Math.max(0, Math.min(RECORD_MAGIC.length, length - offset));
+        raf.seek(offset);
+        raf.readFully(cmpBuf, 0, len);
+        for (int i=0; i<len; ++i) {
+            if (cmpBuf[i] != RECORD_MAGIC[i]) {
+                return INVALID;
+            }
+        }
+        if (len < RECORD_MAGIC.length) {
+            return INCOMPLETE;
+        }
+        raf.seek(offset);
+        ByteCountingPushBackInputStream in = new ByteCountingPushBackInputStream(
+                new BufferedInputStream(new RandomAccessFileInputStream(raf), 8192),
+                WarcReaderCompressed.PUSHBACK_BUFFER_SIZE);
+        WarcHeader header = WarcHeader.initHeader(reader, offset, new Diagnostics<Diagnosis>());
+        // The version line is searched for, so make sure it was the first line.
+        boolean bValid = header.parseHeader(in);
+        if (offset + in.getConsumed() >= length) {
+            // The header ran into the end of the file.
+            return INCOMPLETE;
+        }
+        if (!bValid || header.startOffset != 0
+                || header.contentLength == null || header.contentLength < 0) {
+            return INVALID;
+        }
+        long trailer = offset + in.getConsumed() + header.contentLength;
+        if (trailer + RECORD_TRAILER.length > length) {
+            return INCOMPLETE;
+        }
+        raf.seek(trailer);
+        raf.readFully(cmpBuf, 0, RECORD_TRAILER.length);
+        if (!startsWith(cmpBuf, 0, RECORD_TRAILER)) {
+            return INVALID;
+        }
+        return trailer + RECORD_TRAILER.length;
+    }
+
+    /**
+     * Compare a pattern with the bytes of a buffer at an index.
+     * @param buf buffer
+     * @param idx index in buffer
+     * @param pattern pattern to compare
+     * @return boolean indicating whether the buffer contains the pattern at the index
+     */
+    protected static boolean startsWith(byte[] buf, int idx, byte[] pattern) {
+        for (int i=0; i<pattern.length; ++i) {
+            if (buf[idx + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.jwat.archive.common.ArchiveRecoveryReader;
+import org.jwat.common.Diagnosis;
+import org.jwat.common.DiagnosisType;
+import org.jwat.common.FileChannelInputStream;
+import org.jwat.gzip.GzipConstants;
+import org.jwat.gzip.GzipEntry;
+import org.jwat.gzip.GzipMemberSplitter;
+
+/**
+ * Reads the intact records of a damaged WARC file, skipping and reporting
+ * the damaged byte ranges. (@see ArchiveRecoveryReader)
+ *
+ * In a compressed file a record must start with a GZip member which
+ * inflates to a WARC header. A member which fails to inflate while its
+ * record is closed is damaged, and the scan for the next member starts
+ * right after its start. A member with a wrong CRC32 or ISize is still
+ * read to its end, but reported. Members are found using
+ * <code>GzipMemberSplitter</code>, requiring the inflated data to start
+ * with the WARC magic.
+ *
+ * In an uncompressed file a record must start with the WARC magic at a
+ * line start and its Content-Length must land on the record trailer.
+ * Records are found using <code>WarcRecordSplitter</code>, verifying only
+ * the candidate itself, since the record following it may be damaged.
+ *
+ * @author nicl
+ */
+public class WarcRecoveryReader extends ArchiveRecoveryReader<WarcRecord> {
+
+    /** Default buffer size used on record streams. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Diagnosis entity used for GZip members with trailer errors. */
+    public static final String GZIP_MEMBER_ENTITY = "GZip member";
+
+    /** Is the WARC file compressed. */
+    protected boolean bCompressed;
+
+    /** Buffer size used on record streams. */
+    protected int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /** Reader used to parse records. */
+    protected WarcReader reader;
+
+    /** Scanner used for compressed files. */
+    protected GzipMemberSplitter memberSplitter;
+
+    /** Scanner used for uncompressed files. */
+    protected WarcRecordSplitter recordSplitter;
+
+    /** End of the current uncompressed record. */
+    protected long recordEnd;
+
+    /** Buffer used to check for the GZip magic number. */
+    protected byte[] magicBuf = new byte[3];
+
+    /**
+     * Construct a recovery reader on a WARC file. The file is compressed if
+     * it starts with the GZip magic number or its name ends with ".gz".
+     * @param file WARC file
+     * @throws IOException if an i/o exception occurs while opening the file
+     */
+    public WarcRecoveryReader(File file) throws IOException {
+        this(new RandomAccessFile(file, "r"), isCompressed(file));
+    }
+
+    /**
+     * Construct a recovery reader on a WARC file.
+     * @param raf WARC file, closed when this reader is closed
+     * @param bCompressed is the WARC file compressed
+     * @throws IOException if an i/o exception occurs while accessing the file
+     */
+    public WarcRecoveryReader(RandomAccessFile raf, boolean bCompressed) throws IOException {
+        super(raf);
+        this.bCompressed = bCompressed;
+        if (bCompressed) {
+            reader = new WarcReaderCompressed();
+            memberSplitter = new GzipMemberSplitter();
+        } else {
+            reader = new WarcReaderUncompressed();
+            recordSplitter = new WarcRecordSplitter();
+        }
+    }
+
+    /**
+     * Check whether a WARC file is compressed. The file name is used if the
+     * first bytes of the file are damaged.
+     * @param file WARC file
+     * @return boolean indicating whether the WARC file is compressed
+     * @throws IOException if an i/o exception occurs while reading the file
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' parameter is null!");
+        }
+        if (file.getName().endsWith(".gz")) {
+            return true;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.length() >= 2
+                    && (raf.readUnsignedByte() | (raf.readUnsignedByte() << 8)) == GzipConstants.GZIP_MAGIC;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the WARC file is compressed.
+     * @return a boolean indicating whether the WARC file is compressed
+     */
+    public boolean isCompressed() {
+        return bCompressed;
+    }
+
+    /**
+     * Set the buffer size used on record streams.
+     * @param bufferSize buffer size used on record streams
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'bufferSize' is less than or equal to zero: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    protected WarcRecord readRecord(long offset) throws IOException {
+        if (bCompressed) {
+            raf.seek(offset);
+            if (raf.read(magicBuf, 0, magicBuf.length) != magicBuf.length
+                    || (magicBuf[0] & 255) != 0x1f || (magicBuf[1] & 255) != 0x8b
+                    || (magicBuf[2] & 255) != GzipConstants.CM_DEFLATE) {
+                return null;
+            }
+        } else {
+            recordEnd = recordSplitter.getRecordEnd(raf, offset);
+            if (recordEnd < 0) {
+                return null;
+            }
+        }
+        WarcRecord record;
+        try {
+            record = reader.getNextRecordFrom(
+                    new FileChannelInputStream(raf.getChannel(), offset), offset, bufferSize);
+        } catch (IOException e) {
+            // The failed record can not be closed again.
+            resetReader();
+            throw e;
+        }
+        if (record == null) {
+            resetReader();
+        }
+        return record;
+    }
+
+    @Override
+    protected long closeRecord(WarcRecord record, long offset) {
+        GzipEntry entry = bCompressed ? ((WarcReaderCompressed)reader).currentEntry : null;
+        try {
+            record.close();
+        } catch (IOException e) {
+            resetReader();
+            return -1;
+        }
+        if (!bCompressed) {
+            return recordEnd;
+        }
+        if (reader.getRawRecordOffset() != offset || reader.getRawRecordLength() <= 0) {
+            resetReader();
+            return -1;
+        }
+        if (entry != null && entry.diagnostics.hasErrors()) {
+            diagnostics.addError(new Diagnosis(DiagnosisType.INVALID_DATA,
+                    GZIP_MEMBER_ENTITY, Long.toString(offset)));
+        }
+        return offset + reader.getRawRecordLength();
+    }
+
+    @Override
+    protected long findCandidate(long offset) throws IOException {
+        if (bCompressed) {
+            return memberSplitter.findMember(raf, offset, length, WarcRecordSplitter.RECORD_MAGIC);
+        } else {
+            return recordSplitter.findRecordStart(raf, offset, length, 1);
+        }
+    }
+
+    /**
+     * Replace the reader after a failure left its current record unusable.
+     */
+    protected void resetReader() {
+        if (bCompressed) {
+            reader = new WarcReaderCompressed();
+        } else {
+            reader = new WarcReaderUncompressed();
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import org.jwat.common.Payload;
+
+/**
+ * Presents the logical block of a segmented record as one stream. The
+ * blocks of the first segment and its <code>continuation</code> records
+ * are read in turn directly from the records, nothing is buffered.
+ *
+ * Continuation records are taken from an iterator, typically the iterator
+ * of a <code>WarcReader</code> positioned after the first segment, or one
+ * chaining the readers of consecutive files. Records in between which are
+ * not continuations of the first segment are skipped. A missing or out of
+ * order segment, or a total length which does not match the
+ * <code>WARC-Segment-Total-Length</code> of the last segment, is reported
+ * as an <code>IOException</code>.
+ *
+ * A record without a <code>WARC-Segment-Number</code> is presented as is.
+ *
+ * @author nicl
+ */
+public class WarcSegmentInputStream extends InputStream {
+
+    /** Continuation records source. */
+    protected final Iterator<WarcRecord> records;
+
+    /** Record id of the first segment. */
+    protected final String originId;
+
+    /** Block stream of the current segment. */
+    protected InputStream in;
+
+    /** Current segment number. */
+    protected int segmentNumber;
+
+    /** Boolean indicating whether the current segment is the last. */
+    protected boolean bLast;
+
+    /** Bytes read so far. */
+    protected long consumed;
+
+    /** Boolean indicating whether the end of the logical block has been reached. */
+    protected boolean bEof;
+
+    /**
+     * Construct a stream over the logical block of a possibly segmented
+     * record.
+     * @param first first segment
+     * @param records source of the continuation records
+     */
+    public WarcSegmentInputStream(WarcRecord first, Iterator<WarcRecord> records) {
+        if (first == null) {
+            throw new IllegalArgumentException(
+                    "The 'first' is null");
+        }
+        if (records == null) {
+            throw new IllegalArgumentException(
+                    "The 'records' is null");
+        }
+        this.records = records;
+        WarcHeader header = first.header;
+        originId = WarcDedupWriter.getRecordId(header);
+        segmentNumber = 1;
+        bLast = header.warcSegmentNumber == null || header.warcSegmentTotalLength != null;
+        in = getBlock(first);
+    }
+
+    /**
+     * Returns the number of the segment currently being read.
+     * @return number of the segment currently being read
+     */
+    public int getSegmentNumber() {
+        return segmentNumber;
+    }
+
+    /**
+     * Returns the number of bytes read so far.
+     * @return number of bytes read so far
+     */
+    public long getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * Returns the block stream of a record.
+     * @param record WARC record
+     * @return block stream of the record
+     */
+    protected static InputStream getBlock(WarcRecord record) {
+        Payload payload = record.getPayload();
+        if (payload == null) {
+            return null;
+        }
+        return payload.getInputStreamComplete();
+    }
+
+    /**
+     * Advance to the next segment when the current one is exhausted.
+     * @return boolean indicating whether there is more data
+     * @throws IOException if a segment is missing or out of order, or the
+     * total length does not match
+     */
+    protected boolean nextSegment() throws IOException {
+        if (bLast) {
+            bEof = true;
+            return false;
+        }
+        int expected = segmentNumber + 1;
+        while (records.hasNext()) {
+            WarcRecord record = records.next();
+            WarcHeader header = record.header;
+            if (!WarcConstants.RT_CONTINUATION.equals(header.warcTypeStr)
+                    || !isOrigin(header)) {
+                continue;
+            }
+            if (header.warcSegmentNumber == null || header.warcSegmentNumber != expected) {
+                throw new IOException("Expected segment " + expected + " of '" + originId
+                        + "' but found segment " + header.warcSegmentNumberStr);
+            }
+            segmentNumber = expected;
+            if (header.warcSegmentTotalLength != null) {
+                bLast = true;
+                long total = consumed + (header.contentLength != null ? header.contentLength : 0);
+                if (header.warcSegmentTotalLength != total) {
+                    throw new IOException("Segment total length of '" + originId + "' is "
+                            + header.warcSegmentTotalLength + " but the segments hold " + total + " bytes");
+                }
+            }
+            in = getBlock(record);
+            return true;
+        }
+        throw new IOException("Missing segment " + expected + " of '" + originId + "'");
+    }
+
+    /**
+     * Returns a boolean indicating whether a continuation record belongs to
+     * the first segment.
+     * @param header continuation record header
+     * @return boolean indicating whether the record belongs to the first segment
+     */
+    protected boolean isOrigin(WarcHeader header) {
+        String id;
+        if (header.warcSegmentOriginIdUrl != null) {
+            id = header.warcSegmentOriginIdUrl.toString();
+        } else {
+            id = header.warcSegmentOriginIdStr;
+            if (id != null && id.startsWith("<") && id.endsWith(">")) {
+                id = id.substring(1, id.length() - 1);
+            }
+        }
+        return id != null && id.equals(originId);
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (!bEof) {
+            if (in != null) {
+                int b = in.read();
+                if (b != -1) {
+                    ++consumed;
+                    return b;
+                }
+            }
+            nextSegment();
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (!bEof) {
+            if (in != null) {
+                int read = in.read(b, off, len);
+                if (read > 0) {
+                    consumed += read;
+                    return read;
+                }
+            }
+            nextSegment();
+        }
+        return -1;
+    }
+
+    /**
+     * Closing does not close the records or the iterator, the remaining
+     * segments are left unread.
+     */
+    @Override
+    public void close() {
+        bEof = true;
+        in = null;
+    }
+
+}
@@ -0,0 +1,361 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+import org.jwat.common.FixedLengthInputStream;
+import org.jwat.common.SpillBuffer;
+
+/**
+ * Writes records whose block is too large for a single file, or whose
+ * length is unknown, as a sequence of segments. The first segment is the
+ * original record with <code>WARC-Segment-Number: 1</code>, the following
+ * segments are <code>continuation</code> records pointing back to it with
+ * <code>WARC-Segment-Origin-ID</code>. The last segment carries the
+ * <code>WARC-Segment-Total-Length</code> of the logical block.
+ *
+ * Blocks that fit in one segment are written as ordinary records without
+ * segment fields. A block of known length is streamed directly. A block of
+ * unknown length is read one segment at a time into a <code>SpillBuffer</code>,
+ * in memory up to a threshold and in a temporary file beyond it, since the length of a
+ * segment must be known before its header is written. At most one segment
+ * is buffered at any time.
+ *
+ * Before each segment the <code>WriterProvider</code> is asked for the
+ * writer to use, which allows the segments to be spread over rotated files.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author nicl
+ */
+public class WarcSegmentWriter {
+
+    /** Default maximum block length of a segment. */
+    public static final long DEFAULT_SEGMENT_SIZE = 256L * 1024L * 1024L;
+
+    /** Default size of segments buffered in memory. */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Supplies the writer each segment is written with.
+     */
+    public interface WriterProvider {
+
+        /**
+         * Returns the writer the given segment is written with. Implementations
+         * may rotate to a new file between segments.
+         * @param segmentNumber segment number, starting at 1
+         * @return writer the segment is written with
+         * @throws IOException if an i/o exception occurs while rotating
+         */
+        WarcWriter getWriter(int segmentNumber) throws IOException;
+
+    }
+
+    /** Provider of the writers segments are written with. */
+    protected final WriterProvider provider;
+
+    /** Maximum block length of a segment. */
+    protected long segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    /** Segment buffer for blocks of unknown length. */
+    protected final SpillBuffer buffer = new SpillBuffer();
+
+    /** Copy buffer. */
+    protected final byte[] copyBuf = new byte[8192];
+
+    /** Number of records written. */
+    protected long records;
+
+    /** Number of segment records written, including first segments. */
+    protected long segments;
+
+    /**
+     * Construct a segmenting writer which writes all segments with the
+     * same writer.
+     * @param writer writer segments are written with
+     */
+    public WarcSegmentWriter(final WarcWriter writer) {
+        if (writer == null) {
+            throw new IllegalArgumentException(
+                    "The 'writer' is null");
+        }
+        buffer.setThreshold(DEFAULT_MEMORY_THRESHOLD);
+        this.provider = new WriterProvider() {
+            @Override
+            public WarcWriter getWriter(int segmentNumber) {
+                return writer;
+            }
+        };
+    }
+
+    /**
+     * Construct a segmenting writer which asks a provider for the writer of
+     * each segment.
+     * @param provider provider of the writers segments are written with
+     */
+    public WarcSegmentWriter(WriterProvider provider) {
+        if (provider == null) {
+            throw new IllegalArgumentException(
+                    "The 'provider' is null");
+        }
+        buffer.setThreshold(DEFAULT_MEMORY_THRESHOLD);
+        this.provider = provider;
+    }
+
+    /**
+     * Set the maximum block length of a segment.
+     * @param size maximum block length of a segment
+     */
+    public void setSegmentSize(long size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'size' is not positive: " + size);
+        }
+        segmentSize = size;
+    }
+
+    /**
+     * Returns the maximum block length of a segment.
+     * @return maximum block length of a segment
+     */
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Set the size of segments buffered in memory. Larger segments of
+     * blocks with unknown length are buffered in a temporary file.
+     * @param size size of segments buffered in memory
+     */
+    public void setMemoryThreshold(int size) {
+        buffer.setThreshold(size);
+    }
+
+    /**
+     * Set the directory used for temporary files.
+     * @param directory directory used for temporary files or null for the default
+     */
+    public void setTmpDirectory(File directory) {
+        buffer.setTmpDirectory(directory);
+    }
+
+    /**
+     * Returns the number of logical records written.
+     * @return number of logical records written
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the number of segment records written, including the first
+     * segments but not records written unsegmented.
+     * @return number of segment records written
+     */
+    public long getSegments() {
+        return segments;
+    }
+
+    /**
+     * Write a record with a block of known or unknown length, segmenting
+     * it if it is larger than the segment size. The record must carry all
+     * fields except <code>Content-Length</code> and the segment fields,
+     * including a <code>WARC-Record-ID</code> and <code>WARC-Date</code>
+     * which the continuation records refer to and repeat.
+     * @param record record to write
+     * @param in record block
+     * @param length block length or -1 if unknown
+     * @return number of records written for the block
+     * @throws IOException if an i/o exception occurs while writing or if the
+     * block is shorter than the given length
+     */
+    public int writeRecord(WarcRecord record, InputStream in, long length) throws IOException {
+        if (record == null) {
+            throw new IllegalArgumentException(
+                    "The 'record' is null");
+        }
+        if (in == null) {
+            throw new IllegalArgumentException(
+                    "The 'in' is null");
+        }
+        int segmentNumber;
+        if (length >= 0) {
+            segmentNumber = writeKnownLength(record, in, length);
+        } else {
+            segmentNumber = writeUnknownLength(record, in);
+        }
+        ++records;
+        if (segmentNumber > 1) {
+            segments += segmentNumber;
+        }
+        return segmentNumber;
+    }
+
+    /**
+     * Stream a block of known length directly into its segments.
+     * @param record record to write
+     * @param in record block
+     * @param length block length
+     * @return number of records written for the block
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    protected int writeKnownLength(WarcRecord record, InputStream in, long length) throws IOException {
+        boolean bSegmented = length > segmentSize;
+        long remaining = length;
+        int segmentNumber = 1;
+        WarcWriter writer = provider.getWriter(segmentNumber);
+        long segmentLength = Math.min(remaining, segmentSize);
+        remaining -= segmentLength;
+        writeFirstHeader(writer, record, segmentLength, bSegmented);
+        streamSegment(writer, in, segmentLength);
+        while (remaining > 0) {
+            ++segmentNumber;
+            writer = provider.getWriter(segmentNumber);
+            segmentLength = Math.min(remaining, segmentSize);
+            remaining -= segmentLength;
+            writeContinuationHeader(writer, record.header, segmentNumber, segmentLength,
+                    remaining == 0 ? length : -1);
+            streamSegment(writer, in, segmentLength);
+        }
+        return segmentNumber;
+    }
+
+    /**
+     * Copy one segment of a block of known length.
+     * @param writer writer the segment is written with
+     * @param in record block
+     * @param segmentLength segment length
+     * @throws IOException if an i/o exception occurs while writing or if the
+     * block ends before the segment
+     */
+    protected void streamSegment(WarcWriter writer, InputStream in, long segmentLength) throws IOException {
+        long written = writer.streamPayload(new FixedLengthInputStream(in, segmentLength));
+        if (written != segmentLength) {
+            throw new IOException("Block ended after " + written
+                    + " bytes of a " + segmentLength + " bytes segment");
+        }
+        writer.closeRecord();
+    }
+
+    /**
+     * Buffer and write a block of unknown length one segment at a time.
+     * @param record record to write
+     * @param in record block
+     * @return number of records written for the block
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    protected int writeUnknownLength(WarcRecord record, InputStream in) throws IOException {
+        try {
+            int segmentNumber = 0;
+            long total = 0;
+            int pending = -1;
+            boolean bLast = false;
+            while (!bLast) {
+                ++segmentNumber;
+                // Buffer up to a full segment, then peek one byte ahead to
+                // decide whether this is the last segment.
+                buffer.reset();
+                if (pending != -1) {
+                    buffer.write(pending);
+                }
+                long segmentLength = buffer.getLength();
+                int read;
+                while (segmentLength < segmentSize
+                        && (read = in.read(copyBuf, 0, (int)Math.min(copyBuf.length, segmentSize - segmentLength))) != -1) {
+                    buffer.write(copyBuf, 0, read);
+                    segmentLength += read;
+                }
+                pending = segmentLength < segmentSize ? -1 : in.read();
+                bLast = pending == -1;
+                total += segmentLength;
+                WarcWriter writer = provider.getWriter(segmentNumber);
+                if (segmentNumber == 1) {
+                    writeFirstHeader(writer, record, segmentLength, !bLast);
+                } else {
+                    writeContinuationHeader(writer, record.header, segmentNumber, segmentLength,
+                            bLast ? total : -1);
+                }
+                writer.writePayloadFrom(buffer);
+                writer.closeRecord();
+            }
+            return segmentNumber;
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Write the header of the first segment, or of an unsegmented record.
+     * @param writer writer the segment is written with
+     * @param record record to write
+     * @param segmentLength block length of the segment
+     * @param bSegmented boolean indicating whether the block is segmented
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    protected void writeFirstHeader(WarcWriter writer, WarcRecord record, long segmentLength, boolean bSegmented) throws IOException {
+        WarcHeader header = record.header;
+        if (bSegmented) {
+            if (WarcDedupWriter.getRecordId(header) == null) {
+                throw new IllegalArgumentException(
+                        "The 'record' has no '" + WarcConstants.FN_WARC_RECORD_ID + "'");
+            }
+            header.addHeader(WarcConstants.FN_WARC_SEGMENT_NUMBER, 1, null);
+        }
+        header.addHeader(WarcConstants.FN_CONTENT_LENGTH, segmentLength, null);
+        writer.writeRecordHeader(record);
+    }
+
+    /**
+     * Write the header of a continuation record.
+     * @param writer writer the segment is written with
+     * @param origin header of the first segment
+     * @param segmentNumber segment number
+     * @param segmentLength block length of the segment
+     * @param totalLength total block length if this is the last segment, otherwise -1
+     * @throws IOException if an i/o exception occurs while writing
+     */
+    protected void writeContinuationHeader(WarcWriter writer, WarcHeader origin, int segmentNumber,
+            long segmentLength, long totalLength) throws IOException {
+        WarcRecord continuation = WarcRecord.createRecord(writer);
+        WarcHeader header = continuation.header;
+        header.addHeader(WarcConstants.FN_WARC_TYPE, WarcConstants.RT_CONTINUATION);
+        String targetUri = WarcDedupWriter.getTargetUri(origin);
+        if (targetUri != null) {
+            header.addHeader(WarcConstants.FN_WARC_TARGET_URI, targetUri);
+        }
+        if (origin.warcDate != null) {
+            header.addHeader(WarcConstants.FN_WARC_DATE, origin.warcDate, null);
+        } else if (origin.warcDateStr != null) {
+            header.addHeader(WarcConstants.FN_WARC_DATE, origin.warcDateStr);
+        }
+        header.addHeader(WarcConstants.FN_WARC_RECORD_ID, "<urn:uuid:" + UUID.randomUUID() + ">");
+        header.addHeader(WarcConstants.FN_WARC_SEGMENT_ORIGIN_ID, "<" + WarcDedupWriter.getRecordId(origin) + ">");
+        header.addHeader(WarcConstants.FN_WARC_SEGMENT_NUMBER, segmentNumber, null);
+        if (totalLength >= 0) {
+            header.addHeader(WarcConstants.FN_WARC_SEGMENT_TOTAL_LENGTH, totalLength, null);
+        }
+        header.addHeader(WarcConstants.FN_CONTENT_LENGTH, segmentLength, null);
+        writer.writeRecordHeader(continuation);
+    }
+
+}
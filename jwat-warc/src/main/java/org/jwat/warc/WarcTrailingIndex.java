@@ -0,0 +1,415 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jwat.common.RandomAccessFileInputStream;
+import org.jwat.common.SurtCanonicalizer;
+
+/**
+ * Trailing index of a self-indexing WARC file. A <code>WarcWriter</code>
+ * with the trailing index enabled ends the file with a metadata record
+ * holding sorted CDXJ lines for the records in the file, followed by a
+ * fixed-size footer pointing to the metadata record.
+ *
+ * In uncompressed files the footer is the last line of the metadata
+ * record block. In compressed files the footer is an additional empty
+ * GZip member with the offset and length of the index member stored in
+ * an extra field. Both are ignored by tools unaware of them.
+ *
+ * This class finds the footer at the end of a file and loads the index
+ * with a single seek, after which records can be looked up by URI.
+ *
+ * @author nicl
+ */
+public class WarcTrailingIndex {
+
+    /** Content-Type of the index metadata record. */
+    public static final String CONTENT_TYPE = "application/x-cdxj";
+
+    /** Prefix of the footer line in the index block. */
+    public static final String FOOTER_PREFIX = "!jwat-index-offset ";
+
+    /** Number of digits of the offset in the footer line. */
+    public static final int FOOTER_DIGITS = 20;
+
+    /** Length of the footer line including the newline. */
+    public static final int FOOTER_LINE_LENGTH = FOOTER_PREFIX.length() + FOOTER_DIGITS + 1;
+
+    /** Length of the footer at the end of an uncompressed file. */
+    public static final int FOOTER_LENGTH = FOOTER_LINE_LENGTH + WarcConstants.endMark.length;
+
+    /** First subfield id of the GZip footer extra field. */
+    public static final byte GZIP_SI1 = 'J';
+
+    /** Second subfield id of the GZip footer extra field. */
+    public static final byte GZIP_SI2 = 'I';
+
+    /** Length of the GZip footer member at the end of a compressed file. */
+    public static final int GZIP_FOOTER_LENGTH = 10 + 2 + 4 + 16 + 2 + 8;
+
+    /** Offset of the index record. */
+    protected long indexOffset;
+
+    /** Length of the index record, or -1 if unknown. */
+    protected long indexLength;
+
+    /** Sorted CDXJ lines of the index. */
+    protected List<String> lines = new ArrayList<String>();
+
+    /** Canonicalizer used to compute the lookup key. */
+    protected SurtCanonicalizer canonicalizer = new SurtCanonicalizer();
+
+    /**
+     * Returns the footer line written at the end of the index block.
+     * @param offset offset of the index record
+     * @return footer line including the newline
+     */
+    public static String getFooterLine(long offset) {
+        StringBuilder sb = new StringBuilder(FOOTER_LINE_LENGTH);
+        sb.append(FOOTER_PREFIX);
+        String digits = Long.toString(offset);
+        for (int i=digits.length(); i<FOOTER_DIGITS; ++i) {
+            sb.append('0');
+        }
+        sb.append(digits);
+        sb.append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Returns the data of the GZip footer extra field.
+     * @param offset offset of the index member
+     * @param length length of the index member
+     * @return offset and length as little endian 64-bit values
+     */
+    public static byte[] getGzipFooterData(long offset, long length) {
+        byte[] data = new byte[16];
+        for (int i=0; i<8; ++i) {
+            data[i] = (byte)((offset >> (i * 8)) & 255);
+            data[8 + i] = (byte)((length >> (i * 8)) & 255);
+        }
+        return data;
+    }
+
+    /**
+     * Open the trailing index of a WARC file.
+     * @param file WARC file
+     * @return trailing index or null if the file has no trailing index
+     * @throws IOException if an i/o exception occurs while reading the index
+     */
+    public static WarcTrailingIndex open(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "The 'file' parameter is null!");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return open(raf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Open the trailing index of a WARC file. The file position is left
+     * undefined.
+     * @param raf WARC file
+     * @return trailing index or null if the file has no trailing index
+     * @throws IOException if an i/o exception occurs while reading the index
+     */
+    public static WarcTrailingIndex open(RandomAccessFile raf) throws IOException {
+        if (raf == null) {
+            throw new IllegalArgumentException(
+                    "The 'raf' parameter is null!");
+        }
+        long fileLength = raf.length();
+        if (fileLength < GZIP_FOOTER_LENGTH) {
+            return null;
+        }
+        WarcTrailingIndex index = new WarcTrailingIndex();
+        int tailLength = (int)Math.min(fileLength, Math.max(FOOTER_LENGTH, GZIP_FOOTER_LENGTH));
+        byte[] tail = new byte[tailLength];
+        raf.seek(fileLength - tailLength);
+        raf.readFully(tail);
+        if (!index.parseGzipFooter(tail, tailLength - GZIP_FOOTER_LENGTH, fileLength)
+                && !index.parseFooter(tail, tailLength - FOOTER_LENGTH, fileLength)) {
+            return null;
+        }
+        raf.seek(index.indexOffset);
+        WarcReader reader = WarcReaderFactory.getReader(new RandomAccessFileInputStream(raf));
+        try {
+            WarcRecord record = reader.getNextRecord();
+            if (record == null || !WarcConstants.RT_METADATA.equals(record.header.warcTypeStr)
+                    || !CONTENT_TYPE.equals(record.header.contentTypeStr)
+                    || !record.hasPayload()) {
+                return null;
+            }
+            index.readLines(record.getPayload().getInputStream());
+        } finally {
+            reader.close();
+        }
+        return index;
+    }
+
+    /**
+     * Parse a GZip footer member.
+     * @param tail bytes at the end of the file
+     * @param idx index of the footer in the tail array
+     * @param fileLength length of the file
+     * @return boolean indicating whether a valid footer was found
+     */
+    protected boolean parseGzipFooter(byte[] tail, int idx, long fileLength) {
+        if (idx < 0 || (tail[idx] & 255) != 0x1f || (tail[idx + 1] & 255) != 0x8b
+                || tail[idx + 2] != 8 || tail[idx + 3] != 4
+                || tail[idx + 10] != 20 || tail[idx + 11] != 0
+                || tail[idx + 12] != GZIP_SI1 || tail[idx + 13] != GZIP_SI2
+                || tail[idx + 14] != 16 || tail[idx + 15] != 0) {
+            return false;
+        }
+        long offset = 0;
+        long length = 0;
+        for (int i=7; i>=0; --i) {
+            offset = (offset << 8) | (tail[idx + 16 + i] & 255);
+            length = (length << 8) | (tail[idx + 24 + i] & 255);
+        }
+        if (offset < 0 || length <= 0 || offset + length != fileLength - GZIP_FOOTER_LENGTH) {
+            return false;
+        }
+        indexOffset = offset;
+        indexLength = length;
+        return true;
+    }
+
+    /**
+     * Parse the footer line at the end of an uncompressed file.
+     * @param tail bytes at the end of the file
+     * @param idx index of the footer in the tail array
+     * @param fileLength length of the file
+     * @return boolean indicating whether a valid footer was found
+     */
+    protected boolean parseFooter(byte[] tail, int idx, long fileLength) {
+        if (idx < 0) {
+            return false;
+        }
+        for (int i=0; i<FOOTER_PREFIX.length(); ++i) {
+            if (tail[idx + i] != FOOTER_PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        int pos = idx + FOOTER_PREFIX.length();
+        long offset = 0;
+        int c;
+        for (int i=0; i<FOOTER_DIGITS; ++i) {
+            c = tail[pos++];
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            offset = offset * 10 + (c - '0');
+        }
+        if (tail[pos++] != '\n') {
+            return false;
+        }
+        for (int i=0; i<WarcConstants.endMark.length; ++i) {
+            if (tail[pos++] != WarcConstants.endMark[i]) {
+                return false;
+            }
+        }
+        if (offset >= fileLength - FOOTER_LENGTH) {
+            return false;
+        }
+        indexOffset = offset;
+        indexLength = fileLength - offset;
+        return true;
+    }
+
+    /**
+     * Read the CDXJ lines of the index block, skipping header lines.
+     * @param in index block input stream
+     * @throws IOException if an i/o exception occurs while reading the lines
+     */
+    protected void readLines(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.length() > 0 && line.charAt(0) != '!') {
+                lines.add(line);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the index record.
+     * @return offset of the index record
+     */
+    public long getIndexOffset() {
+        return indexOffset;
+    }
+
+    /**
+     * Returns the length of the index record including a compressed footer.
+     * @return length of the index record
+     */
+    public long getIndexLength() {
+        return indexLength;
+    }
+
+    /**
+     * Returns the sorted CDXJ lines of the index.
+     * @return sorted CDXJ lines of the index
+     */
+    public List<String> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Returns the canonicalizer used to compute the lookup key. It must
+     * use the same rules as the one used when writing the index.
+     * @return canonicalizer used to compute the lookup key
+     */
+    public SurtCanonicalizer getCanonicalizer() {
+        return canonicalizer;
+    }
+
+    /**
+     * Look up the records of a URI.
+     * @param uri target URI of the records
+     * @return list of index entries, in timestamp order, possibly empty
+     */
+    public List<WarcIndexEntry> lookup(String uri) {
+        if (uri == null) {
+            throw new IllegalArgumentException(
+                    "The 'uri' parameter is null!");
+        }
+        String key = canonicalizer.canonicalize(uri);
+        if (key == null) {
+            key = uri;
+        }
+        key = key + ' ';
+        int idx = Collections.binarySearch(lines, key);
+        if (idx < 0) {
+            idx = -idx - 1;
+        }
+        List<WarcIndexEntry> entries = new ArrayList<WarcIndexEntry>();
+        String line;
+        WarcIndexEntry entry;
+        while (idx < lines.size()) {
+            line = lines.get(idx++);
+            if (!line.startsWith(key)) {
+                break;
+            }
+            entry = parseLine(line);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Parse a CDXJ line as written by <code>CdxjIndexSink</code>. The date
+     * is set to the 14 digit timestamp and the digest is unlabelled.
+     * @param line CDXJ line
+     * @return index entry or null if the line is invalid
+     */
+    public static WarcIndexEntry parseLine(String line) {
+        int idx1 = line.indexOf(' ');
+        int idx2 = idx1 != -1 ? line.indexOf(' ', idx1 + 1) : -1;
+        if (idx2 == -1 || line.length() < idx2 + 3 || line.charAt(idx2 + 1) != '{'
+                || line.charAt(line.length() - 1) != '}') {
+            return null;
+        }
+        WarcIndexEntry entry = new WarcIndexEntry();
+        entry.date = line.substring(idx1 + 1, idx2);
+        StringBuilder sb = new StringBuilder();
+        String name = null;
+        String value;
+        int pos = idx2 + 2;
+        int end = line.length() - 1;
+        char c;
+        try {
+            while (pos < end) {
+                c = line.charAt(pos++);
+                if (c == ',' || c == ':') {
+                    continue;
+                }
+                if (c != '"') {
+                    return null;
+                }
+                sb.setLength(0);
+                while ((c = line.charAt(pos++)) != '"') {
+                    if (c == '\\') {
+                        c = line.charAt(pos++);
+                        switch (c) {
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'u':
+                            c = (char)Integer.parseInt(line.substring(pos, pos + 4), 16);
+                            pos += 4;
+                            break;
+                        default:
+                            break;
+                        }
+                    }
+                    sb.append(c);
+                }
+                if (name == null) {
+                    name = sb.toString();
+                } else {
+                    value = sb.toString();
+                    if ("url".equals(name)) {
+                        entry.targetUri = value;
+                    } else if ("mime".equals(name)) {
+                        entry.mimeType = value;
+                    } else if ("status".equals(name)) {
+                        entry.httpStatus = Integer.valueOf(value);
+                    } else if ("digest".equals(name)) {
+                        entry.payloadDigest = value;
+                    } else if ("length".equals(name)) {
+                        entry.length = Long.parseLong(value);
+                    } else if ("offset".equals(name)) {
+                        entry.offset = Long.parseLong(value);
+                    }
+                    name = null;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return entry;
+    }
+
+}
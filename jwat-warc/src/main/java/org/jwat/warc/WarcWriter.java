@@ -17,17 +17,44 @@
  */
 package org.jwat.warc;
 
+import org.jwat.archive.common.MerkleSidecar;
 import org.jwat.common.Diagnosis;
 import org.jwat.common.DiagnosisType;
+import org.jwat.common.Base32;
+import org.jwat.common.ByteCountingOutputStream;
 import org.jwat.common.Diagnostics;
+import org.jwat.common.DigestListener;
+import org.jwat.common.FileChannelInputStream;
+import org.jwat.common.FixedLengthInputStream;
+import org.jwat.common.HttpHeader;
+import org.jwat.common.PayloadDigester;
+import org.jwat.common.SpillBuffer;
 import org.jwat.common.UriProfile;
+import org.jwat.gzip.GzipConstants;
+import org.jwat.gzip.GzipEntry;
+import org.jwat.gzip.GzipReader;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * Base class for WARC writer implementations.
@@ -48,6 +75,21 @@ public abstract class WarcWriter implements Closeable {
     /** State after record has been closed. */
     protected static final int S_RECORD_CLOSED = 3;
 
+    /** Number of bytes read from the start of raw records for verification. */
+    protected static final int RAW_HEAD_SIZE = 32768;
+
+    /** Start of the version line of uncompressed records. */
+    protected static final byte[] WARC_MAGIC_BYTES = {'W', 'A', 'R', 'C', '/'};
+
+    /** Only verify the framing of raw records. */
+    public static final int RAW_VERIFY_NONE = 0;
+
+    /** Verify the CRC32 and size of raw GZip members, or the length of raw uncompressed records. */
+    public static final int RAW_VERIFY_CRC = 1;
+
+    /** Also parse raw records and require them to be compliant. */
+    public static final int RAW_VERIFY_RECORD = 2;
+
     /*
      * Settings.
      */
@@ -55,6 +97,9 @@ public abstract class WarcWriter implements Closeable {
     /** WARC-Target-URI profile. */
     protected UriProfile warcTargetUriProfile;
 
+    /** Verification level of raw records. */
+    protected int rawRecordVerification = RAW_VERIFY_CRC;
+
     /** URI profile. */
     protected UriProfile uriProfile;
 
@@ -74,6 +119,33 @@ public abstract class WarcWriter implements Closeable {
      *  (Default is true) */
     protected boolean bExceptionOnContentLengthMismatch;
 
+    /** Serializer used to write headers. */
+    protected WarcHeaderSerializer headerSerializer;
+
+    /** Pre-encoded constant header fields or null. */
+    protected WarcHeaderSerializer.Template headerTemplate;
+
+    /** Block digest algorithm computed while writing or null. */
+    protected String blockDigestAlgorithm;
+
+    /** Payload digest algorithm computed while writing or null. */
+    protected String payloadDigestAlgorithm;
+
+    /** Listener receiving the computed digests or null. */
+    protected DigestListener<WarcHeader> digestListener;
+
+    /** Listener receiving the index information of each record or null. */
+    protected WarcIndexListener indexListener;
+
+    /** Offset of the output stream position the writer started at. */
+    protected long startOffset;
+
+    /** Sink collecting the trailing index or null. */
+    protected CdxjIndexSink trailingIndexSink;
+
+    /** CDXJ lines of the trailing index. */
+    protected List<String> trailingIndexLines;
+
     /*
      * State.
      */
@@ -84,6 +156,9 @@ public abstract class WarcWriter implements Closeable {
     /** Current state of writer. */
     protected int state = S_INIT;
 
+    /** Has the writer been closed. */
+    protected boolean bClosed;
+
     /** Outputstream used to write WARC records. */
     protected OutputStream out;
 
@@ -96,6 +171,30 @@ public abstract class WarcWriter implements Closeable {
     /** Total bytes written for current record payload. */
     protected long payloadWrittenTotal;
 
+    /** Digester updated while writing or null. */
+    protected PayloadDigester digester;
+
+    /** Digester of the current record or null. */
+    protected PayloadDigester recordDigester;
+
+    /** Stream counting the bytes written to the output. */
+    protected ByteCountingOutputStream countingOut;
+
+    /** Count of bytes written before the current record. */
+    protected long recordOffset;
+
+    /** Length of the header of the current record. */
+    protected long headerLength;
+
+    /** Index information of the last closed record. */
+    protected final WarcIndexEntry indexEntry = new WarcIndexEntry();
+
+    /** Is index information waiting for the record to be completely written. */
+    protected boolean bIndexPending;
+
+    /** Sidecar receiving the raw digest of each record written or null. */
+    protected MerkleSidecar merkleSidecar;
+
     /**
      * Method used to initialize a readers internal state.
      * Must be called by all constructors.
@@ -107,6 +206,7 @@ public abstract class WarcWriter implements Closeable {
         fieldParsers = new WarcFieldParsers();
         stream_copy_buffer = new byte[8192];
         bExceptionOnContentLengthMismatch = true;
+        headerSerializer = new WarcHeaderSerializer(warcDateFormat);
     }
 
     /**
@@ -173,6 +273,304 @@ public abstract class WarcWriter implements Closeable {
         bExceptionOnContentLengthMismatch = enabled;
     }
 
+    /**
+     * Set a header with constant fields, e.g. <code>WARC-Warcinfo-ID</code>
+     * and <code>WARC-IP-Address</code>, which are pre-encoded once and
+     * written in every header that does not have its own value for them.
+     * @param header header with the constant fields or null to clear
+     */
+    public void setHeaderTemplate(WarcHeader header) {
+        if (header != null) {
+            headerTemplate = headerSerializer.createTemplate(header);
+        } else {
+            headerTemplate = null;
+        }
+    }
+
+    /**
+     * Get the block digest algorithm computed while writing.
+     * @return block digest algorithm or null
+     */
+    public String getBlockDigestAlgorithm() {
+        return blockDigestAlgorithm;
+    }
+
+    /**
+     * Tries to set the block digest algorithm computed while writing and
+     * returns a boolean indicating whether the algorithm was accepted or not.
+     * @param digestAlgorithm block digest algorithm
+     * (null means no block digest is computed)
+     * @return boolean indicating the validity of the algorithm supplied
+     */
+    public boolean setBlockDigestAlgorithm(String digestAlgorithm) {
+        if (digestAlgorithm == null || digestAlgorithm.length() == 0) {
+            blockDigestAlgorithm = null;
+        } else if (WarcDigest.digestAlgorithmLength(digestAlgorithm) > 0) {
+            blockDigestAlgorithm = digestAlgorithm;
+        } else {
+            return false;
+        }
+        digester = null;
+        return true;
+    }
+
+    /**
+     * Get the payload digest algorithm computed while writing.
+     * @return payload digest algorithm or null
+     */
+    public String getPayloadDigestAlgorithm() {
+        return payloadDigestAlgorithm;
+    }
+
+    /**
+     * Tries to set the payload digest algorithm computed while writing and
+     * returns a boolean indicating whether the algorithm was accepted or not.
+     * The payload follows the HTTP header of <code>application/http</code>
+     * request and response blocks, which is detected while writing.
+     * @param digestAlgorithm payload digest algorithm
+     * (null means no payload digest is computed)
+     * @return boolean indicating the validity of the algorithm supplied
+     */
+    public boolean setPayloadDigestAlgorithm(String digestAlgorithm) {
+        if (digestAlgorithm == null || digestAlgorithm.length() == 0) {
+            payloadDigestAlgorithm = null;
+        } else if (WarcDigest.digestAlgorithmLength(digestAlgorithm) > 0) {
+            payloadDigestAlgorithm = digestAlgorithm;
+        } else {
+            return false;
+        }
+        digester = null;
+        return true;
+    }
+
+    /**
+     * Set the listener receiving the digests computed for each record when
+     * it is closed.
+     * @param listener digest listener or null
+     */
+    public void setDigestListener(DigestListener<WarcHeader> listener) {
+        digestListener = listener;
+    }
+
+    /**
+     * Set the listener receiving the offset, length and index information
+     * of each record once it has been completely written. HTTP headers are
+     * detected while writing to report the status and media type of
+     * responses.
+     * @param listener index listener or null
+     */
+    public void setIndexListener(WarcIndexListener listener) {
+        indexListener = listener;
+        digester = null;
+    }
+
+    /**
+     * Set a sidecar to receive the offset, length and digest of the raw
+     * bytes of each record written, i.e. each GZip member in compressed
+     * files. The bytes are digested as they are written, so building the
+     * Merkle tree of a file costs no extra read. Must be set before the
+     * first record is written.
+     * @param sidecar Merkle sidecar or null
+     * @throws NoSuchAlgorithmException if the sidecar algorithm is not supported
+     */
+    public void setMerkleSidecar(MerkleSidecar sidecar) throws NoSuchAlgorithmException {
+        if (countingOut == null) {
+            throw new IllegalStateException("The writer does not count its output!");
+        }
+        merkleSidecar = sidecar;
+        countingOut.setDigest(sidecar != null ? MessageDigest.getInstance(sidecar.getAlgorithm()) : null);
+    }
+
+    /**
+     * Returns the sidecar receiving the raw digest of each record or null.
+     * @return Merkle sidecar or null
+     */
+    public MerkleSidecar getMerkleSidecar() {
+        return merkleSidecar;
+    }
+
+    /**
+     * Enable or disable the trailing index. When enabled, closing the writer
+     * appends a metadata record with a sorted CDXJ index of the response,
+     * revisit and resource records written, followed by a fixed-size footer
+     * pointing to it. See <code>WarcTrailingIndex</code> for the format.
+     * Must be set before the first record is written.
+     * @param bTrailingIndex boolean indicating whether to write a trailing index
+     */
+    public void setTrailingIndex(boolean bTrailingIndex) {
+        if (bTrailingIndex) {
+            final List<String> indexLines = new ArrayList<String>();
+            trailingIndexLines = indexLines;
+            trailingIndexSink = new CdxjIndexSink(null) {
+                @Override
+                protected void writeLine(String line) {
+                    indexLines.add(line);
+                }
+            };
+        } else {
+            trailingIndexSink = null;
+            trailingIndexLines = null;
+        }
+        digester = null;
+    }
+
+    /**
+     * Returns a boolean indicating whether a trailing index is written.
+     * @return boolean indicating whether a trailing index is written
+     */
+    public boolean hasTrailingIndex() {
+        return trailingIndexSink != null;
+    }
+
+    /**
+     * Set the verification level of raw records.
+     * @param level <code>RAW_VERIFY_NONE</code>, <code>RAW_VERIFY_CRC</code>
+     * or <code>RAW_VERIFY_RECORD</code>
+     */
+    public void setRawRecordVerification(int level) {
+        if (level < RAW_VERIFY_NONE || level > RAW_VERIFY_RECORD) {
+            throw new IllegalArgumentException(
+                    "The 'level' parameter is invalid: " + level);
+        }
+        rawRecordVerification = level;
+    }
+
+    /**
+     * Returns the verification level of raw records.
+     * @return verification level of raw records
+     */
+    public int getRawRecordVerification() {
+        return rawRecordVerification;
+    }
+
+    /**
+     * Set the offset of the output stream position the writer starts at,
+     * e.g. the length of a file being appended to. Reported offsets are
+     * relative to it.
+     * @param offset offset of the initial output stream position
+     */
+    public void setStartOffset(long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException(
+                    "The 'offset' is negative: " + offset);
+        }
+        startOffset = offset;
+    }
+
+    /**
+     * Returns the offset of the next record in the output. Only exact
+     * between records.
+     * @return offset of the next record in the output
+     */
+    public long getOffset() {
+        return startOffset + (countingOut != null ? countingOut.getWritten() : 0);
+    }
+
+    /**
+     * Returns the digester of the last record written. Its digests are
+     * available once the record has been closed.
+     * @return digester of the last record or null if digesting is disabled
+     */
+    public PayloadDigester getDigester() {
+        return digester;
+    }
+
+    /**
+     * Reset a spill buffer for buffering the block of a record, so the
+     * digests enabled on this writer are computed while the block is
+     * buffered. The record can then be written with the digests in its
+     * header using <code>writeRecord(WarcRecord, SpillBuffer)</code>.
+     * @param buffer spill buffer to prepare
+     * @param record record whose block is going to be buffered
+     * @throws IOException if an i/o exception occurs while resetting the buffer
+     */
+    public void prepareBuffer(SpillBuffer buffer, WarcRecord record) throws IOException {
+        if (buffer == null) {
+            throw new IllegalArgumentException(
+                    "The 'buffer' parameter is null!");
+        }
+        if (record == null) {
+            throw new IllegalArgumentException(
+                    "The 'record' parameter is null!");
+        }
+        buffer.reset();
+        try {
+            if (!equals(blockDigestAlgorithm, buffer.getBlockDigestAlgorithm())) {
+                buffer.setBlockDigestAlgorithm(blockDigestAlgorithm);
+            }
+            if (!equals(payloadDigestAlgorithm, buffer.getPayloadDigestAlgorithm())) {
+                buffer.setPayloadDigestAlgorithm(payloadDigestAlgorithm);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        buffer.setHttpHeaderType(getHttpHeaderType(record.header));
+    }
+
+    /**
+     * Compare two possibly null strings.
+     * @param s1 first string or null
+     * @param s2 second string or null
+     * @return boolean indicating whether the strings are equal
+     */
+    protected static boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+    /**
+     * Returns the type of HTTP header a block starts with according to the
+     * <code>Content-Type</code> of the record.
+     * @param header WARC header or null
+     * @return <code>HttpHeader.HT_RESPONSE</code>, <code>HttpHeader.HT_REQUEST</code> or 0
+     */
+    protected static int getHttpHeaderType(WarcHeader header) {
+        if (header != null && header.contentType != null
+                && "application".equals(header.contentType.contentType)
+                && "http".equals(header.contentType.mediaType)) {
+            String value = header.contentType.getParameter("msgtype");
+            if ("response".equalsIgnoreCase(value)) {
+                return HttpHeader.HT_RESPONSE;
+            } else if ("request".equalsIgnoreCase(value)) {
+                return HttpHeader.HT_REQUEST;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Start digesting the block of a new record, if enabled.
+     * @param header WARC header of the record or null if written raw
+     */
+    protected void startDigest(WarcHeader header) {
+        if (blockDigestAlgorithm == null && payloadDigestAlgorithm == null
+                && indexListener == null && trailingIndexSink == null) {
+            digester = null;
+        } else if (digester == null) {
+            try {
+                digester = new PayloadDigester(blockDigestAlgorithm, payloadDigestAlgorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (digester != null) {
+            digester.reset(getHttpHeaderType(header));
+        }
+        recordDigester = digester;
+    }
+
+    /**
+     * Update the digests of the current record, unless they were computed
+     * while the block was buffered.
+     * @param b byte array with data written
+     * @param offset offset to data written
+     * @param len length of data written
+     */
+    protected void digest(byte[] b, int offset, int len) {
+        if (recordDigester != null && recordDigester == digester) {
+            digester.update(b, offset, len);
+        }
+    }
+
     /**
      * Is this writer set to block digest payload.
      * @return boolean indicating payload block digesting
@@ -238,10 +636,200 @@ public abstract class WarcWriter implements Closeable {
                 throw new IllegalStateException("Payload size does not match content-length!");
             }
         }
+        if (recordDigester != null) {
+            recordDigester.finish();
+            if (digestListener != null) {
+                digestListener.digestsComputed(header, recordDigester);
+            }
+        }
+        if (indexListener != null || trailingIndexSink != null || merkleSidecar != null) {
+            fillIndexEntry(recordDigester);
+            bIndexPending = true;
+        }
+        recordDigester = null;
         header = null;
         headerContentLength = null;
     }
 
+    /**
+     * Remember the output position at the start of a record. Called by the
+     * implementations before anything of a record is written.
+     */
+    protected void markRecordStart() {
+        if (countingOut != null) {
+            recordOffset = countingOut.getWritten();
+            if (countingOut.getDigest() != null) {
+                countingOut.getDigest().reset();
+            }
+        }
+        bIndexPending = false;
+    }
+
+    /**
+     * Report the last closed record to the index listener. Called by the
+     * implementations once the record has been completely written.
+     * @throws IOException if an i/o exception occurs in the listener
+     */
+    protected void recordWritten() throws IOException {
+        if (bIndexPending && countingOut != null) {
+            bIndexPending = false;
+            indexEntry.offset = startOffset + recordOffset;
+            indexEntry.length = countingOut.getWritten() - recordOffset;
+            if (indexListener != null) {
+                indexListener.recordWritten(indexEntry);
+            }
+            if (trailingIndexSink != null) {
+                trailingIndexSink.recordWritten(indexEntry);
+            }
+            if (merkleSidecar != null) {
+                merkleSidecar.addRecord(indexEntry.offset, indexEntry.length,
+                        countingOut.getDigest().digest());
+            }
+        }
+    }
+
+    /**
+     * Write the trailing index record and footer, if enabled. Called by
+     * the implementations when the writer is closed, after the last record
+     * has been closed.
+     * @throws IOException if an i/o exception occurs while writing the index
+     */
+    protected void writeTrailingIndex() throws IOException {
+        if (trailingIndexSink == null || countingOut == null) {
+            return;
+        }
+        List<String> lines = trailingIndexLines;
+        trailingIndexSink = null;
+        trailingIndexLines = null;
+        Collections.sort(lines);
+        long offset = getOffset();
+        SpillBuffer block = new SpillBuffer();
+        try {
+            Writer writer = new OutputStreamWriter(block, "UTF-8");
+            for (int i=0; i<lines.size(); ++i) {
+                writer.write(lines.get(i));
+            }
+            writer.write(WarcTrailingIndex.getFooterLine(offset));
+            writer.flush();
+            WarcRecord record = WarcRecord.createRecord(this);
+            WarcHeader header = record.header;
+            header.addHeader(WarcConstants.FN_WARC_TYPE, WarcConstants.RT_METADATA);
+            header.addHeader(WarcConstants.FN_WARC_RECORD_ID, "<urn:uuid:" + UUID.randomUUID() + ">");
+            header.addHeader(WarcConstants.FN_WARC_DATE, new Date(), null);
+            header.addHeader(WarcConstants.FN_CONTENT_TYPE, WarcTrailingIndex.CONTENT_TYPE);
+            writeRecord(record, block);
+        } finally {
+            block.close();
+        }
+        writeIndexFooter(offset, getOffset() - offset);
+    }
+
+    /**
+     * Write the footer pointing to the trailing index record. The footer of
+     * uncompressed files is part of the index block, so nothing is written
+     * by default.
+     * @param offset offset of the index record
+     * @param length length of the index record
+     * @throws IOException if an i/o exception occurs while writing the footer
+     */
+    protected void writeIndexFooter(long offset, long length) throws IOException {
+    }
+
+    /**
+     * Fill in the index information of the current record, except its
+     * offset and length.
+     * @param recordDigester digester of the record or null
+     */
+    protected void fillIndexEntry(PayloadDigester recordDigester) {
+        WarcIndexEntry entry = indexEntry;
+        entry.uncompressedLength = headerLength + payloadWrittenTotal + WarcConstants.endMark.length;
+        entry.recordType = null;
+        entry.recordId = null;
+        entry.targetUri = null;
+        entry.date = null;
+        entry.payloadDigest = null;
+        entry.httpStatus = null;
+        entry.mimeType = null;
+        if (header != null) {
+            entry.recordType = header.warcTypeStr;
+            if (header.warcRecordIdUri != null) {
+                entry.recordId = header.warcRecordIdUri.toString();
+            } else if (header.warcRecordIdStr != null) {
+                entry.recordId = stripAngleBrackets(header.warcRecordIdStr);
+            }
+            if (header.warcTargetUriUri != null) {
+                entry.targetUri = header.warcTargetUriUri.toString();
+            } else {
+                entry.targetUri = header.warcTargetUriStr;
+            }
+            if (header.warcDate != null) {
+                entry.date = warcDateFormat.format(header.warcDate);
+            } else {
+                entry.date = header.warcDateStr;
+            }
+            if (header.warcPayloadDigest != null) {
+                entry.payloadDigest = header.warcPayloadDigest.toString();
+            } else {
+                entry.payloadDigest = header.warcPayloadDigestStr;
+            }
+            if (header.contentType != null) {
+                entry.mimeType = header.contentType.toStringShort();
+            } else {
+                entry.mimeType = header.contentTypeStr;
+            }
+        }
+        if (recordDigester != null) {
+            if (entry.payloadDigest == null) {
+                byte[] digest = recordDigester.getPayloadDigest();
+                if (digest != null) {
+                    entry.payloadDigest = createWarcDigest(recordDigester.getPayloadDigestAlgorithm(), digest).toString();
+                } else if (recordDigester.getHttpHeader() == null) {
+                    // Without a HTTP header the payload is the whole block.
+                    digest = recordDigester.getBlockDigest();
+                    if (digest != null) {
+                        entry.payloadDigest = createWarcDigest(recordDigester.getBlockDigestAlgorithm(), digest).toString();
+                    }
+                }
+            }
+            HttpHeader httpHeader = recordDigester.getHttpHeader();
+            if (httpHeader != null) {
+                entry.mimeType = httpHeader.contentType;
+                if (httpHeader.headerType == HttpHeader.HT_RESPONSE) {
+                    entry.httpStatus = httpHeader.statusCode;
+                }
+            }
+        }
+        entry.mimeType = getMimeType(entry.mimeType);
+    }
+
+    /**
+     * Returns a content type without parameters in lower case.
+     * @param contentType content type string or null
+     * @return media type without parameters or null
+     */
+    protected static String getMimeType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int idx = contentType.indexOf(';');
+        if (idx != -1) {
+            contentType = contentType.substring(0, idx);
+        }
+        return contentType.trim().toLowerCase();
+    }
+
+    /**
+     * Remove enclosing angle brackets from a string.
+     * @param str string possibly enclosed in angle brackets
+     * @return string without enclosing angle brackets
+     */
+    protected static String stripAngleBrackets(String str) {
+        if (str.startsWith("<") && str.endsWith(">")) {
+            return str.substring(1, str.length() - 1);
+        }
+        return str;
+    }
+
     /**
      * Write a raw WARC header to the WARC output stream. Closes any previously
      * written record that has not been closed prior to this call.
@@ -263,402 +851,61 @@ public abstract class WarcWriter implements Closeable {
             throw new IllegalStateException("Headers written back to back!");
         } else if (state == S_PAYLOAD_WRITTEN) {
             closeRecord_impl();
+            recordWritten();
         }
+        markRecordStart();
         out.write(header_bytes);
         state = S_HEADER_WRITTEN;
         header = null;
         headerContentLength = contentLength;
+        headerLength = header_bytes.length;
         payloadWrittenTotal = 0;
+        startDigest(null);
     }
 
     /**
      * Write a WARC header to the WARC output stream.
      * Errors and warnings are reported on the records diagnostics object.
+     * Callers which do not need the header bytes should use
+     * <code>writeRecordHeader</code>, which does not copy them.
      * @param record WARC record to output
      * @return byte array version of header as it was written
      * @throws IOException if an i/o exception occurs while writing header data
      */
-    public abstract byte[] writeHeader(WarcRecord record) throws IOException;
+    public byte[] writeHeader(WarcRecord record) throws IOException {
+        writeRecordHeader(record);
+        return headerSerializer.toByteArray();
+    }
+
+    /**
+     * Write a WARC header to the WARC output stream without returning a
+     * copy of the header bytes. The header is written straight from the
+     * reusable serializer buffer.
+     * Errors and warnings are reported on the records diagnostics object.
+     * @param record WARC record to output
+     * @return number of header bytes written
+     * @throws IOException if an i/o exception occurs while writing header data
+     */
+    public abstract int writeRecordHeader(WarcRecord record) throws IOException;
 
     /**
      * Write a WARC header to the WARC output stream.
      * The WARC header is not required to be valid.
      * Errors and warnings are reported on the records diagnostics object.
      * @param record WARC record to output
-     * @return byte array version of header as it was written
+     * @return number of header bytes written
      * @throws IOException if an i/o exception occurs while writing header data
      */
-    protected byte[] writeHeader_impl(WarcRecord record) throws IOException {
+    protected int writeHeader_impl(WarcRecord record) throws IOException {
         header = record.header;
         headerContentLength = header.contentLength;
-        ByteArrayOutputStream outBuf = new ByteArrayOutputStream();
-        /*
-         * Version Line
-         */
-        byte[] magicVersion = (WarcConstants.WARC_MAGIC_HEADER + header.major + "." + header.minor + "\r\n").getBytes();
-        outBuf.write(magicVersion);
-        /*
-         * Warc-Type
-         */
-        String warcTypeStr = null;
-        if (header.warcTypeIdx != null) {
-            if (header.warcTypeIdx > 0
-                && header.warcTypeIdx < WarcConstants.RT_IDX_STRINGS.length) {
-                warcTypeStr = WarcConstants.RT_IDX_STRINGS[header.warcTypeIdx];
-            } else {
-                // Warning...
-            }
-        }
-        if (warcTypeStr == null) {
-            warcTypeStr = header.warcTypeStr;
-        }
-        if (warcTypeStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_TYPE.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcTypeStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Record-Id
-         */
-        String warcRecordIdStr = null;
-        if (header.warcRecordIdUri != null) {
-            warcRecordIdStr = header.warcRecordIdUri.toString();
-        } else if (header.warcRecordIdStr != null) {
-            warcRecordIdStr = header.warcRecordIdStr;
-            // Warning...
-        }
-        if (warcRecordIdStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_RECORD_ID.getBytes());
-            outBuf.write(": <".getBytes());
-            outBuf.write(warcRecordIdStr.getBytes());
-            outBuf.write(">\r\n".getBytes());
-        }
-        /*
-         * Warc-Date
-         */
-        String warcDateStr = null;
-        if (header.warcDate != null) {
-            warcDateStr = warcDateFormat.format(header.warcDate);
-        } else if (header.warcDateStr != null) {
-            warcDateStr = header.warcDateStr;
-            // Warning...
-        }
-        if (warcDateStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_DATE.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcDateStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Content-Length
-         */
-        String contentLengthStr = null;
-        if (header.contentLength != null) {
-            contentLengthStr = header.contentLength.toString();
-        } else if (header.contentLengthStr != null) {
-            contentLengthStr = header.contentLengthStr;
-            // Warning...
-        }
-        if (contentLengthStr != null) {
-            outBuf.write(WarcConstants.FN_CONTENT_LENGTH.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(contentLengthStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Content-Type
-         */
-        String contentTypeStr = null;
-        if (header.contentType != null) {
-            contentTypeStr = header.contentType.toString();
-        } else if (header.contentTypeStr != null) {
-            contentTypeStr = header.contentTypeStr;
-            // Warning...
-        }
-        if (contentTypeStr != null) {
-            outBuf.write(WarcConstants.FN_CONTENT_TYPE.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(contentTypeStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Concurrent-To
-         */
-        WarcConcurrentTo warcConcurrentTo;
-        String warcConcurrentToStr;
-        if (header.warcConcurrentToList != null) {
-            for (int i=0; i<header.warcConcurrentToList.size(); ++i) {
-                warcConcurrentTo = header.warcConcurrentToList.get(i);
-                warcConcurrentToStr = null;
-                if (warcConcurrentTo.warcConcurrentToUri != null) {
-                    warcConcurrentToStr = warcConcurrentTo.warcConcurrentToUri.toString();
-                } else if (warcConcurrentTo.warcConcurrentToStr != null) {
-                    warcConcurrentToStr = warcConcurrentTo.warcConcurrentToStr;
-                    // Warning...
-                }
-                if (warcConcurrentToStr != null) {
-                    outBuf.write(WarcConstants.FN_WARC_CONCURRENT_TO.getBytes());
-                    outBuf.write(": <".getBytes());
-                    outBuf.write(warcConcurrentToStr.getBytes());
-                    outBuf.write(">\r\n".getBytes());
-                }
-            }
-        }
-        /*
-         * Warc-Block-Digest
-         */
-        String warcBlockDigestStr = null;
-        if (header.warcBlockDigest != null) {
-            warcBlockDigestStr = header.warcBlockDigest.toString();
-        } else if (header.warcBlockDigestStr != null) {
-            warcBlockDigestStr = header.warcBlockDigestStr;
-            // Warning...
-        }
-        if (warcBlockDigestStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_BLOCK_DIGEST.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcBlockDigestStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Payload-Digest
-         */
-        String warcPayloadDigestStr = null;
-        if (header.warcPayloadDigest != null) {
-            warcPayloadDigestStr = header.warcPayloadDigest.toString();
-        } else if (header.warcPayloadDigestStr != null) {
-            warcPayloadDigestStr = header.warcPayloadDigestStr;
-            // Warning...
-        }
-        if (warcPayloadDigestStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_PAYLOAD_DIGEST.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcPayloadDigestStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Ip-Address
-         */
-        String warcIpAddress = null;
-        if (header.warcInetAddress != null) {
-            warcIpAddress = header.warcInetAddress.getHostAddress();
-        } else if (header.warcIpAddress != null) {
-            warcIpAddress = header.warcIpAddress;
-            // Warning...
-        }
-        if (warcIpAddress != null) {
-            outBuf.write(WarcConstants.FN_WARC_IP_ADDRESS.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcIpAddress.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Refers-To
-         */
-        String warcRefersToUriStr = null;
-        if (header.warcRefersToUri != null) {
-            warcRefersToUriStr = header.warcRefersToUri.toString();
-        } else if (header.warcRefersToStr != null) {
-            warcRefersToUriStr = header.warcRefersToStr;
-            // Warning...
-        }
-        if (warcRefersToUriStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_REFERS_TO.getBytes());
-            outBuf.write(": <".getBytes());
-            outBuf.write(warcRefersToUriStr.getBytes());
-            outBuf.write(">\r\n".getBytes());
-        }
-        /*
-         * Warc-Target-Uri
-         */
-        String warcTargetUriStr = null;
-        if (header.warcTargetUriUri != null) {
-            warcTargetUriStr = header.warcTargetUriUri.toString();
-        } else if (header.warcTargetUriStr != null) {
-            warcTargetUriStr = header.warcTargetUriStr;
-            // Warning...
-        }
-        if (warcTargetUriStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_TARGET_URI.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcTargetUriStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Truncated
-         */
-        String warcTruncatedStr = null;
-        if (header.warcTruncatedIdx != null) {
-            if (header.warcTruncatedIdx > 0
-                    && header.warcTruncatedIdx < WarcConstants.TT_IDX_STRINGS.length) {
-                warcTruncatedStr = WarcConstants.TT_IDX_STRINGS[header.warcTruncatedIdx];
-            } else {
-                // Warning...
-            }
-        }
-        if (warcTruncatedStr == null) {
-            warcTruncatedStr = header.warcTruncatedStr;
-        }
-        if (warcTruncatedStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_TRUNCATED.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcTruncatedStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Warcinfo-Id
-         */
-        String warcWarcInfoIdStr = null;
-        if (header.warcWarcinfoIdUri != null) {
-            warcWarcInfoIdStr = header.warcWarcinfoIdUri.toString();
-        } else if (header.warcWarcinfoIdStr != null) {
-            warcWarcInfoIdStr = header.warcWarcinfoIdStr;
-            // Warning...
-        }
-        if (warcWarcInfoIdStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_WARCINFO_ID.getBytes());
-            outBuf.write(": <".getBytes());
-            outBuf.write(warcWarcInfoIdStr.getBytes());
-            outBuf.write(">\r\n".getBytes());
-        }
-        /*
-         * Warc-Filename
-         */
-        if (header.warcFilename != null) {
-            outBuf.write(WarcConstants.FN_WARC_FILENAME.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(header.warcFilename.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Profile
-         */
-        String warcProfileStr = null;
-        if (header.warcProfileUri != null) {
-            warcProfileStr = header.warcProfileUri.toString();
-        } else if (header.warcProfileIdx != null) {
-            if (header.warcProfileIdx > 0
-                    && header.warcProfileIdx < WarcConstants.P_IDX_STRINGS.length) {
-                warcProfileStr = WarcConstants.P_IDX_STRINGS[header.warcProfileIdx];
-            } else {
-                // Warning...
-            }
-        }
-        if (warcProfileStr == null) {
-            warcProfileStr = header.warcProfileStr;
-            // Warning...
-        }
-        if (warcProfileStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_PROFILE.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcProfileStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Identified-Payload-Type
-         */
-        String warcIdentifiedPayloadTypeStr = null;
-        if (header.warcIdentifiedPayloadType != null) {
-            warcIdentifiedPayloadTypeStr = header.warcIdentifiedPayloadType.toString();
-        } else if (header.warcIdentifiedPayloadTypeStr != null) {
-            warcIdentifiedPayloadTypeStr = header.warcIdentifiedPayloadTypeStr;
-            // Warning...
-        }
-        if (warcIdentifiedPayloadTypeStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_IDENTIFIED_PAYLOAD_TYPE.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcIdentifiedPayloadTypeStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Segment-Number
-         */
-        String warcSegmentNumberStr = null;
-        if (header.warcSegmentNumber != null) {
-            warcSegmentNumberStr = header.warcSegmentNumber.toString();
-        } else if (header.warcSegmentNumberStr != null) {
-            warcSegmentNumberStr = header.warcSegmentNumberStr;
-            // Warning...
-        }
-        if (warcSegmentNumberStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_SEGMENT_NUMBER.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcSegmentNumberStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Segment-Origin-Id
-         */
-        String warcSegmentOriginIdStr = null;
-        if (header.warcSegmentOriginIdUrl != null) {
-            warcSegmentOriginIdStr = header.warcSegmentOriginIdUrl.toString();
-        } else if (header.warcSegmentOriginIdStr != null) {
-            warcSegmentOriginIdStr = header.warcSegmentOriginIdStr;
-            // Warning...
-        }
-        if (warcSegmentOriginIdStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_SEGMENT_ORIGIN_ID.getBytes());
-            outBuf.write(": <".getBytes());
-            outBuf.write(warcSegmentOriginIdStr.getBytes());
-            outBuf.write(">\r\n".getBytes());
-        }
-        /*
-         * Warc-Segment-Total-Length
-         */
-        String warcSegmentTotalLengthStr = null;
-        if (header.warcSegmentTotalLength != null) {
-            warcSegmentTotalLengthStr = header.warcSegmentTotalLength.toString();
-        } else if (header.warcSegmentTotalLengthStr != null) {
-            warcSegmentTotalLengthStr = header.warcSegmentTotalLengthStr;
-            // Warning...
-        }
-        if (warcSegmentTotalLengthStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_SEGMENT_TOTAL_LENGTH.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcSegmentTotalLengthStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * WARC-Refers-To-Target-URI
-         */
-        String warcRefersToTargetUriStr = null;
-        if (header.warcRefersToTargetUriUri != null) {
-            warcRefersToTargetUriStr = header.warcRefersToTargetUriUri.toString();
-        } else if (header.warcRefersToTargetUriStr != null) {
-            warcRefersToTargetUriStr = header.warcRefersToTargetUriStr;
-        }
-        if (warcRefersToTargetUriStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_REFERS_TO_TARGET_URI.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcRefersToTargetUriStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * Warc-Refers-To-Date
-         */
-        String warcRefersToDateStr = null;
-        if (header.warcRefersToDate != null) {
-            warcRefersToDateStr = warcDateFormat.format(header.warcRefersToDate);
-        } else if (header.warcRefersToDateStr != null) {
-            warcRefersToDateStr = header.warcRefersToDateStr;
-            // Warning...
-        }
-        if (warcRefersToDateStr != null) {
-            outBuf.write(WarcConstants.FN_WARC_REFERS_TO_DATE.getBytes());
-            outBuf.write(": ".getBytes());
-            outBuf.write(warcRefersToDateStr.getBytes());
-            outBuf.write("\r\n".getBytes());
-        }
-        /*
-         * End Of Header
-         */
-        outBuf.write("\r\n".getBytes());
-        byte[] headerBytes = outBuf.toByteArray();
-        out.write(headerBytes);
+        headerSerializer.serialize(header, headerTemplate);
+        headerSerializer.writeTo(out);
         state = S_HEADER_WRITTEN;
+        headerLength = headerSerializer.size();
         payloadWrittenTotal = 0;
-        return headerBytes;
+        startDigest(header);
+        return headerSerializer.size();
     }
 
     /**
@@ -679,6 +926,7 @@ public abstract class WarcWriter implements Closeable {
         int read = 0;
         while (read != -1) {
             out.write(stream_copy_buffer, 0, read);
+            digest(stream_copy_buffer, 0, read);
             written += read;
             read = in.read(stream_copy_buffer);
         }
@@ -698,6 +946,7 @@ public abstract class WarcWriter implements Closeable {
             throw new IllegalStateException("Write a header before writing payload!");
         }
         out.write(b);
+        digest(b, 0, b.length);
         state = S_PAYLOAD_WRITTEN;
         payloadWrittenTotal += b.length;
         return b.length;
@@ -716,9 +965,367 @@ public abstract class WarcWriter implements Closeable {
             throw new IllegalStateException("Write a header before writing payload!");
         }
         out.write(b, offset, len);
+        digest(b, offset, len);
         state = S_PAYLOAD_WRITTEN;
         payloadWrittenTotal += len;
         return len;
     }
 
+    /**
+     * Append the data held in a spill buffer to the payload content.
+     * @param buffer spill buffer with data to be written
+     * @return number of bytes written during method invocation
+     * @throws IOException if an i/o exception occurs while writing payload data
+     */
+    public long writePayloadFrom(SpillBuffer buffer) throws IOException {
+        if (buffer == null) {
+            throw new IllegalArgumentException(
+                    "The 'buffer' parameter is null!");
+        }
+        if (state != S_HEADER_WRITTEN && state != S_PAYLOAD_WRITTEN) {
+            throw new IllegalStateException("Write a header before writing payload!");
+        }
+        long written;
+        if (recordDigester != null && recordDigester == digester) {
+            // The data has to pass through the digester anyway.
+            InputStream in = buffer.getInputStream();
+            try {
+                written = 0;
+                int read;
+                while ((read = in.read(stream_copy_buffer)) != -1) {
+                    out.write(stream_copy_buffer, 0, read);
+                    digester.update(stream_copy_buffer, 0, read);
+                    written += read;
+                }
+            } finally {
+                in.close();
+            }
+        } else {
+            written = buffer.writeTo(out);
+        }
+        state = S_PAYLOAD_WRITTEN;
+        payloadWrittenTotal += written;
+        return written;
+    }
+
+    /**
+     * Write a complete record whose block has been buffered in a spill
+     * buffer. The <code>Content-Length</code> is set to the buffered length
+     * and, if computed by the buffer, the <code>WARC-Block-Digest</code> and
+     * <code>WARC-Payload-Digest</code> are added in base32 encoding. This is
+     * how digests computed while writing end up in the header, see
+     * <code>prepareBuffer</code>.
+     * @param record WARC record to output, without <code>Content-Length</code>
+     * @param block spill buffer holding the record block
+     * @return byte array version of header as it was written
+     * @throws IOException if an i/o exception occurs while writing the record
+     */
+    public byte[] writeRecord(WarcRecord record, SpillBuffer block) throws IOException {
+        if (record == null) {
+            throw new IllegalArgumentException(
+                    "The 'record' parameter is null!");
+        }
+        if (block == null) {
+            throw new IllegalArgumentException(
+                    "The 'block' parameter is null!");
+        }
+        WarcHeader header = record.header;
+        header.addHeader(WarcConstants.FN_CONTENT_LENGTH, block.getLength(), null);
+        byte[] digest = block.getBlockDigest();
+        if (digest != null) {
+            header.addHeader(WarcConstants.FN_WARC_BLOCK_DIGEST,
+                    createWarcDigest(block.getBlockDigestAlgorithm(), digest), null);
+        }
+        digest = block.getPayloadDigest();
+        if (digest != null) {
+            header.addHeader(WarcConstants.FN_WARC_PAYLOAD_DIGEST,
+                    createWarcDigest(block.getPayloadDigestAlgorithm(), digest), null);
+        }
+        byte[] headerBytes = writeHeader(record);
+        if (block.getDigester() != null) {
+            // Digests were computed while buffering.
+            recordDigester = block.getDigester();
+        }
+        writePayloadFrom(block);
+        closeRecord();
+        return headerBytes;
+    }
+
+    /**
+     * Write a raw record verbatim, i.e. a complete GZip member for compressed
+     * writers or the bytes of a record including its trailing newlines for
+     * uncompressed writers, as returned by
+     * <code>WarcReader.getRawRecordBytes</code>. The bytes are neither
+     * parsed nor recompressed, only verified according to the raw record
+     * verification level.
+     * @param raw raw record bytes
+     * @param record record read from the raw bytes, used for the index entry, or null
+     * @return number of bytes written
+     * @throws IOException if an i/o exception occurs or the raw record is invalid
+     */
+    public long writeRawRecord(byte[] raw, WarcRecord record) throws IOException {
+        if (raw == null) {
+            throw new IllegalArgumentException(
+                    "The 'raw' parameter is null!");
+        }
+        return writeRawRecord_impl(null, raw, 0, raw.length, record);
+    }
+
+    /**
+     * Copy a raw record verbatim from a file, i.e. a complete GZip member for
+     * compressed writers or the bytes of a record including its trailing
+     * newlines for uncompressed writers. The range is usually obtained from
+     * <code>WarcReader.getRawRecordOffset/Length</code>. The bytes are
+     * transferred from the channel without being parsed or recompressed,
+     * only verified according to the raw record verification level.
+     * @param channel channel of the file holding the raw record
+     * @param offset offset of the raw record in the file
+     * @param length length of the raw record
+     * @param record record read from the raw bytes, used for the index entry, or null
+     * @return number of bytes written
+     * @throws IOException if an i/o exception occurs or the raw record is invalid
+     */
+    public long writeRawRecord(FileChannel channel, long offset, long length, WarcRecord record) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException(
+                    "The 'channel' parameter is null!");
+        }
+        if (offset < 0 || length < 0 || offset + length > channel.size()) {
+            throw new IllegalArgumentException(
+                    "The 'offset' and 'length' parameters are outside the channel!");
+        }
+        return writeRawRecord_impl(channel, null, offset, length, record);
+    }
+
+    /**
+     * Verify and write a raw record from a channel or byte array.
+     * @param channel channel holding the raw record or null
+     * @param raw byte array holding the raw record or null
+     * @param offset offset of the raw record
+     * @param length length of the raw record
+     * @param record record read from the raw bytes or null
+     * @return number of bytes written
+     * @throws IOException if an i/o exception occurs or the raw record is invalid
+     */
+    protected long writeRawRecord_impl(FileChannel channel, byte[] raw, long offset, long length,
+                                       WarcRecord record) throws IOException {
+        if (bClosed) {
+            throw new IllegalStateException("The writer has been closed!");
+        }
+        if (state == S_HEADER_WRITTEN || state == S_PAYLOAD_WRITTEN) {
+            closeRecord();
+        }
+        verifyRawRecord(channel, raw, offset, length);
+        markRecordStart();
+        if (raw != null) {
+            countingOut.write(raw, (int)offset, (int)length);
+        } else {
+            WritableByteChannel target = Channels.newChannel(countingOut);
+            long position = offset;
+            long remaining = length;
+            long transferred;
+            while (remaining > 0) {
+                transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    throw new EOFException("Unexpected end of file at offset " + position);
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+        state = S_RECORD_CLOSED;
+        if (indexListener != null || trailingIndexSink != null || merkleSidecar != null) {
+            header = record != null ? record.header : null;
+            headerLength = 0;
+            payloadWrittenTotal = 0;
+            fillIndexEntry(null);
+            header = null;
+            if (record != null) {
+                indexEntry.uncompressedLength = record.getConsumed();
+                HttpHeader httpHeader = record.getHttpHeader();
+                if (httpHeader != null) {
+                    indexEntry.mimeType = httpHeader.contentType;
+                    if (httpHeader.headerType == HttpHeader.HT_RESPONSE) {
+                        indexEntry.httpStatus = httpHeader.statusCode;
+                    }
+                    indexEntry.mimeType = getMimeType(indexEntry.mimeType);
+                }
+            } else {
+                indexEntry.uncompressedLength = isCompressed() ? -1 : length;
+            }
+            bIndexPending = true;
+            recordWritten();
+        }
+        return length;
+    }
+
+    /**
+     * Verify a raw record according to the raw record verification level.
+     * @param channel channel holding the raw record or null
+     * @param raw byte array holding the raw record or null
+     * @param offset offset of the raw record
+     * @param length length of the raw record
+     * @throws IOException if an i/o exception occurs or the raw record is invalid
+     */
+    protected void verifyRawRecord(FileChannel channel, byte[] raw, long offset, long length) throws IOException {
+        byte[] head;
+        int headOffset;
+        if (raw != null) {
+            head = raw;
+            headOffset = (int)offset;
+        } else {
+            head = new byte[(int)Math.min(length, RAW_HEAD_SIZE)];
+            readFully(channel, offset, head, 0, head.length);
+            headOffset = 0;
+        }
+        if (isCompressed()) {
+            if (length < 18 || (head[headOffset] & 255) != 0x1f || (head[headOffset + 1] & 255) != 0x8b
+                    || head[headOffset + 2] != GzipConstants.CM_DEFLATE) {
+                throw new IOException("Raw record is not a GZip member!");
+            }
+        } else {
+            byte[] tail = new byte[WarcConstants.endMark.length];
+            if (length < WARC_MAGIC_BYTES.length + tail.length) {
+                throw new IOException("Raw record is too short: " + length);
+            }
+            for (int i=0; i<WARC_MAGIC_BYTES.length; ++i) {
+                if (head[headOffset + i] != WARC_MAGIC_BYTES[i]) {
+                    throw new IOException("Raw record does not start with a WARC version line!");
+                }
+            }
+            if (raw != null) {
+                System.arraycopy(raw, (int)(headOffset + length - tail.length), tail, 0, tail.length);
+            } else {
+                readFully(channel, offset + length - tail.length, tail, 0, tail.length);
+            }
+            for (int i=0; i<tail.length; ++i) {
+                if (tail[i] != WarcConstants.endMark[i]) {
+                    throw new IOException("Raw record does not end with the trailing newlines!");
+                }
+            }
+        }
+        if (rawRecordVerification == RAW_VERIFY_NONE) {
+            return;
+        }
+        if (isCompressed()) {
+            GzipReader reader = new GzipReader(openRawRecord(channel, raw, offset, length));
+            try {
+                GzipEntry entry = reader.getNextEntry();
+                if (entry == null) {
+                    throw new IOException("Raw record is not a GZip member!");
+                }
+                InputStream in = entry.getInputStream();
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                }
+                entry.close();
+                if (!entry.isCompliant()) {
+                    throw new IOException("Raw record GZip member failed verification!");
+                }
+                if (reader.getNextEntry() != null) {
+                    throw new IOException("Raw record contains more than one GZip member!");
+                }
+            } finally {
+                reader.close();
+            }
+        } else {
+            long contentLength = -1;
+            int headerLength = -1;
+            String line;
+            int idx = headOffset;
+            int end = (int)Math.min(headOffset + length, head.length);
+            for (int i=headOffset; i<end - 1 && headerLength == -1; ++i) {
+                if (head[i] == '\r' && head[i + 1] == '\n') {
+                    if (i == idx) {
+                        headerLength = i + 2 - headOffset;
+                    } else {
+                        line = new String(head, idx, i - idx, "ISO-8859-1");
+                        if (line.regionMatches(true, 0, WarcConstants.FN_CONTENT_LENGTH + ":", 0,
+                                WarcConstants.FN_CONTENT_LENGTH.length() + 1)) {
+                            try {
+                                contentLength = Long.parseLong(line.substring(WarcConstants.FN_CONTENT_LENGTH.length() + 1).trim());
+                            } catch (NumberFormatException e) {
+                                throw new IOException("Raw record has an invalid Content-Length!");
+                            }
+                        }
+                    }
+                    idx = i + 2;
+                }
+            }
+            if (headerLength == -1 || contentLength == -1) {
+                throw new IOException("Raw record header or Content-Length not found!");
+            }
+            if (headerLength + contentLength + WarcConstants.endMark.length != length) {
+                throw new IOException("Raw record length does not match its Content-Length!");
+            }
+        }
+        if (rawRecordVerification == RAW_VERIFY_RECORD) {
+            WarcReader reader;
+            if (isCompressed()) {
+                reader = WarcReaderFactory.getReaderCompressed(openRawRecord(channel, raw, offset, length));
+            } else {
+                reader = WarcReaderFactory.getReaderUncompressed(openRawRecord(channel, raw, offset, length));
+            }
+            try {
+                WarcRecord record = reader.getNextRecord();
+                if (record == null) {
+                    throw new IOException("Raw record could not be parsed!");
+                }
+                record.close();
+                if (!record.isCompliant() || reader.getNextRecord() != null) {
+                    throw new IOException("Raw record is not a single compliant record!");
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Open an input stream on a raw record.
+     * @param channel channel holding the raw record or null
+     * @param raw byte array holding the raw record or null
+     * @param offset offset of the raw record
+     * @param length length of the raw record
+     * @return input stream on the raw record
+     */
+    protected static InputStream openRawRecord(FileChannel channel, byte[] raw, long offset, long length) {
+        if (raw != null) {
+            return new ByteArrayInputStream(raw, (int)offset, (int)length);
+        } else {
+            return new BufferedInputStream(new FixedLengthInputStream(new FileChannelInputStream(channel, offset), length), 8192);
+        }
+    }
+
+    /**
+     * Read bytes from a channel at a given position.
+     * @param channel channel to read from
+     * @param position position in the channel
+     * @param b destination array
+     * @param off offset in the destination array
+     * @param len number of bytes to read
+     * @throws IOException if an i/o exception occurs or the end of the channel is reached
+     */
+    protected static void readFully(FileChannel channel, long position, byte[] b, int off, int len) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+        int read;
+        while (bb.hasRemaining()) {
+            read = channel.read(bb, position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at offset " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Create a base32 encoded WARC digest.
+     * @param algorithm digest algorithm
+     * @param digest digest bytes
+     * @return WARC digest
+     */
+    protected static WarcDigest createWarcDigest(String algorithm, byte[] digest) {
+        return WarcDigest.createWarcDigest(algorithm.toLowerCase(), digest, "base32", Base32.encodeArray(digest));
+    }
+
 }
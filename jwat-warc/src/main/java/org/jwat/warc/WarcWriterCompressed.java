@@ -22,8 +22,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.jwat.common.ByteCountingOutputStream;
+import org.jwat.common.SpillBuffer;
 import org.jwat.gzip.GzipConstants;
 import org.jwat.gzip.GzipEntry;
+import org.jwat.gzip.GzipExtraData;
 import org.jwat.gzip.GzipWriter;
 
 /**
@@ -49,7 +52,7 @@ public class WarcWriterCompressed extends WarcWriter {
             throw new IllegalArgumentException(
                     "The 'out' parameter is null!");
         }
-        writer = new GzipWriter(out);
+        writer = new GzipWriter(countingOut = new ByteCountingOutputStream(out));
         init();
     }
 
@@ -68,7 +71,7 @@ public class WarcWriterCompressed extends WarcWriter {
             throw new IllegalArgumentException(
                     "The 'buffer_size' parameter is less than or equal to zero!");
         }
-        writer = new GzipWriter(new BufferedOutputStream(out, buffer_size));
+        writer = new GzipWriter(countingOut = new ByteCountingOutputStream(new BufferedOutputStream(out, buffer_size)));
         init();
     }
 
@@ -82,11 +85,13 @@ public class WarcWriterCompressed extends WarcWriter {
         if (entry != null) {
             closeRecord();
         }
+        writeTrailingIndex();
         if (out != null) {
             out.flush();
             out.close();
             out = null;
         }
+        bClosed = true;
     }
 
     @Override
@@ -99,9 +104,30 @@ public class WarcWriterCompressed extends WarcWriter {
             state = S_RECORD_CLOSED;
             entry.close();
             entry = null;
+            recordWritten();
         }
     }
 
+    /*
+     * The footer is an empty GZip member with the offset and length of the
+     * index member in an extra field.
+     * @see org.jwat.warc.WarcWriter#writeIndexFooter(long, long)
+     */
+    @Override
+    protected void writeIndexFooter(long offset, long length) throws IOException {
+        GzipEntry footer = new GzipEntry();
+        footer.magic = GzipConstants.GZIP_MAGIC;
+        footer.cm = GzipConstants.CM_DEFLATE;
+        footer.flg = 0;
+        footer.mtime = 0;
+        footer.xfl = 0;
+        footer.os = GzipConstants.OS_UNKNOWN;
+        footer.extraData.add(new GzipExtraData(WarcTrailingIndex.GZIP_SI1, WarcTrailingIndex.GZIP_SI2,
+                WarcTrailingIndex.getGzipFooterData(offset, length)));
+        writer.writeEntryHeader(footer);
+        footer.close();
+    }
+
     /*
      * In this class "out" is the GZip output stream of the current GZip entry.
      * @see org.jwat.warc.WarcWriter#writeHeader(byte[], java.lang.Long)
@@ -121,6 +147,7 @@ public class WarcWriterCompressed extends WarcWriter {
         } else if (state == S_PAYLOAD_WRITTEN) {
             closeRecord();
         }
+        markRecordStart();
         entry = new GzipEntry();
         entry.magic = GzipConstants.GZIP_MAGIC;
         entry.cm = GzipConstants.CM_DEFLATE;
@@ -134,7 +161,9 @@ public class WarcWriterCompressed extends WarcWriter {
         state = S_HEADER_WRITTEN;
         header = null;
         headerContentLength = contentLength;
+        headerLength = header_bytes.length;
         payloadWrittenTotal = 0;
+        startDigest(null);
     }
 
     /*
@@ -142,10 +171,10 @@ public class WarcWriterCompressed extends WarcWriter {
      * state changed to S_HEADER_WRITTEN
      * Sets the header and headerContentLength fields.
      * payloadWrittenTotal is set to 0
-     * @see org.jwat.warc.WarcWriter#writeHeader(org.jwat.warc.WarcRecord)
+     * @see org.jwat.warc.WarcWriter#writeRecordHeader(org.jwat.warc.WarcRecord)
      */
     @Override
-    public byte[] writeHeader(WarcRecord record) throws IOException {
+    public int writeRecordHeader(WarcRecord record) throws IOException {
         if (record == null) {
             throw new IllegalArgumentException(
                     "The 'record' parameter is null!");
@@ -155,6 +184,7 @@ public class WarcWriterCompressed extends WarcWriter {
         } else if (state == S_PAYLOAD_WRITTEN) {
             closeRecord();
         }
+        markRecordStart();
         entry = new GzipEntry();
         entry.magic = GzipConstants.GZIP_MAGIC;
         entry.cm = GzipConstants.CM_DEFLATE;
@@ -203,4 +233,16 @@ public class WarcWriterCompressed extends WarcWriter {
         return super.writePayload(b, offset, len);
     }
 
+    /*
+     * state changed to S_PAYLOAD_WRITTEN
+     * @see org.jwat.warc.WarcWriter#writePayloadFrom(org.jwat.common.SpillBuffer)
+     */
+    @Override
+    public long writePayloadFrom(SpillBuffer buffer) throws IOException {
+        if (entry == null) {
+            throw new IllegalStateException("Write a header before writing payload!");
+        }
+        return super.writePayloadFrom(buffer);
+    }
+
 }
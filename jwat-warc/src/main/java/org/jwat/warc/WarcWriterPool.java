@@ -0,0 +1,567 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jwat.common.ByteCountingOutputStream;
+
+/**
+ * Thread-safe pool of WARC writers writing to rotating files in a directory.
+ * Meant for crawlers where many fetch threads write records concurrently.
+ *
+ * A writer is acquired with <code>acquire()</code>, used to write one or more
+ * complete records and handed back with <code>release()</code>. Free writers
+ * are kept in a lock-free queue, threads only block when all writers are in
+ * use.
+ *
+ * Files are opened on demand with a warcinfo record at the head and written
+ * under a temporary name ending in <code>.open</code>. When a file exceeds
+ * the maximum size or age it is closed and renamed to its final name, so
+ * only complete files ever carry the final name. Files are forced to disk
+ * before the rename, so the final name survives a crash only together with
+ * the complete file. Records are only written out when the buffer is full
+ * or the file is rotated, not after every record. Rotation happens on the
+ * thread releasing or acquiring the writer and does not affect other writers.
+ *
+ * @author nicl
+ */
+public class WarcWriterPool implements Closeable {
+
+    /** Suffix of files being written. */
+    public static final String OPEN_SUFFIX = ".open";
+
+    /** Default maximum file size, 1GB. */
+    public static final long DEFAULT_MAX_FILE_SIZE = 1024L * 1024L * 1024L;
+
+    /** Default maximum file age, 0 disables rotation by age. */
+    public static final long DEFAULT_MAX_FILE_AGE = 0;
+
+    /** Default buffer size used by writers. */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    /** Default warcinfo record fields. */
+    public static final String DEFAULT_WARCINFO_FIELDS =
+            "software: JWAT\r\n"
+            + "format: WARC File Format 1.0\r\n"
+            + "conformsTo: http://bibnum.bnf.fr/WARC/WARC_ISO_28500_version1_latestdraft.pdf\r\n";
+
+    /** Directory files are written to. */
+    protected final File directory;
+
+    /** Prefix of file names. */
+    protected final String prefix;
+
+    /** Write compressed files. */
+    protected final boolean bCompressed;
+
+    /** Number of writers in the pool. */
+    protected final int writers;
+
+    /** Maximum file size before rotation. */
+    protected volatile long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+
+    /** Maximum file age in milliseconds before rotation, 0 to disable. */
+    protected volatile long maxFileAge = DEFAULT_MAX_FILE_AGE;
+
+    /** Buffer size used by writers. */
+    protected volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /** Fields written in the warcinfo record at the head of each file. */
+    protected volatile byte[] warcinfoFields = DEFAULT_WARCINFO_FIELDS.getBytes();
+
+    /** Free writers. */
+    protected final ConcurrentLinkedQueue<PooledWriter> free = new ConcurrentLinkedQueue<PooledWriter>();
+
+    /** One permit per free writer. */
+    protected final Semaphore permits;
+
+    /** Is the pool closed. */
+    protected volatile boolean bClosed;
+
+    /** Serial number used in file names. */
+    protected final AtomicLong serial = new AtomicLong();
+
+    /** Time the pool was created. */
+    protected final long created = System.currentTimeMillis();
+
+    /** Number of times a writer was acquired. */
+    protected final AtomicLong acquired = new AtomicLong();
+
+    /** Total nanoseconds spent waiting for a free writer. */
+    protected final AtomicLong queueWaitNanos = new AtomicLong();
+
+    /** Maximum nanoseconds spent waiting for a free writer. */
+    protected final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+    /** Bytes written to files, including warcinfo records. */
+    protected final AtomicLong bytesWritten = new AtomicLong();
+
+    /** Number of files closed and renamed. */
+    protected final AtomicLong filesRotated = new AtomicLong();
+
+    /**
+     * Construct a pool of writers writing files to a directory.
+     * @param directory directory files are written to
+     * @param prefix prefix of file names
+     * @param bCompressed write compressed files
+     * @param writers number of writers
+     */
+    public WarcWriterPool(File directory, String prefix, boolean bCompressed, int writers) {
+        if (directory == null) {
+            throw new IllegalArgumentException(
+                    "The 'directory' is null");
+        }
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException(
+                    "The 'directory' is not a directory: " + directory.getPath());
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException(
+                    "The 'prefix' is null");
+        }
+        if (writers <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'writers' is less than or equal to zero: " + writers);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.bCompressed = bCompressed;
+        this.writers = writers;
+        for (int i=0; i<writers; ++i) {
+            free.add(new PooledWriter(this, i));
+        }
+        permits = new Semaphore(writers);
+    }
+
+    /**
+     * Set the maximum file size. A file is rotated when a writer is handed
+     * back after the file has reached this size.
+     * @param size maximum file size
+     */
+    public void setMaxFileSize(long size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'size' is less than or equal to zero: " + size);
+        }
+        maxFileSize = size;
+    }
+
+    /**
+     * Set the maximum file age. A file is rotated when a writer is acquired
+     * or handed back after the file has reached this age.
+     * @param millis maximum file age in milliseconds, 0 to disable
+     */
+    public void setMaxFileAge(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(
+                    "The 'millis' is negative: " + millis);
+        }
+        maxFileAge = millis;
+    }
+
+    /**
+     * Set the buffer size used by writers opened after this call.
+     * @param size buffer size
+     */
+    public void setBufferSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "The 'size' is less than or equal to zero: " + size);
+        }
+        bufferSize = size;
+    }
+
+    /**
+     * Set the fields written as the payload of the warcinfo record at the
+     * head of files opened after this call.
+     * @param fields warcinfo fields in <code>application/warc-fields</code> format
+     */
+    public void setWarcinfoFields(byte[] fields) {
+        if (fields == null) {
+            throw new IllegalArgumentException(
+                    "The 'fields' is null");
+        }
+        warcinfoFields = fields.clone();
+    }
+
+    /**
+     * Acquire a free writer, waiting if all writers are in use.
+     * @return pooled writer
+     * @throws IOException if an i/o exception occurs while opening a file
+     * or the thread is interrupted while waiting
+     */
+    public PooledWriter acquire() throws IOException {
+        if (bClosed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for a writer");
+        }
+        long wait = System.nanoTime() - start;
+        acquired.incrementAndGet();
+        queueWaitNanos.addAndGet(wait);
+        long max;
+        while ((max = maxQueueWaitNanos.get()) < wait && !maxQueueWaitNanos.compareAndSet(max, wait)) {
+        }
+        PooledWriter pooledWriter = free.poll();
+        if (bClosed) {
+            giveBack(pooledWriter);
+            throw new IllegalStateException("Pool is closed");
+        }
+        try {
+            if (pooledWriter.writer != null && pooledWriter.isExpired(System.currentTimeMillis())) {
+                pooledWriter.closeFile();
+            }
+            if (pooledWriter.writer == null) {
+                pooledWriter.openFile();
+            }
+        } catch (IOException e) {
+            giveBack(pooledWriter);
+            throw e;
+        }
+        pooledWriter.bAcquired = true;
+        return pooledWriter;
+    }
+
+    /**
+     * Hand back a writer acquired from this pool. The current record, if
+     * any, must have been closed. The file is rotated if it has reached the
+     * maximum size or age.
+     * @param pooledWriter writer returned by <code>acquire()</code>
+     * @throws IOException if an i/o exception occurs while rotating the file
+     */
+    public void release(PooledWriter pooledWriter) throws IOException {
+        if (pooledWriter == null) {
+            throw new IllegalArgumentException(
+                    "The 'pooledWriter' is null");
+        }
+        if (pooledWriter.pool != this || !pooledWriter.bAcquired) {
+            throw new IllegalStateException("Writer not acquired from this pool");
+        }
+        pooledWriter.bAcquired = false;
+        try {
+            if (pooledWriter.writer != null) {
+                pooledWriter.updateSize();
+                if (pooledWriter.size >= maxFileSize
+                        || pooledWriter.isExpired(System.currentTimeMillis())) {
+                    pooledWriter.closeFile();
+                }
+            }
+        } finally {
+            giveBack(pooledWriter);
+        }
+    }
+
+    /**
+     * Put a writer back in the free queue and wake up a waiting thread.
+     * @param pooledWriter pooled writer
+     */
+    protected void giveBack(PooledWriter pooledWriter) {
+        free.add(pooledWriter);
+        permits.release();
+    }
+
+    /**
+     * Close the pool. Waits until all writers have been handed back, then
+     * closes and renames all open files.
+     * @throws IOException if an i/o exception occurs while closing files
+     */
+    @Override
+    public void close() throws IOException {
+        if (bClosed) {
+            return;
+        }
+        bClosed = true;
+        permits.acquireUninterruptibly(writers);
+        IOException exception = null;
+        PooledWriter pooledWriter;
+        while ((pooledWriter = free.poll()) != null) {
+            try {
+                pooledWriter.closeFile();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether the pool is closed.
+     * @return boolean indicating whether the pool is closed
+     */
+    public boolean isClosed() {
+        return bClosed;
+    }
+
+    /**
+     * Returns the number of writers in the pool.
+     * @return number of writers in the pool
+     */
+    public int getWriters() {
+        return writers;
+    }
+
+    /**
+     * Returns the number of times a writer was acquired.
+     * @return number of times a writer was acquired
+     */
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    /**
+     * Returns the total time spent waiting for a free writer.
+     * @return total time spent waiting for a free writer, in nanoseconds
+     */
+    public long getQueueWaitNanos() {
+        return queueWaitNanos.get();
+    }
+
+    /**
+     * Returns the longest time spent waiting for a free writer.
+     * @return longest time spent waiting for a free writer, in nanoseconds
+     */
+    public long getMaxQueueWaitNanos() {
+        return maxQueueWaitNanos.get();
+    }
+
+    /**
+     * Returns the number of bytes written to files, including the warcinfo
+     * records. Bytes are accounted when a writer is handed back.
+     * @return number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Returns the average number of bytes written per second since the
+     * pool was created.
+     * @return average number of bytes written per second
+     */
+    public double getBytesPerSecond() {
+        long millis = Math.max(System.currentTimeMillis() - created, 1);
+        return bytesWritten.get() * 1000.0 / millis;
+    }
+
+    /**
+     * Returns the number of files closed and renamed to their final name.
+     * @return number of files rotated
+     */
+    public long getFilesRotated() {
+        return filesRotated.get();
+    }
+
+    /**
+     * Returns the final name of a new file. Override to change the naming.
+     * @param index index of the writer in the pool
+     * @return final name of a new file
+     */
+    protected String newFileName(int index) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmssSSS");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder sb = new StringBuilder();
+        sb.append(prefix);
+        sb.append('-');
+        sb.append(dateFormat.format(new Date()));
+        sb.append('-');
+        sb.append(String.format("%05d", serial.getAndIncrement()));
+        sb.append('-');
+        sb.append(index);
+        sb.append(bCompressed ? ".warc.gz" : ".warc");
+        return sb.toString();
+    }
+
+    /**
+     * A writer of the pool with its current file.
+     */
+    public static class PooledWriter {
+
+        /** Pool owning this writer. */
+        protected final WarcWriterPool pool;
+
+        /** Index of the writer in the pool. */
+        protected final int index;
+
+        /** Is the writer acquired. */
+        protected volatile boolean bAcquired;
+
+        /** Final file. */
+        protected File file;
+
+        /** File being written. */
+        protected File openFile;
+
+        /** File output stream. */
+        protected FileOutputStream fout;
+
+        /** Buffered output stream. */
+        protected BufferedOutputStream out;
+
+        /** Counts the bytes handed to the buffer, so the offset is known without flushing. */
+        protected ByteCountingOutputStream countingOut;
+
+        /** WARC writer of the current file. */
+        protected WarcWriter writer;
+
+        /** Time the current file was opened. */
+        protected long opened;
+
+        /** Size of the current file when last accounted. */
+        protected long size;
+
+        /**
+         * Construct a writer of a pool.
+         * @param pool pool owning this writer
+         * @param index index of the writer in the pool
+         */
+        protected PooledWriter(WarcWriterPool pool, int index) {
+            this.pool = pool;
+            this.index = index;
+        }
+
+        /**
+         * Returns the WARC writer of the current file.
+         * @return WARC writer of the current file
+         */
+        public WarcWriter getWriter() {
+            return writer;
+        }
+
+        /**
+         * Returns the final name of the current file.
+         * @return final name of the current file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the offset in the current file where the next record is
+         * written. Only valid between records.
+         * @return offset of the next record
+         * @throws IOException if an i/o exception occurs
+         */
+        public long getOffset() throws IOException {
+            return countingOut.getWritten();
+        }
+
+        /**
+         * Returns a boolean indicating whether the current file is older
+         * than the maximum file age.
+         * @param now current time in milliseconds
+         * @return boolean indicating whether the current file has expired
+         */
+        protected boolean isExpired(long now) {
+            long maxFileAge = pool.maxFileAge;
+            return maxFileAge > 0 && now - opened >= maxFileAge;
+        }
+
+        /**
+         * Open a new file and write the warcinfo record.
+         * @throws IOException if an i/o exception occurs
+         */
+        protected void openFile() throws IOException {
+            String name = pool.newFileName(index);
+            file = new File(pool.directory, name);
+            openFile = new File(pool.directory, name + OPEN_SUFFIX);
+            fout = new FileOutputStream(openFile);
+            out = new BufferedOutputStream(fout, pool.bufferSize);
+            // The writers flush after every record, which would defeat the
+            // buffer. The buffer is flushed, forced to disk and closed by
+            // closeFile() instead.
+            countingOut = new ByteCountingOutputStream(out) {
+                @Override
+                public void flush() {
+                }
+                @Override
+                public void close() {
+                }
+            };
+            writer = WarcWriterFactory.getWriter(countingOut, pool.bCompressed);
+            opened = System.currentTimeMillis();
+            size = 0;
+            byte[] fields = pool.warcinfoFields;
+            WarcRecord record = WarcRecord.createRecord(writer);
+            record.header.addHeader(WarcConstants.FN_WARC_TYPE, WarcConstants.RT_WARCINFO);
+            record.header.addHeader(WarcConstants.FN_WARC_DATE, new Date(opened), null);
+            record.header.addHeader(WarcConstants.FN_WARC_FILENAME, name);
+            record.header.addHeader(WarcConstants.FN_WARC_RECORD_ID, "<urn:uuid:" + UUID.randomUUID() + ">");
+            record.header.addHeader(WarcConstants.FN_CONTENT_TYPE, WarcConstants.CT_APP_WARC_FIELDS);
+            record.header.addHeader(WarcConstants.FN_CONTENT_LENGTH, (long)fields.length, null);
+            writer.writeRecordHeader(record);
+            writer.writePayload(fields);
+            writer.closeRecord();
+            updateSize();
+        }
+
+        /**
+         * Account the bytes written since the last call.
+         * @throws IOException if an i/o exception occurs
+         */
+        protected void updateSize() throws IOException {
+            long offset = getOffset();
+            pool.bytesWritten.addAndGet(offset - size);
+            size = offset;
+        }
+
+        /**
+         * Close the current file, if any, and rename it to its final name.
+         * @throws IOException if an i/o exception occurs
+         */
+        protected void closeFile() throws IOException {
+            if (writer == null) {
+                return;
+            }
+            WarcWriter closing = writer;
+            writer = null;
+            closing.close();
+            pool.bytesWritten.addAndGet(countingOut.getWritten() - size);
+            out.flush();
+            fout.getChannel().force(true);
+            out.close();
+            if (!openFile.renameTo(file)) {
+                throw new IOException("Unable to rename '" + openFile.getPath()
+                        + "' to '" + file.getPath() + "'");
+            }
+            pool.filesRotated.incrementAndGet();
+        }
+
+    }
+
+}
@@ -21,6 +21,8 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.jwat.common.ByteCountingOutputStream;
+
 /**
  * WARC Writer implementation for writing uncompressed files.
  * Use WarcWriterFactory to get an instance of this class.
@@ -38,7 +40,7 @@ public class WarcWriterUncompressed extends WarcWriter {
             throw new IllegalArgumentException(
                     "The 'out' parameter is null!");
         }
-        this.out = out;
+        this.out = countingOut = new ByteCountingOutputStream(out);
         init();
     }
 
@@ -57,7 +59,7 @@ public class WarcWriterUncompressed extends WarcWriter {
             throw new IllegalArgumentException(
                     "The 'buffer_size' parameter is less than or equal to zero!");
         }
-        this.out = new BufferedOutputStream(out, buffer_size);
+        this.out = countingOut = new ByteCountingOutputStream(new BufferedOutputStream(out, buffer_size));
         init();
     }
 
@@ -71,11 +73,13 @@ public class WarcWriterUncompressed extends WarcWriter {
         if (state == S_HEADER_WRITTEN || state == S_PAYLOAD_WRITTEN) {
             closeRecord();
         }
+        writeTrailingIndex();
         if (out != null) {
             out.flush();
             out.close();
             out = null;
         }
+        bClosed = true;
     }
 
     @Override
@@ -83,6 +87,7 @@ public class WarcWriterUncompressed extends WarcWriter {
         if (state == S_HEADER_WRITTEN || state == S_PAYLOAD_WRITTEN) {
             closeRecord_impl();
             state = S_RECORD_CLOSED;
+            recordWritten();
         } else if (state == S_INIT) {
             throw new IllegalStateException("Please write a record before closing it!");
         }
@@ -92,10 +97,10 @@ public class WarcWriterUncompressed extends WarcWriter {
      * state changed to S_HEADER_WRITTEN
      * Sets the header and headerContentLength fields.
      * payloadWrittenTotal is set to 0
-     * @see org.jwat.warc.WarcWriter#writeHeader(org.jwat.warc.WarcRecord)
+     * @see org.jwat.warc.WarcWriter#writeRecordHeader(org.jwat.warc.WarcRecord)
      */
     @Override
-    public byte[] writeHeader(WarcRecord record) throws IOException {
+    public int writeRecordHeader(WarcRecord record) throws IOException {
         if (record == null) {
             throw new IllegalArgumentException(
                     "The 'record' parameter is null!");
@@ -104,7 +109,9 @@ public class WarcWriterUncompressed extends WarcWriter {
             throw new IllegalStateException("Headers written back to back!");
         } else if (state == S_PAYLOAD_WRITTEN) {
             closeRecord_impl();
+            recordWritten();
         }
+        markRecordStart();
         return writeHeader_impl(record);
     }
 
@@ -0,0 +1,232 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of many WARC readers open at the same time, not run as part of
+ * the unit tests. Every reader is started before any of them reads a record,
+ * so all files are open concurrently, each read by its own thread. Virtual
+ * threads are used when the JVM provides them, otherwise platform threads.
+ *
+ * The same files are read through three read paths: the synchronized
+ * <code>java.io.BufferedInputStream</code>, the lock-free buffering used by
+ * <code>WarcReaderFactory.getReader(InputStream, int)</code> and the high
+ * fan-out configuration of <code>WarcReaderFactory.getReaderHighFanOut</code>.
+ *
+ * Usage: BenchmarkConcurrentReaders [readers] [buffer size] [records],
+ * default 2000 readers, 8192 byte buffers and 50 records per file.
+ *
+ * @author nicl
+ */
+public class BenchmarkConcurrentReaders {
+
+    /** Read through <code>java.io.BufferedInputStream</code>, the read path before the lock-free buffering. */
+    public static final int MODE_JDK_BUFFERED = 0;
+
+    /** Read through the default factory method, which buffers without locking. */
+    public static final int MODE_NO_LOCK = 1;
+
+    /** Read through the high fan-out factory method with small buffers. */
+    public static final int MODE_HIGH_FAN_OUT = 2;
+
+    /** Names of the read paths. */
+    public static final String[] MODE_NAMES = {
+        "java.io.BufferedInputStream", "lock-free buffering", "high fan-out configuration"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int readers = 2000;
+        int bufferSize = 8192;
+        int records = 50;
+        if (args.length > 0) {
+            readers = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            bufferSize = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            records = Integer.parseInt(args[2]);
+        }
+        File dir = File.createTempFile("jwat-benchmark-", "");
+        dir.delete();
+        dir.mkdirs();
+        List<File> files = new ArrayList<File>();
+        try {
+            for (int i=0; i<readers; ++i) {
+                files.add(writeWarcFile(new File(dir, "bench-" + i + (i % 2 == 0 ? ".warc" : ".warc.gz")), i % 2 != 0, records));
+            }
+            // Warm up, then measure each read path.
+            run(MODE_NO_LOCK, files, bufferSize);
+            for (int mode=MODE_JDK_BUFFERED; mode<=MODE_HIGH_FAN_OUT; ++mode) {
+                run(mode, files, bufferSize);
+            }
+        } finally {
+            for (int i=0; i<files.size(); ++i) {
+                files.get(i).delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Read all the files concurrently, one thread per file, and print the
+     * heap used per open reader and the records read per second.
+     * @param mode read path
+     * @param files WARC files
+     * @param bufferSize buffer size used by the first two read paths
+     * @throws InterruptedException if the benchmark is interrupted
+     */
+    protected static void run(final int mode, List<File> files, final int bufferSize) throws InterruptedException {
+        int readers = files.size();
+        ExecutorService executor = newExecutor();
+        final AtomicLong recordsRead = new AtomicLong();
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final CountDownLatch opened = new CountDownLatch(readers);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(readers);
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long startTime = System.nanoTime();
+        for (int i=0; i<readers; ++i) {
+            final File file = files.get(i);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    InputStream in = null;
+                    try {
+                        in = new FileInputStream(file);
+                        WarcReader reader;
+                        switch (mode) {
+                        case MODE_JDK_BUFFERED:
+                            reader = WarcReaderFactory.getReader(new BufferedInputStream(in, bufferSize));
+                            break;
+                        case MODE_NO_LOCK:
+                            reader = WarcReaderFactory.getReader(in, bufferSize);
+                            break;
+                        default:
+                            reader = WarcReaderFactory.getReaderHighFanOut(in);
+                            break;
+                        }
+                        opened.countDown();
+                        start.await();
+                        WarcRecord record;
+                        while ((record = reader.getNextRecord()) != null) {
+                            record.close();
+                            recordsRead.incrementAndGet();
+                        }
+                        reader.close();
+                        bytesRead.addAndGet(file.length());
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        if (in != null) {
+                            try {
+                                in.close();
+                            } catch (IOException e) { /* ignore */ }
+                        }
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        opened.await();
+        long heapOpen = runtime.totalMemory() - runtime.freeMemory();
+        long openTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long endTime = System.nanoTime();
+        executor.shutdown();
+        long elapsed = Math.max(endTime - openTime, 1);
+        System.out.println(MODE_NAMES[mode] + ":");
+        System.out.println("  " + readers + " readers opened in " + ((openTime - startTime) / 1000000) + " ms using "
+                + executorName + ", ~" + Math.max(heapOpen - heapBefore, 0) / readers + " bytes heap per open reader");
+        System.out.println("  " + recordsRead.get() + " records, " + bytesRead.get() + " bytes read in "
+                + (elapsed / 1000000) + " ms, " + (recordsRead.get() * 1000000000L / elapsed) + " records/s, "
+                + failures.get() + " failures");
+    }
+
+    /** Name of the thread model used. */
+    protected static String executorName;
+
+    /**
+     * Create an executor with one thread per task, using virtual threads if
+     * the JVM supports them.
+     * @return executor with one thread per task
+     */
+    protected static ExecutorService newExecutor() {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            executorName = "virtual threads";
+            return (ExecutorService)executor;
+        } catch (Exception e) {
+            executorName = "platform threads";
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(null, r, "reader", 256 * 1024);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    protected static File writeWarcFile(File file, boolean bCompress, int records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, bCompress);
+        byte[] payload = new byte[2048];
+        for (int i=0; i<payload.length; ++i) {
+            payload[i] = (byte)('a' + (i % 26));
+        }
+        for (int i=0; i<records; ++i) {
+            WarcRecord record = WarcRecord.createRecord(writer);
+            record.header.addHeader("WARC-Type", "resource");
+            record.header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-" + (100000000000L + i) + ">");
+            record.header.addHeader("WARC-Date", "2012-03-04T05:06:07Z");
+            record.header.addHeader("WARC-Target-URI", "http://www.example.com/" + i);
+            record.header.addHeader("Content-Length", Integer.toString(payload.length));
+            record.header.addHeader("Content-Type", "text/plain");
+            writer.writeHeader(record);
+            writer.writePayload(payload);
+            writer.closeRecord();
+        }
+        writer.close();
+        FileOutputStream fout = new FileOutputStream(file);
+        fout.write(out.toByteArray());
+        fout.close();
+        return file;
+    }
+
+}
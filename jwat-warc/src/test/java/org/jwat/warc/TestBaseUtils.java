@@ -17,14 +17,28 @@
  */
 package org.jwat.warc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Assert;
+import org.jwat.common.Base32;
 import org.jwat.common.Diagnosis;
 
 public class TestBaseUtils {
 
+    public static final int RECORDS = 20;
+    public static final int NESTED_RECORDS = 40;
+
+    public static final byte[] HTTP_HEADER = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\n".getBytes();
+
+    public static final String WARCINFO_BLOCK = "software: jwat\r\nformat: WARC File Format 1.0\r\n";
+
     private TestBaseUtils() {
     }
 
@@ -132,4 +146,219 @@ public class TestBaseUtils {
         }
     }
 
+    public static File writeWarcFile(boolean bCompress, List<Long> offsets) throws IOException {
+        File file = File.createTempFile("jwat-locator-", bCompress ? ".warc.gz" : ".warc");
+        file.deleteOnExit();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, bCompress);
+        for (int i=0; i<RECORDS; ++i) {
+            offsets.add((long)out.size());
+            byte[] payload = ("payload-" + i).getBytes();
+            WarcRecord record = WarcRecord.createRecord(writer);
+            record.header.addHeader("WARC-Type", "resource");
+            record.header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-0000000000" + (i < 10 ? "0" : "") + i + ">");
+            record.header.addHeader("WARC-Date", "2012-03-04T05:06:07Z");
+            record.header.addHeader("WARC-Target-URI", "http://www.example.com/" + i);
+            record.header.addHeader("Content-Length", Integer.toString(payload.length));
+            record.header.addHeader("Content-Type", "text/plain");
+            writer.writeHeader(record);
+            writer.writePayload(payload);
+            writer.closeRecord();
+        }
+        writer.close();
+        FileOutputStream fout = new FileOutputStream(file);
+        fout.write(out.toByteArray());
+        fout.close();
+        return file;
+    }
+
+    public static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] tmpBuf = new byte[8192];
+        int read;
+        while ((read = in.read(tmpBuf)) != -1) {
+            out.write(tmpBuf, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public static File copyResource(String name) throws IOException {
+        File file = File.createTempFile("jwat-parallel-", name);
+        file.deleteOnExit();
+        InputStream in = TestBaseUtils.class.getClassLoader().getResourceAsStream(name);
+        FileOutputStream out = new FileOutputStream(file);
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        out.close();
+        in.close();
+        return file;
+    }
+
+    public static byte[] writeNestedRecord(WarcWriter writer, ByteArrayOutputStream out, int i, byte[] payload) throws IOException {
+        WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", "resource");
+        record.header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-0000000000" + (i < 10 ? "0" : "") + i + ">");
+        record.header.addHeader("WARC-Date", "2012-03-04T05:06:07Z");
+        record.header.addHeader("WARC-Target-URI", "http://www.example.com/" + i);
+        record.header.addHeader("Content-Length", Integer.toString(payload.length));
+        record.header.addHeader("Content-Type", "application/warc");
+        writer.writeHeader(record);
+        writer.writePayload(payload);
+        writer.closeRecord();
+        return out.toByteArray();
+    }
+
+    /**
+     * Write an uncompressed WARC file where every other record has a
+     * complete WARC file as its payload.
+     * @param offsets list receiving the record offsets
+     * @return WARC file
+     * @throws IOException if an i/o exception occurs
+     */
+    public static File writeNestedWarcFile(List<Long> offsets) throws IOException {
+        File file = File.createTempFile("jwat-splitter-", ".warc");
+        file.deleteOnExit();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        byte[] payload;
+        for (int i=0; i<NESTED_RECORDS; ++i) {
+            offsets.add((long)out.size());
+            if ((i & 1) == 0) {
+                ByteArrayOutputStream nestedOut = new ByteArrayOutputStream();
+                WarcWriter nestedWriter = WarcWriterFactory.getWriter(nestedOut, false);
+                writeNestedRecord(nestedWriter, nestedOut, i, ("nested-" + i).getBytes());
+                payload = writeNestedRecord(nestedWriter, nestedOut, i, ("nested-" + i).getBytes());
+                nestedWriter.close();
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (int j=0; j<i * 10; ++j) {
+                    sb.append("line ");
+                    sb.append(j);
+                    sb.append("\r\n");
+                }
+                payload = sb.toString().getBytes();
+            }
+            writeNestedRecord(writer, out, i, payload);
+        }
+        writer.close();
+        FileOutputStream fout = new FileOutputStream(file);
+        fout.write(out.toByteArray());
+        fout.close();
+        return file;
+    }
+
+    public static File createTempDir() throws IOException {
+        File dir = File.createTempFile("jwat-pool-", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    public static void writeResource(WarcWriter writer, String id, byte[] payload) throws IOException {
+        WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", "resource");
+        record.header.addHeader("WARC-Record-ID", "<urn:uuid:" + id + ">");
+        record.header.addHeader("WARC-Date", "2012-03-04T05:06:07Z");
+        record.header.addHeader("WARC-Target-URI", "http://www.example.com/" + id);
+        record.header.addHeader("Content-Length", Integer.toString(payload.length));
+        record.header.addHeader("Content-Type", "text/plain");
+        writer.writeHeader(record);
+        writer.writePayload(payload);
+        writer.closeRecord();
+    }
+
+    public static WarcRecord createResponse(WarcWriter writer, int i) {
+        WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-0000000000" + (i < 10 ? "0" : "") + i + ">");
+        record.header.addHeader("WARC-Date", "2012-03-04T05:06:" + (i < 10 ? "0" : "") + i + "Z");
+        record.header.addHeader("WARC-Target-URI", "http://www.example.com/" + i);
+        record.header.addHeader("Content-Type", "application/http; msgtype=response");
+        return record;
+    }
+
+    public static byte[] payload(int variant, int length) {
+        byte[] bytes = new byte[length];
+        for (int i=0; i<length; ++i) {
+            bytes[i] = (byte)(i * 31 + variant);
+        }
+        return bytes;
+    }
+
+    public static void writeResponse(WarcWriter writer, int i, byte[] payload) throws IOException {
+        WarcRecord record = createResponse(writer, i);
+        record.header.addHeader("WARC-Type", "response");
+        record.header.addHeader("Content-Length", Long.toString(HTTP_HEADER.length + payload.length));
+        writer.writeHeader(record);
+        writer.writePayload(HTTP_HEADER);
+        writer.writePayload(payload);
+        writer.closeRecord();
+    }
+
+    public static WarcRecord createResource(WarcWriter writer, int i) {
+        WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", "resource");
+        record.header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-0000000000" + (i < 10 ? "0" : "") + i + ">");
+        record.header.addHeader("WARC-Date", "2012-03-04T05:06:" + (i < 10 ? "0" : "") + i + "Z");
+        record.header.addHeader("WARC-Target-URI", "http://www.example.com/" + i);
+        record.header.addHeader("Content-Type", "application/octet-stream");
+        return record;
+    }
+
+    public static String sha1(byte[]... parts) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA1");
+        for (int i=0; i<parts.length; ++i) {
+            md.update(parts[i]);
+        }
+        return Base32.encodeArray(md.digest());
+    }
+
+    public static File newFile() throws Exception {
+        File file = File.createTempFile("jwat-trailing-", ".warc");
+        file.deleteOnExit();
+        return file;
+    }
+
+    public static void writeResponseFile(File file, boolean bCompressed, boolean bTrailingIndex, int records) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        WarcWriter writer = WarcWriterFactory.getWriter(out, 8192, bCompressed);
+        writer.setTrailingIndex(bTrailingIndex);
+        Assert.assertEquals(bTrailingIndex, writer.hasTrailingIndex());
+        writer.setPayloadDigestAlgorithm("sha1");
+        for (int i=records - 1; i>=0; --i) {
+            byte[] payload = TestBaseUtils.payload(i, 100 * i);
+            TestBaseUtils.writeResponse(writer, i, payload);
+        }
+        writer.close();
+        writer.close();
+        out.close();
+    }
+
+    public static File writeFile(boolean bCompressed, int records) throws Exception {
+        File file = File.createTempFile("jwat-repack-", bCompressed ? ".warc.gz" : ".warc");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        WarcWriter writer = WarcWriterFactory.getWriter(out, bCompressed);
+        WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", "warcinfo");
+        record.header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-000000000099>");
+        record.header.addHeader("WARC-Date", "2012-03-04T05:06:00Z");
+        record.header.addHeader("WARC-Filename", file.getName());
+        record.header.addHeader("Content-Type", "application/warc-fields");
+        record.header.addHeader("Content-Length", Integer.toString(WARCINFO_BLOCK.length()));
+        writer.writeHeader(record);
+        writer.writePayload(WARCINFO_BLOCK.getBytes());
+        for (int i=0; i<records; ++i) {
+            byte[] payload = TestBaseUtils.payload(i, 1000 + 100 * i);
+            TestBaseUtils.writeResponse(writer, i, payload);
+        }
+        writer.close();
+        out.close();
+        return file;
+    }
+
 }
@@ -0,0 +1,155 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestCdxjIndexSink {
+
+    @Test
+    public void test_cdxjindexsink_offsets() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(new byte[100]);
+            WarcWriter writer = WarcWriterFactory.getWriter(out, 8192, pass == 1);
+            writer.setStartOffset(100);
+            writer.setBlockDigestAlgorithm("sha1");
+            writer.setPayloadDigestAlgorithm("sha1");
+            final List<WarcIndexEntry> entries = new ArrayList<WarcIndexEntry>();
+            StringWriter cdxj = new StringWriter();
+            final CdxjIndexSink sink = new CdxjIndexSink(cdxj, "test.warc");
+            writer.setIndexListener(new WarcIndexListener() {
+                @Override
+                public void recordWritten(WarcIndexEntry entry) throws IOException {
+                    WarcIndexEntry copy = new WarcIndexEntry();
+                    copy.offset = entry.offset;
+                    copy.length = entry.length;
+                    copy.uncompressedLength = entry.uncompressedLength;
+                    copy.recordType = entry.recordType;
+                    copy.recordId = entry.recordId;
+                    copy.httpStatus = entry.httpStatus;
+                    copy.mimeType = entry.mimeType;
+                    copy.payloadDigest = entry.payloadDigest;
+                    entries.add(copy);
+                    sink.recordWritten(entry);
+                }
+            });
+            Assert.assertEquals(100, writer.getOffset());
+            byte[] payload = TestBaseUtils.payload(1, 3000);
+            // Warcinfo, not indexed by the sink.
+            WarcRecord record = WarcRecord.createRecord(writer);
+            record.header.addHeader("WARC-Type", "warcinfo");
+            record.header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-000000000099>");
+            record.header.addHeader("WARC-Date", "2012-03-04T05:06:00Z");
+            record.header.addHeader("Content-Type", "application/warc-fields");
+            record.header.addHeader("Content-Length", "11");
+            writer.writeHeader(record);
+            writer.writePayload("format: x\r\n".getBytes());
+            // Response.
+            TestBaseUtils.writeResponse(writer, 1, payload);
+            // Resource.
+            record = WarcRecord.createRecord(writer);
+            record.header.addHeader("WARC-Type", "resource");
+            record.header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-000000000002>");
+            record.header.addHeader("WARC-Date", "2012-03-04T05:06:02Z");
+            record.header.addHeader("WARC-Target-URI", "http://www.example.com/2");
+            record.header.addHeader("Content-Type", "text/plain; charset=utf-8");
+            record.header.addHeader("Content-Length", Long.toString(payload.length));
+            writer.writeHeader(record);
+            writer.writePayload(payload);
+            writer.closeRecord();
+            long end = writer.getOffset();
+            writer.close();
+
+            byte[] bytes = out.toByteArray();
+            Assert.assertEquals(bytes.length, end);
+            Assert.assertEquals(3, entries.size());
+            Assert.assertEquals(100, entries.get(0).offset);
+            for (int i=0; i<entries.size(); ++i) {
+                WarcIndexEntry entry = entries.get(i);
+                if (i > 0) {
+                    WarcIndexEntry prev = entries.get(i - 1);
+                    Assert.assertEquals(prev.offset + prev.length, entry.offset);
+                }
+                if (pass == 0) {
+                    Assert.assertEquals(entry.length, entry.uncompressedLength);
+                }
+                WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(bytes, (int)entry.offset, (int)entry.length));
+                WarcRecord read = reader.getNextRecord();
+                Assert.assertNotNull(read);
+                Assert.assertEquals("<" + entry.recordId + ">", read.header.warcRecordIdStr);
+                Assert.assertEquals(entry.recordType, read.header.warcTypeStr);
+                read.close();
+                Assert.assertTrue(read.isCompliant());
+                Assert.assertNull(reader.getNextRecord());
+                reader.close();
+            }
+            Assert.assertEquals(entries.get(2).offset + entries.get(2).length, bytes.length);
+            Assert.assertNull(entries.get(0).httpStatus);
+            Assert.assertEquals("application/warc-fields", entries.get(0).mimeType);
+            Assert.assertEquals(new Integer(200), entries.get(1).httpStatus);
+            Assert.assertEquals("text/plain", entries.get(1).mimeType);
+            Assert.assertEquals("sha1:" + TestBaseUtils.sha1(payload), entries.get(1).payloadDigest);
+            Assert.assertNull(entries.get(2).httpStatus);
+            Assert.assertEquals("text/plain", entries.get(2).mimeType);
+            Assert.assertEquals("sha1:" + TestBaseUtils.sha1(payload), entries.get(2).payloadDigest);
+
+            Assert.assertEquals(2, sink.getLines());
+            String[] lines = cdxj.toString().split("\n");
+            Assert.assertEquals(2, lines.length);
+            Assert.assertEquals("com,example)/1 20120304050601 {\"url\":\"http://www.example.com/1\",\"mime\":\"text/plain\",\"status\":\"200\",\"digest\":\""
+                    + TestBaseUtils.sha1(payload) + "\",\"length\":\"" + entries.get(1).length + "\",\"offset\":\""
+                    + entries.get(1).offset + "\",\"filename\":\"test.warc\"}", lines[0]);
+            Assert.assertTrue(lines[1].startsWith("com,example)/2 20120304050602 {"));
+            sink.close();
+        }
+    }
+
+    @Test
+    public void test_cdxjindexsink_escaping() throws Exception {
+        StringWriter cdxj = new StringWriter();
+        CdxjIndexSink sink = new CdxjIndexSink(cdxj, "a\"b\\c.warc");
+        WarcIndexEntry entry = new WarcIndexEntry();
+        entry.recordType = "revisit";
+        entry.targetUri = "http://example.com/";
+        entry.date = "2012-03-04T05:06:07.123Z";
+        entry.mimeType = "text/html";
+        entry.offset = 42;
+        entry.length = 10;
+        sink.recordWritten(entry);
+        entry.recordType = "request";
+        sink.recordWritten(entry);
+        Assert.assertEquals("com,example)/ 20120304050607 {\"url\":\"http://example.com/\",\"mime\":\"warc/revisit\",\"length\":\"10\",\"offset\":\"42\",\"filename\":\"a\\\"b\\\\c.warc\"}\n", cdxj.toString());
+        sink.setRecordTypes("request");
+        sink.recordWritten(entry);
+        Assert.assertEquals(2, sink.getLines());
+        sink.close();
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.RandomAccessFileInputStream;
+
+@RunWith(JUnit4.class)
+public class TestWarcAppendWriter {
+
+    public static final int THREADS = 8;
+
+    public static final int RECORDS_PER_THREAD = 100;
+
+    public static List<Long> readOffsets(File file, Set<String> ids) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        WarcReader reader = WarcReaderFactory.getReader(new RandomAccessFileInputStream(raf));
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            record.close();
+            Assert.assertTrue(record.isCompliant());
+            offsets.add(record.getStartOffset());
+            if (ids != null) {
+                Assert.assertTrue(ids.add(record.header.warcRecordIdStr));
+            }
+        }
+        Assert.assertTrue(reader.isCompliant());
+        reader.close();
+        raf.close();
+        return offsets;
+    }
+
+    @Test
+    public void test_warcappendwriter_concurrent() throws Exception {
+        boolean[] compressed = {false, true};
+        for (int c=0; c<compressed.length; ++c) {
+            File file = File.createTempFile("jwat-append-", compressed[c] ? ".warc.gz" : ".warc");
+            file.deleteOnExit();
+            final WarcAppendWriter writer = new WarcAppendWriter(file, compressed[c]);
+            Assert.assertEquals(compressed[c], writer.isCompressed());
+            final List<Long> appended = Collections.synchronizedList(new ArrayList<Long>());
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread[] threads = new Thread[THREADS];
+            for (int t=0; t<THREADS; ++t) {
+                final int thread = t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i=0; i<RECORDS_PER_THREAD; ++i) {
+                                TestBaseUtils.writeResource(writer.getWriter(), thread + "-" + i,
+                                        ("payload " + thread + " " + i + " ").getBytes());
+                                appended.add(writer.append());
+                            }
+                            Assert.assertEquals(-1, writer.append());
+                        } catch (Throwable t) {
+                            failure.set(t);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (int t=0; t<THREADS; ++t) {
+                threads[t].join();
+            }
+            Assert.assertNull(failure.get());
+            writer.close();
+            Assert.assertEquals(THREADS * RECORDS_PER_THREAD, writer.getAppends());
+            Assert.assertEquals(file.length(), writer.getLength());
+            try {
+                TestBaseUtils.writeResource(writer.getWriter(), "closed", "closed".getBytes());
+                writer.append();
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+            Set<String> ids = new HashSet<String>();
+            List<Long> offsets = readOffsets(file, ids);
+            Assert.assertEquals(THREADS * RECORDS_PER_THREAD, ids.size());
+            Collections.sort(appended);
+            Assert.assertEquals(appended, offsets);
+            // A clean file is left as is.
+            Assert.assertEquals(file.length(), WarcAppendWriter.recover(file, compressed[c]));
+        }
+    }
+
+    @Test
+    public void test_warcappendwriter_close() throws Exception {
+        File file = File.createTempFile("jwat-append-", ".warc");
+        file.deleteOnExit();
+        final WarcAppendWriter writer = new WarcAppendWriter(file, false);
+        // Simulate an append writing its range.
+        writer.inFlight.incrementAndGet();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread closer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    writer.close();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        closer.start();
+        closer.join(100);
+        Assert.assertTrue(closer.isAlive());
+        Assert.assertEquals(Thread.State.WAITING, closer.getState());
+        writer.inFlight.decrementAndGet();
+        synchronized (writer.inFlightLock) {
+            writer.inFlightLock.notifyAll();
+        }
+        closer.join(5000);
+        Assert.assertFalse(closer.isAlive());
+        Assert.assertNull(failure.get());
+    }
+
+    @Test
+    public void test_warcappendwriter_recover() throws Exception {
+        boolean[] compressed = {false, true};
+        for (int c=0; c<compressed.length; ++c) {
+            File file = File.createTempFile("jwat-append-", compressed[c] ? ".warc.gz" : ".warc");
+            file.deleteOnExit();
+            WarcAppendWriter writer = new WarcAppendWriter(file, compressed[c]);
+            for (int i=0; i<10; ++i) {
+                TestBaseUtils.writeResource(writer.getWriter(), "rec-" + i, ("payload " + i).getBytes());
+                writer.append();
+            }
+            long length = writer.getLength();
+            // Simulate a reserved range which was never written, followed
+            // by a range which was.
+            TestBaseUtils.writeResource(writer.getWriter(), "lost", "lost".getBytes());
+            writer.position.addAndGet(writer.buffers.get().size());
+            writer.discard();
+            TestBaseUtils.writeResource(writer.getWriter(), "written", "written".getBytes());
+            writer.append();
+            writer.close();
+            Assert.assertTrue(file.length() > length);
+            Assert.assertEquals(length, WarcAppendWriter.recover(file, compressed[c]));
+            Assert.assertEquals(length, file.length());
+            Assert.assertEquals(10, readOffsets(file, null).size());
+            // Partial record at the end.
+            writer = new WarcAppendWriter(file, compressed[c]);
+            TestBaseUtils.writeResource(writer.getWriter(), "partial", "partial payload".getBytes());
+            writer.append();
+            writer.close();
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(raf.length() - 3);
+            raf.close();
+            Assert.assertEquals(length, WarcAppendWriter.recover(file, compressed[c]));
+            Assert.assertEquals(10, readOffsets(file, null).size());
+        }
+    }
+
+}
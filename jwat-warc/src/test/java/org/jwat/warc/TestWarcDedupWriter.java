@@ -0,0 +1,144 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.Base32;
+
+@RunWith(JUnit4.class)
+public class TestWarcDedupWriter {
+
+    @Test
+    public void test_warcdedupwriter() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        PayloadDigestIndex index = new PayloadDigestIndex();
+        WarcDedupWriter dedupWriter = new WarcDedupWriter(writer, index);
+        dedupWriter.setMemoryThreshold(1000);
+        byte[][] payloads = {
+                TestBaseUtils.payload(1, 100),
+                TestBaseUtils.payload(2, 100),
+                TestBaseUtils.payload(1, 100),
+                TestBaseUtils.payload(3, 5000),
+                TestBaseUtils.payload(3, 5000),
+                TestBaseUtils.payload(2, 100),
+                new byte[0],
+                new byte[0]
+        };
+        boolean[] expected = {false, false, true, false, true, true, false, true};
+        int[] refersTo = {-1, -1, 0, -1, 3, 1, -1, 6};
+        for (int i=0; i<payloads.length; ++i) {
+            Assert.assertEquals(expected[i], dedupWriter.writeResponse(TestBaseUtils.createResponse(writer, i),
+                    TestBaseUtils.HTTP_HEADER, new ByteArrayInputStream(payloads[i])));
+        }
+        writer.close();
+        Assert.assertEquals(4, dedupWriter.getResponses());
+        Assert.assertEquals(4, dedupWriter.getRevisits());
+        Assert.assertEquals(100 + 5000 + 100, dedupWriter.getBytesSaved());
+        Assert.assertEquals(4, index.size());
+        Assert.assertEquals(4, index.getHits());
+        Assert.assertEquals(4, index.getMisses());
+
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+        WarcRecord record;
+        List<WarcRecord> records = new ArrayList<WarcRecord>();
+        while ((record = reader.getNextRecord()) != null) {
+            int i = records.size();
+            InputStream in = record.getPayloadContent();
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                block.write(b);
+            }
+            record.close();
+            Assert.assertTrue(record.isCompliant());
+            // Revisits carry the digest of the original payload.
+            Assert.assertEquals("sha1:" + Base32.encodeArray(MessageDigest.getInstance("SHA1").digest(payloads[i])),
+                    record.header.warcPayloadDigestStr);
+            if (expected[i]) {
+                Assert.assertEquals(WarcConstants.RT_REVISIT, record.header.warcTypeStr);
+                Assert.assertEquals(WarcConstants.PROFILE_IDENTICAL_PAYLOAD_DIGEST, record.header.warcProfileStr);
+                Assert.assertEquals(records.get(refersTo[i]).header.warcRecordIdUri, record.header.warcRefersToUri);
+                Assert.assertEquals(records.get(refersTo[i]).header.warcTargetUriStr, record.header.warcRefersToTargetUriStr);
+                Assert.assertEquals(records.get(refersTo[i]).header.warcDateStr, record.header.warcRefersToDateStr);
+                Assert.assertEquals(records.get(refersTo[i]).header.warcPayloadDigestStr, record.header.warcPayloadDigestStr);
+                Assert.assertEquals(TestBaseUtils.HTTP_HEADER.length, record.header.contentLength.longValue());
+            } else {
+                Assert.assertEquals(WarcConstants.RT_RESPONSE, record.header.warcTypeStr);
+                Assert.assertEquals(TestBaseUtils.HTTP_HEADER.length + payloads[i].length, record.header.contentLength.longValue());
+                // The HTTP header is parsed by the reader.
+                Assert.assertEquals(payloads[i].length, block.size());
+            }
+            records.add(record);
+        }
+        reader.close();
+        Assert.assertEquals(payloads.length, records.size());
+        Assert.assertTrue(reader.isCompliant());
+    }
+
+    @Test
+    public void test_payloaddigestindex() throws IOException {
+        PayloadDigestIndex index = new PayloadDigestIndex(3);
+        index.put("sha1:A", "urn:uuid:a", "http://a/", "2012-03-04T05:06:07Z");
+        index.put("sha1:B", "urn:uuid:b", null, null);
+        index.put("sha1:C", "urn:uuid:c", "http://c/", "2012-03-04T05:06:07Z");
+        // Touch A, so B is the least recently used.
+        Assert.assertNotNull(index.lookup("sha1:A"));
+        index.put("sha1:D", "urn:uuid:d", "http://d/", "2012-03-04T05:06:07Z");
+        Assert.assertEquals(3, index.size());
+        Assert.assertNull(index.lookup("sha1:B"));
+
+        File file = File.createTempFile("jwat-dedup-", ".index");
+        file.deleteOnExit();
+        index.put("sha1:B", "urn:uuid:b", null, null);
+        index.save(file);
+        PayloadDigestIndex loaded = new PayloadDigestIndex(3);
+        Assert.assertEquals(3, loaded.load(file));
+        Assert.assertNull(loaded.lookup("sha1:C"));
+        PayloadDigestIndex.Entry entry = loaded.lookup("sha1:B");
+        Assert.assertEquals("urn:uuid:b", entry.recordId);
+        Assert.assertNull(entry.targetUri);
+        Assert.assertNull(entry.date);
+        entry = loaded.lookup("sha1:A");
+        Assert.assertEquals("http://a/", entry.targetUri);
+        Assert.assertEquals("2012-03-04T05:06:07Z", entry.date);
+        // Saving replaces the previous file.
+        loaded.save(file);
+        Assert.assertEquals(3, new PayloadDigestIndex().load(file));
+        Assert.assertEquals(0, loaded.load(new File(file.getPath() + ".missing")));
+        Assert.assertEquals(PayloadDigestIndex.DEFAULT_MAX_ENTRIES, new PayloadDigestIndex().getMaxEntries());
+        try {
+            new PayloadDigestIndex(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
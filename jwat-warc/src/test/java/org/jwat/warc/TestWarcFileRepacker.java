@@ -0,0 +1,158 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.archive.common.ArchiveFileRepacker;
+
+@RunWith(JUnit4.class)
+public class TestWarcFileRepacker {
+
+    public static List<WarcRecord> readRecords(File file) throws Exception {
+        List<WarcRecord> records = new ArrayList<WarcRecord>();
+        InputStream in = new FileInputStream(file);
+        WarcReader reader = WarcReaderFactory.getReader(in);
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            if (WarcConstants.RT_WARCINFO.equals(record.header.warcTypeStr)) {
+                byte[] block = new byte[TestBaseUtils.WARCINFO_BLOCK.length()];
+                Assert.assertEquals(block.length, record.getPayload().getInputStream().read(block));
+                Assert.assertEquals(TestBaseUtils.WARCINFO_BLOCK, new String(block));
+            }
+            record.close();
+            Assert.assertTrue(record.isCompliant());
+            records.add(record);
+        }
+        reader.close();
+        in.close();
+        return records;
+    }
+
+    @Test
+    public void test_warcfilerepacker_maxsize() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            File input = TestBaseUtils.writeFile(bCompressed, 12);
+            File dir = File.createTempFile("jwat-repack-", "");
+            dir.delete();
+            dir.mkdir();
+            dir.deleteOnExit();
+            // Around the size of one record, so the inserted head record
+            // decides whether a record fits an output on its own.
+            long recordSize = input.length() / 13;
+            for (long maxSize=recordSize / 2; maxSize<recordSize * 3; maxSize += recordSize / 8) {
+                WarcFileRepacker repacker = new WarcFileRepacker(dir, "max");
+                repacker.setMaxSize(maxSize);
+                List<File> outputs = repacker.split(input);
+                int records = 0;
+                for (int i=0; i<outputs.size(); ++i) {
+                    File output = outputs.get(i);
+                    int outputRecords = readRecords(output).size();
+                    // Only a single record with its head record may be larger.
+                    Assert.assertTrue(output.length() <= maxSize || outputRecords == 2);
+                    records += outputRecords - 1;
+                }
+                Assert.assertEquals(12, records);
+                File[] files = dir.listFiles();
+                for (int i=0; i<files.length; ++i) {
+                    files[i].delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_warcfilerepacker_split() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            File input = TestBaseUtils.writeFile(bCompressed, 12);
+            List<WarcRecord> inputRecords = readRecords(input);
+            File dir = File.createTempFile("jwat-repack-", "");
+            dir.delete();
+            dir.mkdir();
+            dir.deleteOnExit();
+            WarcFileRepacker repacker = new WarcFileRepacker(dir, "split");
+            long maxSize = input.length() / 3;
+            repacker.setMaxSize(maxSize);
+            List<File> outputs = repacker.split(input);
+            Assert.assertTrue(outputs.size() >= 3);
+            List<String> ids = new ArrayList<String>();
+            List<String> warcinfoIds = new ArrayList<String>();
+            for (int i=0; i<outputs.size(); ++i) {
+                File output = outputs.get(i);
+                output.deleteOnExit();
+                new File(dir, output.getName() + ArchiveFileRepacker.OFFSET_MAP_EXTENSION).deleteOnExit();
+                Assert.assertTrue(output.length() <= maxSize);
+                Assert.assertEquals("split-0000" + i + (bCompressed ? ".warc.gz" : ".warc"), output.getName());
+                List<WarcRecord> records = readRecords(output);
+                WarcHeader warcinfo = records.get(0).header;
+                Assert.assertEquals("warcinfo", warcinfo.warcTypeStr);
+                warcinfoIds.add(warcinfo.warcRecordIdStr);
+                if (i == 0) {
+                    Assert.assertEquals(input.getName(), warcinfo.warcFilename);
+                } else {
+                    Assert.assertEquals(output.getName(), warcinfo.warcFilename);
+                }
+                for (int j=1; j<records.size(); ++j) {
+                    ids.add(records.get(j).header.warcRecordIdStr);
+                }
+            }
+            Assert.assertEquals(inputRecords.size() - 1, ids.size());
+            for (int i=0; i<ids.size(); ++i) {
+                Assert.assertEquals(inputRecords.get(i + 1).header.warcRecordIdStr, ids.get(i));
+            }
+            Assert.assertEquals(inputRecords.get(0).header.warcRecordIdStr, warcinfoIds.get(0));
+            for (int i=1; i<warcinfoIds.size(); ++i) {
+                Assert.assertFalse(warcinfoIds.subList(0, i).contains(warcinfoIds.get(i)));
+            }
+
+            // Merge the pieces of two files into one output.
+            File input2 = TestBaseUtils.writeFile(bCompressed, 2);
+            List<File> inputs = new ArrayList<File>(outputs);
+            inputs.add(input2);
+            List<File> merged = new WarcFileRepacker(dir, "merged").merge(inputs);
+            Assert.assertEquals(1, merged.size());
+            merged.get(0).deleteOnExit();
+            new File(dir, merged.get(0).getName() + ArchiveFileRepacker.OFFSET_MAP_EXTENSION).deleteOnExit();
+            Assert.assertEquals(outputs.size() + ids.size() + 3, readRecords(merged.get(0)).size());
+
+            // Compressed and uncompressed inputs can not be mixed.
+            inputs.add(TestBaseUtils.writeFile(!bCompressed, 1));
+            try {
+                new WarcFileRepacker(dir, "mixed").merge(inputs);
+                Assert.fail("Exception expected!");
+            } catch (IOException e) {
+            }
+            File[] files = dir.listFiles();
+            for (int i=0; i<files.length; ++i) {
+                files[i].deleteOnExit();
+            }
+        }
+    }
+
+}
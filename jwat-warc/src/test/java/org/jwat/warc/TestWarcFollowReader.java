@@ -0,0 +1,228 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcFollowReader {
+
+    public static byte[] writeRecords(boolean bCompressed, int records) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, bCompressed);
+        for (int i=0; i<records; ++i) {
+            byte[] payload = TestBaseUtils.payload(i, 1000 + 1000 * i);
+            TestBaseUtils.writeResponse(writer, i, payload);
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    public static List<Long> getOffsets(byte[] bytes) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(bytes));
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            record.close();
+            offsets.add(reader.getRawRecordOffset());
+        }
+        reader.close();
+        offsets.add((long)bytes.length);
+        return offsets;
+    }
+
+    @Test
+    public void test_warcfollowreader() throws Exception {
+        boolean[] compressed = {false, true};
+        for (int c=0; c<compressed.length; ++c) {
+            byte[] bytes = writeRecords(compressed[c], 8);
+            List<Long> offsets = getOffsets(bytes);
+            Assert.assertEquals(9, offsets.size());
+            File file = File.createTempFile("jwat-follow-", compressed[c] ? ".warc.gz" : ".warc");
+            file.deleteOnExit();
+            FileOutputStream out = new FileOutputStream(file);
+            WarcFollowReader reader = new WarcFollowReader(file);
+            Assert.assertEquals(compressed[c], reader.isCompressed());
+            Assert.assertNull(reader.getNextRecord());
+            Assert.assertFalse(reader.isIncomplete());
+
+            // Write the records a partial record at a time.
+            WarcRecord record;
+            long written = 0;
+            for (int i=0; i<8; ++i) {
+                long start = offsets.get(i);
+                long end = offsets.get(i + 1);
+                long half = start + (end - start) / 2;
+                out.write(bytes, (int)written, (int)(half - written));
+                out.flush();
+                written = half;
+                Assert.assertNull(reader.getNextRecord());
+                Assert.assertTrue(reader.isIncomplete());
+                Assert.assertNull(reader.getNextRecord(50));
+                Assert.assertEquals(start, reader.getOffset());
+                // Finish this record and start the next one.
+                long next = Math.min(end + 20, bytes.length);
+                out.write(bytes, (int)written, (int)(next - written));
+                out.flush();
+                written = next;
+                record = reader.getNextRecord();
+                Assert.assertNotNull(record);
+                Assert.assertEquals(start, reader.getRecordOffset());
+                Assert.assertEquals("http://www.example.com/" + i, record.header.warcTargetUriStr);
+                InputStream in = record.getPayloadContent();
+                long payloadLength = 0;
+                while (in.read() != -1) {
+                    ++payloadLength;
+                }
+                Assert.assertEquals(1000 + 1000 * i, payloadLength);
+            }
+            Assert.assertNull(reader.getNextRecord());
+            Assert.assertEquals(offsets.get(8).longValue(), reader.getOffset());
+            Assert.assertFalse(reader.isIncomplete());
+            Assert.assertEquals(8, reader.getRecords());
+            reader.close();
+            Assert.assertNull(reader.getNextRecord());
+            out.close();
+
+            // Resume from a record boundary.
+            reader = new WarcFollowReader(file, offsets.get(5));
+            for (int i=5; i<8; ++i) {
+                record = reader.getNextRecord();
+                Assert.assertEquals("http://www.example.com/" + i, record.header.warcTargetUriStr);
+            }
+            Assert.assertNull(reader.getNextRecord());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void test_warcfollowreader_damaged() throws Exception {
+        boolean[] compressed = {false, true};
+        for (int c=0; c<compressed.length; ++c) {
+            byte[] bytes = writeRecords(compressed[c], 6);
+            List<Long> offsets = getOffsets(bytes);
+            // Wrong CRC32 or a Content-Length which misses the trailer.
+            int damaged = offsets.get(3).intValue() - (compressed[c] ? 8 : 4);
+            bytes[damaged] ^= 1;
+            File file = File.createTempFile("jwat-follow-", compressed[c] ? ".warc.gz" : ".warc");
+            file.deleteOnExit();
+            FileOutputStream out = new FileOutputStream(file);
+            long half = offsets.get(4) + (offsets.get(5) - offsets.get(4)) / 2;
+            out.write(bytes, 0, (int)half);
+            out.flush();
+            WarcFollowReader reader = new WarcFollowReader(file);
+            WarcRecord record;
+            int[] expected = {0, 1, 3};
+            for (int i=0; i<expected.length; ++i) {
+                record = reader.getNextRecord();
+                Assert.assertNotNull(record);
+                Assert.assertEquals("http://www.example.com/" + expected[i], record.header.warcTargetUriStr);
+            }
+            // The damaged record is reported, the partial one is waited for.
+            Assert.assertNull(reader.getNextRecord());
+            Assert.assertTrue(reader.isIncomplete());
+            Assert.assertEquals(offsets.get(4).longValue(), reader.getOffset());
+            Assert.assertEquals(1, reader.diagnostics.getErrors().size());
+            Assert.assertEquals(offsets.get(3) - offsets.get(2), reader.getSkippedBytes());
+            out.write(bytes, (int)half, bytes.length - (int)half);
+            out.close();
+            for (int i=4; i<6; ++i) {
+                record = reader.getNextRecord();
+                Assert.assertEquals("http://www.example.com/" + i, record.header.warcTargetUriStr);
+            }
+            Assert.assertNull(reader.getNextRecord());
+            Assert.assertFalse(reader.isIncomplete());
+            Assert.assertEquals(5, reader.getRecords());
+            Assert.assertEquals(1, reader.diagnostics.getErrors().size());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void test_warcfollowreader_wait() throws Exception {
+        final byte[] bytes = writeRecords(true, 6);
+        final File file = File.createTempFile("jwat-follow-", ".warc.gz");
+        file.deleteOnExit();
+        final WarcFollowReader reader = new WarcFollowReader(file);
+        reader.setPollInterval(5, 40);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    FileOutputStream out = new FileOutputStream(file);
+                    for (int i=0; i<bytes.length; i += 997) {
+                        out.write(bytes, i, Math.min(997, bytes.length - i));
+                        out.flush();
+                        Thread.sleep(2);
+                    }
+                    out.close();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        writer.start();
+        WarcRecord record;
+        for (int i=0; i<6; ++i) {
+            record = reader.getNextRecord(10000);
+            Assert.assertNotNull(record);
+            Assert.assertEquals("http://www.example.com/" + i, record.header.warcTargetUriStr);
+        }
+        writer.join();
+        Assert.assertNull(failure.get());
+        Assert.assertNull(reader.getNextRecord(20));
+        Assert.assertEquals(bytes.length, reader.getOffset());
+
+        // Closing stops a waiting reader.
+        Thread closer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    reader.close();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        closer.start();
+        Assert.assertNull(reader.getNextRecord(-1));
+        closer.join();
+        Assert.assertNull(failure.get());
+        try {
+            reader.setPollInterval(10, 5);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcHeaderSerializer {
+
+    @Test
+    public void test_warcheaderserializer_fields() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        WarcRecord record = WarcRecord.createRecord(writer);
+        WarcHeader header = record.header;
+        header.addHeader("WARC-Type", "response");
+        header.addHeader("WARC-Record-ID", "<urn:uuid:11111111-1111-1111-1111-111111111111>");
+        header.addHeader("WARC-Date", "2010-06-23T13:33:21Z");
+        header.addHeader("Content-Length", "1234567890123456");
+        header.addHeader("Content-Type", "application/http; msgtype=response");
+        header.addHeader("WARC-Concurrent-To", "<urn:uuid:22222222-2222-2222-2222-222222222222>");
+        header.addHeader("WARC-Concurrent-To", "<urn:uuid:33333333-3333-3333-3333-333333333333>");
+        header.addHeader("WARC-Block-Digest", "sha1:Y4N5SWNQBIBIGQ66IFXDMLGJW6FZFV6U");
+        header.addHeader("WARC-Payload-Digest", "sha1:BCCYP7NW6QIIOSM523Y5XHQKE5KWLMBD");
+        header.addHeader("WARC-IP-Address", "192.168.1.1");
+        header.addHeader("WARC-Refers-To", "<urn:uuid:44444444-4444-4444-4444-444444444444>");
+        header.addHeader("WARC-Target-URI", "http://www.example.com/æøå");
+        header.addHeader("WARC-Truncated", "length");
+        header.addHeader("WARC-Warcinfo-ID", "<urn:uuid:55555555-5555-5555-5555-555555555555>");
+        header.addHeader("WARC-Filename", "filename.warc");
+        header.addHeader("WARC-Profile", "http://netpreserve.org/warc/1.0/revisit/identical-payload-digest");
+        header.addHeader("WARC-Identified-Payload-Type", "text/html");
+        header.addHeader("WARC-Segment-Number", "42");
+        header.addHeader("WARC-Segment-Origin-ID", "<urn:uuid:66666666-6666-6666-6666-666666666666>");
+        header.addHeader("WARC-Segment-Total-Length", "9876543210987654");
+        header.addHeader("WARC-Refers-To-Target-URI", "http://www.example.com/old");
+        header.addHeader("WARC-Refers-To-Date", "2010-06-23T12:23:11Z");
+        String expected = "WARC/1.0\r\n"
+                + "WARC-Type: response\r\n"
+                + "WARC-Record-ID: <urn:uuid:11111111-1111-1111-1111-111111111111>\r\n"
+                + "WARC-Date: 2010-06-23T13:33:21Z\r\n"
+                + "Content-Length: 1234567890123456\r\n"
+                + "Content-Type: application/http; msgtype=response\r\n"
+                + "WARC-Concurrent-To: <urn:uuid:22222222-2222-2222-2222-222222222222>\r\n"
+                + "WARC-Concurrent-To: <urn:uuid:33333333-3333-3333-3333-333333333333>\r\n"
+                + "WARC-Block-Digest: sha1:Y4N5SWNQBIBIGQ66IFXDMLGJW6FZFV6U\r\n"
+                + "WARC-Payload-Digest: sha1:BCCYP7NW6QIIOSM523Y5XHQKE5KWLMBD\r\n"
+                + "WARC-IP-Address: 192.168.1.1\r\n"
+                + "WARC-Refers-To: <urn:uuid:44444444-4444-4444-4444-444444444444>\r\n"
+                + "WARC-Target-URI: http://www.example.com/æøå\r\n"
+                + "WARC-Truncated: length\r\n"
+                + "WARC-Warcinfo-ID: <urn:uuid:55555555-5555-5555-5555-555555555555>\r\n"
+                + "WARC-Filename: filename.warc\r\n"
+                + "WARC-Profile: http://netpreserve.org/warc/1.0/revisit/identical-payload-digest\r\n"
+                + "WARC-Identified-Payload-Type: text/html\r\n"
+                + "WARC-Segment-Number: 42\r\n"
+                + "WARC-Segment-Origin-ID: <urn:uuid:66666666-6666-6666-6666-666666666666>\r\n"
+                + "WARC-Segment-Total-Length: 9876543210987654\r\n"
+                + "WARC-Refers-To-Target-URI: http://www.example.com/old\r\n"
+                + "WARC-Refers-To-Date: 2010-06-23T12:23:11Z\r\n"
+                + "\r\n";
+        WarcHeaderSerializer serializer = new WarcHeaderSerializer(WarcDateParser.getDateFormat());
+        serializer.serialize(header, null);
+        Assert.assertArrayEquals(expected.getBytes(), serializer.toByteArray());
+        Assert.assertEquals(expected.getBytes().length, serializer.size());
+        // Reuse of the buffer.
+        serializer.serialize(header, null);
+        Assert.assertArrayEquals(expected.getBytes(), serializer.toByteArray());
+        Assert.assertArrayEquals(expected.getBytes(), writer.writeHeader(record));
+        Assert.assertArrayEquals(expected.getBytes(), out.toByteArray());
+        // Header written without copying the bytes.
+        out.reset();
+        writer = WarcWriterFactory.getWriter(out, false);
+        Assert.assertEquals(expected.getBytes().length, writer.writeRecordHeader(record));
+        Assert.assertArrayEquals(expected.getBytes(), out.toByteArray());
+    }
+
+    @Test
+    public void test_warcheaderserializer_template() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        WarcRecord template = WarcRecord.createRecord(writer);
+        template.header.addHeader("WARC-Warcinfo-ID", "<urn:uuid:55555555-5555-5555-5555-555555555555>");
+        template.header.addHeader("WARC-IP-Address", "192.168.1.1");
+        template.header.addHeader("Content-Length", "42");
+        writer.setHeaderTemplate(template.header);
+        Assert.assertTrue(writer.headerTemplate.hasField(WarcHeaderSerializer.F_WARC_WARCINFO_ID));
+        Assert.assertFalse(writer.headerTemplate.hasField(WarcHeaderSerializer.F_CONTENT_LENGTH));
+
+        WarcRecord record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", "resource");
+        record.header.addHeader("WARC-IP-Address", "10.0.0.1");
+        record.header.addHeader("Content-Length", "3");
+        String expected = "WARC/1.0\r\n"
+                + "WARC-Type: resource\r\n"
+                + "Content-Length: 3\r\n"
+                + "WARC-IP-Address: 10.0.0.1\r\n"
+                + "WARC-Warcinfo-ID: <urn:uuid:55555555-5555-5555-5555-555555555555>\r\n"
+                + "\r\n";
+        Assert.assertArrayEquals(expected.getBytes(), writer.writeHeader(record));
+        writer.writePayload("abc".getBytes());
+        writer.closeRecord();
+
+        writer.setHeaderTemplate(null);
+        record = WarcRecord.createRecord(writer);
+        record.header.addHeader("WARC-Type", "resource");
+        record.header.addHeader("Content-Length", "0");
+        expected = "WARC/1.0\r\n"
+                + "WARC-Type: resource\r\n"
+                + "Content-Length: 0\r\n"
+                + "\r\n";
+        Assert.assertArrayEquals(expected.getBytes(), writer.writeHeader(record));
+        writer.close();
+    }
+
+    @Test
+    public void test_warcheaderserializer_dates_numbers() {
+        DateFormat dateFormat = WarcDateParser.getDateFormat();
+        WarcHeaderSerializer serializer = new WarcHeaderSerializer(dateFormat);
+        Random random = new Random(42);
+        long[] millis = new long[1000];
+        millis[0] = 0;
+        millis[1] = -1000;
+        millis[2] = 951782400000L; // 2000-02-29
+        millis[3] = 253402300799000L; // 9999-12-31T23:59:59
+        millis[4] = 253402300800000L;
+        millis[5] = -12219292800000L - 1000; // Before the Gregorian cutover.
+        for (int i=6; i<millis.length; ++i) {
+            millis[i] = (long)(random.nextDouble() * 253402300800000L);
+        }
+        Date date;
+        for (int i=0; i<millis.length; ++i) {
+            date = new Date(millis[i]);
+            serializer.reset();
+            serializer.writeDate(date);
+            // Twice for the cached date.
+            serializer.writeDate(date);
+            String str = dateFormat.format(date);
+            Assert.assertEquals(str + str, new String(serializer.toByteArray()));
+        }
+        long[] numbers = {0, 1, 9, 10, 99, 100, -1, -10, 1234567890123456L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (int i=0; i<numbers.length; ++i) {
+            serializer.reset();
+            serializer.writeLong(numbers[i]);
+            Assert.assertEquals(Long.toString(numbers[i]), new String(serializer.toByteArray()));
+        }
+        try {
+            new WarcHeaderSerializer(null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.RandomAccessFileInputStream;
+import org.jwat.common.RecordHandler;
+
+@RunWith(JUnit4.class)
+public class TestWarcParallelReader {
+
+    public static String summarize(WarcRecord record) throws IOException {
+        long length = 0;
+        if (record.getPayload() != null) {
+            InputStream in = record.getPayload().getInputStreamComplete();
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                length += read;
+            }
+        }
+        record.close();
+        return String.format("%012d %s %d %d %d", record.getStartOffset(), record.header.warcRecordIdStr,
+                length, record.diagnostics.getErrors().size(), record.diagnostics.getWarnings().size());
+    }
+
+    public static List<String> readSequential(File file, WarcReader[] readerOut) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        // FileInputStream skips past EOF, which hides truncated payloads.
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        InputStream in = new RandomAccessFileInputStream(raf);
+        WarcReader reader = WarcReaderFactory.getReader(in);
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            lines.add(summarize(record));
+        }
+        reader.close();
+        raf.close();
+        readerOut[0] = reader;
+        return lines;
+    }
+
+    public static void assertParallel(File file, int threads, int minRanges) throws IOException {
+        WarcReader[] readerOut = new WarcReader[1];
+        List<String> expected = readSequential(file, readerOut);
+        WarcParallelReader parallelReader = new WarcParallelReader(threads);
+        Assert.assertTrue(parallelReader.split(file, threads * WarcParallelReader.RANGES_PER_THREAD).length > minRanges);
+        final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+        long records = parallelReader.process(file, new RecordHandler<WarcRecord>() {
+            @Override
+            public void handleRecord(WarcRecord record) throws IOException {
+                lines.add(summarize(record));
+            }
+        });
+        Collections.sort(lines);
+        Assert.assertEquals(expected, lines);
+        Assert.assertEquals(expected.size(), records);
+        Assert.assertEquals(readerOut[0].records, parallelReader.getRecords());
+        Assert.assertEquals(readerOut[0].errors, parallelReader.getErrors());
+        Assert.assertEquals(readerOut[0].warnings, parallelReader.getWarnings());
+        Assert.assertEquals(readerOut[0].isCompliant(), parallelReader.isCompliant());
+    }
+
+    @Test
+    public void test_warcparallelreader_compressed() throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        assertParallel(TestBaseUtils.writeWarcFile(true, offsets), 2, 4);
+        assertParallel(TestBaseUtils.copyResource("IAH-20080430204825-00000-blackbook.warc.gz"), 3, 6);
+    }
+
+    @Test
+    public void test_warcparallelreader_uncompressed() throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        assertParallel(TestBaseUtils.writeWarcFile(false, offsets), 2, 4);
+        offsets.clear();
+        assertParallel(TestBaseUtils.writeNestedWarcFile(offsets), 4, 8);
+        String[] in_files = {
+                "invalid-warcfile-fields-missing.warc",
+                "invalid-warcfile-lonely-monkeys.warc",
+                "valid-warcfile-fields-metainfo.warc",
+                "valid-warcfile-non-warc-headers.warc",
+                "valid-warcfile-utf8.warc"
+        };
+        for (int i=0; i<in_files.length; ++i) {
+            assertParallel(TestBaseUtils.copyResource(in_files[i]), 2, 0);
+        }
+    }
+
+    @Test
+    public void test_warcparallelreader_handler_exception() throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        File file = TestBaseUtils.writeWarcFile(true, offsets);
+        WarcParallelReader parallelReader = new WarcParallelReader(2);
+        parallelReader.setBufferSize(1024);
+        try {
+            parallelReader.process(file, new RecordHandler<WarcRecord>() {
+                @Override
+                public void handleRecord(WarcRecord record) throws IOException {
+                    throw new IOException("handler");
+                }
+            });
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+            Assert.assertEquals("handler", e.getMessage());
+        }
+        try {
+            new WarcParallelReader(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
@@ -0,0 +1,330 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.HttpHeader;
+
+@RunWith(JUnit4.class)
+public class TestWarcPushParser {
+
+    public static final String[] WARC_FILES = {
+        "IAH-20080430204825-00000-blackbook.warc.gz",
+        "invalid-warcfile-contenttype-recommended.warc",
+        "invalid-warcfile-digest-fields.warc",
+        "invalid-warcfile-duplicate-fields.warc",
+        "invalid-warcfile-fields-empty.warc",
+        "invalid-warcfile-fields-invalidformat.warc",
+        "invalid-warcfile-fields-missing.warc",
+        "invalid-warcfile-lonely-monkeys.warc",
+        "valid-warcfile-fields-continuation.warc",
+        "valid-warcfile-non-warc-headers.warc",
+        "valid-warcfile-upper-lower-case.warc",
+        "valid-warcfile-utf8.warc"
+    };
+
+    /**
+     * Summary of a parsed record used to compare the blocking and the push
+     * parser.
+     */
+    public static class RecordSummary {
+        public long startOffset;
+        public String headerBytes;
+        public byte[] payload;
+        public int errors;
+        public int warnings;
+        public int trailingNewlines;
+        public boolean bCompliant;
+        public Boolean isValidBlockDigest;
+        public String computedBlockDigest;
+        public String httpHeader;
+        public Boolean isValidPayloadDigest;
+        public String computedPayloadDigest;
+    }
+
+    public static class CollectingHandler implements WarcPushHandler {
+        public List<RecordSummary> records = new ArrayList<RecordSummary>();
+        public ByteArrayOutputStream payload;
+        public WarcRecord current;
+        public int headers;
+        public int ends;
+        @Override
+        public void recordHeader(WarcRecord record) throws IOException {
+            Assert.assertNull(current);
+            current = record;
+            payload = new ByteArrayOutputStream();
+            ++headers;
+        }
+        @Override
+        public void payloadChunk(WarcRecord record, ByteBuffer buffer) throws IOException {
+            Assert.assertSame(current, record);
+            byte[] tmpBuf = new byte[buffer.remaining()];
+            buffer.get(tmpBuf);
+            payload.write(tmpBuf, 0, tmpBuf.length);
+        }
+        @Override
+        public void recordEnd(WarcRecord record) throws IOException {
+            Assert.assertSame(current, record);
+            Assert.assertTrue(record.isClosed());
+            records.add(summarize(record, payload.toByteArray()));
+            current = null;
+            ++ends;
+        }
+    }
+
+    public static RecordSummary summarize(WarcRecord record, byte[] payload) {
+        RecordSummary summary = new RecordSummary();
+        summary.startOffset = record.getStartOffset();
+        summary.headerBytes = new String(record.header.headerBytes);
+        summary.payload = payload;
+        summary.errors = record.diagnostics.getErrors().size();
+        summary.warnings = record.diagnostics.getWarnings().size();
+        summary.trailingNewlines = record.trailingNewlines;
+        summary.bCompliant = record.isCompliant();
+        summary.isValidBlockDigest = record.isValidBlockDigest;
+        if (record.computedBlockDigest != null) {
+            summary.computedBlockDigest = record.computedBlockDigest.digestString;
+        }
+        HttpHeader httpHeader = record.getHttpHeader();
+        if (httpHeader != null && httpHeader.isValid()) {
+            summary.httpHeader = new String(httpHeader.getHeader());
+        }
+        summary.isValidPayloadDigest = record.isValidPayloadDigest;
+        if (record.computedPayloadDigest != null) {
+            summary.computedPayloadDigest = record.computedPayloadDigest.digestString;
+        }
+        return summary;
+    }
+
+    public static List<RecordSummary> readBlocking(byte[] data, boolean bDigest, WarcReader[] readerOut) throws IOException {
+        List<RecordSummary> records = new ArrayList<RecordSummary>();
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(data));
+        reader.setBlockDigestEnabled(bDigest);
+        reader.setBlockDigestAlgorithm("sha1");
+        reader.setPayloadDigestEnabled(bDigest);
+        reader.setPayloadDigestAlgorithm("sha1");
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            byte[] payload = new byte[0];
+            if (record.getPayload() != null) {
+                payload = TestBaseUtils.readAll(record.getPayload().getInputStreamComplete());
+            }
+            record.close();
+            records.add(summarize(record, payload));
+        }
+        reader.close();
+        readerOut[0] = reader;
+        return records;
+    }
+
+    public static WarcPushParser pushParse(byte[] data, boolean bDigest, Random random, boolean bDirect, CollectingHandler handler) throws IOException {
+        WarcPushParser parser = new WarcPushParser(handler);
+        parser.getReader().setBlockDigestEnabled(bDigest);
+        parser.getReader().setBlockDigestAlgorithm("sha1");
+        parser.getReader().setPayloadDigestEnabled(bDigest);
+        parser.getReader().setPayloadDigestAlgorithm("sha1");
+        int off = 0;
+        while (off < data.length) {
+            int len = Math.min(data.length - off, 1 + random.nextInt(random.nextBoolean() ? 64 : 4096));
+            ByteBuffer buffer;
+            if (bDirect) {
+                buffer = ByteBuffer.allocateDirect(len);
+                buffer.put(data, off, len);
+                buffer.flip();
+            } else {
+                buffer = ByteBuffer.wrap(data, off, len);
+            }
+            parser.feed(buffer);
+            Assert.assertFalse(buffer.hasRemaining());
+            off += len;
+        }
+        parser.finish();
+        Assert.assertEquals(data.length, parser.getConsumed());
+        return parser;
+    }
+
+    public static void assertEquals(String name, List<RecordSummary> expected, List<RecordSummary> actual) {
+        Assert.assertEquals(name, expected.size(), actual.size());
+        for (int i=0; i<expected.size(); ++i) {
+            RecordSummary e = expected.get(i);
+            RecordSummary a = actual.get(i);
+            String msg = name + " #" + i;
+            Assert.assertEquals(msg, e.startOffset, a.startOffset);
+            Assert.assertEquals(msg, e.headerBytes, a.headerBytes);
+            Assert.assertArrayEquals(msg, e.payload, a.payload);
+            Assert.assertEquals(msg, e.errors, a.errors);
+            Assert.assertEquals(msg, e.warnings, a.warnings);
+            Assert.assertEquals(msg, e.trailingNewlines, a.trailingNewlines);
+            Assert.assertEquals(msg, e.bCompliant, a.bCompliant);
+            Assert.assertEquals(msg, e.isValidBlockDigest, a.isValidBlockDigest);
+            Assert.assertEquals(msg, e.computedBlockDigest, a.computedBlockDigest);
+            Assert.assertEquals(msg, e.httpHeader, a.httpHeader);
+            Assert.assertEquals(msg, e.isValidPayloadDigest, a.isValidPayloadDigest);
+            Assert.assertEquals(msg, e.computedPayloadDigest, a.computedPayloadDigest);
+        }
+    }
+
+    @Test
+    public void test_pushparser_same_as_reader() throws IOException {
+        Random random = new Random(42);
+        for (int i=0; i<WARC_FILES.length; ++i) {
+            byte[] data = TestBaseUtils.readAll(getClass().getClassLoader().getResourceAsStream(WARC_FILES[i]));
+            for (int j=0; j<4; ++j) {
+                boolean bDigest = (j & 1) != 0;
+                boolean bDirect = (j & 2) != 0;
+                WarcReader[] readerOut = new WarcReader[1];
+                List<RecordSummary> expected = readBlocking(data, bDigest, readerOut);
+                CollectingHandler handler = new CollectingHandler();
+                WarcPushParser parser = pushParse(data, bDigest, random, bDirect, handler);
+                assertEquals(WARC_FILES[i], expected, handler.records);
+                Assert.assertEquals(handler.headers, handler.ends);
+                Assert.assertEquals(readerOut[0].isCompressed(), parser.isCompressed());
+                Assert.assertEquals(readerOut[0].isCompliant(), parser.getReader().isCompliant());
+                Assert.assertEquals(readerOut[0].records, parser.getReader().records);
+                Assert.assertEquals(readerOut[0].errors, parser.getReader().errors);
+                Assert.assertEquals(readerOut[0].warnings, parser.getReader().warnings);
+                Assert.assertEquals(readerOut[0].diagnostics.getErrors().size(), parser.getReader().diagnostics.getErrors().size());
+                Assert.assertEquals(0, parser.diagnostics.getErrors().size());
+            }
+        }
+    }
+
+    @Test
+    public void test_pushparser_written() throws IOException {
+        Random random = new Random(7);
+        for (int i=0; i<2; ++i) {
+            boolean bCompress = i == 1;
+            List<Long> offsets = new ArrayList<Long>();
+            byte[] data = TestBaseUtils.readAll(new FileInputStream(TestBaseUtils.writeWarcFile(bCompress, offsets)));
+            CollectingHandler handler = new CollectingHandler();
+            WarcPushParser parser = pushParse(data, true, random, false, handler);
+            Assert.assertEquals(bCompress, parser.isCompressed());
+            Assert.assertTrue(parser.isCompliant());
+            Assert.assertEquals(TestBaseUtils.RECORDS, handler.records.size());
+            for (int j=0; j<handler.records.size(); ++j) {
+                RecordSummary summary = handler.records.get(j);
+                Assert.assertEquals(offsets.get(j).longValue(), summary.startOffset);
+                Assert.assertEquals("payload-" + j, new String(summary.payload));
+                Assert.assertTrue(summary.bCompliant);
+                Assert.assertNotNull(summary.computedBlockDigest);
+            }
+        }
+    }
+
+    @Test
+    public void test_pushparser_truncated() throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        byte[] data = TestBaseUtils.readAll(new FileInputStream(TestBaseUtils.writeWarcFile(false, offsets)));
+        int len = offsets.get(1).intValue() - 5;
+        CollectingHandler handler = new CollectingHandler();
+        WarcPushParser parser = new WarcPushParser(handler);
+        parser.feed(ByteBuffer.wrap(data, 0, len));
+        Assert.assertEquals(1, handler.headers);
+        Assert.assertEquals(0, handler.ends);
+        parser.finish();
+        Assert.assertEquals(1, handler.ends);
+        RecordSummary summary = handler.records.get(0);
+        Assert.assertFalse(summary.bCompliant);
+        Assert.assertEquals(2, summary.errors);
+        Assert.assertFalse(parser.isCompliant());
+        try {
+            parser.feed(ByteBuffer.wrap(data));
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        // Truncated gzip member.
+        offsets.clear();
+        data = TestBaseUtils.readAll(new FileInputStream(TestBaseUtils.writeWarcFile(true, offsets)));
+        handler = new CollectingHandler();
+        parser = new WarcPushParser(handler);
+        parser.feed(data, 0, offsets.get(2).intValue() - 4);
+        parser.finish();
+        Assert.assertEquals(2, handler.ends);
+        Assert.assertTrue(handler.records.get(0).bCompliant);
+        Assert.assertEquals(1, parser.diagnostics.getErrors().size());
+        Assert.assertFalse(parser.isCompliant());
+        // Empty input.
+        handler = new CollectingHandler();
+        parser = new WarcPushParser(handler);
+        parser.finish();
+        Assert.assertEquals(0, handler.headers);
+        Assert.assertEquals(1, parser.getReader().diagnostics.getErrors().size());
+        Assert.assertFalse(parser.isCompliant());
+    }
+
+    @Test
+    public void test_pushparser_http_header() throws Exception {
+        Random random = new Random(3);
+        for (int i=0; i<2; ++i) {
+            boolean bCompress = i == 1;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WarcWriter writer = WarcWriterFactory.getWriter(out, bCompress);
+            TestBaseUtils.writeResponse(writer, 1, TestBaseUtils.payload(1, 10000));
+            // Wrong payload digest.
+            WarcRecord record = TestBaseUtils.createResponse(writer, 2);
+            record.header.addHeader("WARC-Type", "response");
+            record.header.addHeader("WARC-Payload-Digest", "sha1:" + TestBaseUtils.sha1(new byte[0]));
+            record.header.addHeader("Content-Length", Long.toString(TestBaseUtils.HTTP_HEADER.length + 100));
+            writer.writeHeader(record);
+            writer.writePayload(TestBaseUtils.HTTP_HEADER);
+            writer.writePayload(TestBaseUtils.payload(2, 100));
+            writer.closeRecord();
+            // Invalid HTTP header.
+            byte[] invalid = "NOT HTTP\r\n\r\npayload".getBytes();
+            record = TestBaseUtils.createResponse(writer, 3);
+            record.header.addHeader("WARC-Type", "response");
+            record.header.addHeader("Content-Length", Long.toString(invalid.length));
+            writer.writeHeader(record);
+            writer.writePayload(invalid);
+            writer.closeRecord();
+            // HTTP header without a payload.
+            record = TestBaseUtils.createResponse(writer, 4);
+            record.header.addHeader("WARC-Type", "response");
+            record.header.addHeader("Content-Length", Long.toString(TestBaseUtils.HTTP_HEADER.length));
+            writer.writeHeader(record);
+            writer.writePayload(TestBaseUtils.HTTP_HEADER);
+            writer.close();
+            byte[] data = out.toByteArray();
+            WarcReader[] readerOut = new WarcReader[1];
+            List<RecordSummary> expected = readBlocking(data, true, readerOut);
+            CollectingHandler handler = new CollectingHandler();
+            pushParse(data, true, random, false, handler);
+            assertEquals("http header", expected, handler.records);
+            Assert.assertEquals(4, handler.records.size());
+            Assert.assertEquals(new String(TestBaseUtils.HTTP_HEADER), handler.records.get(0).httpHeader);
+            Assert.assertEquals(TestBaseUtils.sha1(TestBaseUtils.payload(1, 10000)), handler.records.get(0).computedPayloadDigest);
+            Assert.assertEquals(Boolean.FALSE, handler.records.get(1).isValidPayloadDigest);
+            Assert.assertNull(handler.records.get(2).httpHeader);
+            Assert.assertEquals(1, handler.records.get(2).errors);
+            Assert.assertTrue(handler.records.get(3).bCompliant);
+        }
+    }
+
+}
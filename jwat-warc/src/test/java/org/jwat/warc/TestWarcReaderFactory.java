@@ -215,6 +215,75 @@ public class TestWarcReaderFactory {
             Assert.assertEquals(expected_records, records);
             Assert.assertEquals(0, errors);
             Assert.assertEquals(0, warnings);
+
+            /*
+             * Auto detect high fan-out.
+             */
+
+            records = 0;
+            errors = 0;
+            warnings = 0;
+
+            in = this.getClass().getClassLoader().getResourceAsStream(warcFile);
+
+            reader = WarcReaderFactory.getReaderHighFanOut(in);
+
+            reader.setBlockDigestEnabled( true );
+            Assert.assertTrue(reader.setBlockDigestAlgorithm( "sha1" ));
+            reader.setPayloadDigestEnabled( true );
+            Assert.assertTrue(reader.setPayloadDigestAlgorithm( "sha1" ));
+
+            while ((record = reader.getNextRecord()) != null) {
+                if (bDebugOutput) {
+                    TestBaseUtils.printRecord(record);
+                    TestBaseUtils.printRecordErrors(record);
+                }
+
+                record.close();
+
+                // Test content-type and http response/request
+                if (record.header.contentType != null) {
+                    if ("application".equals(record.header.contentType.contentType)
+                            && "http".equals(record.header.contentType.mediaType)) {
+                        if ("response".equals(record.header.contentType.getParameter("msgtype"))) {
+                            Assert.assertNotNull(record.payload);
+                            Assert.assertNotNull(record.httpHeader);
+                            Assert.assertEquals(HttpHeader.HT_RESPONSE, record.httpHeader.headerType);
+                        } else if ("request".equals(record.header.contentType.getParameter("msgtype"))) {
+                            Assert.assertNotNull(record.payload);
+                            Assert.assertNotNull(record.httpHeader);
+                            Assert.assertEquals(HttpHeader.HT_REQUEST, record.httpHeader.headerType);
+                        }
+                    }
+                }
+
+                if ( bDigest ) {
+                    if ( (record.payload != null && record.computedBlockDigest == null)
+                            || (record.httpHeader != null && record.computedPayloadDigest == null) ) {
+                        Assert.fail( "Digest missing!" );
+                    }
+                }
+
+                ++records;
+
+                if (record.diagnostics.hasErrors()) {
+                    errors += record.diagnostics.getErrors().size();
+                }
+                if (record.diagnostics.hasWarnings()) {
+                    warnings += record.diagnostics.getWarnings().size();
+                }
+            }
+
+            reader.close();
+            in.close();
+
+            if (bDebugOutput) {
+                TestBaseUtils.printStatus(records, errors, warnings);
+            }
+
+            Assert.assertEquals(expected_records, records);
+            Assert.assertEquals(0, errors);
+            Assert.assertEquals(0, warnings);
         } catch (FileNotFoundException e) {
             Assert.fail("Input file missing");
         } catch (IOException e) {
@@ -0,0 +1,77 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcReader_Fixity {
+
+    public static byte[] digestFile(File file, String algorithm) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(algorithm);
+        InputStream in = new FileInputStream(file);
+        byte[] tmp = new byte[8192];
+        int read;
+        while ((read = in.read(tmp)) != -1) {
+            md.update(tmp, 0, read);
+        }
+        in.close();
+        return md.digest();
+    }
+
+    @Test
+    public void test_warcreader_fixity() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            File file = TestBaseUtils.writeFile(bCompressed, 20);
+            InputStream in = new FileInputStream(file);
+            WarcReader reader = WarcReaderFactory.getReader(in, 512, "SHA-256", "MD5");
+            Assert.assertEquals(bCompressed, reader.isCompressed());
+            WarcRecord record;
+            int records = 0;
+            while ((record = reader.getNextRecord()) != null) {
+                record.close();
+                Assert.assertTrue(record.isCompliant());
+                ++records;
+            }
+            Assert.assertEquals(21, records);
+            Assert.assertTrue(reader.isCompliant());
+            Assert.assertEquals(file.length(), reader.getFixityStream().getLength());
+            Assert.assertArrayEquals(digestFile(file, "SHA-256"), reader.getFixityDigest("SHA-256"));
+            Assert.assertArrayEquals(digestFile(file, "MD5"), reader.getFixityDigest("MD5"));
+            reader.close();
+            in.close();
+
+            in = new FileInputStream(file);
+            reader = WarcReaderFactory.getReader(in, 512);
+            Assert.assertNull(reader.getFixityStream());
+            Assert.assertNull(reader.getFixityDigest("SHA-256"));
+            reader.close();
+            in.close();
+        }
+    }
+
+}
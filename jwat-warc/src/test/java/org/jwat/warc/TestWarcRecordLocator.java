@@ -0,0 +1,109 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.FileChannelPool;
+
+@RunWith(JUnit4.class)
+public class TestWarcRecordLocator {
+
+    public static String readPayload(WarcRecord record) throws IOException {
+        InputStream in = record.getPayloadContent();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        return new String(out.toByteArray());
+    }
+
+    @Test
+    public void test_warcrecordlocator() throws Exception {
+        final List<Long> offsetsUncompressed = new ArrayList<Long>();
+        final List<Long> offsetsCompressed = new ArrayList<Long>();
+        final File fileUncompressed = TestBaseUtils.writeWarcFile(false, offsetsUncompressed);
+        final File fileCompressed = TestBaseUtils.writeWarcFile(true, offsetsCompressed);
+
+        final WarcRecordLocator locator = new WarcRecordLocator(new FileChannelPool(1), 1024);
+        WarcRecord record;
+        // Backwards to make sure nothing depends on sequential access.
+        for (int i=TestBaseUtils.RECORDS - 1; i>=0; --i) {
+            record = locator.getRecord(fileUncompressed, offsetsUncompressed.get(i));
+            Assert.assertEquals("http://www.example.com/" + i, record.header.warcTargetUriStr);
+            Assert.assertEquals(offsetsUncompressed.get(i).longValue(), record.getStartOffset());
+            Assert.assertEquals("payload-" + i, readPayload(record));
+            record = locator.getRecord(fileCompressed, offsetsCompressed.get(i));
+            Assert.assertEquals("http://www.example.com/" + i, record.header.warcTargetUriStr);
+            Assert.assertEquals(offsetsCompressed.get(i).longValue(), record.getStartOffset());
+            // Payload not read, the next lookup closes the record.
+        }
+        Assert.assertEquals(1, locator.getPool().size());
+
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t=0; t<threads.length; ++t) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        WarcRecord record;
+                        for (int n=0; n<200; ++n) {
+                            int i = (n * 7 + seed) % TestBaseUtils.RECORDS;
+                            boolean bCompressed = ((n + seed) & 1) == 0;
+                            record = locator.getRecord(bCompressed ? fileCompressed : fileUncompressed,
+                                    bCompressed ? offsetsCompressed.get(i) : offsetsUncompressed.get(i));
+                            Assert.assertEquals("http://www.example.com/" + i, record.header.warcTargetUriStr);
+                            Assert.assertEquals("payload-" + i, readPayload(record));
+                        }
+                        locator.release();
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t=0; t<threads.length; ++t) {
+            threads[t].join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.get(0));
+        }
+        locator.close();
+        try {
+            locator.getRecord(fileCompressed, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+}
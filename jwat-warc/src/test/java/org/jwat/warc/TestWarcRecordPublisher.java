@@ -0,0 +1,231 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.RecordSubscriber;
+import org.jwat.common.RecordSubscription;
+
+@RunWith(JUnit4.class)
+public class TestWarcRecordPublisher {
+
+    public static class TestSubscriber implements RecordSubscriber<WarcRecord> {
+        public long initialRequest;
+        public boolean bRequestMore;
+        public RecordSubscription subscription;
+        public List<String> payloads = new ArrayList<String>();
+        public ByteArrayOutputStream payload;
+        public AtomicInteger signals = new AtomicInteger();
+        public int closed;
+        public int compliant;
+        public Throwable error;
+        public boolean bComplete;
+        public CountDownLatch terminated = new CountDownLatch(1);
+        public CountDownLatch firstSignal = new CountDownLatch(1);
+        public TestSubscriber(long initialRequest, boolean bRequestMore) {
+            this.initialRequest = initialRequest;
+            this.bRequestMore = bRequestMore;
+        }
+        @Override
+        public void onSubscribe(RecordSubscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+        @Override
+        public void onRecord(WarcRecord record) {
+            payload = new ByteArrayOutputStream();
+            signal();
+        }
+        @Override
+        public void onPayload(WarcRecord record, ByteBuffer buffer) {
+            payload.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            signal();
+        }
+        protected void signal() {
+            signals.incrementAndGet();
+            firstSignal.countDown();
+            if (bRequestMore) {
+                subscription.request(1);
+            }
+        }
+        @Override
+        public void onRecordClosed(WarcRecord record) {
+            Assert.assertTrue(record.isClosed());
+            payloads.add(new String(payload.toByteArray()));
+            ++closed;
+            if (record.isCompliant()) {
+                ++compliant;
+            }
+        }
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            terminated.countDown();
+        }
+        @Override
+        public void onComplete() {
+            bComplete = true;
+            terminated.countDown();
+        }
+    }
+
+    public static class FailingInputStream extends FilterInputStream {
+        public long remaining;
+        public FailingInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 255;
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("Read failed");
+            }
+            int read = super.read(b, off, (int)Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+
+    @Test
+    public void test_warcrecordpublisher() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Long> offsets = new ArrayList<Long>();
+        for (int i=0; i<2; ++i) {
+            boolean bCompress = i == 1;
+            offsets.clear();
+            InputStream in = new FileInputStream(TestBaseUtils.writeWarcFile(bCompress, offsets));
+            WarcRecordPublisher publisher = new WarcRecordPublisher(WarcReaderFactory.getReader(in), executor);
+            publisher.setChunkSize(4);
+            Assert.assertEquals(4, publisher.getChunkSize());
+            Assert.assertTrue(publisher.getPayloadChunksEnabled());
+            TestSubscriber subscriber = new TestSubscriber(1, true);
+            publisher.subscribe(subscriber);
+            Assert.assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+            Assert.assertNull(subscriber.error);
+            Assert.assertTrue(subscriber.bComplete);
+            Assert.assertEquals(TestBaseUtils.RECORDS, subscriber.closed);
+            Assert.assertEquals(TestBaseUtils.RECORDS, subscriber.compliant);
+            for (int j=0; j<TestBaseUtils.RECORDS; ++j) {
+                Assert.assertEquals("payload-" + j, subscriber.payloads.get(j));
+            }
+            // Second subscriber is rejected.
+            TestSubscriber subscriber2 = new TestSubscriber(1, true);
+            publisher.subscribe(subscriber2);
+            Assert.assertTrue(subscriber2.terminated.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(subscriber2.error instanceof IllegalStateException);
+        }
+        // Records only.
+        offsets.clear();
+        InputStream in = new FileInputStream(TestBaseUtils.writeWarcFile(false, offsets));
+        WarcRecordPublisher publisher = new WarcRecordPublisher(WarcReaderFactory.getReader(in), executor);
+        publisher.setPayloadChunksEnabled(false);
+        TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE, false);
+        publisher.subscribe(subscriber);
+        Assert.assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(subscriber.bComplete);
+        Assert.assertEquals(TestBaseUtils.RECORDS, subscriber.signals.get());
+        Assert.assertEquals(TestBaseUtils.RECORDS, subscriber.closed);
+        executor.shutdown();
+    }
+
+    @Test
+    public void test_warcrecordpublisher_demand() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Long> offsets = new ArrayList<Long>();
+        InputStream in = new FileInputStream(TestBaseUtils.writeWarcFile(false, offsets));
+        WarcRecordPublisher publisher = new WarcRecordPublisher(WarcReaderFactory.getReader(in), executor);
+        TestSubscriber subscriber = new TestSubscriber(2, false);
+        publisher.subscribe(subscriber);
+        Assert.assertTrue(subscriber.firstSignal.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        // Record and one payload chunk.
+        Assert.assertEquals(2, subscriber.signals.get());
+        subscriber.subscription.request(3);
+        Thread.sleep(100);
+        Assert.assertEquals(5, subscriber.signals.get());
+        Assert.assertEquals(2, subscriber.closed);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+        Thread.sleep(100);
+        Assert.assertEquals(5, subscriber.signals.get());
+        Assert.assertFalse(subscriber.bComplete);
+        Assert.assertNull(subscriber.error);
+        // Invalid request.
+        offsets.clear();
+        in = new FileInputStream(TestBaseUtils.writeWarcFile(false, offsets));
+        publisher = new WarcRecordPublisher(WarcReaderFactory.getReader(in), executor);
+        subscriber = new TestSubscriber(0, false);
+        publisher.subscribe(subscriber);
+        Assert.assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+        executor.shutdown();
+    }
+
+    @Test
+    public void test_warcrecordpublisher_error() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<Long> offsets = new ArrayList<Long>();
+        InputStream in = new FileInputStream(TestBaseUtils.writeWarcFile(false, offsets));
+        in = new FailingInputStream(in, offsets.get(3));
+        WarcRecordPublisher publisher = new WarcRecordPublisher(WarcReaderFactory.getReaderUncompressed(in), executor);
+        TestSubscriber subscriber = new TestSubscriber(1, true);
+        publisher.subscribe(subscriber);
+        Assert.assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(subscriber.bComplete);
+        Assert.assertTrue(subscriber.error instanceof IOException);
+        // Fails while looking for newlines after the third record.
+        Assert.assertEquals(2, subscriber.closed);
+        try {
+            new WarcRecordPublisher(null, executor);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            publisher.setChunkSize(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        executor.shutdown();
+    }
+
+}
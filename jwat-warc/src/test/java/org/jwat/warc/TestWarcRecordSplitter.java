@@ -0,0 +1,82 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcRecordSplitter {
+
+    @Test
+    public void test_warcrecordsplitter() throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        File file = TestBaseUtils.writeNestedWarcFile(offsets);
+        WarcRecordSplitter splitter = new WarcRecordSplitter();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        long length = raf.length();
+        for (int i=0; i<offsets.size(); ++i) {
+            Assert.assertTrue(splitter.isRecord(raf, offsets.get(i)));
+            Assert.assertFalse(splitter.isRecord(raf, offsets.get(i) + 1));
+            Assert.assertEquals(i + 1 < offsets.size() ? offsets.get(i + 1) : length,
+                    splitter.getRecordEnd(raf, offsets.get(i)));
+        }
+        int next = 0;
+        for (long offset=0; offset<length; offset += 41) {
+            while (next < offsets.size() && offsets.get(next) < offset) {
+                ++next;
+            }
+            // The boundary follows the first verified record.
+            long expected = next + 1 < offsets.size() ? offsets.get(next + 1) : -1;
+            Assert.assertEquals(expected, splitter.findRecord(raf, offset, length));
+        }
+        for (int parts=1; parts<=64; ++parts) {
+            long[] boundaries = splitter.split(raf, parts);
+            Assert.assertEquals(0, boundaries[0]);
+            Assert.assertEquals(length, boundaries[boundaries.length - 1]);
+            Assert.assertTrue(boundaries.length - 1 <= parts);
+            for (int i=1; i<boundaries.length - 1; ++i) {
+                Assert.assertTrue(boundaries[i] > boundaries[i - 1]);
+                Assert.assertTrue(offsets.contains(boundaries[i]));
+            }
+            if (parts > 1) {
+                Assert.assertTrue(boundaries.length > 2);
+            }
+        }
+        raf.close();
+        try {
+            splitter.split((File)null, 2);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            splitter.split(file, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
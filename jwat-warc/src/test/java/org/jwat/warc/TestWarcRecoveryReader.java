@@ -0,0 +1,139 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.archive.common.ArchiveRecoveryReader;
+
+@RunWith(JUnit4.class)
+public class TestWarcRecoveryReader {
+
+    @Test
+    public void test_warcrecoveryreader() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            File file = TestBaseUtils.writeFile(bCompressed, 10);
+            List<Long> offsets = new ArrayList<Long>();
+            List<String> ids = new ArrayList<String>();
+            InputStream in = new FileInputStream(file);
+            WarcReader reader = WarcReaderFactory.getReader(in);
+            WarcRecord record;
+            while ((record = reader.getNextRecord()) != null) {
+                offsets.add(record.getStartOffset());
+                ids.add(record.header.warcRecordIdStr);
+                record.close();
+            }
+            reader.close();
+            in.close();
+            Assert.assertEquals(11, offsets.size());
+
+            // Intact file.
+            WarcRecoveryReader recoveryReader = new WarcRecoveryReader(file);
+            Assert.assertEquals(bCompressed, recoveryReader.isCompressed());
+            int idx = 0;
+            while ((record = recoveryReader.getNextRecord()) != null) {
+                Assert.assertEquals(offsets.get(idx).longValue(), recoveryReader.getRecordOffset());
+                Assert.assertEquals(ids.get(idx), record.header.warcRecordIdStr);
+                ++idx;
+            }
+            Assert.assertEquals(11, recoveryReader.getRecords());
+            Assert.assertEquals(0, recoveryReader.getSkippedBytes());
+            Assert.assertTrue(recoveryReader.diagnostics.getErrors().isEmpty());
+            recoveryReader.close();
+
+            // Damage the header of one record and truncate the header of the last one.
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.seek(offsets.get(4));
+            raf.write(new byte[] {'X', 'X', 'X'});
+            raf.setLength(offsets.get(10) + 5);
+            long length = raf.length();
+            raf.close();
+
+            recoveryReader = new WarcRecoveryReader(file);
+            List<String> recovered = new ArrayList<String>();
+            while ((record = recoveryReader.getNextRecord()) != null) {
+                recovered.add(record.header.warcRecordIdStr);
+                byte[] tmp = new byte[8192];
+                InputStream pin = record.getPayloadContent();
+                while (pin.read(tmp) != -1) {
+                }
+                Assert.assertTrue(record.isCompliant());
+            }
+            recoveryReader.close();
+            List<String> expected = new ArrayList<String>(ids.subList(0, 10));
+            expected.remove(4);
+            Assert.assertEquals(expected, recovered);
+            List<long[]> skipped = recoveryReader.getSkippedRanges();
+            Assert.assertEquals(2, skipped.size());
+            Assert.assertArrayEquals(new long[] {offsets.get(4), offsets.get(5) - offsets.get(4)}, skipped.get(0));
+            Assert.assertArrayEquals(new long[] {offsets.get(10), length - offsets.get(10)}, skipped.get(1));
+            Assert.assertEquals(offsets.get(5) - offsets.get(4) + length - offsets.get(10), recoveryReader.getSkippedBytes());
+            Assert.assertEquals(2, recoveryReader.diagnostics.getErrors().size());
+            Assert.assertEquals(ArchiveRecoveryReader.SKIPPED_DATA_ENTITY, recoveryReader.diagnostics.getErrors().get(0).entity);
+        }
+    }
+
+    @Test
+    public void test_warcrecoveryreader_damaged_data() throws Exception {
+        File file = TestBaseUtils.writeFile(true, 10);
+        List<Long> offsets = new ArrayList<Long>();
+        InputStream in = new FileInputStream(file);
+        WarcReader reader = WarcReaderFactory.getReader(in);
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            offsets.add(record.getStartOffset());
+            record.close();
+        }
+        reader.close();
+        in.close();
+
+        // Garbage at the end of the compressed data of one record.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long damaged = offsets.get(4) - 16;
+        raf.seek(damaged);
+        byte[] garbage = new byte[(int)(offsets.get(4) - damaged)];
+        for (int i=0; i<garbage.length; ++i) {
+            garbage[i] = (byte)0xff;
+        }
+        raf.write(garbage);
+        raf.close();
+
+        WarcRecoveryReader recoveryReader = new WarcRecoveryReader(file);
+        int records = 0;
+        while ((record = recoveryReader.getNextRecord()) != null) {
+            ++records;
+        }
+        recoveryReader.close();
+        // The member fails to inflate and the scan resumes at the next one.
+        Assert.assertEquals(10, records);
+        List<long[]> skipped = recoveryReader.getSkippedRanges();
+        Assert.assertEquals(1, skipped.size());
+        Assert.assertArrayEquals(new long[] {offsets.get(3), offsets.get(4) - offsets.get(3)}, skipped.get(0));
+    }
+
+}
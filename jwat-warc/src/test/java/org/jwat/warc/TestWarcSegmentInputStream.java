@@ -0,0 +1,145 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcSegmentInputStream {
+
+    public static void writeSegment(WarcWriter writer, int number, String originId, Long total, byte[] block) throws IOException {
+        WarcRecord record = WarcRecord.createRecord(writer);
+        WarcHeader header = record.header;
+        if (number == 1) {
+            header.addHeader("WARC-Type", "resource");
+            header.addHeader("WARC-Record-ID", originId);
+        } else {
+            header.addHeader("WARC-Type", "continuation");
+            header.addHeader("WARC-Record-ID", "<urn:uuid:00000000-0000-0000-0000-00000000010" + number + ">");
+            header.addHeader("WARC-Segment-Origin-ID", originId);
+        }
+        header.addHeader("WARC-Date", "2012-03-04T05:06:07Z");
+        header.addHeader("WARC-Target-URI", "http://www.example.com/");
+        header.addHeader("WARC-Segment-Number", Integer.toString(number));
+        if (total != null) {
+            header.addHeader("WARC-Segment-Total-Length", total.toString());
+        }
+        header.addHeader("Content-Length", Integer.toString(block.length));
+        writer.writeHeader(record);
+        writer.writePayload(block);
+        writer.closeRecord();
+    }
+
+    public static byte[] read(byte[] warc) throws IOException {
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(warc));
+        Iterator<WarcRecord> iter = reader.iterator();
+        try {
+            return TestBaseUtils.readAll(new WarcSegmentInputStream(iter.next(), iter));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void test_warcsegmentinputstream() throws Exception {
+        String id1 = "<urn:uuid:00000000-0000-0000-0000-000000000001>";
+        String id2 = "<urn:uuid:00000000-0000-0000-0000-000000000002>";
+        // Interleaved segments of another record are skipped.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        writeSegment(writer, 1, id1, null, "abc".getBytes());
+        writeSegment(writer, 2, id2, null, "xxx".getBytes());
+        writeSegment(writer, 2, id1, null, "def".getBytes());
+        writeSegment(writer, 3, id1, 7L, "g".getBytes());
+        writer.close();
+        Assert.assertEquals("abcdefg", new String(read(out.toByteArray())));
+
+        // Single byte reads.
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+        Iterator<WarcRecord> iter = reader.iterator();
+        WarcSegmentInputStream in = new WarcSegmentInputStream(iter.next(), iter);
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            sb.append((char)b);
+        }
+        Assert.assertEquals("abcdefg", sb.toString());
+        Assert.assertEquals(3, in.getSegmentNumber());
+        Assert.assertEquals(7, in.getConsumed());
+        Assert.assertEquals(-1, in.read());
+        in.close();
+        reader.close();
+
+        // Missing segment.
+        out = new ByteArrayOutputStream();
+        writer = WarcWriterFactory.getWriter(out, false);
+        writeSegment(writer, 1, id1, null, "abc".getBytes());
+        writeSegment(writer, 3, id1, 7L, "g".getBytes());
+        writer.close();
+        try {
+            read(out.toByteArray());
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+
+        // Missing last segment.
+        out = new ByteArrayOutputStream();
+        writer = WarcWriterFactory.getWriter(out, false);
+        writeSegment(writer, 1, id1, null, "abc".getBytes());
+        writeSegment(writer, 2, id1, null, "def".getBytes());
+        writer.close();
+        try {
+            read(out.toByteArray());
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+
+        // Total length mismatch.
+        out = new ByteArrayOutputStream();
+        writer = WarcWriterFactory.getWriter(out, false);
+        writeSegment(writer, 1, id1, null, "abc".getBytes());
+        writeSegment(writer, 2, id1, 42L, "def".getBytes());
+        writer.close();
+        try {
+            read(out.toByteArray());
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+
+        // Unsegmented record.
+        out = new ByteArrayOutputStream();
+        writer = WarcWriterFactory.getWriter(out, false);
+        WarcRecord record = TestBaseUtils.createResource(writer, 1);
+        record.header.addHeader("Content-Length", "5");
+        writer.writeHeader(record);
+        writer.writePayload("hello".getBytes());
+        writer.closeRecord();
+        writeSegment(writer, 1, id2, null, "abc".getBytes());
+        writer.close();
+        Assert.assertEquals("hello", new String(read(out.toByteArray())));
+    }
+
+}
@@ -0,0 +1,237 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcSegmentWriter {
+
+    /**
+     * Read all logical records of a WARC file, reassembling segments.
+     */
+    public static List<byte[]> readLogical(Iterator<WarcRecord> iter, List<WarcRecord> firsts) throws IOException {
+        List<byte[]> blocks = new ArrayList<byte[]>();
+        while (iter.hasNext()) {
+            WarcRecord record = iter.next();
+            if (WarcConstants.RT_CONTINUATION.equals(record.header.warcTypeStr)) {
+                Assert.fail("Unexpected continuation record");
+            }
+            firsts.add(record);
+            blocks.add(TestBaseUtils.readAll(new WarcSegmentInputStream(record, iter)));
+        }
+        return blocks;
+    }
+
+    @Test
+    public void test_warcsegmentwriter() throws Exception {
+        int[] lengths = {0, 1, 99, 100, 101, 250, 300, 1000};
+        for (int pass=0; pass<4; ++pass) {
+            boolean bCompressed = (pass & 1) != 0;
+            boolean bKnown = (pass & 2) != 0;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WarcWriter writer = WarcWriterFactory.getWriter(out, bCompressed);
+            WarcSegmentWriter segmentWriter = new WarcSegmentWriter(writer);
+            segmentWriter.setSegmentSize(100);
+            segmentWriter.setMemoryThreshold(30);
+            int expectedSegments = 0;
+            int segmented = 0;
+            for (int i=0; i<lengths.length; ++i) {
+                byte[] block = TestBaseUtils.payload(i, lengths[i]);
+                int expected = Math.max(1, (lengths[i] + 99) / 100);
+                Assert.assertEquals(expected, segmentWriter.writeRecord(TestBaseUtils.createResource(writer, i),
+                        new ByteArrayInputStream(block), bKnown ? block.length : -1));
+                if (expected > 1) {
+                    expectedSegments += expected;
+                    ++segmented;
+                }
+            }
+            writer.close();
+            Assert.assertEquals(lengths.length, segmentWriter.getRecords());
+            Assert.assertEquals(expectedSegments, segmentWriter.getSegments());
+
+            // Check the records as written.
+            WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+            WarcRecord record;
+            int records = 0;
+            while ((record = reader.getNextRecord()) != null) {
+                record.close();
+                Assert.assertTrue(record.isCompliant());
+                Assert.assertTrue(record.header.contentLength <= 100);
+                ++records;
+            }
+            reader.close();
+            Assert.assertEquals(lengths.length - segmented + expectedSegments, records);
+
+            // Reassemble.
+            reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+            List<WarcRecord> firsts = new ArrayList<WarcRecord>();
+            List<byte[]> blocks = readLogical(reader.iterator(), firsts);
+            reader.close();
+            Assert.assertEquals(lengths.length, blocks.size());
+            for (int i=0; i<lengths.length; ++i) {
+                Assert.assertArrayEquals(TestBaseUtils.payload(i, lengths[i]), blocks.get(i));
+                if (lengths[i] > 100) {
+                    Assert.assertEquals(Integer.valueOf(1), firsts.get(i).header.warcSegmentNumber);
+                } else {
+                    Assert.assertNull(firsts.get(i).header.warcSegmentNumber);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_warcsegmentwriter_continuation_fields() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        WarcSegmentWriter segmentWriter = new WarcSegmentWriter(writer);
+        segmentWriter.setSegmentSize(10);
+        Assert.assertEquals(3, segmentWriter.writeRecord(TestBaseUtils.createResource(writer, 1),
+                new ByteArrayInputStream(TestBaseUtils.payload(1, 25)), -1));
+        writer.close();
+        WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+        List<WarcRecord> records = new ArrayList<WarcRecord>();
+        WarcRecord record;
+        while ((record = reader.getNextRecord()) != null) {
+            record.close();
+            records.add(record);
+        }
+        reader.close();
+        Assert.assertEquals(3, records.size());
+        WarcHeader first = records.get(0).header;
+        Assert.assertEquals("resource", first.warcTypeStr);
+        Assert.assertEquals(Integer.valueOf(1), first.warcSegmentNumber);
+        Assert.assertNull(first.warcSegmentTotalLength);
+        Assert.assertEquals(Long.valueOf(10), first.contentLength);
+        for (int i=1; i<3; ++i) {
+            WarcHeader header = records.get(i).header;
+            Assert.assertTrue(records.get(i).isCompliant());
+            Assert.assertEquals(WarcConstants.RT_CONTINUATION, header.warcTypeStr);
+            Assert.assertEquals(first.warcRecordIdUri, header.warcSegmentOriginIdUrl);
+            Assert.assertEquals(first.warcTargetUriStr, header.warcTargetUriStr);
+            Assert.assertEquals(first.warcDateStr, header.warcDateStr);
+            Assert.assertFalse(first.warcRecordIdStr.equals(header.warcRecordIdStr));
+            Assert.assertNull(header.contentTypeStr);
+            Assert.assertEquals(Integer.valueOf(i + 1), header.warcSegmentNumber);
+        }
+        Assert.assertNull(records.get(1).header.warcSegmentTotalLength);
+        Assert.assertEquals(Long.valueOf(10), records.get(1).header.contentLength);
+        Assert.assertEquals(Long.valueOf(25), records.get(2).header.warcSegmentTotalLength);
+        Assert.assertEquals(Long.valueOf(5), records.get(2).header.contentLength);
+    }
+
+    @Test
+    public void test_warcsegmentwriter_rotation() throws Exception {
+        final List<ByteArrayOutputStream> files = new ArrayList<ByteArrayOutputStream>();
+        final WarcWriter[] current = new WarcWriter[1];
+        WarcSegmentWriter segmentWriter = new WarcSegmentWriter(new WarcSegmentWriter.WriterProvider() {
+            @Override
+            public WarcWriter getWriter(int segmentNumber) throws IOException {
+                // One file per segment.
+                if (current[0] != null) {
+                    current[0].close();
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                files.add(out);
+                current[0] = WarcWriterFactory.getWriter(out, true);
+                return current[0];
+            }
+        });
+        segmentWriter.setSegmentSize(64);
+        segmentWriter.setMemoryThreshold(0);
+        byte[] block = TestBaseUtils.payload(7, 64 * 5);
+        Assert.assertEquals(5, segmentWriter.writeRecord(TestBaseUtils.createResource(new WarcWriterUncompressed(new ByteArrayOutputStream()), 7),
+                new ByteArrayInputStream(block), -1));
+        current[0].close();
+        Assert.assertEquals(5, files.size());
+
+        // Chain the readers of the files.
+        final List<WarcReader> readers = new ArrayList<WarcReader>();
+        for (int i=0; i<files.size(); ++i) {
+            readers.add(WarcReaderFactory.getReader(new ByteArrayInputStream(files.get(i).toByteArray())));
+        }
+        Iterator<WarcRecord> iter = new Iterator<WarcRecord>() {
+            int idx = 0;
+            WarcRecord next;
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (next == null && idx < readers.size()) {
+                        next = readers.get(idx).getNextRecord();
+                        if (next == null) {
+                            ++idx;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return next != null;
+            }
+            @Override
+            public WarcRecord next() {
+                hasNext();
+                WarcRecord record = next;
+                next = null;
+                return record;
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        List<WarcRecord> firsts = new ArrayList<WarcRecord>();
+        List<byte[]> blocks = readLogical(iter, firsts);
+        Assert.assertEquals(1, blocks.size());
+        Assert.assertArrayEquals(block, blocks.get(0));
+    }
+
+    @Test
+    public void test_warcsegmentwriter_short_block() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, false);
+        WarcSegmentWriter segmentWriter = new WarcSegmentWriter(writer);
+        segmentWriter.setSegmentSize(10);
+        try {
+            segmentWriter.writeRecord(TestBaseUtils.createResource(writer, 1),
+                    new ByteArrayInputStream(TestBaseUtils.payload(1, 15)), 25);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+        try {
+            new WarcSegmentWriter((WarcWriter)null);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            segmentWriter.setSegmentSize(0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
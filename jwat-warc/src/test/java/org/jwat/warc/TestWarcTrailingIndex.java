@@ -0,0 +1,125 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcTrailingIndex {
+
+    @Test
+    public void test_warctrailingindex() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            File file = TestBaseUtils.newFile();
+            TestBaseUtils.writeResponseFile(file, bCompressed, true, 5);
+
+            // Existing readers see the index as an ordinary metadata record.
+            WarcReader reader = WarcReaderFactory.getReader(new FileInputStream(file));
+            WarcRecord record;
+            int records = 0;
+            String lastType = null;
+            while ((record = reader.getNextRecord()) != null) {
+                record.close();
+                Assert.assertTrue(record.isCompliant());
+                lastType = record.header.warcTypeStr;
+                ++records;
+            }
+            reader.close();
+            Assert.assertEquals(6, records);
+            Assert.assertEquals("metadata", lastType);
+            Assert.assertTrue(reader.isCompliant());
+
+            WarcTrailingIndex index = WarcTrailingIndex.open(file);
+            Assert.assertNotNull(index);
+            if (bCompressed) {
+                Assert.assertEquals(file.length() - WarcTrailingIndex.GZIP_FOOTER_LENGTH,
+                        index.getIndexOffset() + index.getIndexLength());
+            } else {
+                Assert.assertEquals(file.length(), index.getIndexOffset() + index.getIndexLength());
+            }
+            List<String> lines = index.getLines();
+            Assert.assertEquals(5, lines.size());
+            for (int i=1; i<lines.size(); ++i) {
+                Assert.assertTrue(lines.get(i - 1).compareTo(lines.get(i)) < 0);
+            }
+            Assert.assertEquals(0, index.lookup("http://www.example.com/9").size());
+            Assert.assertEquals(0, index.lookup("http://www.example.com/").size());
+
+            byte[] bytes = new byte[(int)file.length()];
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            raf.readFully(bytes);
+            raf.close();
+            for (int i=0; i<5; ++i) {
+                List<WarcIndexEntry> entries = index.lookup("http://WWW.example.com:80/" + i);
+                Assert.assertEquals(1, entries.size());
+                WarcIndexEntry entry = entries.get(0);
+                Assert.assertEquals("http://www.example.com/" + i, entry.targetUri);
+                Assert.assertEquals("2012030405060" + i, entry.date);
+                Assert.assertEquals(new Integer(200), entry.httpStatus);
+                Assert.assertEquals("text/plain", entry.mimeType);
+                Assert.assertEquals(TestBaseUtils.sha1(TestBaseUtils.payload(i, 100 * i)), entry.payloadDigest);
+                reader = WarcReaderFactory.getReader(new ByteArrayInputStream(bytes, (int)entry.offset, (int)entry.length));
+                record = reader.getNextRecord();
+                Assert.assertEquals("http://www.example.com/" + i, record.header.warcTargetUriStr);
+                record.close();
+                Assert.assertNull(reader.getNextRecord());
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void test_warctrailingindex_none() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            File file = TestBaseUtils.newFile();
+            TestBaseUtils.writeResponseFile(file, pass == 1, false, 3);
+            Assert.assertNull(WarcTrailingIndex.open(file));
+            file = TestBaseUtils.newFile();
+            TestBaseUtils.writeResponseFile(file, pass == 1, true, 0);
+            WarcTrailingIndex index = WarcTrailingIndex.open(file);
+            Assert.assertNotNull(index);
+            Assert.assertEquals(0, index.getLines().size());
+        }
+        Assert.assertNull(WarcTrailingIndex.open(TestBaseUtils.newFile()));
+    }
+
+    @Test
+    public void test_warctrailingindex_parseline() {
+        Assert.assertNull(WarcTrailingIndex.parseLine("com,example)/"));
+        Assert.assertNull(WarcTrailingIndex.parseLine("com,example)/ 20120304050607 {\"url\""));
+        Assert.assertNull(WarcTrailingIndex.parseLine("com,example)/ 20120304050607 {\"length\":\"x\"}"));
+        WarcIndexEntry entry = WarcTrailingIndex.parseLine("com,example)/ 20120304050607 {\"url\":\"http://example.com/\\\"\\u0041\",\"status\":\"404\",\"length\":\"10\",\"offset\":\"42\"}");
+        Assert.assertEquals("http://example.com/\"A", entry.targetUri);
+        Assert.assertEquals("20120304050607", entry.date);
+        Assert.assertEquals(new Integer(404), entry.httpStatus);
+        Assert.assertEquals(10, entry.length);
+        Assert.assertEquals(42, entry.offset);
+        Assert.assertNull(entry.mimeType);
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcWriterPool {
+
+    public static final int THREADS = 8;
+
+    public static final int RECORDS_PER_THREAD = 100;
+
+    @Test
+    public void test_warcwriterpool_concurrent() throws Exception {
+        boolean[] compressed = {false, true};
+        for (int c=0; c<compressed.length; ++c) {
+            File dir = TestBaseUtils.createTempDir();
+            final WarcWriterPool pool = new WarcWriterPool(dir, "TEST", compressed[c], 3);
+            pool.setMaxFileSize(16 * 1024);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread[] threads = new Thread[THREADS];
+            for (int t=0; t<THREADS; ++t) {
+                final int thread = t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i=0; i<RECORDS_PER_THREAD; ++i) {
+                                WarcWriterPool.PooledWriter pooledWriter = pool.acquire();
+                                try {
+                                    TestBaseUtils.writeResource(pooledWriter.getWriter(), thread + "-" + i,
+                                            ("payload " + thread + " " + i + " ").getBytes());
+                                } finally {
+                                    pool.release(pooledWriter);
+                                }
+                            }
+                        } catch (Throwable t) {
+                            failure.set(t);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (int t=0; t<THREADS; ++t) {
+                threads[t].join();
+            }
+            Assert.assertNull(failure.get());
+            pool.close();
+            Assert.assertTrue(pool.isClosed());
+            try {
+                pool.acquire();
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+
+            File[] files = dir.listFiles();
+            Assert.assertTrue(files.length > 3);
+            Assert.assertEquals(files.length, pool.getFilesRotated());
+            Assert.assertEquals(THREADS * RECORDS_PER_THREAD, pool.getAcquired());
+            Assert.assertTrue(pool.getQueueWaitNanos() >= pool.getMaxQueueWaitNanos());
+            Assert.assertTrue(pool.getBytesPerSecond() > 0);
+            Set<String> ids = new HashSet<String>();
+            long bytes = 0;
+            for (int i=0; i<files.length; ++i) {
+                files[i].deleteOnExit();
+                Assert.assertFalse(files[i].getName().endsWith(WarcWriterPool.OPEN_SUFFIX));
+                Assert.assertEquals(compressed[c], files[i].getName().endsWith(".warc.gz"));
+                bytes += files[i].length();
+                InputStream in = new FileInputStream(files[i]);
+                WarcReader reader = WarcReaderFactory.getReader(in);
+                WarcRecord record = reader.getNextRecord();
+                Assert.assertEquals(WarcConstants.RT_WARCINFO, record.header.warcTypeStr);
+                Assert.assertEquals(files[i].getName(), record.header.warcFilename);
+                Assert.assertEquals(WarcConstants.CT_APP_WARC_FIELDS, record.header.contentTypeStr);
+                record.close();
+                Assert.assertTrue(record.isCompliant());
+                while ((record = reader.getNextRecord()) != null) {
+                    record.close();
+                    Assert.assertTrue(record.isCompliant());
+                    Assert.assertTrue(ids.add(record.header.warcRecordIdStr));
+                }
+                Assert.assertTrue(reader.isCompliant());
+                reader.close();
+                in.close();
+            }
+            Assert.assertEquals(THREADS * RECORDS_PER_THREAD, ids.size());
+            Assert.assertEquals(bytes, pool.getBytesWritten());
+        }
+    }
+
+    @Test
+    public void test_warcwriterpool_rotation() throws Exception {
+        File dir = TestBaseUtils.createTempDir();
+        WarcWriterPool pool = new WarcWriterPool(dir, "TEST", false, 1);
+        pool.setWarcinfoFields("software: test\r\n".getBytes());
+        WarcWriterPool.PooledWriter pooledWriter = pool.acquire();
+        File first = pooledWriter.getFile();
+        Assert.assertTrue(new File(dir, first.getName() + WarcWriterPool.OPEN_SUFFIX).exists());
+        Assert.assertFalse(first.exists());
+        TestBaseUtils.writeResource(pooledWriter.getWriter(), "1", "one".getBytes());
+        long offset = pooledWriter.getOffset();
+        pool.release(pooledWriter);
+        // Releasing does not flush the buffer.
+        Assert.assertEquals(0, new File(dir, first.getName() + WarcWriterPool.OPEN_SUFFIX).length());
+        Assert.assertEquals(offset, pool.getBytesWritten());
+        // Size and age within limits.
+        pooledWriter = pool.acquire();
+        Assert.assertEquals(first, pooledWriter.getFile());
+        pool.release(pooledWriter);
+        Assert.assertEquals(0, pool.getFilesRotated());
+        // Age rotation when acquired.
+        pool.setMaxFileAge(1);
+        Thread.sleep(5);
+        pooledWriter = pool.acquire();
+        Assert.assertTrue(first.exists());
+        Assert.assertEquals(offset, first.length());
+        Assert.assertEquals(1, pool.getFilesRotated());
+        Assert.assertFalse(first.equals(pooledWriter.getFile()));
+        pool.setMaxFileAge(0);
+        // Size rotation when released.
+        pool.setMaxFileSize(1);
+        File second = pooledWriter.getFile();
+        TestBaseUtils.writeResource(pooledWriter.getWriter(), "2", "two".getBytes());
+        pool.release(pooledWriter);
+        Assert.assertTrue(second.exists());
+        Assert.assertEquals(2, pool.getFilesRotated());
+        try {
+            pool.release(pooledWriter);
+            Assert.fail("Exception expected!");
+        } catch (IllegalStateException e) {
+        }
+        pool.close();
+        // The last writer was never reopened.
+        Assert.assertEquals(2, dir.listFiles().length);
+        for (File file : dir.listFiles()) {
+            file.deleteOnExit();
+        }
+        try {
+            new WarcWriterPool(dir, "TEST", false, 0);
+            Assert.fail("Exception expected!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
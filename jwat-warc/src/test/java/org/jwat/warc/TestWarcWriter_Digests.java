@@ -0,0 +1,135 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.Base32;
+import org.jwat.common.DigestListener;
+import org.jwat.common.PayloadDigester;
+import org.jwat.common.SpillBuffer;
+
+@RunWith(JUnit4.class)
+public class TestWarcWriter_Digests {
+
+    @Test
+    public void test_warcwriter_digests_listener() throws Exception {
+        byte[] httpHeader = TestBaseUtils.HTTP_HEADER;
+        for (int pass=0; pass<2; ++pass) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WarcWriter writer = WarcWriterFactory.getWriter(out, pass == 1);
+            Assert.assertTrue(writer.setBlockDigestAlgorithm("sha1"));
+            Assert.assertTrue(writer.setPayloadDigestAlgorithm("sha1"));
+            Assert.assertFalse(writer.setPayloadDigestAlgorithm("nosuchalgorithm"));
+            Assert.assertEquals("sha1", writer.getPayloadDigestAlgorithm());
+            final List<String> computed = new ArrayList<String>();
+            writer.setDigestListener(new DigestListener<WarcHeader>() {
+                @Override
+                public void digestsComputed(WarcHeader header, PayloadDigester digester) {
+                    byte[] payloadDigest = digester.getPayloadDigest();
+                    computed.add(header.warcTypeStr + " "
+                            + Base32.encodeArray(digester.getBlockDigest()) + " "
+                            + (payloadDigest != null ? Base32.encodeArray(payloadDigest) : "-"));
+                }
+            });
+            byte[] payload = TestBaseUtils.payload(1, 5000);
+            // Response streamed in pieces.
+            WarcRecord record = TestBaseUtils.createResponse(writer, 1);
+            record.header.addHeader("WARC-Type", "response");
+            record.header.addHeader("Content-Length", Long.toString(httpHeader.length + payload.length));
+            writer.writeHeader(record);
+            writer.writePayload(httpHeader, 0, 10);
+            writer.writePayload(httpHeader, 10, httpHeader.length - 10);
+            writer.streamPayload(new ByteArrayInputStream(payload));
+            writer.closeRecord();
+            // Resource without a HTTP header.
+            record = TestBaseUtils.createResponse(writer, 2);
+            record.header.addHeader("WARC-Type", "resource");
+            record.header.addHeader("Content-Type", "text/plain");
+            record.header.addHeader("Content-Length", Long.toString(payload.length));
+            writer.writeHeader(record);
+            writer.writePayload(payload);
+            writer.closeRecord();
+            Assert.assertEquals(payload.length, writer.getDigester().getLength());
+            writer.close();
+
+            Assert.assertEquals(2, computed.size());
+            Assert.assertEquals("response " + TestBaseUtils.sha1(httpHeader, payload) + " " + TestBaseUtils.sha1(payload), computed.get(0));
+            Assert.assertEquals("resource " + TestBaseUtils.sha1(payload) + " -", computed.get(1));
+        }
+    }
+
+    @Test
+    public void test_warcwriter_digests_deferred_header() throws Exception {
+        byte[] httpHeader = TestBaseUtils.HTTP_HEADER;
+        for (int pass=0; pass<2; ++pass) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WarcWriter writer = WarcWriterFactory.getWriter(out, pass == 1);
+            writer.setBlockDigestAlgorithm("sha1");
+            writer.setPayloadDigestAlgorithm("sha1");
+            final int[] calls = new int[1];
+            writer.setDigestListener(new DigestListener<WarcHeader>() {
+                @Override
+                public void digestsComputed(WarcHeader header, PayloadDigester digester) {
+                    Assert.assertNotNull(digester.getBlockDigest());
+                    ++calls[0];
+                }
+            });
+            SpillBuffer buffer = new SpillBuffer();
+            buffer.setThreshold(SpillBuffer.CHUNK_SIZE);
+            int[] lengths = {0, 1000, 100000};
+            for (int i=0; i<lengths.length; ++i) {
+                WarcRecord record = TestBaseUtils.createResponse(writer, i);
+                record.header.addHeader("WARC-Type", "response");
+                writer.prepareBuffer(buffer, record);
+                buffer.write(httpHeader);
+                buffer.write(TestBaseUtils.payload(i, lengths[i]));
+                writer.writeRecord(record, buffer);
+            }
+            buffer.close();
+            writer.close();
+            Assert.assertEquals(lengths.length, calls[0]);
+
+            WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+            reader.setBlockDigestEnabled(true);
+            reader.setPayloadDigestEnabled(true);
+            WarcRecord record;
+            int i = 0;
+            while ((record = reader.getNextRecord()) != null) {
+                byte[] payload = TestBaseUtils.payload(i, lengths[i]);
+                record.close();
+                Assert.assertTrue(record.isCompliant());
+                Assert.assertEquals(Boolean.TRUE, record.isValidBlockDigest);
+                Assert.assertEquals(Boolean.TRUE, record.isValidPayloadDigest);
+                Assert.assertEquals("sha1:" + TestBaseUtils.sha1(httpHeader, payload), record.header.warcBlockDigestStr);
+                Assert.assertEquals("sha1:" + TestBaseUtils.sha1(payload), record.header.warcPayloadDigestStr);
+                ++i;
+            }
+            reader.close();
+            Assert.assertEquals(lengths.length, i);
+        }
+    }
+
+}
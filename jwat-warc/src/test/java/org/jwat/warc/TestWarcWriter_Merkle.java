@@ -0,0 +1,89 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.archive.common.MerkleSidecar;
+
+@RunWith(JUnit4.class)
+public class TestWarcWriter_Merkle {
+
+    @Test
+    public void test_warcwriter_merkle() throws Exception {
+        boolean[] compressed = {false, true};
+        for (int c=0; c<compressed.length; ++c) {
+            File file = File.createTempFile("jwat-merkle-", compressed[c] ? ".warc.gz" : ".warc");
+            file.deleteOnExit();
+            FileOutputStream out = new FileOutputStream(file);
+            WarcWriter writer = WarcWriterFactory.getWriter(out, compressed[c]);
+            MerkleSidecar sidecar = new MerkleSidecar(MerkleSidecar.DEFAULT_ALGORITHM);
+            writer.setMerkleSidecar(sidecar);
+            Assert.assertSame(sidecar, writer.getMerkleSidecar());
+            for (int i=0; i<12; ++i) {
+                byte[] payload = TestBaseUtils.payload(i, 1000 + 4000 * i);
+                TestBaseUtils.writeResponse(writer, i, payload);
+            }
+            writer.close();
+            out.close();
+            Assert.assertEquals(12, sidecar.getRecordCount());
+
+            // Build the same tree while reading, without a second pass.
+            MerkleSidecar readSidecar = new MerkleSidecar(MerkleSidecar.DEFAULT_ALGORITHM);
+            FileInputStream in = new FileInputStream(file);
+            WarcReader reader = WarcReaderFactory.getReaderWithMerkleSidecar(in, 1024, readSidecar);
+            Assert.assertSame(readSidecar, reader.getMerkleSidecar());
+            WarcRecord record;
+            int records = 0;
+            while ((record = reader.getNextRecord()) != null) {
+                // Skipped payloads are digested too.
+                if (records++ % 2 == 0) {
+                    TestBaseUtils.readAll(record.getPayloadContent());
+                }
+                record.close();
+            }
+            reader.close();
+            in.close();
+            Assert.assertEquals(sidecar.getRecordCount(), readSidecar.getRecordCount());
+            for (int i=0; i<sidecar.getRecordCount(); ++i) {
+                Assert.assertEquals(sidecar.getOffset(i), readSidecar.getOffset(i));
+                Assert.assertEquals(sidecar.getLength(i), readSidecar.getLength(i));
+                Assert.assertArrayEquals(sidecar.getDigest(i), readSidecar.getDigest(i));
+            }
+            Assert.assertArrayEquals(sidecar.getRoot(), readSidecar.getRoot());
+
+            File sidecarFile = new File(file.getPath() + MerkleSidecar.EXTENSION);
+            sidecarFile.deleteOnExit();
+            sidecar.write(sidecarFile);
+            MerkleSidecar loaded = MerkleSidecar.read(sidecarFile);
+            Assert.assertTrue(loaded.isConsistent());
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            Assert.assertEquals(0, loaded.verifySample(raf.getChannel(), 4, new Random(1)).size());
+            raf.close();
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestWarcWriter_RawRecord {
+
+    @Test
+    public void test_warcwriter_rawrecord_copy() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            File file = TestBaseUtils.newFile();
+            TestBaseUtils.writeResponseFile(file, bCompressed, false, 6);
+            byte[] src = new byte[(int)file.length()];
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            raf.readFully(src);
+            FileChannel channel = raf.getChannel();
+
+            for (int level=WarcWriter.RAW_VERIFY_NONE; level<=WarcWriter.RAW_VERIFY_RECORD; ++level) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                WarcWriter writer = WarcWriterFactory.getWriter(out, bCompressed);
+                writer.setRawRecordVerification(level);
+                Assert.assertEquals(level, writer.getRawRecordVerification());
+                final List<WarcIndexEntry> entries = new ArrayList<WarcIndexEntry>();
+                writer.setIndexListener(new WarcIndexListener() {
+                    @Override
+                    public void recordWritten(WarcIndexEntry entry) throws IOException {
+                        Assert.assertEquals(200, entry.httpStatus.intValue());
+                        Assert.assertEquals("text/plain", entry.mimeType);
+                        Assert.assertEquals("response", entry.recordType);
+                        WarcIndexEntry copy = new WarcIndexEntry();
+                        copy.offset = entry.offset;
+                        copy.length = entry.length;
+                        copy.targetUri = entry.targetUri;
+                        entries.add(copy);
+                    }
+                });
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                WarcReader reader = WarcReaderFactory.getReader(new FileInputStream(file));
+                Assert.assertEquals(-1, reader.getRawRecordOffset());
+                WarcRecord record;
+                int i = 0;
+                while ((record = reader.getNextRecord()) != null) {
+                    record.close();
+                    long offset = reader.getRawRecordOffset();
+                    long length = reader.getRawRecordLength();
+                    if (i % 2 == 0) {
+                        // Even records copied by channel, odd by byte array.
+                        Assert.assertEquals(length, writer.writeRawRecord(channel, offset, length, record));
+                    } else {
+                        byte[] raw = reader.getRawRecordBytes(channel);
+                        Assert.assertEquals(length, raw.length);
+                        Assert.assertEquals(length, writer.writeRawRecord(raw, record));
+                    }
+                    expected.write(src, (int)offset, (int)length);
+                    ++i;
+                }
+                reader.close();
+                writer.close();
+                Assert.assertEquals(6, i);
+                Assert.assertArrayEquals(expected.toByteArray(), src);
+                Assert.assertArrayEquals(src, out.toByteArray());
+                Assert.assertEquals(6, entries.size());
+                Assert.assertEquals(0, entries.get(0).offset);
+                Assert.assertEquals(src.length, entries.get(5).offset + entries.get(5).length);
+            }
+            raf.close();
+        }
+    }
+
+    @Test
+    public void test_warcwriter_rawrecord_mixed() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WarcWriter writer = WarcWriterFactory.getWriter(out, bCompressed);
+            byte[] raw = rawRecord(bCompressed, 1);
+            WarcRecord record = TestBaseUtils.createResponse(writer, 2);
+            record.header.addHeader("WARC-Type", "response");
+            record.header.addHeader("Content-Length", Long.toString(TestBaseUtils.HTTP_HEADER.length));
+            writer.writeHeader(record);
+            writer.writePayload(TestBaseUtils.HTTP_HEADER);
+            // Open record is closed before the raw record is written.
+            writer.writeRawRecord(raw, null);
+            record = TestBaseUtils.createResponse(writer, 3);
+            record.header.addHeader("WARC-Type", "response");
+            record.header.addHeader("Content-Length", Long.toString(TestBaseUtils.HTTP_HEADER.length));
+            writer.writeHeader(record);
+            writer.writePayload(TestBaseUtils.HTTP_HEADER);
+            writer.close();
+            try {
+                writer.writeRawRecord(raw, null);
+                Assert.fail("Exception expected!");
+            } catch (IllegalStateException e) {
+            }
+
+            WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+            String[] uris = {"http://www.example.com/2", "http://www.example.com/1", "http://www.example.com/3"};
+            for (int i=0; i<uris.length; ++i) {
+                record = reader.getNextRecord();
+                Assert.assertEquals(uris[i], record.header.warcTargetUriStr);
+                record.close();
+                Assert.assertTrue(record.isCompliant());
+            }
+            Assert.assertNull(reader.getNextRecord());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void test_warcwriter_rawrecord_verification() throws Exception {
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            byte[] raw = rawRecord(bCompressed, 1);
+            WarcWriter writer = WarcWriterFactory.getWriter(new ByteArrayOutputStream(), bCompressed);
+            // Wrong framing is always rejected.
+            byte[] other = rawRecord(!bCompressed, 1);
+            assertRejected(writer, other);
+            byte[] truncated = new byte[raw.length - 1];
+            System.arraycopy(raw, 0, truncated, 0, truncated.length);
+            assertRejected(writer, truncated);
+            // Corrupt data is only detected when verifying.
+            byte[] corrupt = raw.clone();
+            if (bCompressed) {
+                // Flip a bit in the CRC32 trailer.
+                corrupt[corrupt.length - 8] ^= 1;
+            } else {
+                // Content-Length one too large.
+                String str = new String(corrupt, "ISO-8859-1");
+                int idx = str.indexOf("Content-Length: ") + "Content-Length: ".length();
+                corrupt[idx + 1] += 1;
+            }
+            assertRejected(writer, corrupt);
+            writer.setRawRecordVerification(WarcWriter.RAW_VERIFY_NONE);
+            writer.writeRawRecord(corrupt, null);
+            try {
+                writer.setRawRecordVerification(3);
+                Assert.fail("Exception expected!");
+            } catch (IllegalArgumentException e) {
+            }
+            try {
+                writer.writeRawRecord((byte[])null, null);
+                Assert.fail("Exception expected!");
+            } catch (IllegalArgumentException e) {
+            }
+            writer.close();
+        }
+    }
+
+    protected static void assertRejected(WarcWriter writer, byte[] raw) throws Exception {
+        try {
+            writer.writeRawRecord(raw, null);
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+        }
+    }
+
+    protected static byte[] rawRecord(boolean bCompressed, int i) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WarcWriter writer = WarcWriterFactory.getWriter(out, bCompressed);
+        byte[] payload = TestBaseUtils.payload(i, 1000);
+        TestBaseUtils.writeResponse(writer, i, payload);
+        writer.close();
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Java Web Archive Toolkit - Software to read and validate ARC, WARC
+ * and GZip files. (http://jwat.org/)
+ * Copyright 2011-2012 Netarkivet.dk (http://netarkivet.dk/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jwat.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.jwat.common.Base32;
+import org.jwat.common.SpillBuffer;
+
+@RunWith(JUnit4.class)
+public class TestWarcWriter_SpillBuffer {
+
+    @Test
+    public void test_warcwriter_spillbuffer() throws Exception {
+        byte[] httpHeader = TestBaseUtils.HTTP_HEADER;
+        int[] lengths = {0, 100, 200000};
+        for (int pass=0; pass<2; ++pass) {
+            boolean bCompressed = pass == 1;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WarcWriter writer = WarcWriterFactory.getWriter(out, bCompressed);
+            SpillBuffer buffer = new SpillBuffer();
+            buffer.setThreshold(SpillBuffer.CHUNK_SIZE);
+            buffer.setBlockDigestAlgorithm("sha1");
+            buffer.setPayloadDigestAlgorithm("sha1");
+            for (int i=0; i<lengths.length; ++i) {
+                buffer.reset();
+                buffer.write(httpHeader);
+                buffer.markPayloadStart();
+                buffer.write(TestBaseUtils.payload(i, lengths[i]));
+                Assert.assertEquals(lengths[i] > SpillBuffer.CHUNK_SIZE, buffer.isSpilled());
+                WarcRecord record = TestBaseUtils.createResponse(writer, i);
+                record.header.addHeader("WARC-Type", "response");
+                writer.writeRecord(record, buffer);
+            }
+            buffer.close();
+            writer.close();
+
+            WarcReader reader = WarcReaderFactory.getReader(new ByteArrayInputStream(out.toByteArray()));
+            reader.setBlockDigestEnabled(true);
+            reader.setPayloadDigestEnabled(true);
+            WarcRecord record;
+            int i = 0;
+            while ((record = reader.getNextRecord()) != null) {
+                byte[] payload = TestBaseUtils.payload(i, lengths[i]);
+                record.close();
+                Assert.assertTrue(record.isCompliant());
+                Assert.assertEquals(httpHeader.length + payload.length, record.header.contentLength.longValue());
+                MessageDigest md = MessageDigest.getInstance("sha1");
+                md.update(httpHeader);
+                md.update(payload);
+                Assert.assertEquals("sha1:" + Base32.encodeArray(md.digest()), record.header.warcBlockDigestStr);
+                Assert.assertEquals("sha1:" + Base32.encodeArray(MessageDigest.getInstance("sha1").digest(payload)),
+                        record.header.warcPayloadDigestStr);
+                ++i;
+            }
+            reader.close();
+            Assert.assertEquals(lengths.length, i);
+        }
+    }
+
+}